@@ -1,2 +1,4 @@
 @echo off
-java -jar Db2Migrator.jar %1 %2 %3
\ No newline at end of file
+set JAVA_OPTS=
+if exist Db2Migrator.jsa set JAVA_OPTS=-XX:SharedArchiveFile=Db2Migrator.jsa -Xshare:auto
+java %JAVA_OPTS% -jar Db2Migrator.jar %1 %2 %3
\ No newline at end of file
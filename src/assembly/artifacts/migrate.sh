@@ -1,3 +1,7 @@
 #!/bin/bash
 BASEDIR=$(dirname "$0")
-java -jar "$BASEDIR"/Db2Migrator.jar $1 $2 $3
\ No newline at end of file
+JAVA_OPTS=
+if [ -f "$BASEDIR"/Db2Migrator.jsa ]; then
+	JAVA_OPTS="-XX:SharedArchiveFile=$BASEDIR/Db2Migrator.jsa -Xshare:auto"
+fi
+java $JAVA_OPTS -jar "$BASEDIR"/Db2Migrator.jar $1 $2 $3
\ No newline at end of file
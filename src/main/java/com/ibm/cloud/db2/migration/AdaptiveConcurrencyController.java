@@ -0,0 +1,225 @@
+package com.ibm.cloud.db2.migration;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Feedback controller for the number of concurrent database sessions of a
+ * phase. At a fixed interval it measures the round trip latency of a trivial
+ * statement and reads CPU and lock wait time from MON_GET_SERVICE_SUBCLASS on
+ * the database being worked on. While the server is healthy one session is
+ * added per interval; when latency, CPU or lock waits exceed their limits the
+ * session count is cut by a quarter. The count always stays within the
+ * configured bounds.
+ */
+public class AdaptiveConcurrencyController implements Runnable {
+	private static Log logger = LogFactory.getLog(AdaptiveConcurrencyController.class);
+
+	/**
+	 * Utility configuration
+	 */
+	private ConfigurationBean config = null;
+
+	/**
+	 * The executor whose session limit is controlled
+	 */
+	private TableTaskExecutor executor = null;
+
+	/**
+	 * Dedicated monitoring session, not counted against the session limit
+	 */
+	private Connection connection = null;
+
+	/**
+	 * Runs the samples
+	 */
+	private ScheduledExecutorService scheduler = null;
+
+	/**
+	 * Lowest probe latency seen so far, used as the healthy baseline
+	 */
+	private long baselineLatencyNanos = Long.MAX_VALUE;
+
+	/**
+	 * Monitor counters of the previous sample
+	 */
+	private long previousCpuMicros = -1;
+	private long previousLockWaitMillis = -1;
+	private long previousRequestMillis = -1;
+	private long previousSampleNanos = 0;
+
+	/**
+	 * The number of CPUs available to the database server
+	 */
+	private int cpuOnline = 1;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param config
+	 *            the utility configuration.
+	 * @param executor
+	 *            the executor whose session limit is controlled.
+	 * @param connection
+	 *            a dedicated session on the database to monitor.
+	 */
+	public AdaptiveConcurrencyController(ConfigurationBean config, TableTaskExecutor executor, Connection connection) {
+		super();
+		this.config = config;
+		this.executor = executor;
+		this.connection = connection;
+	}
+
+	/**
+	 * Starts sampling at the configured interval.
+	 */
+	public void start() {
+		this.cpuOnline = readCpuOnline();
+		this.executor.setDatabaseSessionLimit(this.config.getAdaptiveMinSessions());
+		logger.info("Adaptive concurrency started with " + this.config.getAdaptiveMinSessions() + " of at most "
+				+ this.config.getAdaptiveMaxSessions() + " sessions");
+		this.scheduler = Executors.newSingleThreadScheduledExecutor();
+		this.scheduler.scheduleWithFixedDelay(this, this.config.getAdaptiveSampleSeconds(),
+				this.config.getAdaptiveSampleSeconds(), TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stops sampling and closes the monitoring session.
+	 */
+	public void stop() {
+		if (this.scheduler != null) {
+			this.scheduler.shutdownNow();
+		}
+		try {
+			this.connection.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Takes one sample and adjusts the session limit.
+	 */
+	public void run() {
+		try {
+			long latencyNanos = probeLatency();
+			this.baselineLatencyNanos = Math.min(this.baselineLatencyNanos, latencyNanos);
+			double latencyFactor = (double) latencyNanos / this.baselineLatencyNanos;
+			double cpuPercent = 0;
+			double lockWaitPercent = 0;
+			long sampleNanos = System.nanoTime();
+			Statement statement = this.connection.createStatement();
+			try {
+				ResultSet resultSet = statement.executeQuery("SELECT SUM(TOTAL_CPU_TIME), SUM(LOCK_WAIT_TIME), "
+						+ "SUM(TOTAL_RQST_TIME) FROM TABLE(MON_GET_SERVICE_SUBCLASS(NULL, NULL, -2))");
+				resultSet.next();
+				long cpuMicros = resultSet.getLong(1);
+				long lockWaitMillis = resultSet.getLong(2);
+				long requestMillis = resultSet.getLong(3);
+				if (this.previousCpuMicros >= 0) {
+					double intervalMicros = (sampleNanos - this.previousSampleNanos) / 1000.0;
+					cpuPercent = 100.0 * (cpuMicros - this.previousCpuMicros) / (intervalMicros * this.cpuOnline);
+					long requestDelta = requestMillis - this.previousRequestMillis;
+					if (requestDelta > 0) {
+						lockWaitPercent = 100.0 * (lockWaitMillis - this.previousLockWaitMillis) / requestDelta;
+					}
+				}
+				this.previousCpuMicros = cpuMicros;
+				this.previousLockWaitMillis = lockWaitMillis;
+				this.previousRequestMillis = requestMillis;
+				this.previousSampleNanos = sampleNanos;
+			} finally {
+				statement.close();
+			}
+			adjust(latencyFactor, cpuPercent, lockWaitPercent);
+		} catch (SQLException e) {
+			logger.warn("Adaptive concurrency sample failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Applies additive increase, multiplicative decrease to the session limit.
+	 */
+	private void adjust(double latencyFactor, double cpuPercent, double lockWaitPercent) {
+		int current = this.executor.getDatabaseSessionLimit();
+		int next;
+		String reason;
+		if (latencyFactor > this.config.getAdaptiveLatencyFactor()) {
+			next = current - Math.max(1, current / 4);
+			reason = "probe latency " + String.format("%.1f", latencyFactor) + "x baseline";
+		} else if (cpuPercent > this.config.getAdaptiveCpuTargetPercent()) {
+			next = current - Math.max(1, current / 4);
+			reason = "CPU " + String.format("%.0f", cpuPercent) + "%";
+		} else if (lockWaitPercent > this.config.getAdaptiveLockWaitPercent()) {
+			next = current - Math.max(1, current / 4);
+			reason = "lock wait " + String.format("%.0f", lockWaitPercent) + "% of request time";
+		} else {
+			next = current + 1;
+			reason = "server healthy";
+		}
+		next = Math.max(this.config.getAdaptiveMinSessions(), Math.min(this.config.getAdaptiveMaxSessions(), next));
+		if (next != current) {
+			logger.info("Adaptive concurrency: " + current + " -> " + next + " sessions (" + reason + ")");
+			this.executor.setDatabaseSessionLimit(next);
+		}
+	}
+
+	/**
+	 * Measures the round trip time of a trivial statement.
+	 */
+	private long probeLatency() throws SQLException {
+		long startTime = System.nanoTime();
+		Statement statement = this.connection.createStatement();
+		try {
+			ResultSet resultSet = statement.executeQuery("SELECT 1 FROM SYSIBM.SYSDUMMY1");
+			resultSet.next();
+		} finally {
+			statement.close();
+		}
+		return Math.max(1, System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Reads the number of CPUs of the database server, falling back to one when
+	 * the table function is not available.
+	 */
+	private int readCpuOnline() {
+		try {
+			Statement statement = this.connection.createStatement();
+			try {
+				ResultSet resultSet = statement
+						.executeQuery("SELECT MAX(CPU_ONLINE) FROM TABLE(SYSPROC.ENV_GET_SYSTEM_RESOURCES())");
+				if (resultSet.next() && resultSet.getInt(1) > 0) {
+					return resultSet.getInt(1);
+				}
+			} finally {
+				statement.close();
+			}
+		} catch (SQLException e) {
+			logger.warn("Could not read the CPU count of the server: " + e.getMessage());
+		}
+		return 1;
+	}
+}
@@ -0,0 +1,385 @@
+package com.ibm.cloud.db2.migration;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.text.SimpleDateFormat;
+import java.util.Base64;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.util.EntityUtils;
+
+import com.ibm.cloud.objectstorage.services.s3.model.PartETag;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Uploads the parts of multi part uploads as non-blocking HTTP requests. The
+ * requests of all uploads share one asynchronous client, so a few I/O threads
+ * carry every part in flight and no thread waits for a response. Each request
+ * is signed with AWS Signature Version 4 using the HMAC credentials, with the
+ * SHA-256 of the part taken in the read pass as the payload hash, and carries
+ * the part's MD5 as Content-MD5. Parts that fail with a network error or a
+ * server side status are sent again after a growing delay.
+ * 
+ * Initiating and completing uploads are single requests per object and stay
+ * on the blocking client. IAM API key credentials need a token from the IAM
+ * service and are not supported here.
+ */
+public class AsyncTransferEngine {
+	private static Log logger = LogFactory.getLog(AsyncTransferEngine.class);
+
+	/**
+	 * The number of times a part is sent before its upload fails
+	 */
+	private static final int MAX_ATTEMPTS = 4;
+
+	/**
+	 * The delay before the first retry, doubled for each further retry
+	 */
+	private static final long RETRY_DELAY_MS = 500;
+
+	/**
+	 * The digits of percent encoded bytes
+	 */
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	/**
+	 * The asynchronous HTTP client sending the parts
+	 */
+	private CloseableHttpAsyncClient httpClient = null;
+
+	/**
+	 * Sends parts again after their retry delay
+	 */
+	private ScheduledExecutorService retryScheduler = null;
+
+	/**
+	 * The service endpoint with its scheme
+	 */
+	private String endpoint = "";
+
+	/**
+	 * The host and port signed as the Host header
+	 */
+	private String host = "";
+
+	/**
+	 * The name of the bucket
+	 */
+	private String bucketName = "";
+
+	/**
+	 * The HMAC access key
+	 */
+	private String accessKey = "";
+
+	/**
+	 * The HMAC secret key
+	 */
+	private String secretKey = "";
+
+	/**
+	 * The region requests are signed for
+	 */
+	private String region = "";
+
+	/**
+	 * Constructor
+	 * 
+	 * @param config
+	 *            the utility configuration.
+	 * @param endpoint
+	 *            the service endpoint with its scheme.
+	 */
+	public AsyncTransferEngine(ConfigurationBean config, String endpoint) {
+		super();
+		this.endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+		URI uri = URI.create(this.endpoint);
+		this.host = uri.getHost() + (uri.getPort() != -1 ? ":" + uri.getPort() : "");
+		this.bucketName = config.getBucketName();
+		this.accessKey = config.getApi_key();
+		this.secretKey = config.getService_instance_id();
+		this.region = config.getGeo_location();
+		// daemon threads, so an idle engine never keeps the utility running
+		ThreadFactory threadFactory = new ThreadFactory() {
+			private AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "cos-async-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		int maxRequests = Math.max(1, config.getCosAsyncMaxRequests());
+		this.httpClient = HttpAsyncClients.custom()
+				.setDefaultIOReactorConfig(IOReactorConfig.custom()
+						.setIoThreadCount(Math.max(1, config.getCosAsyncIoThreads())).setSoKeepAlive(true).build())
+				.setMaxConnTotal(maxRequests).setMaxConnPerRoute(maxRequests)
+				.setDefaultRequestConfig(RequestConfig.custom().setConnectTimeout(config.getClientTimeOut())
+						.setSocketTimeout(config.getClientTimeOut()).build())
+				.setThreadFactory(threadFactory).build();
+		this.httpClient.start();
+		this.retryScheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+		logger.info("Asynchronous transfers using " + config.getCosAsyncIoThreads() + " I/O threads and up to "
+				+ maxRequests + " connections");
+	}
+
+	/**
+	 * Indicates if the engine can sign requests for an endpoint. Endpoints
+	 * that take IAM API keys are left to the blocking client.
+	 * 
+	 * @param endpoint
+	 *            the service endpoint.
+	 * @return true for endpoints used with HMAC credentials.
+	 */
+	public static boolean isSupported(String endpoint) {
+		return !endpoint.contains("objectstorage.softlayer.net");
+	}
+
+	/**
+	 * Sends one part of a multi part upload without waiting for it.
+	 * 
+	 * @param objectKey
+	 *            the key of the object being uploaded.
+	 * @param uploadId
+	 *            the id of the multi part upload.
+	 * @param partNumber
+	 *            the 1 based number of the part.
+	 * @param part
+	 *            the buffer holding the part, not changed until onDone runs.
+	 * @param length
+	 *            the number of bytes of the part.
+	 * @param md5
+	 *            the MD5 of the part.
+	 * @param sha256
+	 *            the SHA-256 of the part.
+	 * @param onDone
+	 *            run on an I/O thread once the part is uploaded or has failed,
+	 *            before the future completes.
+	 * @return the future ETag of the part.
+	 */
+	public Future<PartETag> uploadPart(String objectKey, String uploadId, int partNumber, byte[] part, int length,
+			byte[] md5, byte[] sha256, Runnable onDone) {
+		PartUpload upload = new PartUpload();
+		upload.objectKey = objectKey;
+		upload.uploadId = uploadId;
+		upload.partNumber = partNumber;
+		upload.part = part;
+		upload.length = length;
+		upload.md5 = Base64.getEncoder().encodeToString(md5);
+		upload.sha256 = COSClient.toHex(sha256);
+		upload.onDone = onDone;
+		send(upload, 1);
+		return upload.result;
+	}
+
+	/**
+	 * Stops the I/O threads. Parts still in flight fail.
+	 */
+	public void shutdown() {
+		this.retryScheduler.shutdownNow();
+		try {
+			this.httpClient.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Sends a part and handles its response on an I/O thread.
+	 */
+	private void send(final PartUpload upload, final int attempt) {
+		final Tracer.Span span = Tracer.begin("part", upload.objectKey + " part " + upload.partNumber)
+				.setBytes(upload.length);
+		HttpPut request;
+		try {
+			request = sign(upload);
+		} catch (GeneralSecurityException e) {
+			span.end("failed");
+			finish(upload, null, new IOException("Cannot sign part " + upload.partNumber, e));
+			return;
+		}
+		logger.debug("Sending part " + upload.partNumber + " of " + upload.objectKey + ", attempt " + attempt);
+		this.httpClient.execute(request, new FutureCallback<HttpResponse>() {
+			public void completed(HttpResponse response) {
+				int status = response.getStatusLine().getStatusCode();
+				Header etag = response.getFirstHeader("ETag");
+				if (status == 200 && etag != null) {
+					span.end();
+					finish(upload, new PartETag(upload.partNumber, etag.getValue().replace("\"", "")), null);
+					return;
+				}
+				span.end("failed");
+				String body = "";
+				try {
+					body = response.getEntity() != null ? EntityUtils.toString(response.getEntity()) : "";
+				} catch (IOException e) {
+					body = e.getMessage();
+				}
+				IOException failure = new IOException("Part " + upload.partNumber + " of " + upload.objectKey
+						+ " failed with status " + status + ": " + body);
+				if (status >= 500 || status == 429 || status == 408) {
+					retry(upload, attempt, failure);
+				} else {
+					finish(upload, null, failure);
+				}
+			}
+
+			public void failed(Exception e) {
+				span.end("failed");
+				retry(upload, attempt, e);
+			}
+
+			public void cancelled() {
+				span.end("failed");
+				finish(upload, null, new IOException("Part " + upload.partNumber + " of " + upload.objectKey
+						+ " was cancelled"));
+			}
+		});
+	}
+
+	/**
+	 * Schedules another attempt for a part, or fails it after the last one.
+	 */
+	private void retry(final PartUpload upload, final int attempt, Exception failure) {
+		if (attempt >= MAX_ATTEMPTS || this.retryScheduler.isShutdown()) {
+			finish(upload, null, failure);
+			return;
+		}
+		long delay = RETRY_DELAY_MS << (attempt - 1);
+		logger.warn("Part " + upload.partNumber + " of " + upload.objectKey + " failed, retrying in " + delay
+				+ " ms: " + failure.getMessage());
+		this.retryScheduler.schedule(new Runnable() {
+			public void run() {
+				send(upload, attempt + 1);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Releases the part's buffer and completes its future.
+	 */
+	private void finish(PartUpload upload, PartETag partETag, Exception failure) {
+		try {
+			upload.onDone.run();
+		} finally {
+			if (failure != null) {
+				upload.result.completeExceptionally(failure);
+			} else {
+				logger.info("Uploading part complete! Part: " + upload.partNumber);
+				upload.result.complete(partETag);
+			}
+		}
+	}
+
+	/**
+	 * Builds the UploadPart request of a part and signs it with AWS Signature
+	 * Version 4.
+	 */
+	private HttpPut sign(PartUpload upload) throws GeneralSecurityException {
+		SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		String timestamp = format.format(new Date());
+		String date = timestamp.substring(0, 8);
+		String path = "/" + encode(this.bucketName, false) + "/" + encode(upload.objectKey, true);
+		String query = "partNumber=" + upload.partNumber + "&uploadId=" + encode(upload.uploadId, false);
+		String signedHeaders = "content-md5;host;x-amz-content-sha256;x-amz-date";
+		String canonicalRequest = "PUT\n" + path + "\n" + query + "\n" + "content-md5:" + upload.md5 + "\n" + "host:"
+				+ this.host + "\n" + "x-amz-content-sha256:" + upload.sha256 + "\n" + "x-amz-date:" + timestamp
+				+ "\n\n" + signedHeaders + "\n" + upload.sha256;
+		String scope = date + "/" + this.region + "/s3/aws4_request";
+		String stringToSign = "AWS4-HMAC-SHA256\n" + timestamp + "\n" + scope + "\n"
+				+ COSClient.toHex(
+						MessageDigest.getInstance("SHA-256").digest(canonicalRequest.getBytes(StandardCharsets.UTF_8)));
+		byte[] key = hmac(("AWS4" + this.secretKey).getBytes(StandardCharsets.UTF_8), date);
+		key = hmac(key, this.region);
+		key = hmac(key, "s3");
+		key = hmac(key, "aws4_request");
+		String signature = COSClient.toHex(hmac(key, stringToSign));
+
+		HttpPut request = new HttpPut(this.endpoint + path + "?" + query);
+		request.setHeader("Content-MD5", upload.md5);
+		request.setHeader("x-amz-content-sha256", upload.sha256);
+		request.setHeader("x-amz-date", timestamp);
+		request.setHeader("Authorization", "AWS4-HMAC-SHA256 Credential=" + this.accessKey + "/" + scope
+				+ ", SignedHeaders=" + signedHeaders + ", Signature=" + signature);
+		request.setEntity(new ByteArrayEntity(upload.part, 0, upload.length));
+		return request;
+	}
+
+	private static byte[] hmac(byte[] key, String data) throws GeneralSecurityException {
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(new SecretKeySpec(key, "HmacSHA256"));
+		return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Percent encodes a value the way Signature Version 4 expects, leaving
+	 * slashes alone in object keys.
+	 */
+	private static String encode(String value, boolean keepSlashes) {
+		StringBuilder encoded = new StringBuilder();
+		for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+			char c = (char) (b & 0xFF);
+			if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_'
+					|| c == '.' || c == '~' || (keepSlashes && c == '/')) {
+				encoded.append(c);
+			} else {
+				encoded.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+			}
+		}
+		return encoded.toString();
+	}
+
+	/**
+	 * One part being uploaded.
+	 */
+	private static class PartUpload {
+		String objectKey = null;
+		String uploadId = null;
+		int partNumber = 0;
+		byte[] part = null;
+		int length = 0;
+		String md5 = null;
+		String sha256 = null;
+		Runnable onDone = null;
+		CompletableFuture<PartETag> result = new CompletableFuture<PartETag>();
+	}
+}
@@ -0,0 +1,419 @@
+package com.ibm.cloud.db2.migration;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.ibm.cloud.objectstorage.services.s3.model.S3ObjectInputStream;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Loads an exported object into a target that cannot read external tables. The
+ * object is divided into one byte range per load session. Each session reads
+ * its range with a ranged GET, starting at the first row that begins inside the
+ * range and finishing the last row that begins inside it, parses the rows and
+ * inserts them with JDBC batches, committing at a configured row interval.
+ * Rows end at line breaks that are not escaped by the export's escape
+ * character. Rows committed before a failure stay in the table, so the table
+ * must be truncated before it is loaded again.
+ */
+public class BatchInsertLoader {
+	private static Log logger = LogFactory.getLog(BatchInsertLoader.class);
+
+	/**
+	 * How far before its range a session starts reading, to learn whether the
+	 * line breaks near the start of the range are escaped
+	 */
+	private static final int SYNC_CONTEXT = 4096;
+
+	/**
+	 * The size of the read buffer of a session
+	 */
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	/**
+	 * Provides target sessions
+	 */
+	private TableTaskExecutor executor = null;
+
+	/**
+	 * Client used to read object ranges
+	 */
+	private COSClient cosClient = null;
+
+	/**
+	 * Runs the range readers
+	 */
+	private ExecutorService rangeExecutor = Executors.newCachedThreadPool();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param executor
+	 *            the executor providing target sessions.
+	 * @param cosClient
+	 *            the client used to read objects.
+	 */
+	public BatchInsertLoader(TableTaskExecutor executor, COSClient cosClient) {
+		super();
+		this.executor = executor;
+		this.cosClient = cosClient;
+	}
+
+	/**
+	 * Loads one object into a table. A gzip compressed object cannot be read
+	 * from the middle, so it is loaded by a single session.
+	 * 
+	 * @param objectKey
+	 *            the key of the exported object.
+	 * @param tableName
+	 *            the name of the table being processed.
+	 * @param tableConfig
+	 *            the table's configuration.
+	 * @return the number of rows inserted.
+	 * @throws Exception
+	 */
+	public long load(final String objectKey, final String tableName, final ConfigurationBean tableConfig)
+			throws Exception {
+		final long objectLength = this.cosClient.getObjectLength(objectKey);
+		if (objectLength == 0) {
+			return 0;
+		}
+		if (objectKey.endsWith(".gz")) {
+			return loadRange(tableConfig, objectKey, tableName, objectLength, 0, Long.MAX_VALUE);
+		}
+		int sessions = (int) Math.max(1, Math.min(tableConfig.getLoadSessions(), objectLength / (1024 * 1024) + 1));
+		final long rangeSize = (objectLength + sessions - 1) / sessions;
+		ArrayList<Future<Long>> ranges = new ArrayList<Future<Long>>();
+		for (int i = 0; i < sessions; i++) {
+			final long start = i * rangeSize;
+			final long end = Math.min(objectLength, start + rangeSize);
+			ranges.add(this.rangeExecutor.submit(new Callable<Long>() {
+				public Long call() throws Exception {
+					return loadRange(tableConfig, objectKey, tableName, objectLength, start, end);
+				}
+			}));
+		}
+		// every range is waited for, so no insert is still running when the
+		// table is truncated for a retry or a staging table is swapped
+		long rows = 0;
+		Throwable failure = null;
+		for (int i = 0; i < ranges.size(); i++) {
+			try {
+				rows += ranges.get(i).get();
+			} catch (ExecutionException e) {
+				logger.error("Insert of range " + i + " of " + objectKey + " failed: " + e.getCause());
+				if (failure == null) {
+					failure = e.getCause();
+				}
+			}
+		}
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure != null) {
+			throw (Exception) failure;
+		}
+		return rows;
+	}
+
+	/**
+	 * Stops the range reader threads.
+	 */
+	public void shutdown() {
+		this.rangeExecutor.shutdown();
+	}
+
+	/**
+	 * Loads the rows that begin in the byte range [start, end) of an object.
+	 */
+	private long loadRange(ConfigurationBean tableConfig, String objectKey, String tableName, long objectLength,
+			long start, long end) throws Exception {
+		Tracer.Span span = Tracer.begin("part", "insert " + objectKey + " @" + start)
+				.setBytes(Math.min(end, objectLength) - start);
+		// start early: a row starts at start if the byte before it is an
+		// unescaped row delimiter, and the bytes before that tell if it is escaped
+		long readFrom = Math.max(0, start - SYNC_CONTEXT);
+		S3ObjectInputStream objectStream = this.cosClient.getObjectRange(objectKey, readFrom, objectLength - 1);
+		InputStream in = objectStream;
+		if (objectKey.endsWith(".gz")) {
+			in = new GZIPInputStream(new BufferedInputStream(objectStream, BUFFER_SIZE), BUFFER_SIZE);
+		}
+		RowReader reader = new RowReader(in, tableConfig.getExportEscapeCharacter(), readFrom);
+		Connection connection = this.executor.borrowTargetConnection();
+		long rows = 0;
+		long committed = 0;
+		boolean finished = false;
+		try {
+			connection.setAutoCommit(false);
+			ExportProjection projection = new ExportProjection(tableConfig);
+			int[] columnTypes = readColumnTypes(connection, tableName, projection);
+			PreparedStatement statement = connection
+					.prepareStatement(buildInsert(tableName, projection, columnTypes.length));
+			try {
+				// skip the rows that begin before the range
+				boolean more = true;
+				if (start > 0) {
+					do {
+						more = reader.next();
+					} while (more && reader.position < start);
+				}
+				int batched = 0;
+				long uncommitted = 0;
+				while (more && reader.position < end) {
+					more = reader.next();
+					if (reader.length > 0) {
+						bindRow(statement, columnTypes, tableConfig.getExportEscapeCharacter(), reader.line,
+								reader.length);
+						statement.addBatch();
+						batched++;
+						rows++;
+						uncommitted++;
+					}
+					if (batched >= tableConfig.getLoadBatchSize()) {
+						statement.executeBatch();
+						batched = 0;
+					}
+					if (uncommitted >= tableConfig.getLoadCommitSize()) {
+						if (batched > 0) {
+							statement.executeBatch();
+							batched = 0;
+						}
+						connection.commit();
+						committed = rows;
+						uncommitted = 0;
+					}
+				}
+				if (batched > 0) {
+					statement.executeBatch();
+				}
+				connection.commit();
+				finished = true;
+			} finally {
+				statement.close();
+			}
+		} finally {
+			if (!finished) {
+				connection.rollback();
+				if (committed > 0) {
+					logger.error(objectKey + " failed after " + committed + " rows were committed to " + tableName
+							+ ", truncate the table before loading it again");
+				}
+			}
+			connection.setAutoCommit(true);
+			this.executor.releaseTargetConnection(connection);
+			// the rest of the object belongs to other ranges
+			objectStream.abort();
+			span.setRows(rows).end(finished ? "ok" : "failed");
+		}
+		logger.info("Load File Name: " + objectKey + "  | Range: " + start + "-" + end + "  | Records Loaded: "
+				+ rows);
+		return rows;
+	}
+
+	/**
+	 * Reads the rows of a DEL stream through a buffer. A row ends at a row
+	 * delimiter that is not escaped, so escaped line breaks stay inside their
+	 * value, and a carriage return before the delimiter is dropped.
+	 */
+	private static class RowReader {
+		private InputStream in = null;
+		private byte escapeCharacter = 0;
+		private byte[] buffer = new byte[BUFFER_SIZE];
+		private int offset = 0;
+		private int limit = 0;
+
+		/**
+		 * Is the next byte escaped. The state is right from the first byte that
+		 * is not the escape character, so a stream may start inside a row.
+		 */
+		private boolean escaped = false;
+
+		/**
+		 * The row read last, without its delimiter, and its length
+		 */
+		byte[] line = new byte[64 * 1024];
+		int length = 0;
+
+		/**
+		 * The object offset of the byte after the row read last
+		 */
+		long position = 0;
+
+		RowReader(InputStream in, char escapeCharacter, long position) {
+			this.in = in;
+			this.escapeCharacter = (byte) escapeCharacter;
+			this.position = position;
+		}
+
+		/**
+		 * Reads up to and including the next unescaped row delimiter.
+		 * 
+		 * @return false at the end of the stream.
+		 */
+		boolean next() throws IOException {
+			this.length = 0;
+			boolean carriageReturn = false;
+			while (true) {
+				if (this.offset == this.limit) {
+					this.limit = Math.max(0, this.in.read(this.buffer));
+					this.offset = 0;
+					if (this.limit == 0) {
+						return false;
+					}
+				}
+				for (int i = this.offset; i < this.limit; i++) {
+					byte b = this.buffer[i];
+					if (this.escaped) {
+						this.escaped = false;
+						carriageReturn = false;
+					} else if (b == DelRowEncoder.ROW_DELIMITER) {
+						append(this.offset, i - this.offset);
+						this.position += i + 1 - this.offset;
+						this.offset = i + 1;
+						if (carriageReturn) {
+							this.length--;
+						}
+						return true;
+					} else {
+						this.escaped = this.escapeCharacter != 0 && b == this.escapeCharacter;
+						carriageReturn = b == '\r';
+					}
+				}
+				append(this.offset, this.limit - this.offset);
+				this.position += this.limit - this.offset;
+				this.offset = this.limit;
+			}
+		}
+
+		private void append(int from, int count) {
+			if (this.length + count > this.line.length) {
+				byte[] grown = new byte[Math.max(this.line.length * 2, this.length + count)];
+				System.arraycopy(this.line, 0, grown, 0, this.length);
+				this.line = grown;
+			}
+			System.arraycopy(this.buffer, from, this.line, this.length, count);
+			this.length += count;
+		}
+	}
+
+	/**
+	 * Binds the fields of one DEL row to the insert statement. Empty fields are
+	 * NULL. Binary columns receive the raw bytes, DEL dates (YYYYMMDD) are given
+	 * their ISO separators, and all other values are passed as strings for the
+	 * server to convert.
+	 */
+	private void bindRow(PreparedStatement statement, int[] columnTypes, char escapeCharacter, byte[] line,
+			int length) throws SQLException {
+		byte[] field = new byte[length];
+		int column = 0;
+		int fieldLength = 0;
+		for (int i = 0; i <= length && column < columnTypes.length; i++) {
+			if (i < length && escapeCharacter != 0 && line[i] == escapeCharacter && i + 1 < length) {
+				field[fieldLength++] = line[++i];
+				continue;
+			}
+			if (i == length || line[i] == DelRowEncoder.COLUMN_DELIMITER) {
+				bindField(statement, column + 1, columnTypes[column], field, fieldLength);
+				column++;
+				fieldLength = 0;
+				continue;
+			}
+			field[fieldLength++] = line[i];
+		}
+		for (; column < columnTypes.length; column++) {
+			statement.setNull(column + 1, columnTypes[column]);
+		}
+	}
+
+	/**
+	 * Binds one field value.
+	 */
+	private void bindField(PreparedStatement statement, int parameter, int sqlType, byte[] field, int length)
+			throws SQLException {
+		if (length == 0) {
+			statement.setNull(parameter, sqlType);
+			return;
+		}
+		switch (sqlType) {
+		case Types.BINARY:
+		case Types.VARBINARY:
+		case Types.LONGVARBINARY:
+		case Types.BLOB:
+			byte[] bytes = new byte[length];
+			System.arraycopy(field, 0, bytes, 0, length);
+			statement.setBytes(parameter, bytes);
+			break;
+		case Types.DATE:
+			String date = new String(field, 0, length, StandardCharsets.US_ASCII);
+			if (length == 8) {
+				date = date.substring(0, 4) + "-" + date.substring(4, 6) + "-" + date.substring(6, 8);
+			}
+			statement.setString(parameter, date);
+			break;
+		default:
+			statement.setString(parameter, new String(field, 0, length, StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Reads the JDBC types of the exported columns of the target table.
+	 */
+	private int[] readColumnTypes(Connection connection, String tableName, ExportProjection projection)
+			throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			ResultSetMetaData metaData = statement
+					.executeQuery("select " + projection.getSelectList() + " from " + tableName + " where 1 = 0")
+					.getMetaData();
+			int[] columnTypes = new int[metaData.getColumnCount()];
+			for (int i = 0; i < columnTypes.length; i++) {
+				columnTypes[i] = metaData.getColumnType(i + 1);
+			}
+			return columnTypes;
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Builds the parameterized insert statement.
+	 */
+	private String buildInsert(String tableName, ExportProjection projection, int columnCount) {
+		StringBuilder insert = new StringBuilder(
+				"insert into " + tableName + projection.getInsertColumnList() + " values (");
+		for (int i = 0; i < columnCount; i++) {
+			insert.append(i == 0 ? "?" : ", ?");
+		}
+		return insert.append(")").toString();
+	}
+}
@@ -4,7 +4,26 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -18,11 +37,18 @@ import com.ibm.cloud.objectstorage.client.builder.AwsClientBuilder.EndpointConfi
 import com.ibm.cloud.objectstorage.oauth.BasicIBMOAuthCredentials;
 import com.ibm.cloud.objectstorage.services.s3.AmazonS3;
 import com.ibm.cloud.objectstorage.services.s3.AmazonS3ClientBuilder;
+import com.ibm.cloud.objectstorage.services.s3.model.AbortMultipartUploadRequest;
 import com.ibm.cloud.objectstorage.services.s3.model.CompleteMultipartUploadRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.CompleteMultipartUploadResult;
+import com.ibm.cloud.objectstorage.services.s3.model.GetObjectRequest;
 import com.ibm.cloud.objectstorage.services.s3.model.InitiateMultipartUploadRequest;
 import com.ibm.cloud.objectstorage.services.s3.model.InitiateMultipartUploadResult;
+import com.ibm.cloud.objectstorage.services.s3.model.ObjectListing;
 import com.ibm.cloud.objectstorage.services.s3.model.ObjectMetadata;
 import com.ibm.cloud.objectstorage.services.s3.model.PartETag;
+import com.ibm.cloud.objectstorage.services.s3.model.PutObjectResult;
+import com.ibm.cloud.objectstorage.services.s3.model.S3ObjectInputStream;
+import com.ibm.cloud.objectstorage.services.s3.model.S3ObjectSummary;
 import com.ibm.cloud.objectstorage.services.s3.model.UploadPartRequest;
 import com.ibm.cloud.objectstorage.services.s3.model.UploadPartResult;
 
@@ -44,10 +70,28 @@ import com.ibm.cloud.objectstorage.services.s3.model.UploadPartResult;
  * The class COSClient is a utility to move objects to and from IBM Cloud Object
  * storage using S3 interfaces. Movement of both large and small objects are
  * supported.
+ * 
+ * Downloads split an object into byte ranges that are fetched concurrently and
+ * written in place into a file of the object's size. The ranges follow the
+ * part size recorded at upload, so the SHA-256 of each range can be checked
+ * against the recorded checksum without reading the file again.
+ * 
+ * Uploads are checksummed in the same pass that reads the file. Every part
+ * carries the MD5 of its bytes as Content-MD5, so the object store rejects
+ * anything damaged in transit, and a single put compares the ETag the store
+ * returns with the MD5 computed while the body was streamed. The SHA-256 of
+ * the file, the ETag the store should report and the length are recorded in a
+ * companion object with the suffix .checksum, because the metadata of an
+ * object is fixed before its body is read.
  */
 public class COSClient {
 	private static Log logger = LogFactory.getLog(COSClient.class);
 
+	/**
+	 * The suffix of the object that holds the checksum of an upload
+	 */
+	private static final String CHECKSUM_SUFFIX = ".checksum";
+
 	/**
 	 * Utility configuration
 	 */
@@ -56,7 +100,7 @@ public class COSClient {
 	/**
 	 * S3 client used to interact with the IBM Cloud Object store
 	 */
-	private static AmazonS3 _s3Client = null;
+	private AmazonS3 _s3Client = null;
 
 	/**
 	 * The name of the bucket the client will connect to
@@ -83,10 +127,28 @@ public class COSClient {
 	 */
 	private String geo_location = "";
 
+	/**
+	 * Sends multi part upload parts without blocking, null to upload them on
+	 * the S3 client
+	 */
+	private AsyncTransferEngine transferEngine = null;
+
 	/**
 	 * Default constructor to initialize a new client
 	 */
 	public COSClient(ConfigurationBean configurationBean) {
+		this(configurationBean, configurationBean.getService_endpoint());
+	}
+
+	/**
+	 * Initializes a client that goes through a given endpoint of the bucket.
+	 * 
+	 * @param configurationBean
+	 *            the configuration.
+	 * @param endpoint
+	 *            the endpoint, as in SERVICE_ENDPOINT or COS_ENDPOINTS.
+	 */
+	public COSClient(ConfigurationBean configurationBean, String endpoint) {
 		super();
 		logger.info("COSClient initializing");
 		this.configurationBean = configurationBean;
@@ -94,9 +156,16 @@ public class COSClient {
 		this.bucketName = this.configurationBean.getBucketName();
 		this.api_key = this.configurationBean.getApi_key();
 		this.service_instance_id = this.configurationBean.getService_instance_id();
-		this.service_endpoint = "https://" + this.configurationBean.getService_endpoint();
+		this.service_endpoint = EndpointResolver.toUrl(endpoint.trim());
 		this.geo_location = this.configurationBean.getGeo_location();
 		_s3Client = createClient(this.api_key, this.service_instance_id, this.service_endpoint, this.geo_location);
+		if (this.configurationBean.isCosAsyncTransfer()) {
+			if (AsyncTransferEngine.isSupported(this.service_endpoint)) {
+				this.transferEngine = new AsyncTransferEngine(this.configurationBean, this.service_endpoint);
+			} else {
+				logger.warn("COS_ASYNC_TRANSFER needs HMAC credentials, parts are uploaded on the S3 client");
+			}
+		}
 	}
 
 	/**
@@ -109,69 +178,533 @@ public class COSClient {
 	 *            is the name of the file that is to be stored in the cloud
 	 *            repository
 	 */
-	public void putFile(String objectKey, String fileName) {
-		_s3Client.putObject(this.bucketName, objectKey, new File(fileName));
+	public void putFile(String objectKey, String fileName) throws IOException {
+		File file = new File(fileName);
+		Tracer.Span span = Tracer.begin("part", "put " + objectKey).setBytes(file.length());
+		// the file is read once: the digests are computed while the body is
+		// streamed, then the ETag is checked against the MD5 and the SHA-256 is
+		// stored next to the object, as for multi part uploads
+		String outcome = "failed";
+		long length = file.length();
+		try {
+			MessageDigest md5Digest = newDigest("MD5");
+			MessageDigest sha256Digest = newDigest("SHA-256");
+			InputStream in = new DigestInputStream(new DigestInputStream(new FileInputStream(file), md5Digest),
+					sha256Digest);
+			PutObjectResult result;
+			try {
+				ObjectMetadata metadata = new ObjectMetadata();
+				metadata.setContentLength(length);
+				result = _s3Client.putObject(this.bucketName, objectKey, in, metadata);
+			} finally {
+				in.close();
+			}
+			String etag = toHex(md5Digest.digest());
+			if (this.configurationBean.isCosVerifyChecksum() && !etag.equalsIgnoreCase(stripQuotes(result.getETag()))) {
+				_s3Client.deleteObject(this.bucketName, objectKey);
+				throw new IOException("Upload of " + objectKey + " failed: expected ETag " + etag + " but got "
+						+ result.getETag());
+			}
+			_s3Client.putObject(this.bucketName, objectKey + CHECKSUM_SUFFIX,
+					"sha256=" + toHex(sha256Digest.digest()) + ";etag=" + etag + ";length=" + length);
+			outcome = "ok";
+		} finally {
+			span.end(outcome);
+		}
+		logger.info("Single put complete! Object Key: " + objectKey + "  | Bytes Uploaded: " + length);
+	}
+
+	/**
+	 * Moves large files to IBM Cloud Object Storage using the configured part
+	 * size and upload concurrency.
+	 * 
+	 * @param objectKey
+	 *            is the name that will be used as the object store key. Usually the
+	 *            file name.
+	 * @param fileName
+	 *            is the name of the file to be trasnferred.
+	 * @throws IOException
+	 *             if the file cannot be read or the upload fails.
+	 * @throws InterruptedException
+	 */
+	public void putMultiPart(String objectKey, String fileName) throws IOException, InterruptedException {
+		putMultiPart(objectKey, fileName, this.configurationBean.getCosPartSizeMb(),
+				this.configurationBean.getCosUploadConcurrency());
 	}
 
 	/**
 	 * Moves large files to IBM Cloud Object Storage. Large files are broken into
-	 * 5MB buffers which are then transfered to the cloud. On completion of all
-	 * bytes transfered, cloud object storage assembles the parts back into one
-	 * large file.
+	 * parts which are then transfered to the cloud, several at a time. Each part
+	 * is read from its own position in the file, so parts can be uploaded in any
+	 * order. On completion of all bytes transfered, cloud object storage
+	 * assembles the parts back into one large file.
 	 * 
 	 * @param objectKey
 	 *            is the name that will be used as the object store key. Usually the
 	 *            file name.
 	 * @param fileName
 	 *            is the name of the file to be trasnferred.
+	 * @param partSizeMb
+	 *            is the size of each part in MB, at least 5.
+	 * @param concurrency
+	 *            is the number of parts uploaded at the same time.
+	 * @throws IOException
+	 *             if the file cannot be read or the upload fails.
+	 * @throws InterruptedException
 	 */
-	public void putMultiPart(String objectKey, String fileName) {
+	public void putMultiPart(final String objectKey, String fileName, int partSizeMb, int concurrency)
+			throws IOException, InterruptedException {
 		logger.info("COS Client backup stream starting using backupStreamMultiPart");
 		logger.info("Object Key: " + objectKey);
+		if (this.transferEngine != null) {
+			// the parts are read in order by this thread and sent without waiting
+			putStream(objectKey, new FileInputStream(fileName), partSizeMb, concurrency);
+			return;
+		}
+		ExecutorService partExecutor = null;
 		try {
 			ObjectMetadata metadata = new ObjectMetadata();
 			metadata.setContentType("binary/octet-stream");
 			logger.info("Initiating multi part upload");
 			InitiateMultipartUploadRequest initRequest = new InitiateMultipartUploadRequest(this.bucketName, objectKey,
 					metadata);
-			InitiateMultipartUploadResult initResult = _s3Client.initiateMultipartUpload(initRequest);
-			ArrayList<PartETag> partETags = new ArrayList<PartETag>();
-			long bytesRead = 0;
-			long totalBytesRead = 0;
-			int partSize = 100 * 1024 * 1024;
-			byte[] part = new byte[partSize];
-			int partNumber = 1;
-			logger.info("Reading stream...");
-			FileInputStream fileInputStream = new FileInputStream(fileName);
-			while ((bytesRead = fileInputStream.read(part)) != -1) {
-				logger.info("Bytes Read:  " + bytesRead);
-				logger.info("Uploading part: " + partNumber);
-				ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(part);
-				UploadPartRequest uploadRequest = new UploadPartRequest();
-				uploadRequest.setUploadId(initResult.getUploadId());
-				uploadRequest.setBucketName(this.bucketName);
-				uploadRequest.setKey(objectKey);
-				uploadRequest.setPartNumber(partNumber);
-				uploadRequest.setPartSize(bytesRead);
-				uploadRequest.setInputStream(byteArrayInputStream);
-				UploadPartResult uploadPartResult = _s3Client.uploadPart(uploadRequest);
-				partETags.add(uploadPartResult.getPartETag());
-				logger.info("Uploading part complete!");
-				totalBytesRead = totalBytesRead + bytesRead;
-				partNumber++;
-				bytesRead = 0;
-			}
-			fileInputStream.close();
-			logger.info("Done reading stream.");
-			logger.info("Total Bytes Uploaded: " + totalBytesRead);
-			logger.info("Completing multipart upload...");
-			CompleteMultipartUploadRequest completeRequest = new CompleteMultipartUploadRequest(this.bucketName,
-					objectKey, initResult.getUploadId(), partETags);
-			_s3Client.completeMultipartUpload(completeRequest);
-			logger.info("Upload complete!");
+			Tracer.Span initSpan = Tracer.begin("part", objectKey + " initiate");
+			String initOutcome = "failed";
+			InitiateMultipartUploadResult initResult;
+			try {
+				initResult = _s3Client.initiateMultipartUpload(initRequest);
+				initOutcome = "ok";
+			} finally {
+				initSpan.end(initOutcome);
+			}
+			final String uploadId = initResult.getUploadId();
+			final long fileLength = new File(fileName).length();
+			final long partSize = Math.max(5, partSizeMb) * 1024L * 1024L;
+			int partCount = (int) Math.max(1, (fileLength + partSize - 1) / partSize);
+			final byte[][] partMd5 = new byte[partCount][];
+			final byte[][] partSha256 = new byte[partCount][];
+			int threads = Math.max(1, Math.min(concurrency, partCount));
+			// one buffer per upload thread, never larger than the file needs
+			final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(threads);
+			for (int i = 0; i < threads; i++) {
+				buffers.add(new byte[(int) Math.max(1, Math.min(partSize, fileLength))]);
+			}
+			final FileChannel channel = new RandomAccessFile(fileName, "r").getChannel();
+			partExecutor = Executors.newFixedThreadPool(threads);
+			ArrayList<Future<PartETag>> parts = new ArrayList<Future<PartETag>>();
+			logger.info("Uploading " + partCount + " parts, " + threads + " at a time");
+			try {
+				for (int i = 0; i < partCount; i++) {
+					final int partNumber = i + 1;
+					final long position = i * partSize;
+					final int length = (int) Math.min(partSize, fileLength - position);
+					parts.add(partExecutor.submit(new Callable<PartETag>() {
+						public PartETag call() throws Exception {
+							byte[] part = buffers.take();
+							try {
+								ByteBuffer buffer = ByteBuffer.wrap(part, 0, length);
+								while (buffer.hasRemaining()) {
+									if (channel.read(buffer, position + buffer.position()) == -1) {
+										throw new IOException("Unexpected end of file in part " + partNumber);
+									}
+								}
+								partMd5[partNumber - 1] = digest("MD5", part, length);
+								partSha256[partNumber - 1] = digest("SHA-256", part, length);
+								return uploadPart(objectKey, uploadId, partNumber, part, length,
+										partMd5[partNumber - 1]);
+							} finally {
+								buffers.put(part);
+							}
+						}
+					}));
+				}
+				completeMultiPart(objectKey, uploadId, parts, Arrays.asList(partMd5), Arrays.asList(partSha256),
+						partSize, fileLength);
+			} catch (ExecutionException e) {
+				_s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(this.bucketName, objectKey, uploadId));
+				throw new IOException("Upload of " + objectKey + " failed", e.getCause());
+			} catch (IOException e) {
+				_s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(this.bucketName, objectKey, uploadId));
+				throw e;
+			} finally {
+				channel.close();
+			}
+		} finally {
+			if (partExecutor != null) {
+				partExecutor.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Moves a stream of unknown length to IBM Cloud Object Storage with a multi
+	 * part upload. Parts are filled from the stream one after the other and
+	 * uploaded several at a time while the next parts are read. With
+	 * COS_ASYNC_TRANSFER the parts are handed to the asynchronous engine and no
+	 * thread waits for them.
+	 * 
+	 * @param objectKey
+	 *            is the name that will be used as the object store key.
+	 * @param in
+	 *            is the stream to upload, closed when the upload ends.
+	 * @param partSizeMb
+	 *            is the size of each part in MB, at least 5.
+	 * @param concurrency
+	 *            is the number of parts uploaded at the same time.
+	 * @throws IOException
+	 *             if the stream cannot be read or the upload fails.
+	 * @throws InterruptedException
+	 */
+	public void putStream(final String objectKey, InputStream in, int partSizeMb, int concurrency)
+			throws IOException, InterruptedException {
+		logger.info("Streaming upload of object " + objectKey);
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentType("binary/octet-stream");
+		final String uploadId = _s3Client
+				.initiateMultipartUpload(new InitiateMultipartUploadRequest(this.bucketName, objectKey, metadata))
+				.getUploadId();
+		long partSize = Math.max(5, partSizeMb) * 1024L * 1024L;
+		int threads = Math.max(1, concurrency);
+		// one buffer per upload thread and one being filled, created as needed
+		final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(threads + 1);
+		int buffersCreated = 0;
+		ExecutorService partExecutor = this.transferEngine == null ? Executors.newFixedThreadPool(threads) : null;
+		ArrayList<Future<PartETag>> parts = new ArrayList<Future<PartETag>>();
+		ArrayList<byte[]> partMd5 = new ArrayList<byte[]>();
+		ArrayList<byte[]> partSha256 = new ArrayList<byte[]>();
+		long length = 0;
+		try {
+			while (true) {
+				byte[] buffer = buffers.poll();
+				if (buffer == null && buffersCreated <= threads) {
+					buffer = new byte[(int) partSize];
+					buffersCreated++;
+				} else if (buffer == null) {
+					buffer = buffers.take();
+				}
+				int filled = 0;
+				int bytesRead = 0;
+				while (filled < partSize && (bytesRead = in.read(buffer, filled, (int) (partSize - filled))) != -1) {
+					filled += bytesRead;
+				}
+				if (filled == 0 && !parts.isEmpty()) {
+					break;
+				}
+				final byte[] part = buffer;
+				final int partLength = filled;
+				final int partNumber = parts.size() + 1;
+				final byte[] md5 = digest("MD5", part, partLength);
+				byte[] sha256 = digest("SHA-256", part, partLength);
+				partMd5.add(md5);
+				partSha256.add(sha256);
+				length += partLength;
+				if (this.transferEngine != null) {
+					parts.add(this.transferEngine.uploadPart(objectKey, uploadId, partNumber, part, partLength, md5,
+							sha256, new Runnable() {
+								public void run() {
+									buffers.offer(part);
+								}
+							}));
+				} else {
+					parts.add(partExecutor.submit(new Callable<PartETag>() {
+						public PartETag call() throws Exception {
+							try {
+								return uploadPart(objectKey, uploadId, partNumber, part, partLength, md5);
+							} finally {
+								buffers.put(part);
+							}
+						}
+					}));
+				}
+				if (bytesRead == -1) {
+					break;
+				}
+			}
+			completeMultiPart(objectKey, uploadId, parts, partMd5, partSha256, partSize, length);
+		} catch (ExecutionException e) {
+			_s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(this.bucketName, objectKey, uploadId));
+			throw new IOException("Upload of " + objectKey + " failed", e.getCause());
 		} catch (IOException e) {
-			e.printStackTrace();
+			_s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(this.bucketName, objectKey, uploadId));
+			throw e;
+		} finally {
+			in.close();
+			if (partExecutor != null) {
+				partExecutor.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Uploads one part of a multi part upload with the MD5 of its bytes as
+	 * Content-MD5.
+	 */
+	private PartETag uploadPart(String objectKey, String uploadId, int partNumber, byte[] part, int length,
+			byte[] md5) {
+		logger.info("Uploading part: " + partNumber);
+		UploadPartRequest uploadRequest = new UploadPartRequest();
+		uploadRequest.setUploadId(uploadId);
+		uploadRequest.setBucketName(this.bucketName);
+		uploadRequest.setKey(objectKey);
+		uploadRequest.setPartNumber(partNumber);
+		uploadRequest.setPartSize(length);
+		uploadRequest.setInputStream(new ByteArrayInputStream(part, 0, length));
+		uploadRequest.setMd5Digest(Base64.getEncoder().encodeToString(md5));
+		Tracer.Span span = Tracer.begin("part", objectKey + " part " + partNumber).setBytes(length);
+		String outcome = "failed";
+		UploadPartResult uploadPartResult;
+		try {
+			uploadPartResult = _s3Client.uploadPart(uploadRequest);
+			outcome = "ok";
+		} finally {
+			span.end(outcome);
+		}
+		logger.info("Uploading part complete!");
+		return uploadPartResult.getPartETag();
+	}
+
+	/**
+	 * Waits for the parts of a multi part upload, completes it, checks the ETag
+	 * the store reports and records the checksum of the object.
+	 */
+	private void completeMultiPart(String objectKey, String uploadId, List<Future<PartETag>> parts,
+			List<byte[]> partMd5, List<byte[]> partSha256, long partSize, long length)
+			throws IOException, InterruptedException, ExecutionException {
+		ArrayList<PartETag> partETags = new ArrayList<PartETag>();
+		for (Future<PartETag> part : parts) {
+			partETags.add(part.get());
+		}
+		logger.info("Total Bytes Uploaded: " + length);
+		logger.info("Completing multipart upload...");
+		CompleteMultipartUploadRequest completeRequest = new CompleteMultipartUploadRequest(this.bucketName,
+				objectKey, uploadId, partETags);
+		Tracer.Span completeSpan = Tracer.begin("part", objectKey + " complete").setBytes(length);
+		String completeOutcome = "failed";
+		CompleteMultipartUploadResult completeResult;
+		try {
+			completeResult = _s3Client.completeMultipartUpload(completeRequest);
+			completeOutcome = "ok";
+		} finally {
+			completeSpan.end(completeOutcome);
+		}
+		// the ETag of a multi part object is the MD5 of its part MD5s
+		byte[] md5s = concat(partMd5);
+		String etag = toHex(digest("MD5", md5s, md5s.length)) + "-" + parts.size();
+		if (this.configurationBean.isCosVerifyChecksum()
+				&& !etag.equalsIgnoreCase(stripQuotes(completeResult.getETag()))) {
+			_s3Client.deleteObject(this.bucketName, objectKey);
+			throw new IOException("Upload of " + objectKey + " failed: expected ETag " + etag + " but got "
+					+ completeResult.getETag());
+		}
+		byte[] sha256s = concat(partSha256);
+		_s3Client.putObject(this.bucketName, objectKey + CHECKSUM_SUFFIX,
+				"sha256-parts=" + toHex(digest("SHA-256", sha256s, sha256s.length)) + ";partsize=" + partSize
+						+ ";etag=" + etag + ";length=" + length);
+		logger.info("Upload complete!");
+	}
+
+	/**
+	 * Moves an object from IBM Cloud Object Storage to a file with concurrent
+	 * ranged GETs. The file is created at the object's size and each range is
+	 * written at its offset as it arrives. The download is verified against the
+	 * checksum recorded at upload, and the file is removed if the download
+	 * fails.
+	 * 
+	 * @param objectKey
+	 *            is the key of the object to download.
+	 * @param fileName
+	 *            is the full path of the file to write.
+	 * @param partSizeMb
+	 *            is the size of each range in MB, used when the object has no
+	 *            recorded part size.
+	 * @param concurrency
+	 *            is the number of ranges downloaded at the same time.
+	 * @throws IOException
+	 *             if the download fails or does not match the checksum.
+	 * @throws InterruptedException
+	 */
+	public void getMultiPart(final String objectKey, String fileName, int partSizeMb, int concurrency)
+			throws IOException, InterruptedException {
+		logger.info("Downloading object " + objectKey + " to " + fileName);
+		Map<String, String> checksum = getChecksum(objectKey);
+		long length = getObjectLength(objectKey);
+		long partSize = Math.max(1, partSizeMb) * 1024L * 1024L;
+		if (checksum != null && checksum.containsKey("partsize")) {
+			partSize = Long.parseLong(checksum.get("partsize"));
+		} else if (checksum != null) {
+			// a single put is hashed as a whole, so it is fetched as one range
+			partSize = Math.max(1, length);
+		}
+		int partCount = (int) ((length + partSize - 1) / partSize);
+		ExecutorService partExecutor = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, partCount)));
+		RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+		boolean complete = false;
+		try {
+			file.setLength(length);
+			final FileChannel channel = file.getChannel();
+			ArrayList<Future<byte[]>> parts = new ArrayList<Future<byte[]>>();
+			for (int i = 0; i < partCount; i++) {
+				final int partNumber = i + 1;
+				final long start = i * partSize;
+				final long end = Math.min(length, start + partSize) - 1;
+				parts.add(partExecutor.submit(new Callable<byte[]>() {
+					public byte[] call() throws Exception {
+						return getPart(objectKey, partNumber, start, end, channel);
+					}
+				}));
+			}
+			ArrayList<byte[]> partSha256 = new ArrayList<byte[]>();
+			for (Future<byte[]> part : parts) {
+				partSha256.add(part.get());
+			}
+			channel.force(false);
+			logger.info("Total Bytes Downloaded: " + length);
+			if (this.configurationBean.isCosVerifyChecksum()) {
+				verifyDownload(objectKey, checksum, partSha256, length);
+			}
+			complete = true;
+		} catch (ExecutionException e) {
+			throw new IOException("Download of " + objectKey + " failed", e.getCause());
+		} finally {
+			partExecutor.shutdownNow();
+			file.close();
+			if (!complete) {
+				new File(fileName).delete();
+			}
+		}
+		logger.info("Download complete!");
+	}
+
+	/**
+	 * Downloads one range of an object and writes it at its offset in the file.
+	 * 
+	 * @return the SHA-256 of the range
+	 */
+	private byte[] getPart(String objectKey, int partNumber, long start, long end, FileChannel channel)
+			throws IOException {
+		logger.info("Downloading part: " + partNumber);
+		MessageDigest sha256 = newDigest("SHA-256");
+		Tracer.Span span = Tracer.begin("part", objectKey + " range " + partNumber).setBytes(end - start + 1);
+		String outcome = "failed";
+		InputStream in = null;
+		long position = start;
+		try {
+			in = getObjectRange(objectKey, start, end);
+			byte[] buffer = new byte[1024 * 1024];
+			int bytesRead;
+			while ((bytesRead = in.read(buffer)) != -1) {
+				sha256.update(buffer, 0, bytesRead);
+				ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, bytesRead);
+				while (bytes.hasRemaining()) {
+					position += channel.write(bytes, position);
+				}
+			}
+			if (position == end + 1) {
+				outcome = "ok";
+			}
+		} finally {
+			if (in != null) {
+				in.close();
+			}
+			span.end(outcome);
+		}
+		if (position != end + 1) {
+			throw new IOException("Part " + partNumber + " of " + objectKey + " ended after " + (position - start)
+					+ " of " + (end - start + 1) + " bytes");
+		}
+		return sha256.digest();
+	}
+
+	/**
+	 * Compares the SHA-256 of the downloaded ranges with the checksum recorded
+	 * at upload.
+	 */
+	private void verifyDownload(String objectKey, Map<String, String> checksum, List<byte[]> partSha256,
+			long length) throws IOException {
+		if (checksum == null) {
+			logger.warn("Object " + objectKey + " has no checksum and is not verified");
+			return;
+		}
+		String expected;
+		String actual;
+		if (checksum.containsKey("sha256-parts")) {
+			byte[] sha256s = concat(partSha256);
+			expected = checksum.get("sha256-parts");
+			actual = toHex(digest("SHA-256", sha256s, sha256s.length));
+		} else {
+			expected = checksum.get("sha256");
+			actual = toHex(partSha256.isEmpty() ? digest("SHA-256", new byte[0], 0) : partSha256.get(0));
+		}
+		if (!String.valueOf(length).equals(checksum.get("length"))
+				|| (length > 0 && !actual.equalsIgnoreCase(expected))) {
+			throw new IOException("Download of " + objectKey + " does not match its checksum: SHA-256 " + actual
+					+ ", length " + length + ", expected " + checksum);
+		}
+		logger.info("Checksum verified: " + objectKey);
+	}
+
+	/**
+	 * Lists the keys of the objects whose keys start with a prefix, leaving out
+	 * checksum objects.
+	 * 
+	 * @param prefix
+	 *            is the start of the keys
+	 * @return the object keys in key order
+	 */
+	public ArrayList<String> listObjects(String prefix) {
+		ArrayList<String> keys = new ArrayList<String>();
+		ObjectListing listing = _s3Client.listObjects(this.bucketName, prefix);
+		while (true) {
+			for (S3ObjectSummary summary : listing.getObjectSummaries()) {
+				if (!summary.getKey().endsWith(CHECKSUM_SUFFIX)) {
+					keys.add(summary.getKey());
+				}
+			}
+			if (!listing.isTruncated()) {
+				break;
+			}
+			listing = _s3Client.listNextBatchOfObjects(listing);
 		}
+		return keys;
+	}
+
+	/**
+	 * Gets the endpoint the client goes through.
+	 * 
+	 * @return the endpoint URL.
+	 */
+	public String getEndpoint() {
+		return this.service_endpoint;
+	}
+
+	/**
+	 * Gets the size of an object in IBM Cloud Object Storage
+	 * 
+	 * @param objectKey
+	 *            is the key of the object
+	 * @return the object size in bytes
+	 */
+	public long getObjectLength(String objectKey) {
+		return _s3Client.getObjectMetadata(this.bucketName, objectKey).getContentLength();
+	}
+
+	/**
+	 * Opens a stream over a byte range of an object. Callers that stop reading
+	 * before the end of the range should abort the stream rather than close it,
+	 * so the rest of the range is not downloaded.
+	 * 
+	 * @param objectKey
+	 *            is the key of the object
+	 * @param start
+	 *            is the offset of the first byte to read
+	 * @param end
+	 *            is the offset of the last byte to read, inclusive
+	 * @return the stream of the requested bytes
+	 */
+	public S3ObjectInputStream getObjectRange(String objectKey, long start, long end) {
+		GetObjectRequest request = new GetObjectRequest(this.bucketName, objectKey);
+		request.setRange(start, end);
+		return _s3Client.getObject(request).getObjectContent();
 	}
 
 	/**
@@ -182,6 +715,103 @@ public class COSClient {
 	 */
 	public void drop(String objectKey) {
 		_s3Client.deleteObject(this.bucketName, objectKey);
+		_s3Client.deleteObject(this.bucketName, objectKey + CHECKSUM_SUFFIX);
+	}
+
+	/**
+	 * Gets the checksum recorded when an object was uploaded. The entries are
+	 * etag and length, and either sha256 (the SHA-256 of the object) or
+	 * sha256-parts and partsize (the SHA-256 of the SHA-256 of each part).
+	 * 
+	 * @param objectKey
+	 *            is the key of the object
+	 * @return the checksum entries, or null if the object has no checksum
+	 */
+	public Map<String, String> getChecksum(String objectKey) {
+		if (!_s3Client.doesObjectExist(this.bucketName, objectKey + CHECKSUM_SUFFIX)) {
+			return null;
+		}
+		String checksum = _s3Client.getObjectAsString(this.bucketName, objectKey + CHECKSUM_SUFFIX);
+		LinkedHashMap<String, String> entries = new LinkedHashMap<String, String>();
+		for (String entry : checksum.trim().split(";")) {
+			int equals = entry.indexOf('=');
+			if (equals > 0) {
+				entries.put(entry.substring(0, equals), entry.substring(equals + 1));
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Checks that an object is the file that was uploaded, by comparing the
+	 * ETag and length the object store reports with the ones recorded at upload.
+	 * No object data is read.
+	 * 
+	 * @param objectKey
+	 *            is the key of the object
+	 * @throws IOException
+	 *             if the object does not match its checksum.
+	 */
+	public void verifyChecksum(String objectKey) throws IOException {
+		Map<String, String> checksum = getChecksum(objectKey);
+		if (checksum == null) {
+			logger.warn("Object " + objectKey + " has no checksum and is not verified");
+			return;
+		}
+		ObjectMetadata metadata = _s3Client.getObjectMetadata(this.bucketName, objectKey);
+		String etag = stripQuotes(metadata.getETag());
+		if (!String.valueOf(metadata.getContentLength()).equals(checksum.get("length"))
+				|| !checksum.get("etag").equalsIgnoreCase(etag)) {
+			throw new IOException("Object " + objectKey + " does not match its checksum: ETag " + etag + ", length "
+					+ metadata.getContentLength() + ", expected " + checksum);
+		}
+		logger.info("Checksum verified: " + objectKey);
+	}
+
+	/**
+	 * Computes the digest of the first bytes of a buffer.
+	 */
+	private static byte[] digest(String algorithm, byte[] bytes, int length) {
+		MessageDigest digest = newDigest(algorithm);
+		digest.update(bytes, 0, length);
+		return digest.digest();
+	}
+
+	private static MessageDigest newDigest(String algorithm) {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Concatenates the digests of the parts in part order.
+	 */
+	private static byte[] concat(List<byte[]> digests) {
+		int length = 0;
+		for (byte[] digest : digests) {
+			length += digest.length;
+		}
+		byte[] all = new byte[length];
+		int position = 0;
+		for (byte[] digest : digests) {
+			System.arraycopy(digest, 0, all, position, digest.length);
+			position += digest.length;
+		}
+		return all;
+	}
+
+	static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	private static String stripQuotes(String etag) {
+		return etag == null ? "" : etag.replace("\"", "");
 	}
 
 	/**
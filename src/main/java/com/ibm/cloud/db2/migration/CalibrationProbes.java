@@ -0,0 +1,140 @@
+package com.ibm.cloud.db2.migration;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Short measurements the PLAN operation takes before it estimates a
+ * migration: the size of each table and the rates of one export session, one
+ * upload stream and one load of a sample of rows. The estimator only sees
+ * this interface, so the probes can be replaced by local stand-ins.
+ */
+public interface CalibrationProbes {
+	/**
+	 * The size of a table according to the source catalog.
+	 */
+	class TableStatistics {
+		private long rows;
+		private long bytes;
+
+		public TableStatistics(long rows, long bytes) {
+			super();
+			this.rows = rows;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * Gets the number of rows, 0 when the table has no statistics.
+		 * 
+		 * @return the row count.
+		 */
+		public long getRows() {
+			return rows;
+		}
+
+		/**
+		 * Gets the size of the table's pages.
+		 * 
+		 * @return the size in bytes.
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+	}
+
+	/**
+	 * The result of one probe.
+	 */
+	class Sample {
+		private long rows;
+		private long bytes;
+		private double seconds;
+
+		public Sample(long rows, long bytes, double seconds) {
+			super();
+			this.rows = rows;
+			this.bytes = bytes;
+			this.seconds = seconds;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public double getSeconds() {
+			return seconds;
+		}
+	}
+
+	/**
+	 * Reads the size of a table.
+	 * 
+	 * @param tableName
+	 *            the name of the table as listed in the table names file.
+	 * @return the table's statistics.
+	 * @throws Exception
+	 */
+	TableStatistics readStatistics(String tableName) throws Exception;
+
+	/**
+	 * Exports the first rows of a table with one session to a sample file.
+	 * 
+	 * @param tableName
+	 *            the table to sample.
+	 * @param tableConfig
+	 *            the table's configuration.
+	 * @param sampleRows
+	 *            the number of rows to export.
+	 * @return the rows and bytes exported and the time taken.
+	 * @throws Exception
+	 */
+	Sample probeExport(String tableName, ConfigurationBean tableConfig, int sampleRows) throws Exception;
+
+	/**
+	 * Uploads the sample file of a table with one stream.
+	 * 
+	 * @param tableName
+	 *            the sampled table.
+	 * @param tableConfig
+	 *            the table's configuration.
+	 * @return the bytes uploaded and the time taken.
+	 * @throws Exception
+	 */
+	Sample probeUpload(String tableName, ConfigurationBean tableConfig) throws Exception;
+
+	/**
+	 * Loads the uploaded sample into an empty copy of the target table, the
+	 * same way the table is loaded.
+	 * 
+	 * @param tableName
+	 *            the sampled table.
+	 * @param tableConfig
+	 *            the table's configuration.
+	 * @return the rows loaded and the time taken.
+	 * @throws Exception
+	 */
+	Sample probeLoad(String tableName, ConfigurationBean tableConfig) throws Exception;
+
+	/**
+	 * Removes the sample file, object and table of a probed table.
+	 * 
+	 * @param tableName
+	 *            the sampled table.
+	 */
+	void cleanUp(String tableName);
+}
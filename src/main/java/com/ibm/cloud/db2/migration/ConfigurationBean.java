@@ -113,6 +113,64 @@ public class ConfigurationBean {
 	 */
 	private String targetLoadArgs = "";
 
+	/**
+	 * The storage access alias on the target that points to the bucket
+	 */
+	private String targetStorageAlias = "";
+
+	/**
+	 * Drop secondary indexes and stop enforcing constraints during the load
+	 * TRUE or FALSE
+	 */
+	private boolean targetDeferIndexes = false;
+
+	/**
+	 * The number of sessions used to rebuild deferred indexes after the load
+	 */
+	private int targetIndexRebuildParallelism = 4;
+
+	/**
+	 * How tables are loaded, EXTERNAL_TABLE or BATCH_INSERT
+	 */
+	private String targetLoadMode = "EXTERNAL_TABLE";
+
+	/**
+	 * The number of target sessions inserting each object in BATCH_INSERT mode
+	 */
+	private int loadSessions = 4;
+
+	/**
+	 * The number of rows sent in each JDBC batch in BATCH_INSERT mode
+	 */
+	private int loadBatchSize = 1000;
+
+	/**
+	 * The number of rows inserted by a session between commits in BATCH_INSERT
+	 * mode
+	 */
+	private int loadCommitSize = 50000;
+
+	/**
+	 * Load into a staging table that is swapped in after the load TRUE or FALSE
+	 */
+	private boolean targetLoadStaging = false;
+
+	/**
+	 * How a staging table is swapped in, RENAME or VIEW
+	 */
+	private String targetStagingSwap = "RENAME";
+
+	/**
+	 * Load a staging table NOT LOGGED INITIALLY TRUE or FALSE
+	 */
+	private boolean targetStagingNotLogged = false;
+
+	/**
+	 * Verify a staging table against the source before it is swapped in TRUE
+	 * or FALSE
+	 */
+	private boolean targetStagingVerify = true;
+
 	// Config Variables Export
 	/**
 	 * The name of the file that contains the table names to be processed.
@@ -124,6 +182,278 @@ public class ConfigurationBean {
 	 */
 	private String exportFileLocation = "";
 
+	/**
+	 * Fetch rows over JDBC and write the export file on the client TRUE or FALSE
+	 */
+	private boolean exportClientSide = false;
+
+	/**
+	 * The JDBC fetch size used by client side exports
+	 */
+	private int exportFetchSize = 10000;
+
+	/**
+	 * The escape character written by client side exports, empty for none
+	 */
+	private String exportEscapeCharacter = "";
+
+	/**
+	 * Export LOB columns to separate LOB files TRUE or FALSE
+	 */
+	private boolean lobsToFiles = false;
+
+	/**
+	 * The comma separated columns to export, empty for all columns
+	 */
+	private String exportColumns = "";
+
+	/**
+	 * The predicate selecting the rows to export, empty for all rows
+	 */
+	private String exportWhere = "";
+
+	/**
+	 * How exported rows are put in the target's clustering key order, NONE,
+	 * QUERY or FILE
+	 */
+	private String exportSort = "NONE";
+
+	/**
+	 * The number of key ranges a table is exported and loaded in, each on its
+	 * own session
+	 */
+	private int exportShards = 1;
+
+	/**
+	 * The integer column the shards are ranges of, empty for the first primary
+	 * key column
+	 */
+	private String exportShardColumn = "";
+
+	/**
+	 * The size of the rows sorted in memory before a run is spilled to disk
+	 */
+	private int exportSortMemoryMb = 256;
+
+	/**
+	 * The comma separated COLUMN:RULE transformations applied on upload, empty
+	 * for none
+	 */
+	private String transformRules = "";
+
+	/**
+	 * The number of threads transforming blocks of export files
+	 */
+	private int transformThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Check export files against the target table before upload TRUE or FALSE
+	 */
+	private boolean validateExportFiles = false;
+
+	/**
+	 * The number of threads scanning chunks of export files
+	 */
+	private int validateThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The size of the chunks export files are scanned in
+	 */
+	private int validateChunkMb = 64;
+
+	/**
+	 * The number of problems logged for each export file
+	 */
+	private int validateMaxErrors = 20;
+
+	// Config Variables Runtime
+	/**
+	 * The number of tables processed concurrently within a phase
+	 */
+	private int tableParallelism = 1;
+
+	/**
+	 * Run each table on its own virtual thread when the runtime supports it
+	 */
+	private boolean useVirtualThreads = false;
+
+	/**
+	 * The maximum number of concurrent database sessions within a phase
+	 */
+	private int maxDatabaseSessions = 8;
+
+	/**
+	 * The maximum number of concurrent COS requests within a phase
+	 */
+	private int maxCosRequests = 8;
+
+	/**
+	 * The number of key ranges a table is split into for verification
+	 */
+	private int verifyRanges = 16;
+
+	/**
+	 * How many times a mismatched range is split again during verification
+	 */
+	private int verifyMaxDepth = 3;
+
+	/**
+	 * The file trace events are written to, empty to disable tracing
+	 */
+	private String traceFile = "";
+
+	/**
+	 * Files smaller than this size in MB are uploaded with a single PUT
+	 */
+	private int cosSinglePutThresholdMb = 16;
+
+	/**
+	 * The number of small files uploaded one after the other by each upload task
+	 */
+	private int cosSmallFileBatchSize = 50;
+
+	/**
+	 * The size in MB of each part of a multi part upload
+	 */
+	private int cosPartSizeMb = 100;
+
+	/**
+	 * The number of parts of one file uploaded at the same time
+	 */
+	private int cosUploadConcurrency = 1;
+
+	/**
+	 * The number of ranges of one object downloaded at the same time
+	 */
+	private int cosDownloadConcurrency = 8;
+
+	/**
+	 * The comma separated endpoints of the bucket to probe besides
+	 * SERVICE_ENDPOINT, empty to use SERVICE_ENDPOINT
+	 */
+	private String cosEndpoints = "";
+
+	/**
+	 * The number of times each endpoint is probed
+	 */
+	private int cosEndpointProbeSamples = 3;
+
+	/**
+	 * The size of the object endpoints are probed with
+	 */
+	private int cosEndpointProbeKb = 1024;
+
+	/**
+	 * Upload parts with the asynchronous HTTP client TRUE or FALSE
+	 */
+	private boolean cosAsyncTransfer = false;
+
+	/**
+	 * The number of I/O threads of the asynchronous HTTP client
+	 */
+	private int cosAsyncIoThreads = 2;
+
+	/**
+	 * The number of connections the asynchronous HTTP client opens
+	 */
+	private int cosAsyncMaxRequests = 256;
+
+	/**
+	 * How export files are compressed before upload, NONE or GZIP
+	 */
+	private String cosCompression = "NONE";
+
+	/**
+	 * Check the ETag of uploaded objects against their checksum TRUE or FALSE
+	 */
+	private boolean cosVerifyChecksum = true;
+
+	/**
+	 * Adjust the number of database sessions to the load of the server TRUE or FALSE
+	 */
+	private boolean adaptiveConcurrency = false;
+
+	/**
+	 * The lowest number of database sessions the adaptive controller will use
+	 */
+	private int adaptiveMinSessions = 1;
+
+	/**
+	 * The highest number of database sessions the adaptive controller will use
+	 */
+	private int adaptiveMaxSessions = 8;
+
+	/**
+	 * The interval in seconds between adaptive controller samples
+	 */
+	private int adaptiveSampleSeconds = 15;
+
+	/**
+	 * Server CPU use above which sessions are removed
+	 */
+	private int adaptiveCpuTargetPercent = 75;
+
+	/**
+	 * Share of request time spent in lock waits above which sessions are removed
+	 */
+	private int adaptiveLockWaitPercent = 10;
+
+	/**
+	 * Probe latency, as a multiple of the lowest latency seen, above which sessions are removed
+	 */
+	private int adaptiveLatencyFactor = 3;
+
+	/**
+	 * Where the work queue of a distributed migration is kept, FILE or DB2
+	 */
+	private String queueType = "FILE";
+
+	/**
+	 * The directory of a FILE queue or the control table of a DB2 queue
+	 */
+	private String queueLocation = "";
+
+	/**
+	 * How long a worker's lease on a table lasts without a heartbeat
+	 */
+	private int queueLeaseSeconds = 300;
+
+	/**
+	 * The interval between lease heartbeats and queue polls
+	 */
+	private int queueHeartbeatSeconds = 30;
+
+	/**
+	 * The number of attempts after which a table is failed
+	 */
+	private int queueMaxAttempts = 3;
+
+	/**
+	 * Identifies this worker in leases, empty for the process id and host name
+	 */
+	private String workerId = "";
+
+	/**
+	 * The number of rows PLAN exports, uploads and loads to calibrate its
+	 * estimate
+	 */
+	private int planSampleRows = 100000;
+
+	/**
+	 * The address the daemon's job API listens on
+	 */
+	private String daemonHost = "127.0.0.1";
+
+	/**
+	 * The port the daemon's job API listens on
+	 */
+	private int daemonPort = 8686;
+
+	/**
+	 * The number of daemon jobs run at the same time
+	 */
+	private int daemonMaxJobs = 4;
+
 	// Config Variable Load to COS
 	/**
 	 * Load to COS access_key_id
@@ -170,6 +500,11 @@ public class ConfigurationBean {
 	 */
 	private int clientTimeOut = 5000;
 
+	/**
+	 * The properties this configuration was read from
+	 */
+	private Properties properties = null;
+
 	/**
 	 * Default constructor
 	 */
@@ -178,6 +513,33 @@ public class ConfigurationBean {
 		init();
 	}
 
+	/**
+	 * Creates a configuration from already loaded properties.
+	 * 
+	 * @param props
+	 *            the properties to read.
+	 */
+	private ConfigurationBean(Properties props) {
+		super();
+		apply(props);
+	}
+
+	/**
+	 * Creates the configuration of one table. Properties set for the table
+	 * replace the global ones, everything else is inherited.
+	 * 
+	 * @param overrides
+	 *            the properties set for the table, using the same names as the
+	 *            configuration file.
+	 * @return the table's configuration.
+	 */
+	public ConfigurationBean forTable(Properties overrides) {
+		Properties props = new Properties();
+		props.putAll(this.properties);
+		props.putAll(overrides);
+		return new ConfigurationBean(props);
+	}
+
 	/**
 	 * Initialize variables with values from properties file.
 	 */
@@ -191,6 +553,17 @@ public class ConfigurationBean {
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		apply(props);
+	}
+
+	/**
+	 * Sets the variables from loaded properties.
+	 * 
+	 * @param props
+	 *            the properties to read.
+	 */
+	private void apply(Properties props) {
+		this.properties = props;
 
 		// Source Db2
 		this.sourceJdbcDriver = props.getProperty("SOURCE_JDBC_DRIVER");
@@ -212,25 +585,152 @@ public class ConfigurationBean {
 		this.useTargetTimestampFormat = Boolean.valueOf(props.getProperty("TARGET_USE_TIMESTAMP_FORMAT"));
 		this.targetTimestampFormat = props.getProperty("TARGET_TIMESTAMP_FORMAT");
 		this.targetLoadArgs = props.getProperty("TARGET_LOAD_ARGS");
-		
+		this.targetStorageAlias = props.getProperty("TARGET_STORAGE_ALIAS", this.targetStorageAlias);
+		this.targetDeferIndexes = Boolean.valueOf(props.getProperty("TARGET_DEFER_INDEXES"));
+		this.targetIndexRebuildParallelism = getIntProperty(props, "TARGET_INDEX_REBUILD_PARALLELISM",
+				this.targetIndexRebuildParallelism);
+		this.targetLoadMode = props.getProperty("TARGET_LOAD_MODE", this.targetLoadMode).trim().toUpperCase();
+		this.loadSessions = getIntProperty(props, "TARGET_LOAD_SESSIONS", this.loadSessions);
+		this.loadBatchSize = getIntProperty(props, "TARGET_LOAD_BATCH_SIZE", this.loadBatchSize);
+		this.loadCommitSize = getIntProperty(props, "TARGET_LOAD_COMMIT_SIZE", this.loadCommitSize);
+		this.targetLoadStaging = Boolean.valueOf(props.getProperty("TARGET_LOAD_STAGING"));
+		this.targetStagingSwap = props.getProperty("TARGET_STAGING_SWAP", this.targetStagingSwap).trim()
+				.toUpperCase();
+		this.targetStagingNotLogged = Boolean.valueOf(props.getProperty("TARGET_STAGING_NOT_LOGGED"));
+		this.targetStagingVerify = Boolean.valueOf(
+				props.getProperty("TARGET_STAGING_VERIFY", String.valueOf(this.targetStagingVerify)).trim());
 
 		// Export
 		this.tableNamesFileName = props.getProperty("TABLE_NAMES_FILE");
 		this.exportFileLocation = props.getProperty("EXPORT_FILE_LOCATION");
+		// the target's partition map is internal to the server, so a split on the
+		// client cannot send rows to the partition that stores them
+		if (Boolean.valueOf(props.getProperty("EXPORT_SPLIT_FOR_PARALLEL_LOAD",
+				props.getProperty("EXPORT_SPLIT_BY_DISTRIBUTION")))) {
+			throw new IllegalArgumentException("EXPORT_SPLIT_FOR_PARALLEL_LOAD is no longer supported, "
+					+ "LOAD distributes the rows over the target partitions");
+		}
+		this.exportClientSide = Boolean.valueOf(props.getProperty("EXPORT_CLIENT_SIDE"));
+		this.exportFetchSize = getIntProperty(props, "EXPORT_FETCH_SIZE", this.exportFetchSize);
+		this.exportEscapeCharacter = props.getProperty("EXPORT_ESCAPE_CHARACTER", this.exportEscapeCharacter);
+		this.lobsToFiles = Boolean.valueOf(props.getProperty("EXPORT_LOBS_TO_FILES"));
+		if (this.lobsToFiles && this.exportClientSide) {
+			// the client side export writes LOB values inline, so it leaves no LOB files to load
+			throw new IllegalArgumentException("EXPORT_LOBS_TO_FILES cannot be combined with EXPORT_CLIENT_SIDE");
+		}
+		this.exportColumns = props.getProperty("EXPORT_COLUMNS", this.exportColumns);
+		this.exportWhere = props.getProperty("EXPORT_WHERE", this.exportWhere);
+		this.exportSort = props.getProperty("EXPORT_SORT", this.exportSort).trim().toUpperCase();
+		this.exportShards = getIntProperty(props, "EXPORT_SHARDS", this.exportShards, 1, 64);
+		this.exportShardColumn = props.getProperty("EXPORT_SHARD_COLUMN", this.exportShardColumn);
+		this.exportSortMemoryMb = getIntProperty(props, "EXPORT_SORT_MEMORY_MB", this.exportSortMemoryMb);
+		this.transformRules = props.getProperty("TRANSFORM_RULES", this.transformRules);
+		this.transformThreads = getIntProperty(props, "TRANSFORM_THREADS", this.transformThreads);
+		this.validateExportFiles = Boolean.valueOf(props.getProperty("VALIDATE_EXPORT_FILES"));
+		this.validateThreads = getIntProperty(props, "VALIDATE_THREADS", this.validateThreads);
+		this.validateChunkMb = getIntProperty(props, "VALIDATE_CHUNK_MB", this.validateChunkMb);
+		this.validateMaxErrors = getIntProperty(props, "VALIDATE_MAX_ERRORS", this.validateMaxErrors);
+
+		// Runtime
+		this.tableParallelism = getIntProperty(props, "TABLE_PARALLELISM", this.tableParallelism);
+		this.useVirtualThreads = Boolean.valueOf(props.getProperty("USE_VIRTUAL_THREADS"));
+		this.maxDatabaseSessions = getIntProperty(props, "MAX_DATABASE_SESSIONS", this.maxDatabaseSessions);
+		this.maxCosRequests = getIntProperty(props, "MAX_COS_REQUESTS", this.maxCosRequests);
+		this.traceFile = props.getProperty("TRACE_FILE", this.traceFile);
+		this.verifyRanges = getIntProperty(props, "VERIFY_RANGES", this.verifyRanges);
+		this.verifyMaxDepth = getIntProperty(props, "VERIFY_MAX_DEPTH", this.verifyMaxDepth);
+		// a single PUT can store up to 5 GB, and each part of a multi part upload
+		// is held in a byte array
+		this.cosSinglePutThresholdMb = getIntProperty(props, "COS_SINGLE_PUT_THRESHOLD_MB",
+				this.cosSinglePutThresholdMb, 0, 5 * 1024);
+		this.cosSmallFileBatchSize = getIntProperty(props, "COS_SMALL_FILE_BATCH_SIZE", this.cosSmallFileBatchSize);
+		this.cosPartSizeMb = getIntProperty(props, "COS_PART_SIZE_MB", this.cosPartSizeMb, 5, 2047);
+		this.cosUploadConcurrency = getIntProperty(props, "COS_UPLOAD_CONCURRENCY", this.cosUploadConcurrency);
+		this.cosDownloadConcurrency = getIntProperty(props, "COS_DOWNLOAD_CONCURRENCY", this.cosDownloadConcurrency);
+		this.cosCompression = props.getProperty("COS_COMPRESSION", this.cosCompression).trim().toUpperCase();
+		this.cosEndpoints = props.getProperty("COS_ENDPOINTS", this.cosEndpoints);
+		this.cosEndpointProbeSamples = getIntProperty(props, "COS_ENDPOINT_PROBE_SAMPLES",
+				this.cosEndpointProbeSamples);
+		this.cosEndpointProbeKb = getIntProperty(props, "COS_ENDPOINT_PROBE_KB", this.cosEndpointProbeKb);
+		this.cosAsyncTransfer = Boolean.valueOf(props.getProperty("COS_ASYNC_TRANSFER"));
+		this.cosAsyncIoThreads = getIntProperty(props, "COS_ASYNC_IO_THREADS", this.cosAsyncIoThreads);
+		this.cosAsyncMaxRequests = getIntProperty(props, "COS_ASYNC_MAX_REQUESTS", this.cosAsyncMaxRequests);
+		this.cosVerifyChecksum = Boolean
+				.valueOf(props.getProperty("COS_VERIFY_CHECKSUM", String.valueOf(this.cosVerifyChecksum)).trim());
+		this.adaptiveConcurrency = Boolean.valueOf(props.getProperty("ADAPTIVE_CONCURRENCY"));
+		this.adaptiveMinSessions = getIntProperty(props, "ADAPTIVE_MIN_SESSIONS", this.adaptiveMinSessions);
+		this.adaptiveMaxSessions = getIntProperty(props, "ADAPTIVE_MAX_SESSIONS", this.adaptiveMaxSessions);
+		this.adaptiveSampleSeconds = getIntProperty(props, "ADAPTIVE_SAMPLE_SECONDS", this.adaptiveSampleSeconds);
+		this.adaptiveCpuTargetPercent = getIntProperty(props, "ADAPTIVE_CPU_TARGET_PERCENT", this.adaptiveCpuTargetPercent);
+		this.adaptiveLockWaitPercent = getIntProperty(props, "ADAPTIVE_LOCK_WAIT_PERCENT", this.adaptiveLockWaitPercent);
+		this.adaptiveLatencyFactor = getIntProperty(props, "ADAPTIVE_LATENCY_FACTOR", this.adaptiveLatencyFactor);
+		this.queueType = props.getProperty("QUEUE_TYPE", this.queueType).trim().toUpperCase();
+		this.queueLocation = props.getProperty("QUEUE_LOCATION", this.queueLocation).trim();
+		this.queueLeaseSeconds = getIntProperty(props, "QUEUE_LEASE_SECONDS", this.queueLeaseSeconds);
+		this.queueHeartbeatSeconds = getIntProperty(props, "QUEUE_HEARTBEAT_SECONDS", this.queueHeartbeatSeconds);
+		this.queueMaxAttempts = getIntProperty(props, "QUEUE_MAX_ATTEMPTS", this.queueMaxAttempts);
+		this.workerId = props.getProperty("WORKER_ID", this.workerId).trim();
+		this.planSampleRows = getIntProperty(props, "PLAN_SAMPLE_ROWS", this.planSampleRows);
+		this.daemonHost = props.getProperty("DAEMON_HOST", this.daemonHost).trim();
+		this.daemonPort = getIntProperty(props, "DAEMON_PORT", this.daemonPort);
+		this.daemonMaxJobs = getIntProperty(props, "DAEMON_MAX_JOBS", this.daemonMaxJobs);
 
 		// COS
-		this.clientTimeOut = Integer.parseInt(props.getProperty("CLIENT_TIMEOUT"));
 		this.bucketName = props.getProperty("BUCKET_NAME");
 		this.api_key = props.getProperty("API_KEY");
 		this.service_instance_id = props.getProperty("SERVICE_INSTANCE_ID");
 		this.service_endpoint = props.getProperty("SERVICE_ENDPOINT");
 		this.geo_location = props.getProperty("LOCATION");
 		this.iam_endpoint = props.getProperty("IAM_ENDPOINT");
-		this.clientTimeOut = Integer.parseInt(props.getProperty("CLIENT_TIMEOUT"));
+		this.clientTimeOut = getIntProperty(props, "CLIENT_TIMEOUT", this.clientTimeOut);
 		this.accessKeyId = props.getProperty("ACCESS_KEY_ID");
 		this.secretAccessKey = props.getProperty("SECRET_ACCESS_KEY");
 	}
 
+	/**
+	 * Reads an optional integer property.
+	 * 
+	 * @param props
+	 *            the loaded properties.
+	 * @param key
+	 *            the property name.
+	 * @param defaultValue
+	 *            the value to use when the property is not set.
+	 * @return the property value.
+	 */
+	private int getIntProperty(Properties props, String key, int defaultValue) {
+		String value = props.getProperty(key);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		return Integer.parseInt(value.trim());
+	}
+
+	/**
+	 * Reads an optional integer property that must be within a range.
+	 * 
+	 * @param props
+	 *            the loaded properties.
+	 * @param key
+	 *            the property name.
+	 * @param defaultValue
+	 *            the value to use when the property is not set.
+	 * @param min
+	 *            the smallest allowed value.
+	 * @param max
+	 *            the largest allowed value.
+	 * @return the property value.
+	 * @throws IllegalArgumentException
+	 *             if the value is outside the range.
+	 */
+	private int getIntProperty(Properties props, String key, int defaultValue, int min, int max) {
+		int value = getIntProperty(props, key, defaultValue);
+		if (value < min || value > max) {
+			throw new IllegalArgumentException(key + " is " + value + ", it must be between " + min + " and " + max);
+		}
+		return value;
+	}
+
 	/**
 	 * Get the fully qualified class name of the configured JDBC driver.
 	 * 
@@ -446,6 +946,112 @@ public class ConfigurationBean {
 		this.targetLoadArgs = targetLoadArgs;
 	}
 
+	public String getTargetStorageAlias() {
+		return targetStorageAlias;
+	}
+
+	public void setTargetStorageAlias(String targetStorageAlias) {
+		this.targetStorageAlias = targetStorageAlias;
+	}
+
+	public boolean isTargetDeferIndexes() {
+		return targetDeferIndexes;
+	}
+
+	public void setTargetDeferIndexes(boolean targetDeferIndexes) {
+		this.targetDeferIndexes = targetDeferIndexes;
+	}
+
+	public int getTargetIndexRebuildParallelism() {
+		return targetIndexRebuildParallelism;
+	}
+
+	public void setTargetIndexRebuildParallelism(int targetIndexRebuildParallelism) {
+		this.targetIndexRebuildParallelism = targetIndexRebuildParallelism;
+	}
+
+	public String getTargetLoadMode() {
+		return targetLoadMode;
+	}
+
+	public void setTargetLoadMode(String targetLoadMode) {
+		this.targetLoadMode = targetLoadMode;
+	}
+
+	/**
+	 * Is the target loaded with batched inserts instead of external tables
+	 * 
+	 * @return true when TARGET_LOAD_MODE is BATCH_INSERT.
+	 */
+	public boolean isBatchInsertLoad() {
+		return "BATCH_INSERT".equals(targetLoadMode);
+	}
+
+	public int getLoadSessions() {
+		return loadSessions;
+	}
+
+	public void setLoadSessions(int loadSessions) {
+		this.loadSessions = loadSessions;
+	}
+
+	public int getLoadBatchSize() {
+		return loadBatchSize;
+	}
+
+	public void setLoadBatchSize(int loadBatchSize) {
+		this.loadBatchSize = loadBatchSize;
+	}
+
+	public int getLoadCommitSize() {
+		return loadCommitSize;
+	}
+
+	public void setLoadCommitSize(int loadCommitSize) {
+		this.loadCommitSize = loadCommitSize;
+	}
+
+	public boolean isTargetLoadStaging() {
+		return targetLoadStaging;
+	}
+
+	public void setTargetLoadStaging(boolean targetLoadStaging) {
+		this.targetLoadStaging = targetLoadStaging;
+	}
+
+	public String getTargetStagingSwap() {
+		return targetStagingSwap;
+	}
+
+	public void setTargetStagingSwap(String targetStagingSwap) {
+		this.targetStagingSwap = targetStagingSwap;
+	}
+
+	/**
+	 * Is a staging table swapped in by replacing the view readers use
+	 * 
+	 * @return true when TARGET_STAGING_SWAP is VIEW.
+	 */
+	public boolean isViewSwap() {
+		return "VIEW".equals(targetStagingSwap);
+	}
+
+	public boolean isTargetStagingNotLogged() {
+		return targetStagingNotLogged;
+	}
+
+	public void setTargetStagingNotLogged(boolean targetStagingNotLogged) {
+		this.targetStagingNotLogged = targetStagingNotLogged;
+	}
+
+	public boolean isTargetStagingVerify() {
+		return targetStagingVerify;
+	}
+
+	public void setTargetStagingVerify(boolean targetStagingVerify) {
+		this.targetStagingVerify = targetStagingVerify;
+	}
+
 	// EXPORT
 	public String getTableNamesFileName() {
 		return tableNamesFileName;
@@ -466,6 +1072,445 @@ public class ConfigurationBean {
 		this.exportFileLocation = exportFileLocation;
 	}
 
+	public boolean isExportClientSide() {
+		return exportClientSide;
+	}
+
+	public void setExportClientSide(boolean exportClientSide) {
+		this.exportClientSide = exportClientSide;
+	}
+
+	public int getExportFetchSize() {
+		return exportFetchSize;
+	}
+
+	public void setExportFetchSize(int exportFetchSize) {
+		this.exportFetchSize = exportFetchSize;
+	}
+
+	/**
+	 * Gets the escape character for client side exports.
+	 * 
+	 * @return the escape character, or zero when no escaping is configured.
+	 */
+	public char getExportEscapeCharacter() {
+		return exportEscapeCharacter.trim().isEmpty() ? 0 : exportEscapeCharacter.trim().charAt(0);
+	}
+
+	public void setExportEscapeCharacter(String exportEscapeCharacter) {
+		this.exportEscapeCharacter = exportEscapeCharacter;
+	}
+
+	public boolean isLobsToFiles() {
+		return lobsToFiles;
+	}
+
+	public void setLobsToFiles(boolean lobsToFiles) {
+		this.lobsToFiles = lobsToFiles;
+	}
+
+	public String getExportColumns() {
+		return exportColumns;
+	}
+
+	public void setExportColumns(String exportColumns) {
+		this.exportColumns = exportColumns;
+	}
+
+	public String getExportWhere() {
+		return exportWhere;
+	}
+
+	public void setExportWhere(String exportWhere) {
+		this.exportWhere = exportWhere;
+	}
+
+	public int getExportShards() {
+		return exportShards;
+	}
+
+	public void setExportShards(int exportShards) {
+		this.exportShards = exportShards;
+	}
+
+	public String getExportShardColumn() {
+		return exportShardColumn;
+	}
+
+	public void setExportShardColumn(String exportShardColumn) {
+		this.exportShardColumn = exportShardColumn;
+	}
+
+	public String getExportSort() {
+		return exportSort;
+	}
+
+	public void setExportSort(String exportSort) {
+		this.exportSort = exportSort;
+	}
+
+	public int getExportSortMemoryMb() {
+		return exportSortMemoryMb;
+	}
+
+	public void setExportSortMemoryMb(int exportSortMemoryMb) {
+		this.exportSortMemoryMb = exportSortMemoryMb;
+	}
+
+	public String getTransformRules() {
+		return transformRules;
+	}
+
+	public void setTransformRules(String transformRules) {
+		this.transformRules = transformRules;
+	}
+
+	public int getTransformThreads() {
+		return transformThreads;
+	}
+
+	public void setTransformThreads(int transformThreads) {
+		this.transformThreads = transformThreads;
+	}
+
+	public boolean isValidateExportFiles() {
+		return validateExportFiles;
+	}
+
+	public void setValidateExportFiles(boolean validateExportFiles) {
+		this.validateExportFiles = validateExportFiles;
+	}
+
+	public int getValidateThreads() {
+		return validateThreads;
+	}
+
+	public void setValidateThreads(int validateThreads) {
+		this.validateThreads = validateThreads;
+	}
+
+	public int getValidateChunkMb() {
+		return validateChunkMb;
+	}
+
+	public void setValidateChunkMb(int validateChunkMb) {
+		this.validateChunkMb = validateChunkMb;
+	}
+
+	public int getValidateMaxErrors() {
+		return validateMaxErrors;
+	}
+
+	public void setValidateMaxErrors(int validateMaxErrors) {
+		this.validateMaxErrors = validateMaxErrors;
+	}
+
+	// RUNTIME
+	public int getTableParallelism() {
+		return tableParallelism;
+	}
+
+	public void setTableParallelism(int tableParallelism) {
+		this.tableParallelism = tableParallelism;
+	}
+
+	public boolean isUseVirtualThreads() {
+		return useVirtualThreads;
+	}
+
+	public void setUseVirtualThreads(boolean useVirtualThreads) {
+		this.useVirtualThreads = useVirtualThreads;
+	}
+
+	public int getMaxDatabaseSessions() {
+		return maxDatabaseSessions;
+	}
+
+	public void setMaxDatabaseSessions(int maxDatabaseSessions) {
+		this.maxDatabaseSessions = maxDatabaseSessions;
+	}
+
+	public int getMaxCosRequests() {
+		return maxCosRequests;
+	}
+
+	public void setMaxCosRequests(int maxCosRequests) {
+		this.maxCosRequests = maxCosRequests;
+	}
+
+	public int getVerifyRanges() {
+		return verifyRanges;
+	}
+
+	public void setVerifyRanges(int verifyRanges) {
+		this.verifyRanges = verifyRanges;
+	}
+
+	public int getVerifyMaxDepth() {
+		return verifyMaxDepth;
+	}
+
+	public void setVerifyMaxDepth(int verifyMaxDepth) {
+		this.verifyMaxDepth = verifyMaxDepth;
+	}
+
+	public String getTraceFile() {
+		return traceFile;
+	}
+
+	public void setTraceFile(String traceFile) {
+		this.traceFile = traceFile;
+	}
+
+	public int getCosSinglePutThresholdMb() {
+		return cosSinglePutThresholdMb;
+	}
+
+	public void setCosSinglePutThresholdMb(int cosSinglePutThresholdMb) {
+		this.cosSinglePutThresholdMb = cosSinglePutThresholdMb;
+	}
+
+	public int getCosSmallFileBatchSize() {
+		return cosSmallFileBatchSize;
+	}
+
+	public void setCosSmallFileBatchSize(int cosSmallFileBatchSize) {
+		this.cosSmallFileBatchSize = cosSmallFileBatchSize;
+	}
+
+	public int getCosPartSizeMb() {
+		return cosPartSizeMb;
+	}
+
+	public void setCosPartSizeMb(int cosPartSizeMb) {
+		this.cosPartSizeMb = cosPartSizeMb;
+	}
+
+	public int getCosUploadConcurrency() {
+		return cosUploadConcurrency;
+	}
+
+	public void setCosUploadConcurrency(int cosUploadConcurrency) {
+		this.cosUploadConcurrency = cosUploadConcurrency;
+	}
+
+	public String getCosEndpoints() {
+		return cosEndpoints;
+	}
+
+	public void setCosEndpoints(String cosEndpoints) {
+		this.cosEndpoints = cosEndpoints;
+	}
+
+	public int getCosEndpointProbeSamples() {
+		return cosEndpointProbeSamples;
+	}
+
+	public void setCosEndpointProbeSamples(int cosEndpointProbeSamples) {
+		this.cosEndpointProbeSamples = cosEndpointProbeSamples;
+	}
+
+	public int getCosEndpointProbeKb() {
+		return cosEndpointProbeKb;
+	}
+
+	public void setCosEndpointProbeKb(int cosEndpointProbeKb) {
+		this.cosEndpointProbeKb = cosEndpointProbeKb;
+	}
+
+	public boolean isCosAsyncTransfer() {
+		return cosAsyncTransfer;
+	}
+
+	public void setCosAsyncTransfer(boolean cosAsyncTransfer) {
+		this.cosAsyncTransfer = cosAsyncTransfer;
+	}
+
+	public int getCosAsyncIoThreads() {
+		return cosAsyncIoThreads;
+	}
+
+	public void setCosAsyncIoThreads(int cosAsyncIoThreads) {
+		this.cosAsyncIoThreads = cosAsyncIoThreads;
+	}
+
+	public int getCosAsyncMaxRequests() {
+		return cosAsyncMaxRequests;
+	}
+
+	public void setCosAsyncMaxRequests(int cosAsyncMaxRequests) {
+		this.cosAsyncMaxRequests = cosAsyncMaxRequests;
+	}
+
+	public int getCosDownloadConcurrency() {
+		return cosDownloadConcurrency;
+	}
+
+	public void setCosDownloadConcurrency(int cosDownloadConcurrency) {
+		this.cosDownloadConcurrency = cosDownloadConcurrency;
+	}
+
+	public String getCosCompression() {
+		return cosCompression;
+	}
+
+	public void setCosCompression(String cosCompression) {
+		this.cosCompression = cosCompression;
+	}
+
+	/**
+	 * Are export files gzip compressed before upload
+	 * 
+	 * @return true when COS_COMPRESSION is GZIP.
+	 */
+	public boolean isGzipCompression() {
+		return "GZIP".equals(cosCompression);
+	}
+
+	public boolean isCosVerifyChecksum() {
+		return cosVerifyChecksum;
+	}
+
+	public void setCosVerifyChecksum(boolean cosVerifyChecksum) {
+		this.cosVerifyChecksum = cosVerifyChecksum;
+	}
+
+	public boolean isAdaptiveConcurrency() {
+		return adaptiveConcurrency;
+	}
+
+	public void setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+		this.adaptiveConcurrency = adaptiveConcurrency;
+	}
+
+	public int getAdaptiveMinSessions() {
+		return adaptiveMinSessions;
+	}
+
+	public void setAdaptiveMinSessions(int adaptiveMinSessions) {
+		this.adaptiveMinSessions = adaptiveMinSessions;
+	}
+
+	public int getAdaptiveMaxSessions() {
+		return adaptiveMaxSessions;
+	}
+
+	public void setAdaptiveMaxSessions(int adaptiveMaxSessions) {
+		this.adaptiveMaxSessions = adaptiveMaxSessions;
+	}
+
+	public int getAdaptiveSampleSeconds() {
+		return adaptiveSampleSeconds;
+	}
+
+	public void setAdaptiveSampleSeconds(int adaptiveSampleSeconds) {
+		this.adaptiveSampleSeconds = adaptiveSampleSeconds;
+	}
+
+	public int getAdaptiveCpuTargetPercent() {
+		return adaptiveCpuTargetPercent;
+	}
+
+	public void setAdaptiveCpuTargetPercent(int adaptiveCpuTargetPercent) {
+		this.adaptiveCpuTargetPercent = adaptiveCpuTargetPercent;
+	}
+
+	public int getAdaptiveLockWaitPercent() {
+		return adaptiveLockWaitPercent;
+	}
+
+	public void setAdaptiveLockWaitPercent(int adaptiveLockWaitPercent) {
+		this.adaptiveLockWaitPercent = adaptiveLockWaitPercent;
+	}
+
+	public int getAdaptiveLatencyFactor() {
+		return adaptiveLatencyFactor;
+	}
+
+	public void setAdaptiveLatencyFactor(int adaptiveLatencyFactor) {
+		this.adaptiveLatencyFactor = adaptiveLatencyFactor;
+	}
+
+	public String getQueueType() {
+		return queueType;
+	}
+
+	public void setQueueType(String queueType) {
+		this.queueType = queueType;
+	}
+
+	public String getQueueLocation() {
+		return queueLocation;
+	}
+
+	public void setQueueLocation(String queueLocation) {
+		this.queueLocation = queueLocation;
+	}
+
+	public int getQueueLeaseSeconds() {
+		return queueLeaseSeconds;
+	}
+
+	public void setQueueLeaseSeconds(int queueLeaseSeconds) {
+		this.queueLeaseSeconds = queueLeaseSeconds;
+	}
+
+	public int getQueueHeartbeatSeconds() {
+		return queueHeartbeatSeconds;
+	}
+
+	public void setQueueHeartbeatSeconds(int queueHeartbeatSeconds) {
+		this.queueHeartbeatSeconds = queueHeartbeatSeconds;
+	}
+
+	public int getQueueMaxAttempts() {
+		return queueMaxAttempts;
+	}
+
+	public void setQueueMaxAttempts(int queueMaxAttempts) {
+		this.queueMaxAttempts = queueMaxAttempts;
+	}
+
+	public String getWorkerId() {
+		return workerId;
+	}
+
+	public void setWorkerId(String workerId) {
+		this.workerId = workerId;
+	}
+
+	public int getPlanSampleRows() {
+		return planSampleRows;
+	}
+
+	public void setPlanSampleRows(int planSampleRows) {
+		this.planSampleRows = planSampleRows;
+	}
+
+	public String getDaemonHost() {
+		return daemonHost;
+	}
+
+	public void setDaemonHost(String daemonHost) {
+		this.daemonHost = daemonHost;
+	}
+
+	public int getDaemonPort() {
+		return daemonPort;
+	}
+
+	public void setDaemonPort(int daemonPort) {
+		this.daemonPort = daemonPort;
+	}
+
+	public int getDaemonMaxJobs() {
+		return daemonMaxJobs;
+	}
+
+	public void setDaemonMaxJobs(int daemonMaxJobs) {
+		this.daemonMaxJobs = daemonMaxJobs;
+	}
+
 	// COS
 	public int getClientTimeOut() {
 		return clientTimeOut;
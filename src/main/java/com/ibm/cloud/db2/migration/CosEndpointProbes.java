@@ -0,0 +1,263 @@
+package com.ibm.cloud.db2.migration;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.UUID;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Endpoint probes that run against the configured bucket and target database.
+ * Two probe objects are written, one row and COS_ENDPOINT_PROBE_KB of rows.
+ * Uploads are timed by putting the large object and latency by reading the
+ * metadata of the small one. On the target both objects are counted through
+ * an external table, and the difference between the two gives the read
+ * throughput. Each measurement is the median of COS_ENDPOINT_PROBE_SAMPLES
+ * tries.
+ */
+public class CosEndpointProbes implements EndpointProbes {
+	private static Log logger = LogFactory.getLog(CosEndpointProbes.class);
+
+	/**
+	 * The start of the probe object keys
+	 */
+	private static final String OBJECT_PREFIX = "DB2MIGRATOR_ENDPOINT_PROBE.";
+
+	/**
+	 * The length of a probe row, including its row delimiter
+	 */
+	private static final int ROW_LENGTH = 100;
+
+	/**
+	 * The configuration naming the bucket and keys
+	 */
+	private ConfigurationBean config = null;
+
+	/**
+	 * Provides the target sessions
+	 */
+	private TableTaskExecutor executor = null;
+
+	/**
+	 * A COS client for each endpoint probed
+	 */
+	private HashMap<String, COSClient> clients = new HashMap<String, COSClient>();
+
+	/**
+	 * The endpoint the probe objects were last written through
+	 */
+	private String writtenThrough = null;
+
+	/**
+	 * Are the probe files on disk
+	 */
+	private boolean filesWritten = false;
+
+	/**
+	 * The object key of the one row probe object, unique to these probes so
+	 * that workers probing at the same time do not replace each other's objects
+	 */
+	private String smallObject = null;
+
+	/**
+	 * The object key of the large probe object
+	 */
+	private String largeObject = null;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param config
+	 *            the configuration.
+	 * @param executor
+	 *            the executor providing target sessions.
+	 */
+	public CosEndpointProbes(ConfigurationBean config, TableTaskExecutor executor) {
+		super();
+		this.config = config;
+		this.executor = executor;
+		String id = UUID.randomUUID().toString();
+		this.smallObject = OBJECT_PREFIX + id + ".small.csv";
+		this.largeObject = OBJECT_PREFIX + id + ".large.csv";
+	}
+
+	public Measurement probeUpload(String endpoint) throws Exception {
+		COSClient client = getClient(endpoint);
+		writeProbeFiles();
+		double[] putMillis = new double[samples()];
+		double[] headMillis = new double[samples()];
+		for (int i = 0; i < putMillis.length; i++) {
+			long start = System.nanoTime();
+			client.putFile(this.largeObject, getPath(this.largeObject));
+			putMillis[i] = (System.nanoTime() - start) / 1e6;
+		}
+		client.putFile(this.smallObject, getPath(this.smallObject));
+		this.writtenThrough = endpoint;
+		for (int i = 0; i < headMillis.length; i++) {
+			long start = System.nanoTime();
+			client.getObjectLength(this.smallObject);
+			headMillis[i] = (System.nanoTime() - start) / 1e6;
+		}
+		return measure(median(headMillis), median(putMillis), getLargeRows() * ROW_LENGTH);
+	}
+
+	public Measurement probeRead(String endpoint, String uploadEndpoint) throws Exception {
+		if (!uploadEndpoint.equals(this.writtenThrough)) {
+			writeProbeFiles();
+			COSClient client = getClient(uploadEndpoint);
+			client.putFile(this.largeObject, getPath(this.largeObject));
+			client.putFile(this.smallObject, getPath(this.smallObject));
+			this.writtenThrough = uploadEndpoint;
+		}
+		double[] smallMillis = new double[samples()];
+		double[] largeMillis = new double[samples()];
+		Connection connection = this.executor.borrowTargetConnection();
+		try {
+			for (int i = 0; i < smallMillis.length; i++) {
+				smallMillis[i] = countRows(connection, endpoint, this.smallObject, 1);
+				largeMillis[i] = countRows(connection, endpoint, this.largeObject, getLargeRows());
+			}
+		} finally {
+			this.executor.releaseTargetConnection(connection);
+		}
+		return measure(median(smallMillis), median(largeMillis), getLargeRows() * ROW_LENGTH);
+	}
+
+	public void cleanUp() {
+		new File(getPath(this.smallObject)).delete();
+		new File(getPath(this.largeObject)).delete();
+		if (this.writtenThrough == null) {
+			return;
+		}
+		try {
+			COSClient client = getClient(this.writtenThrough);
+			client.drop(this.smallObject);
+			client.drop(this.largeObject);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Counts the rows of a probe object on the target and checks that all of
+	 * them were read.
+	 * 
+	 * @return the time the query took in milliseconds.
+	 */
+	private double countRows(Connection connection, String endpoint, String objectKey, long expectedRows)
+			throws Exception {
+		Statement statement = connection.createStatement();
+		try {
+			long start = System.nanoTime();
+			ResultSet resultSet = statement.executeQuery("select count(*) from external '" + objectKey
+					+ "' (C VARCHAR(" + ROW_LENGTH + ")) using (" + EndpointResolver.getS3Option(this.config, endpoint)
+					+ ")");
+			long rows = resultSet.next() ? resultSet.getLong(1) : 0;
+			double millis = (System.nanoTime() - start) / 1e6;
+			if (rows != expectedRows) {
+				throw new IllegalStateException(
+						"The target read " + rows + " of " + expectedRows + " rows of " + objectKey);
+			}
+			return millis;
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Turns the time of an empty and a full request into a measurement.
+	 */
+	private static Measurement measure(double latencyMillis, double transferMillis, long bytes) {
+		// the transfer includes one round trip; below a millisecond the size of
+		// the probe is too small to tell
+		double seconds = Math.max(transferMillis - latencyMillis, 1) / 1000;
+		return new Measurement(latencyMillis, bytes / seconds);
+	}
+
+	/**
+	 * Writes the probe files to the export location.
+	 */
+	private void writeProbeFiles() throws IOException {
+		if (this.filesWritten) {
+			return;
+		}
+		byte[] row = new byte[ROW_LENGTH];
+		Arrays.fill(row, (byte) 'x');
+		row[ROW_LENGTH - 1] = DelRowEncoder.ROW_DELIMITER;
+		writeProbeFile(this.smallObject, row, 1);
+		writeProbeFile(this.largeObject, row, getLargeRows());
+		this.filesWritten = true;
+	}
+
+	private void writeProbeFile(String fileName, byte[] row, long rows) throws IOException {
+		OutputStream out = new FileOutputStream(getPath(fileName));
+		try {
+			byte[] block = new byte[ROW_LENGTH * 1024];
+			for (int i = 0; i < 1024; i++) {
+				System.arraycopy(row, 0, block, i * ROW_LENGTH, ROW_LENGTH);
+			}
+			for (long written = 0; written < rows; written += 1024) {
+				out.write(block, 0, (int) Math.min(1024, rows - written) * ROW_LENGTH);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Gets the client uploading through an endpoint.
+	 */
+	private synchronized COSClient getClient(String endpoint) {
+		COSClient client = this.clients.get(endpoint);
+		if (client == null) {
+			logger.info("Probing COS endpoint " + endpoint);
+			client = new COSClient(this.config, endpoint);
+			this.clients.put(endpoint, client);
+		}
+		return client;
+	}
+
+	private long getLargeRows() {
+		return Math.max(1, this.config.getCosEndpointProbeKb() * 1024L / ROW_LENGTH);
+	}
+
+	private int samples() {
+		return Math.max(1, this.config.getCosEndpointProbeSamples());
+	}
+
+	private String getPath(String fileName) {
+		return this.config.getExportFileLocation() + fileName;
+	}
+
+	/**
+	 * Gets the median of some timings.
+	 */
+	private static double median(double[] values) {
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted.length % 2 == 1 ? sorted[sorted.length / 2]
+				: (sorted[sorted.length / 2 - 1] + sorted[sorted.length / 2]) / 2;
+	}
+}
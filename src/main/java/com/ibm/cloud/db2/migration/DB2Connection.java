@@ -40,32 +40,30 @@ public class DB2Connection {
 	}
 
 	/**
-	 * Gets a JDBC connection to the configured database.
+	 * Gets a JDBC connection to the configured database. Failures are thrown
+	 * so that only the table or job that needed the connection fails.
 	 * 
 	 * @return The JDBC connection.
+	 * @throws SQLException
+	 *             if the driver is missing or the connection cannot be made
 	 */
 	private Connection getConnection(String jdbcDriver, String hostName, String dbName, String port, String userName,
-			String password, boolean useSsl) {
-		Connection connection = null;
+			String password, boolean useSsl) throws SQLException {
 		try {
 			Class.forName(jdbcDriver);
-			connection = DriverManager.getConnection(getJdbcUrl(hostName, port, dbName, useSsl), userName, password);
 		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
-			System.exit(-1);
-		} catch (SQLException e) {
-			e.printStackTrace();
-			System.exit(-1);
+			throw new SQLException("JDBC driver " + jdbcDriver + " not found", e);
 		}
-		return connection;
+		return DriverManager.getConnection(getJdbcUrl(hostName, port, dbName, useSsl), userName, password);
 	}
 
 	/**
 	 * Gets a JDBC connection to the configured source database.
 	 * 
 	 * @return the JDBC Connection
+	 * @throws SQLException
 	 */
-	public Connection getSourceConnection() {
+	public Connection getSourceConnection() throws SQLException {
 		String jdbcDriver = this.config.getSourceJdbcDriver();
 		String hostName = this.config.getSourceHostName();
 		String dbName = this.config.getSourceDbName();
@@ -81,8 +79,9 @@ public class DB2Connection {
 	 * Gets a JDBC connection to the configured target database.
 	 * 
 	 * @return the JDBC Connection
+	 * @throws SQLException
 	 */
-	public Connection getTargetConnection() {
+	public Connection getTargetConnection() throws SQLException {
 		String jdbcDriver = this.config.getTargetJdbcDriver();
 		String hostName = this.config.getTargetHostName();
 		String dbName = this.config.getTargetDbName();
@@ -0,0 +1,219 @@
+package com.ibm.cloud.db2.migration;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Calibration probes that run against the configured source database, bucket
+ * and target database. The sample is exported the way EXPORT exports the
+ * table, over JDBC or with ADMIN_CMD EXPORT, uploaded as its own object and
+ * loaded into DB2MIGRATOR_PLAN_PROBE, a copy of the target table created in
+ * the table's schema and dropped again afterwards.
+ */
+public class Db2CalibrationProbes implements CalibrationProbes {
+	private static Log logger = LogFactory.getLog(Db2CalibrationProbes.class);
+
+	/**
+	 * The name of the table the sample is loaded into
+	 */
+	private static final String PROBE_TABLE_NAME = "DB2MIGRATOR_PLAN_PROBE";
+
+	/**
+	 * The migrator that exports the sample and builds the load statements
+	 */
+	private Db2Migrator migrator = null;
+
+	/**
+	 * Provides the database sessions
+	 */
+	private TableTaskExecutor executor = null;
+
+	/**
+	 * Uploads and reads the sample object
+	 */
+	private COSClient cosClient = null;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param migrator
+	 *            the migrator being planned.
+	 * @param executor
+	 *            the executor providing database sessions.
+	 * @param cosClient
+	 *            the COS client.
+	 */
+	public Db2CalibrationProbes(Db2Migrator migrator, TableTaskExecutor executor, COSClient cosClient) {
+		super();
+		this.migrator = migrator;
+		this.executor = executor;
+		this.cosClient = cosClient;
+	}
+
+	public TableStatistics readStatistics(String tableName) throws Exception {
+		Connection connection = this.executor.borrowSourceConnection();
+		try {
+			TableName table = TableName.parse(tableName);
+			PreparedStatement statement = connection.prepareStatement("SELECT T.CARD, T.NPAGES, S.PAGESIZE "
+					+ "FROM SYSCAT.TABLES T JOIN SYSCAT.TABLESPACES S ON S.TBSPACEID = T.TBSPACEID "
+					+ "WHERE T.TABSCHEMA = ? AND T.TABNAME = ?");
+			try {
+				statement.setString(1, table.getSchema(connection));
+				statement.setString(2, table.getName());
+				ResultSet resultSet = statement.executeQuery();
+				if (!resultSet.next()) {
+					throw new IllegalArgumentException("Table " + tableName + " does not exist on the source");
+				}
+				// CARD and NPAGES are -1 until RUNSTATS has run
+				long rows = resultSet.getLong(1);
+				long pages = resultSet.getLong(2);
+				if (rows < 0 || pages < 0) {
+					logger.warn("Table " + tableName + " has no statistics, run RUNSTATS for an estimate");
+					return new TableStatistics(0, 0);
+				}
+				return new TableStatistics(rows, pages * resultSet.getLong(3));
+			} finally {
+				statement.close();
+			}
+		} finally {
+			this.executor.releaseSourceConnection(connection);
+		}
+	}
+
+	public Sample probeExport(String tableName, ConfigurationBean tableConfig, int sampleRows) throws Exception {
+		String fileName = getSampleFileName(tableName);
+		Connection connection = this.executor.borrowSourceConnection();
+		try {
+			long start = System.nanoTime();
+			long rows = this.migrator.exportSample(connection, fileName, tableName, sampleRows);
+			return new Sample(rows, new File(tableConfig.getExportFileLocation() + fileName).length(),
+					(System.nanoTime() - start) / 1e9);
+		} finally {
+			this.executor.releaseSourceConnection(connection);
+		}
+	}
+
+	public Sample probeUpload(String tableName, ConfigurationBean tableConfig) throws Exception {
+		String fileName = getSampleFileName(tableName);
+		File file = new File(tableConfig.getExportFileLocation() + fileName);
+		long start = System.nanoTime();
+		if (file.length() < 5 * 1024 * 1024) {
+			this.cosClient.putFile(fileName, file.getPath());
+		} else {
+			this.cosClient.putMultiPart(fileName, file.getPath(), tableConfig.getCosPartSizeMb(), 1);
+		}
+		return new Sample(0, file.length(), (System.nanoTime() - start) / 1e9);
+	}
+
+	public Sample probeLoad(String tableName, ConfigurationBean tableConfig) throws Exception {
+		String fileName = getSampleFileName(tableName);
+		String probeTable;
+		String externalColumns;
+		Connection connection = this.executor.borrowTargetConnection();
+		try {
+			TableName table = TableName.parse(tableName);
+			probeTable = TableName.quote(table.getSchema(connection)) + "." + TableName.quote(PROBE_TABLE_NAME);
+			dropProbeTable(connection, probeTable);
+			Statement statement = connection.createStatement();
+			try {
+				statement.execute("CREATE TABLE " + probeTable + " LIKE " + table.getQualifiedName(connection));
+			} finally {
+				statement.close();
+			}
+			externalColumns = new ExportProjection(tableConfig).getExternalColumnDefinitions(connection, probeTable);
+		} finally {
+			this.executor.releaseTargetConnection(connection);
+		}
+		long rows;
+		long start = System.nanoTime();
+		if (tableConfig.isBatchInsertLoad()) {
+			BatchInsertLoader loader = new BatchInsertLoader(this.executor, this.cosClient);
+			try {
+				rows = loader.load(fileName, probeTable, tableConfig);
+			} finally {
+				loader.shutdown();
+			}
+		} else {
+			connection = this.executor.borrowTargetConnection();
+			try {
+				Statement statement = connection.createStatement();
+				try {
+					statement.execute(this.migrator.getDb2LoadCommand(fileName, probeTable, tableConfig, externalColumns));
+					rows = statement.getUpdateCount();
+				} finally {
+					statement.close();
+				}
+			} finally {
+				this.executor.releaseTargetConnection(connection);
+			}
+		}
+		return new Sample(rows, 0, (System.nanoTime() - start) / 1e9);
+	}
+
+	public void cleanUp(String tableName) {
+		String fileName = getSampleFileName(tableName);
+		new File(this.migrator.getConfig().getExportFileLocation() + fileName).delete();
+		try {
+			this.cosClient.drop(fileName);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		try {
+			Connection connection = this.executor.borrowTargetConnection();
+			try {
+				TableName table = TableName.parse(tableName);
+				dropProbeTable(connection,
+						TableName.quote(table.getSchema(connection)) + "." + TableName.quote(PROBE_TABLE_NAME));
+			} finally {
+				this.executor.releaseTargetConnection(connection);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Drops the probe table if it exists.
+	 */
+	private void dropProbeTable(Connection connection, String probeTable) throws Exception {
+		Statement statement = connection.createStatement();
+		try {
+			statement.execute("DROP TABLE " + probeTable);
+		} catch (SQLException e) {
+			// -204: the table does not exist
+			if (e.getErrorCode() != -204) {
+				throw e;
+			}
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Gets the name of the sample file and object of a table.
+	 */
+	private static String getSampleFileName(String tableName) {
+		return tableName + ".plan.csv";
+	}
+}
@@ -1,14 +1,33 @@
 package com.ibm.cloud.db2.migration;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -36,20 +55,149 @@ public class Db2Migrator {
 	private static Log logger = LogFactory.getLog(Db2Migrator.class);
 	private ConfigurationBean config = null;
 	private ArrayList<String> tableNames = null;
+	private HashMap<String, ConfigurationBean> tableConfigs = new HashMap<String, ConfigurationBean>();
+	private AtomicInteger failures = new AtomicInteger();
+	private SessionPool sessionPool = null;
+	private COSClient cosClient = null;
+	private EndpointResolver endpoints = null;
 
 	/**
-	 * Default Constructor
+	 * Default Constructor. The table names file is read when a phase first
+	 * needs it, and database sessions and the COS client are only created by the
+	 * phases that use them.
 	 */
 	public Db2Migrator() {
 		super();
 		this.config = new ConfigurationBean();
+		Tracer.open(this.config.getTraceFile());
+	}
+
+	/**
+	 * Creates a migrator for some of the tables of another migrator, sharing its
+	 * configuration.
+	 * 
+	 * @param parent
+	 *            the migrator to take the configuration from.
+	 * @param tableNames
+	 *            the tables to process.
+	 */
+	private Db2Migrator(Db2Migrator parent, List<String> tableNames) {
+		super();
+		this.config = parent.config;
+		this.tableConfigs = parent.tableConfigs;
+		this.tableNames = new ArrayList<String>(tableNames);
+		this.sessionPool = parent.sessionPool;
+		this.cosClient = parent.cosClient;
+		this.endpoints = parent.endpoints;
+	}
+
+	/**
+	 * Creates a migrator for one job of the daemon. The job's tables are given
+	 * in the format of the table names file, and the job reuses the daemon's
+	 * database sessions, COS client and endpoints.
+	 * 
+	 * @param config
+	 *            the configuration of the job.
+	 * @param tableLines
+	 *            the tables to process, one table names file line each.
+	 * @param sessionPool
+	 *            the session pool shared by all jobs.
+	 * @param cosClient
+	 *            the COS client shared by all jobs.
+	 * @param endpoints
+	 *            the endpoints chosen for all jobs, or null to probe them for
+	 *            this job.
+	 */
+	public Db2Migrator(ConfigurationBean config, List<String> tableLines, SessionPool sessionPool,
+			COSClient cosClient, EndpointResolver endpoints) {
+		super();
+		this.endpoints = endpoints;
+		this.config = config;
 		this.tableNames = new ArrayList<String>();
-		populateTableNames();
+		for (String line : tableLines) {
+			addTable(line);
+		}
+		this.sessionPool = sessionPool;
+		this.cosClient = cosClient;
 	}
 
 	/**
-	 * Reads table names from a file. There is only one table name per line. The
-	 * file name read is defined in the configuration file.
+	 * Gets a migrator that processes only the given tables. Used by workers,
+	 * which run the phases for the tables they claim.
+	 * 
+	 * @param tableNames
+	 *            the tables to process.
+	 * @return the migrator.
+	 */
+	public Db2Migrator forTables(List<String> tableNames) {
+		// the settings of the tables come from the table names file, and the
+		// endpoints are probed once for all of them
+		getTableNames();
+		getEndpoints();
+		return new Db2Migrator(this, tableNames);
+	}
+
+	/**
+	 * Gets the configuration.
+	 * 
+	 * @return the global configuration.
+	 */
+	public ConfigurationBean getConfig() {
+		return config;
+	}
+
+	/**
+	 * Gets the tables listed in the table names file, reading the file on first
+	 * use.
+	 * 
+	 * @return the table names.
+	 */
+	public synchronized ArrayList<String> getTableNames() {
+		if (this.tableNames == null) {
+			this.tableNames = new ArrayList<String>();
+			populateTableNames();
+		}
+		return tableNames;
+	}
+
+	/**
+	 * Gets the number of table failures in the phases run so far.
+	 * 
+	 * @return the number of failures.
+	 */
+	public int getFailureCount() {
+		return failures.get();
+	}
+
+	/**
+	 * Removes all rows from the target tables, so a table whose earlier load may
+	 * have been partly committed can be loaded again.
+	 */
+	public void truncateTargetTables() {
+		final TableTaskExecutor executor = newExecutor("truncate");
+		for (String tableName : getTableNames()) {
+			executor.submit(tableName, new TableTaskExecutor.TableTask() {
+				public void run(String tableName) throws Exception {
+					logger.info("Truncating Table: " + tableName);
+					Connection connection = executor.borrowTargetConnection();
+					try {
+						Statement statement = connection.createStatement();
+						statement.execute("truncate table " + tableName + " immediate");
+						statement.close();
+					} finally {
+						executor.releaseTargetConnection(connection);
+					}
+				}
+			});
+		}
+		logFailures(executor.awaitCompletion());
+	}
+
+	/**
+	 * Reads table names from a file. There is only one table name per line,
+	 * optionally followed by settings for that table (see {@link TableSpec}).
+	 * Blank lines and lines starting with # are skipped. The file name read is
+	 * defined in the configuration file.
 	 */
 	private void populateTableNames() {
 		BufferedReader in;
@@ -57,7 +205,7 @@ public class Db2Migrator {
 			in = new BufferedReader(new FileReader(this.config.getTableNamesFileName()));
 			String line;
 			while ((line = in.readLine()) != null) {
-				this.tableNames.add(line);
+				addTable(line);
 			}
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
@@ -67,6 +215,116 @@ public class Db2Migrator {
 		return;
 	}
 
+	/**
+	 * Adds the table of one table names file line, with its settings.
+	 * 
+	 * @param line
+	 *            the line to add, ignored if blank or a comment.
+	 */
+	private void addTable(String line) {
+		TableSpec spec = TableSpec.parse(line);
+		if (spec == null) {
+			return;
+		}
+		this.tableNames.add(spec.getTableName());
+		if (spec.hasOverrides()) {
+			this.tableConfigs.put(spec.getTableName(), this.config.forTable(spec.getOverrides()));
+		}
+	}
+
+	/**
+	 * Creates the executor of a phase, using the shared session pool if there
+	 * is one.
+	 * 
+	 * @param phaseName
+	 *            the name of the phase.
+	 * @return the executor.
+	 */
+	private TableTaskExecutor newExecutor(String phaseName) {
+		if (this.sessionPool != null) {
+			return new TableTaskExecutor(this.config, phaseName, this.sessionPool);
+		}
+		return new TableTaskExecutor(this.config, phaseName);
+	}
+
+	/**
+	 * Gets the COS client, creating it on first use unless a shared client was
+	 * given.
+	 * 
+	 * @return the COS client.
+	 */
+	private synchronized COSClient getCosClient() {
+		if (this.cosClient == null) {
+			this.cosClient = new COSClient(this.config, getEndpoints().getUploadEndpoint());
+		}
+		return this.cosClient;
+	}
+
+	/**
+	 * Gets the endpoints uploads and loads go through, probing the
+	 * COS_ENDPOINTS candidates on first use. A shared COS client keeps its
+	 * endpoint and only the load endpoint is chosen. The daemon probes once
+	 * and gives the result to every job.
+	 * 
+	 * @return the chosen endpoints.
+	 */
+	synchronized EndpointResolver getEndpoints() {
+		if (this.endpoints == null) {
+			final EndpointResolver resolver = new EndpointResolver(this.config);
+			if (resolver.hasCandidates()) {
+				final String fixedUploadEndpoint = this.cosClient == null ? null : this.cosClient.getEndpoint();
+				final TableTaskExecutor executor = newExecutor("endpoints");
+				executor.submit("endpoints", new TableTaskExecutor.TableTask() {
+					public void run(String label) throws Exception {
+						resolver.resolve(new CosEndpointProbes(config, executor), fixedUploadEndpoint);
+					}
+				});
+				logFailures(executor.awaitCompletion());
+			}
+			this.endpoints = resolver;
+		}
+		return this.endpoints;
+	}
+
+	/**
+	 * Gets the configuration of a table, which is the global configuration with
+	 * any settings given for the table in the table names file applied.
+	 * 
+	 * @param tableName
+	 *            the table name being processed
+	 * @return the table's configuration
+	 */
+	public ConfigurationBean getTableConfig(String tableName) {
+		ConfigurationBean tableConfig = this.tableConfigs.get(tableName);
+		return tableConfig == null ? this.config : tableConfig;
+	}
+
+	/**
+	 * Is a table's export file compressed before upload. Tables exported with
+	 * LOB files are never compressed, because LOAD cannot read compressed files.
+	 * 
+	 * @param tableName
+	 *            the table name being processed
+	 * @return true when the table's DEL objects are gzip compressed
+	 */
+	private boolean isCompressed(String tableName) {
+		ConfigurationBean tableConfig = getTableConfig(tableName);
+		return tableConfig.isGzipCompression() && !tableConfig.isLobsToFiles();
+	}
+
+	/**
+	 * Gets the object key an export file is stored under.
+	 * 
+	 * @param tableName
+	 *            the table name being processed
+	 * @param fileName
+	 *            the export file name
+	 * @return the object key
+	 */
+	private String getObjectKey(String tableName, String fileName) {
+		return isCompressed(tableName) ? fileName + ".gz" : fileName;
+	}
+
 	/**
 	 * Exports table data to the file location defined within the configuration
 	 * file.
@@ -74,81 +332,1089 @@ public class Db2Migrator {
 	public void exportTableData() {
 		logger.info("---------------------------------");
 		logger.info("EXPORT PHASE STARTED");
-		DB2Connection db2Connection = new DB2Connection(this.config);
-		Statement statement;
-		Connection connection = db2Connection.getSourceConnection();
-		for (String tableName : this.tableNames) {
-			logger.info("Exporting Table: " + tableName);
-			String fileName = tableName + ".csv";
-			String db2ExportCommand = getDb2ExportCommand(fileName, tableName);
-			logger.debug("Here is the Db2 command to export for the table name " + tableName);
-			logger.debug(db2ExportCommand);
-			try {
-				statement = connection.createStatement();
-				ResultSet resultSet = statement.executeQuery(db2ExportCommand);
-				int rowsExported = 0;
-				while (resultSet.next()) {
-					rowsExported = resultSet.getInt(1);
+		final TableTaskExecutor executor = newExecutor("export");
+		executor.startAdaptiveControl(true);
+		for (String tableName : getTableNames()) {
+			executor.submit(tableName, new TableTaskExecutor.TableTask() {
+				public void run(String tableName) throws Exception {
+					exportTable(executor, tableName);
 				}
-				logger.info("Export File Name: " + fileName + "  | Records Exported: " + rowsExported);
-			} catch (SQLException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+			});
 		}
+		logFailures(executor.awaitCompletion());
 		logger.info("EXPORT PHASE FINISHED");
 		logger.info("---------------------------------");
 	}
 
 	/**
-	 * Moves data that has been exported to a cloud object repository.
+	 * Exports one table, in EXPORT_SHARDS key ranges on parallel sessions when
+	 * configured.
+	 * 
+	 * @param executor
+	 *            the executor providing database sessions
+	 * @param tableName
+	 *            the table name to export
+	 */
+	private void exportTable(TableTaskExecutor executor, String tableName) throws Exception {
+		logger.info("Exporting Table: " + tableName);
+		ConfigurationBean tableConfig = getTableConfig(tableName);
+		String fileName = tableName + ".csv";
+		ExportSorter sorter = null;
+		String orderBy = "";
+		if (!tableConfig.getExportSort().equals("NONE")) {
+			Connection targetConnection = executor.borrowTargetConnection();
+			try {
+				sorter = new ExportSorter(targetConnection, tableName);
+			} finally {
+				executor.releaseTargetConnection(targetConnection);
+			}
+			if (!sorter.hasKey()) {
+				logger.info("Not sorting " + tableName + ", the target table has no clustering or primary key");
+				sorter = null;
+			} else if (tableConfig.getExportSort().equals("QUERY")) {
+				logger.info("Exporting " + tableName + " in the order of its " + sorter.getDescription());
+				orderBy = sorter.getOrderBy();
+				sorter = null;
+			}
+		}
+		Connection connection = executor.borrowSourceConnection();
+		boolean lobFiles;
+		ExportShards shards = null;
+		List<String> sortColumns = null;
+		try {
+			lobFiles = tableConfig.isLobsToFiles() && LobFileSupport.hasLobColumns(connection, tableName);
+			if (tableConfig.getExportShards() > 1 && lobFiles) {
+				logger.info("Not sharding " + tableName + ", a table with LOB files is loaded from one export file");
+			} else if (tableConfig.getExportShards() > 1) {
+				shards = new ExportShards(connection, tableName, tableConfig);
+			}
+			if (sorter != null) {
+				sortColumns = new ExportProjection(tableConfig).getExportedColumns(connection, tableName);
+			}
+		} finally {
+			executor.releaseSourceConnection(connection);
+		}
+		// files of an earlier export with another shard count would otherwise be uploaded with this one
+		new File(this.config.getExportFileLocation() + fileName).delete();
+		ExportShards.deleteFiles(this.config.getExportFileLocation(), tableName);
+		List<String> fileNames;
+		if (shards == null) {
+			exportFile(executor, tableConfig, fileName, tableName, null, orderBy, lobFiles);
+			fileNames = Collections.singletonList(fileName);
+		} else {
+			fileNames = exportShards(executor, tableConfig, shards, tableName, orderBy);
+		}
+		if (sorter != null) {
+			// the sort only reads and writes files, so it holds no source session
+			for (String exportFileName : fileNames) {
+				sortExportFile(tableConfig, sortColumns, sorter, exportFileName, tableName);
+			}
+		}
+	}
+
+	/**
+	 * Exports one file of a table over its own source session.
+	 * 
+	 * @param executor
+	 *            the executor providing database sessions
+	 * @param tableConfig
+	 *            the table's configuration
+	 * @param fileName
+	 *            the file name to write data to
+	 * @param tableName
+	 *            the table name to export
+	 * @param predicate
+	 *            the condition selecting the rows of the file, null for all
+	 *            rows
+	 * @param orderBy
+	 *            the ORDER BY clause of the export query, empty for none
+	 * @param lobFiles
+	 *            whether LOB values are written to LOB files
+	 * @return the number of rows exported
+	 */
+	private long exportFile(TableTaskExecutor executor, ConfigurationBean tableConfig, String fileName,
+			String tableName, String predicate, String orderBy, boolean lobFiles) throws Exception {
+		String db2ExportCommand;
+		if (lobFiles) {
+			db2ExportCommand = getDb2LobExportCommand(fileName, tableName, orderBy);
+		} else {
+			db2ExportCommand = getDb2ExportCommand(fileName, tableName, predicate, orderBy);
+		}
+		logger.debug("Here is the Db2 command to export for the table name " + tableName);
+		logger.debug(db2ExportCommand);
+		Connection connection = executor.borrowSourceConnection();
+		Tracer.Span span = Tracer.begin("statement", "export " + fileName);
+		String outcome = "failed";
+		try {
+			long rowsExported = 0;
+			if (tableConfig.isExportClientSide()) {
+				rowsExported = exportTableClientSide(tableConfig, connection, fileName, tableName, predicate,
+						orderBy);
+			} else {
+				rowsExported = exportTableServerSide(connection, db2ExportCommand);
+			}
+			logger.info("Export File Name: " + fileName + "  | Records Exported: " + rowsExported);
+			span.setRows(rowsExported).setBytes(new File(this.config.getExportFileLocation() + fileName).length());
+			outcome = "ok";
+			return rowsExported;
+		} finally {
+			span.end(outcome);
+			executor.releaseSourceConnection(connection);
+		}
+	}
+
+	/**
+	 * Exports the shards of a table in parallel, each over its own source
+	 * session.
+	 * 
+	 * @param executor
+	 *            the executor providing database sessions
+	 * @param tableConfig
+	 *            the table's configuration
+	 * @param shards
+	 *            the key ranges of the table
+	 * @param tableName
+	 *            the table name to export
+	 * @param orderBy
+	 *            the ORDER BY clause of the export queries, empty for none
+	 * @return the shard file names
+	 * @throws Exception
+	 *             the failure of the first shard that could not be exported,
+	 *             once all shard exports have ended.
+	 */
+	private List<String> exportShards(final TableTaskExecutor executor, final ConfigurationBean tableConfig,
+			ExportShards shards, final String tableName, final String orderBy) throws Exception {
+		logger.info("Exporting " + tableName + " in " + shards.getShardCount() + " shards");
+		List<String> fileNames = ExportShards.getFileNames(tableName, shards.getShardCount());
+		ExecutorService shardExecutor = Executors.newFixedThreadPool(shards.getShardCount());
+		ArrayList<Future<Long>> exports = new ArrayList<Future<Long>>();
+		try {
+			for (int shard = 0; shard < fileNames.size(); shard++) {
+				final String fileName = fileNames.get(shard);
+				final String predicate = shards.getPredicate(shard);
+				exports.add(shardExecutor.submit(new Callable<Long>() {
+					public Long call() throws Exception {
+						return exportFile(executor, tableConfig, fileName, tableName, predicate, orderBy, false);
+					}
+				}));
+			}
+			long rowsExported = awaitFiles(exports, fileNames, "Export");
+			logger.info("Export Table: " + tableName + "  | Records Exported: " + rowsExported);
+		} finally {
+			shardExecutor.shutdownNow();
+		}
+		return fileNames;
+	}
+
+	/**
+	 * Waits for the export or load of every file of a table and adds up their
+	 * rows. Every file is waited for, so none is still running when the table
+	 * fails.
+	 * 
+	 * @param futures
+	 *            the row counts of the files, in file order
+	 * @param fileNames
+	 *            the file names
+	 * @param action
+	 *            what was done to the files, for the log
+	 * @return the number of rows of all files
+	 * @throws Exception
+	 *             the failure of the first file, once all files have ended.
+	 */
+	private long awaitFiles(List<Future<Long>> futures, List<String> fileNames, String action) throws Exception {
+		long rows = 0;
+		Throwable failure = null;
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				rows += futures.get(i).get();
+			} catch (ExecutionException e) {
+				logger.error(action + " of " + fileNames.get(i) + " failed: " + e.getCause());
+				if (failure == null) {
+					failure = e.getCause();
+				}
+			}
+		}
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure != null) {
+			throw (Exception) failure;
+		}
+		return rows;
+	}
+
+	/**
+	 * Sorts an export file by the target table's key with an external merge
+	 * sort.
+	 * 
+	 * @param tableConfig
+	 *            the table's configuration
+	 * @param columns
+	 *            the exported columns in file order
+	 * @param sorter
+	 *            the sort key of the target table
+	 * @param fileName
+	 *            the export file name
+	 * @param tableName
+	 *            the table name being processed
+	 */
+	private void sortExportFile(ConfigurationBean tableConfig, List<String> columns, ExportSorter sorter,
+			String fileName, String tableName) throws IOException {
+		logger.info("Sorting " + fileName + " by the " + sorter.getDescription());
+		Tracer.Span span = Tracer.begin("statement", "sort " + tableName);
+		String outcome = "failed";
+		try {
+			span.setRows(sorter.sort(this.config.getExportFileLocation() + fileName, columns,
+					tableConfig.getExportEscapeCharacter(), tableConfig.getExportSortMemoryMb() * 1024L * 1024L));
+			outcome = "ok";
+		} finally {
+			span.end(outcome);
+		}
+	}
+
+	/**
+	 * Exports the first rows of a table with the same path as EXPORT: over JDBC
+	 * when EXPORT_CLIENT_SIDE is set, otherwise with ADMIN_CMD EXPORT on the
+	 * server. LOB values are not written to LOB files, whose names would clash
+	 * with the table's own export.
+	 * 
+	 * @param connection
+	 *            the source connection
+	 * @param fileName
+	 *            the file name to write data to
+	 * @param tableName
+	 *            the table name to select data from
+	 * @param sampleRows
+	 *            the number of rows to export
+	 * @return the number of rows exported
+	 */
+	long exportSample(Connection connection, String fileName, String tableName, int sampleRows)
+			throws SQLException, IOException {
+		ConfigurationBean tableConfig = getTableConfig(tableName);
+		String fetchFirst = " FETCH FIRST " + sampleRows + " ROWS ONLY";
+		if (tableConfig.isExportClientSide()) {
+			return exportTableClientSide(tableConfig, connection, fileName, tableName, null, fetchFirst);
+		}
+		return exportTableServerSide(connection, getDb2ExportCommand(fileName, tableName, null, fetchFirst));
+	}
+
+	/**
+	 * Exports a table by running an ADMIN_CMD EXPORT on the source server.
+	 * 
+	 * @param connection
+	 *            the source connection
+	 * @param db2ExportCommand
+	 *            the export command
+	 * @return the number of rows exported
+	 */
+	private long exportTableServerSide(Connection connection, String db2ExportCommand) throws SQLException {
+		long rowsExported = 0;
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet resultSet = statement.executeQuery(db2ExportCommand);
+			while (resultSet.next()) {
+				rowsExported = resultSet.getInt(1);
+			}
+		} finally {
+			statement.close();
+		}
+		return rowsExported;
+	}
+
+	/**
+	 * Exports a table by fetching its rows over JDBC and encoding them on the
+	 * client, for source servers that cannot write to the export location.
+	 * 
+	 * @param tableConfig
+	 *            the table's configuration
+	 * @param connection
+	 *            the source connection
+	 * @param fileName
+	 *            the file name to write data to
+	 * @param tableName
+	 *            the table name to select data from
+	 * @param predicate
+	 *            the condition selecting the rows to export, null for all rows
+	 * @param orderBy
+	 *            the ORDER BY clause of the export query, empty for none
+	 * @return the number of rows exported
+	 */
+	private long exportTableClientSide(ConfigurationBean tableConfig, Connection connection, String fileName,
+			String tableName, String predicate, String orderBy) throws SQLException, IOException {
+		Statement statement = connection.createStatement();
+		OutputStream out = new FileOutputStream(this.config.getExportFileLocation() + fileName);
+		try {
+			statement.setFetchSize(tableConfig.getExportFetchSize());
+			ResultSet resultSet = statement
+					.executeQuery(new ExportProjection(tableConfig).getExportQuery(tableName, predicate) + orderBy);
+			DelRowEncoder encoder = new DelRowEncoder(resultSet.getMetaData(), out, 1024 * 1024,
+					tableConfig.getExportEscapeCharacter());
+			while (resultSet.next()) {
+				encoder.encode(resultSet);
+			}
+			encoder.flush();
+			return encoder.getRowCount();
+		} finally {
+			out.close();
+			statement.close();
+		}
+	}
+
+	/**
+	 * Moves data that has been exported to a cloud object repository. Files
+	 * smaller than the single put threshold are uploaded with one PUT each, in
+	 * batches that run concurrently. Larger files use multi part uploads.
+	 * Files of tables with TRANSFORM_RULES are transformed while they are read
+	 * and streamed to the object store. Tables with VALIDATE_EXPORT_FILES are
+	 * checked first and are not uploaded if the load would reject rows.
 	 */
 	public void transferToCos() {
 		logger.info("---------------------------------");
 		logger.info("TRANSFER PHASE STARTED");
-		logger.info("IBM Cloud Object Repository Endpoint: " + this.config.getService_endpoint());
+		final COSClient cosClient = getCosClient();
+		logger.info("IBM Cloud Object Repository Endpoint: " + cosClient.getEndpoint());
 		logger.info("Bucket Name: " + this.config.getBucketName());
-		for (String tableName : this.tableNames) {
-			String fileName = tableName + ".csv";
-			logger.info("Put File: " + fileName);
-			COSClient cosClient = new COSClient(this.config);
-			// cosClient.backupFile(fileName, this.config.getExportFileLocation() +
-			// fileName);
-			cosClient.putMultiPart(fileName, this.config.getExportFileLocation() + fileName);
+		final TableTaskExecutor executor = newExecutor("put");
+		ExecutorService pool = null;
+		for (String tableName : getTableNames()) {
+			if (!getTableConfig(tableName).getTransformRules().trim().isEmpty()) {
+				pool = Executors.newFixedThreadPool(Math.max(1, this.config.getTransformThreads()));
+				break;
+			}
+		}
+		final ExecutorService transformPool = pool;
+		ArrayList<String> validatedTables = new ArrayList<String>();
+		for (String tableName : getTableNames()) {
+			if (getTableConfig(tableName).isValidateExportFiles()) {
+				validatedTables.add(tableName);
+			}
+		}
+		Set<String> invalidTables = validateTables(validatedTables);
+		ArrayList<String> smallFiles = new ArrayList<String>();
+		for (final String tableName : getTableNames()) {
+			if (invalidTables.contains(tableName)) {
+				logger.error("Not uploading " + tableName + ", its export files failed validation");
+				continue;
+			}
+			final ConfigurationBean tableConfig = getTableConfig(tableName);
+			long threshold = tableConfig.getCosSinglePutThresholdMb() * 1024L * 1024L;
+			for (String fileName : getExportFileNames(tableName)) {
+				final boolean transformed = !tableConfig.getTransformRules().trim().isEmpty()
+						&& !LobFileSupport.isLobFile(fileName, tableName);
+				if (isCompressed(tableName) && !LobFileSupport.isLobFile(fileName, tableName)) {
+					final String compressedFileName = fileName;
+					executor.submit(fileName, new TableTaskExecutor.TableTask() {
+						public void run(String fileName) throws Exception {
+							putCompressed(executor, cosClient, tableConfig, compressedFileName, transformed
+									? createTransformer(executor, tableName, tableConfig, transformPool) : null);
+						}
+					});
+				} else if (transformed) {
+					executor.submit(fileName, new TableTaskExecutor.TableTask() {
+						public void run(String fileName) throws Exception {
+							RowTransformer transformer = createTransformer(executor, tableName, tableConfig,
+									transformPool);
+							logger.info("Put File: " + fileName + " (transformed)");
+							executor.acquireCos();
+							try {
+								cosClient.putStream(fileName, transformer.transform(
+										new FileInputStream(config.getExportFileLocation() + fileName)),
+										tableConfig.getCosPartSizeMb(), tableConfig.getCosUploadConcurrency());
+							} finally {
+								executor.releaseCos();
+							}
+						}
+					});
+				} else if (new File(this.config.getExportFileLocation() + fileName).length() < threshold) {
+					smallFiles.add(fileName);
+				} else {
+					executor.submit(fileName, new TableTaskExecutor.TableTask() {
+						public void run(String fileName) throws Exception {
+							logger.info("Put File: " + fileName);
+							executor.acquireCos();
+							try {
+								// cosClient.backupFile(fileName, this.config.getExportFileLocation() +
+								// fileName);
+								cosClient.putMultiPart(fileName, config.getExportFileLocation() + fileName,
+										tableConfig.getCosPartSizeMb(), tableConfig.getCosUploadConcurrency());
+							} finally {
+								executor.releaseCos();
+							}
+						}
+					});
+				}
+			}
+		}
+		int batchSize = this.config.getCosSmallFileBatchSize();
+		for (int i = 0; i < smallFiles.size(); i += batchSize) {
+			final List<String> batch = smallFiles.subList(i, Math.min(i + batchSize, smallFiles.size()));
+			executor.submit(batch.get(0) + " (+" + (batch.size() - 1) + " small files)",
+					new TableTaskExecutor.TableTask() {
+						public void run(String label) throws Exception {
+							for (String fileName : batch) {
+								logger.info("Put File: " + fileName);
+								executor.acquireCos();
+								try {
+									cosClient.putFile(fileName, config.getExportFileLocation() + fileName);
+								} finally {
+									executor.releaseCos();
+								}
+							}
+						}
+					});
+		}
+		logFailures(executor.awaitCompletion());
+		if (transformPool != null) {
+			transformPool.shutdown();
 		}
 		logger.info("TRANSFER PHASE COMPLETED");
 		logger.info("---------------------------------");
 	}
 
+	/**
+	 * Checks the export files of all tables against the target tables.
+	 */
+	public void validateExports() {
+		logger.info("---------------------------------");
+		logger.info("VALIDATE PHASE STARTED");
+		validateTables(getTableNames());
+		logger.info("VALIDATE PHASE FINISHED");
+		logger.info("---------------------------------");
+	}
+
+	/**
+	 * Checks the export files of tables against the columns of the target
+	 * tables. The files of a table are scanned one after the other, each in
+	 * chunks on a pool shared by all tables.
+	 * 
+	 * @param tableNames
+	 *            the tables to check
+	 * @return the tables with rows the load would reject, or that could not be
+	 *         checked
+	 */
+	private Set<String> validateTables(List<String> tableNames) {
+		final Set<String> invalidTables = Collections.synchronizedSet(new HashSet<String>());
+		if (tableNames.isEmpty()) {
+			return invalidTables;
+		}
+		final TableTaskExecutor executor = newExecutor("validate");
+		final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, this.config.getValidateThreads()));
+		try {
+			for (String tableName : tableNames) {
+				executor.submit(tableName, new TableTaskExecutor.TableTask() {
+					public void run(String tableName) throws Exception {
+						try {
+							validateTable(executor, tableName, pool);
+						} catch (Exception e) {
+							invalidTables.add(tableName);
+							throw e;
+						}
+					}
+				});
+			}
+			logFailures(executor.awaitCompletion());
+		} finally {
+			pool.shutdownNow();
+		}
+		return invalidTables;
+	}
+
+	/**
+	 * Checks the export files of one table. LOB files are not checked.
+	 * 
+	 * @param executor
+	 *            the executor providing database sessions
+	 * @param tableName
+	 *            the table name being processed
+	 * @param pool
+	 *            the threads scanning chunks
+	 */
+	private void validateTable(TableTaskExecutor executor, String tableName, ExecutorService pool)
+			throws Exception {
+		ConfigurationBean tableConfig = getTableConfig(tableName);
+		RowTransformer transformer = null;
+		if (!tableConfig.getTransformRules().trim().isEmpty()) {
+			transformer = createTransformer(executor, tableName, tableConfig, null);
+		}
+		ExportFileValidator validator;
+		Connection connection = executor.borrowTargetConnection();
+		try {
+			validator = new ExportFileValidator(connection, tableName, tableConfig, transformer);
+		} finally {
+			executor.releaseTargetConnection(connection);
+		}
+		long rejectedRows = 0;
+		for (String fileName : getExportFileNames(tableName)) {
+			if (LobFileSupport.isLobFile(fileName, tableName)) {
+				continue;
+			}
+			String path = this.config.getExportFileLocation() + fileName;
+			Tracer.Span span = Tracer.begin("statement", "validate " + fileName);
+			String outcome = "failed";
+			try {
+				long fileRejectedRows = validator.validate(path, pool, tableConfig.getValidateChunkMb() * 1024L * 1024L);
+				logger.info("Validated File: " + fileName + "  | Records Rejected: " + fileRejectedRows);
+				span.setBytes(new File(path).length());
+				rejectedRows += fileRejectedRows;
+				outcome = fileRejectedRows == 0 ? "ok" : "rejected";
+			} finally {
+				span.end(outcome);
+			}
+		}
+		if (rejectedRows > 0) {
+			throw new IllegalStateException(
+					rejectedRows + " rows of " + tableName + " would be rejected by the load, see the log above");
+		}
+	}
+
+	/**
+	 * Compresses an export file with gzip and uploads it under its object key.
+	 * The compressed copy is removed after the upload.
+	 * 
+	 * @param executor
+	 *            the executor limiting concurrent requests
+	 * @param cosClient
+	 *            the client to upload with
+	 * @param tableConfig
+	 *            the table's configuration
+	 * @param fileName
+	 *            the export file name
+	 * @param transformer
+	 *            the transformation applied before compression, or null
+	 */
+	private void putCompressed(TableTaskExecutor executor, COSClient cosClient, ConfigurationBean tableConfig,
+			String fileName, RowTransformer transformer) throws IOException, InterruptedException {
+		String compressedFileName = this.config.getExportFileLocation() + fileName + ".gz";
+		Tracer.Span span = Tracer.begin("statement", "gzip " + fileName);
+		InputStream in = new FileInputStream(this.config.getExportFileLocation() + fileName);
+		if (transformer != null) {
+			in = transformer.transform(in);
+		}
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(compressedFileName), 1024 * 1024);
+		try {
+			byte[] buffer = new byte[1024 * 1024];
+			int bytesRead;
+			while ((bytesRead = in.read(buffer)) != -1) {
+				out.write(buffer, 0, bytesRead);
+			}
+		} finally {
+			in.close();
+			out.close();
+			span.setBytes(new File(compressedFileName).length()).end();
+		}
+		logger.info("Put File: " + fileName + ".gz");
+		executor.acquireCos();
+		try {
+			if (new File(compressedFileName).length() < tableConfig.getCosSinglePutThresholdMb() * 1024L * 1024L) {
+				cosClient.putFile(fileName + ".gz", compressedFileName);
+			} else {
+				cosClient.putMultiPart(fileName + ".gz", compressedFileName, tableConfig.getCosPartSizeMb(),
+						tableConfig.getCosUploadConcurrency());
+			}
+		} finally {
+			executor.releaseCos();
+			new File(compressedFileName).delete();
+		}
+	}
+
+	/**
+	 * Creates the transformer for a table's TRANSFORM_RULES. The exported
+	 * column names are read from the source catalog only when a rule refers to
+	 * a column by name.
+	 * 
+	 * @param executor
+	 *            the executor lending source sessions
+	 * @param tableName
+	 *            the name of the table being processed
+	 * @param tableConfig
+	 *            the table's configuration
+	 * @param transformPool
+	 *            the threads transforming blocks
+	 * @return the transformer
+	 */
+	private RowTransformer createTransformer(TableTaskExecutor executor, String tableName,
+			ConfigurationBean tableConfig, ExecutorService transformPool) throws SQLException, InterruptedException {
+		String rules = tableConfig.getTransformRules();
+		List<String> columns = null;
+		if (RowTransformer.refersToColumnNames(rules)) {
+			Connection connection = executor.borrowSourceConnection();
+			try {
+				columns = new ExportProjection(tableConfig).getExportedColumns(connection, tableName);
+			} finally {
+				executor.releaseSourceConnection(connection);
+			}
+		}
+		return new RowTransformer(rules, columns, tableConfig.getExportEscapeCharacter(), transformPool,
+				tableConfig.getTransformThreads());
+	}
+
+	/**
+	 * Gets the names of the export files of a table. This is either the single
+	 * export file or, when the export was sharded, the shard files, followed by
+	 * any LOB files.
+	 * 
+	 * @param tableName
+	 *            the table name being processed
+	 * @return the export file names
+	 */
+	private ArrayList<String> getExportFileNames(String tableName) {
+		ArrayList<String> fileNames = new ArrayList<String>();
+		fileNames.addAll(ExportShards.listFiles(this.config.getExportFileLocation(), tableName));
+		if (fileNames.isEmpty()) {
+			fileNames.add(tableName + ".csv");
+		}
+		fileNames.addAll(LobFileSupport.listLobFiles(this.config.getExportFileLocation(), tableName));
+		return fileNames;
+	}
+
 	/**
 	 * Loads data from a cloud object repository to a remote database.
 	 */
 	public void loadRemoteSystem() {
 		logger.info("---------------------------------");
 		logger.info("LOAD PHASE STARTED");
-		DB2Connection db2conn = new DB2Connection(this.config);
-		Statement statement;
-		//Connection connection = db2conn.getTargetConnection();
-		try {
-			for (String tableName : this.tableNames) {
-				logger.info("Loading Table: " + tableName);
-				String fileName = tableName + ".csv";
-				String db2LoadCommand = getDb2LoadCommand(fileName, tableName);
-				logger.debug("Here is the DB Command:");
-				logger.debug(db2LoadCommand);
-				Connection connection = db2conn.getTargetConnection();
-				statement = connection.createStatement();
-				statement.execute(db2LoadCommand);
-				logger.info("Load File Name: " + fileName + "  | Records Loaded: " + statement.getUpdateCount());
+		logger.info("IBM Cloud Object Repository Load Endpoint: " + getEndpoints().getLoadEndpoint());
+		final TableTaskExecutor executor = newExecutor("load");
+		final DeferredIndexManager indexManager = new DeferredIndexManager(this.config);
+		boolean batchInsertLoad = false;
+		for (String tableName : getTableNames()) {
+			batchInsertLoad |= getTableConfig(tableName).isBatchInsertLoad();
+		}
+		final BatchInsertLoader batchLoader = batchInsertLoad
+				? new BatchInsertLoader(executor, getCosClient()) : null;
+		final TableVerifier verifier = new TableVerifier(this.config, executor);
+		executor.startAdaptiveControl(false);
+		try {
+			for (String tableName : getTableNames()) {
+				executor.submit(tableName, new TableTaskExecutor.TableTask() {
+					public void run(String tableName) throws Exception {
+						loadTable(executor, indexManager, batchLoader, verifier, tableName);
+					}
+				});
 			}
-		} catch (SQLException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			logFailures(executor.awaitCompletion());
+		} finally {
+			if (batchLoader != null) {
+				batchLoader.shutdown();
+			}
+			verifier.shutdown();
+			indexManager.rebuild();
 		}
 		logger.info("LOAD PHASE FINISHED");
 		logger.info("---------------------------------");
 	}
 
+	/**
+	 * Restores tables from their objects in a cloud object repository into the
+	 * source database, for reverse migrations and restores of archived exports.
+	 * The objects are downloaded to the export file location with concurrent
+	 * ranged GETs, verified against their checksums and loaded with LOAD.
+	 */
+	public void restoreTables() {
+		logger.info("---------------------------------");
+		logger.info("RESTORE PHASE STARTED");
+		final TableTaskExecutor executor = newExecutor("restore");
+		final COSClient cosClient = getCosClient();
+		for (String tableName : getTableNames()) {
+			executor.submit(tableName, new TableTaskExecutor.TableTask() {
+				public void run(String tableName) throws Exception {
+					restoreTable(executor, cosClient, tableName);
+				}
+			});
+		}
+		logFailures(executor.awaitCompletion());
+		logger.info("RESTORE PHASE COMPLETED");
+		logger.info("---------------------------------");
+	}
+
+	/**
+	 * Downloads the objects of one table and loads its export files, one after
+	 * the other, over one source session.
+	 * 
+	 * @param executor
+	 *            the executor limiting concurrent requests and sessions
+	 * @param cosClient
+	 *            the client to download with
+	 * @param tableName
+	 *            the name of the table being processed
+	 */
+	private void restoreTable(TableTaskExecutor executor, COSClient cosClient, String tableName)
+			throws IOException, InterruptedException, SQLException {
+		ConfigurationBean tableConfig = getTableConfig(tableName);
+		String location = this.config.getExportFileLocation();
+		ArrayList<String> fileNames = new ArrayList<String>();
+		boolean hasLobFiles = false;
+		for (String objectKey : cosClient.listObjects(tableName + ".")) {
+			String fileName = objectKey.endsWith(".gz") ? objectKey.substring(0, objectKey.length() - 3) : objectKey;
+			boolean lobFile = LobFileSupport.isLobFile(fileName, tableName);
+			if (!lobFile && !fileName.equals(tableName + ".csv") && !ExportShards.isShardFile(fileName, tableName)) {
+				continue;
+			}
+			logger.info("Get File: " + objectKey);
+			executor.acquireCos();
+			try {
+				cosClient.getMultiPart(objectKey, location + objectKey, tableConfig.getCosPartSizeMb(),
+						tableConfig.getCosDownloadConcurrency());
+			} finally {
+				executor.releaseCos();
+			}
+			if (!objectKey.equals(fileName)) {
+				decompress(location + objectKey, location + fileName);
+			}
+			if (lobFile) {
+				hasLobFiles = true;
+			} else {
+				fileNames.add(fileName);
+			}
+		}
+		if (fileNames.isEmpty()) {
+			throw new IOException("No objects found for table " + tableName);
+		}
+		Connection connection = executor.borrowSourceConnection();
+		try {
+			for (String fileName : fileNames) {
+				String db2LoadCommand = getDb2RestoreCommand(fileName, tableName, hasLobFiles);
+				logger.debug(db2LoadCommand);
+				Tracer.Span span = Tracer.begin("statement", "restore " + fileName)
+						.setBytes(new File(location + fileName).length());
+				String outcome = "failed";
+				try {
+					Statement statement = connection.createStatement();
+					ResultSet resultSet = statement.executeQuery(db2LoadCommand);
+					long rowsLoaded = 0;
+					if (resultSet.next()) {
+						rowsLoaded = resultSet.getLong("ROWS_LOADED");
+					}
+					statement.close();
+					logger.info("Restore File Name: " + fileName + "  | Records Loaded: " + rowsLoaded);
+					span.setRows(rowsLoaded);
+					outcome = "ok";
+				} finally {
+					span.end(outcome);
+				}
+			}
+		} finally {
+			executor.releaseSourceConnection(connection);
+		}
+	}
+
+	/**
+	 * Decompresses a downloaded gzip file next to it and removes the compressed
+	 * copy.
+	 * 
+	 * @param compressedFileName
+	 *            the full path of the gzip file
+	 * @param fileName
+	 *            the full path of the file to write
+	 */
+	private void decompress(String compressedFileName, String fileName) throws IOException {
+		Tracer.Span span = Tracer.begin("statement", "gunzip " + compressedFileName);
+		InputStream in = new GZIPInputStream(new FileInputStream(compressedFileName), 1024 * 1024);
+		OutputStream out = new FileOutputStream(fileName);
+		try {
+			byte[] buffer = new byte[1024 * 1024];
+			int bytesRead;
+			while ((bytesRead = in.read(buffer)) != -1) {
+				out.write(buffer, 0, bytesRead);
+			}
+		} finally {
+			in.close();
+			out.close();
+			span.setBytes(new File(fileName).length()).end();
+		}
+		new File(compressedFileName).delete();
+	}
+
+	/**
+	 * Estimates how long the migration of the tables will take. A sample of the
+	 * largest table is exported, uploaded and loaded into a copy of the target
+	 * table to calibrate the estimate.
+	 */
+	public void planMigration() {
+		logger.info("---------------------------------");
+		logger.info("PLAN PHASE STARTED");
+		getEndpoints();
+		final TableTaskExecutor executor = newExecutor("plan");
+		executor.submit("plan", new TableTaskExecutor.TableTask() {
+			public void run(String label) throws Exception {
+				MigrationPlanner planner = new MigrationPlanner(Db2Migrator.this,
+						new Db2CalibrationProbes(Db2Migrator.this, executor, getCosClient()));
+				planner.plan(getTableNames());
+				String report = planner.getReport();
+				logger.info(System.lineSeparator() + report);
+				System.out.println(report);
+			}
+		});
+		logFailures(executor.awaitCompletion());
+		logger.info("PLAN PHASE FINISHED");
+		logger.info("---------------------------------");
+	}
+
+	/**
+	 * Verifies loaded tables against the source by comparing row counts and row
+	 * hash sums computed on both databases.
+	 */
+	public void verifyTables() {
+		logger.info("---------------------------------");
+		logger.info("VERIFY PHASE STARTED");
+		final TableTaskExecutor executor = newExecutor("verify");
+		final TableVerifier verifier = new TableVerifier(this.config, executor);
+		final AtomicLong mismatchedTables = new AtomicLong();
+		for (String tableName : getTableNames()) {
+			executor.submit(tableName, new TableTaskExecutor.TableTask() {
+				public void run(String tableName) throws Exception {
+					if (!verifier.verify(tableName, getTableConfig(tableName))) {
+						mismatchedTables.incrementAndGet();
+					}
+				}
+			});
+		}
+		logFailures(executor.awaitCompletion());
+		verifier.shutdown();
+		if (mismatchedTables.get() > 0) {
+			logger.error(mismatchedTables.get() + " table(s) do not match the source");
+		}
+		logger.info("VERIFY PHASE FINISHED");
+		logger.info("---------------------------------");
+	}
+
+	/**
+	 * Loads one table from cloud object storage.
+	 * 
+	 * @param executor
+	 *            the executor providing database sessions
+	 * @param indexManager
+	 *            collects the indexes deferred until after the load
+	 * @param batchLoader
+	 *            loads the objects of tables in BATCH_INSERT mode
+	 * @param verifier
+	 *            verifies staging tables before they are swapped in
+	 * @param tableName
+	 *            the table name to load
+	 */
+	private void loadTable(TableTaskExecutor executor, DeferredIndexManager indexManager,
+			BatchInsertLoader batchLoader, TableVerifier verifier, String tableName) throws Exception {
+		logger.info("Loading Table: " + tableName);
+		ConfigurationBean tableConfig = getTableConfig(tableName);
+		if (!tableConfig.isBatchInsertLoad()) {
+			batchLoader = null;
+		}
+		String fileName = tableName + ".csv";
+		List<String> fileNames = Collections.singletonList(fileName);
+		boolean loaded = false;
+		String externalColumns;
+		StagingTable staging = null;
+		String loadTableName = tableName;
+		Connection connection = executor.borrowTargetConnection();
+		try {
+			externalColumns = new ExportProjection(tableConfig).getExternalColumnDefinitions(connection, tableName);
+			if (tableConfig.isTargetLoadStaging()) {
+				// the staging table is created without indexes, so there is nothing to defer
+				staging = new StagingTable(connection, tableName, tableConfig);
+				staging.create(connection);
+				loadTableName = staging.getQualifiedName();
+			} else if (tableConfig.isTargetDeferIndexes()) {
+				indexManager.defer(connection, tableName);
+			}
+			boolean lobFiles = tableConfig.isLobsToFiles() && LobFileSupport.hasLobColumns(connection, tableName);
+			if (tableConfig.getExportShards() > 1 && !lobFiles) {
+				fileNames = ExportShards.getFileNames(tableName, tableConfig.getExportShards());
+			}
+			if (this.config.isCosVerifyChecksum()) {
+				// every object is checked before any of them is loaded
+				for (String objectFileName : fileNames) {
+					getCosClient().verifyChecksum(getObjectKey(tableName, objectFileName));
+				}
+			}
+			if (lobFiles) {
+				loadLobTable(connection, fileName, tableName, loadTableName);
+				loaded = true;
+			} else if (fileNames.size() == 1 && batchLoader == null) {
+				Tracer.Span span = Tracer.begin("statement", "load " + fileName);
+				String outcome = "failed";
+				if (staging != null) {
+					staging.beginLoad(connection);
+				}
+				try {
+					String db2LoadCommand = getDb2LoadCommand(getObjectKey(tableName, fileName), loadTableName,
+							tableConfig, externalColumns);
+					logger.debug("Here is the DB Command:");
+					logger.debug(db2LoadCommand);
+					Statement statement = connection.createStatement();
+					statement.execute(db2LoadCommand);
+					logger.info("Load File Name: " + fileName + "  | Records Loaded: " + statement.getUpdateCount());
+					span.setRows(statement.getUpdateCount());
+					statement.close();
+					if (staging != null) {
+						staging.endLoad(connection, true);
+					}
+					outcome = "ok";
+				} finally {
+					if (staging != null && !outcome.equals("ok")) {
+						staging.endLoad(connection, false);
+					}
+					span.end(outcome);
+				}
+				loaded = true;
+			}
+		} finally {
+			executor.releaseTargetConnection(connection);
+		}
+		if (!loaded && batchLoader != null) {
+			// the loader borrows its own sessions, so the table's session is released first
+			long rowsLoaded = 0;
+			for (String objectFileName : fileNames) {
+				rowsLoaded += batchLoader.load(getObjectKey(tableName, objectFileName), loadTableName, tableConfig);
+			}
+			logger.info("Load Table: " + tableName + "  | Records Loaded: " + rowsLoaded);
+		} else if (!loaded) {
+			loadShards(executor, tableName, loadTableName, fileNames, externalColumns);
+		}
+		if (staging != null) {
+			swapStagingTable(executor, verifier, staging, tableName, tableConfig);
+		}
+	}
+
+	/**
+	 * Builds the indexes of a loaded staging table, verifies it against the
+	 * source when TARGET_STAGING_VERIFY is set and swaps it in. A staging table
+	 * that does not match is left in place and the target is not changed.
+	 * 
+	 * @param executor
+	 *            the executor providing database sessions
+	 * @param verifier
+	 *            compares the staging table with the source
+	 * @param staging
+	 *            the loaded staging table
+	 * @param tableName
+	 *            the table name being loaded
+	 * @param tableConfig
+	 *            the table's configuration
+	 */
+	private void swapStagingTable(TableTaskExecutor executor, TableVerifier verifier, StagingTable staging,
+			String tableName, ConfigurationBean tableConfig) throws Exception {
+		Connection connection = executor.borrowTargetConnection();
+		try {
+			staging.prepareSwap(connection);
+		} finally {
+			executor.releaseTargetConnection(connection);
+		}
+		if (tableConfig.isTargetStagingVerify()
+				&& !verifier.verify(tableName, tableConfig, staging.getQualifiedName())) {
+			throw new IllegalStateException(
+					"Staging table " + staging.getQualifiedName() + " does not match the source, " + tableName
+							+ " was not swapped");
+		}
+		connection = executor.borrowTargetConnection();
+		try {
+			staging.swap(connection);
+		} finally {
+			executor.releaseTargetConnection(connection);
+		}
+	}
+
+	/**
+	 * Loads a table with LOB columns using LOAD with LOBS FROM, reading both the
+	 * DEL object and its LOB objects through the target's remote storage alias.
+	 * 
+	 * @param connection
+	 *            the target connection
+	 * @param fileName
+	 *            the name of the DEL object
+	 * @param tableName
+	 *            the name of the table being processed
+	 * @param loadTableName
+	 *            the table to load into, the table itself or its staging table
+	 */
+	private void loadLobTable(Connection connection, String fileName, String tableName, String loadTableName)
+			throws SQLException {
+		String db2LoadCommand = getDb2LobLoadCommand(fileName, tableName, loadTableName);
+		logger.debug("Here is the DB Command:");
+		logger.debug(db2LoadCommand);
+		Tracer.Span span = Tracer.begin("statement", "load lobs " + fileName);
+		String outcome = "failed";
+		try {
+			Statement statement = connection.createStatement();
+			ResultSet resultSet = statement.executeQuery(db2LoadCommand);
+			long rowsLoaded = 0;
+			if (resultSet.next()) {
+				rowsLoaded = resultSet.getLong("ROWS_LOADED");
+			}
+			statement.close();
+			logger.info("Load File Name: " + fileName + "  | Records Loaded: " + rowsLoaded);
+			span.setRows(rowsLoaded);
+			outcome = "ok";
+		} finally {
+			span.end(outcome);
+		}
+	}
+
+	/**
+	 * Loads the shard files of a table in parallel, using one target session
+	 * per shard file.
+	 * 
+	 * @param executor
+	 *            the executor providing database sessions
+	 * @param tableName
+	 *            the name of the table being processed
+	 * @param loadTableName
+	 *            the table to load into, the table itself or its staging table
+	 * @param fileNames
+	 *            the shard file names
+	 * @param externalColumns
+	 *            the column definitions of the external table, empty when all
+	 *            columns are exported
+	 * @throws Exception
+	 *             the failure of the first shard file that could not be loaded,
+	 *             once all shard loads have ended.
+	 */
+	private void loadShards(final TableTaskExecutor executor, final String tableName, final String loadTableName,
+			List<String> fileNames, final String externalColumns) throws Exception {
+		ExecutorService shardExecutor = Executors.newFixedThreadPool(fileNames.size());
+		ArrayList<Future<Long>> loads = new ArrayList<Future<Long>>();
+		try {
+			for (final String fileName : fileNames) {
+				loads.add(shardExecutor.submit(new Callable<Long>() {
+					public Long call() throws Exception {
+						Connection connection = executor.borrowTargetConnection();
+						Tracer.Span span = Tracer.begin("statement", "load " + fileName);
+						String outcome = "failed";
+						try {
+							Statement statement = connection.createStatement();
+							statement.execute(getDb2LoadCommand(getObjectKey(tableName, fileName), loadTableName,
+									getTableConfig(tableName), externalColumns));
+							long rows = statement.getUpdateCount();
+							logger.info("Load File Name: " + fileName + "  | Records Loaded: " + rows);
+							span.setRows(rows);
+							statement.close();
+							outcome = "ok";
+							return rows;
+						} finally {
+							span.end(outcome);
+							executor.releaseTargetConnection(connection);
+						}
+					}
+				}));
+			}
+			long rowsLoaded = awaitFiles(loads, fileNames, "Load");
+			logger.info("Load Table: " + tableName + "  | Records Loaded: " + rowsLoaded);
+		} finally {
+			shardExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reports tables that failed during a phase.
+	 * 
+	 * @param failures
+	 *            the number of failed tables
+	 */
+	private void logFailures(int failures) {
+		this.failures.addAndGet(failures);
+		if (failures > 0) {
+			logger.error(failures + " table(s) failed, see the log above for details");
+		}
+	}
+
 	/**
 	 * Generates an export command based on the current table name.
 	 * 
@@ -156,30 +1422,139 @@ public class Db2Migrator {
 	 *            the file name to write data to
 	 * @param tableName
 	 *            the table name to select data from.
+	 * @param predicate
+	 *            the condition selecting the rows to export, null for all rows
+	 * @param orderBy
+	 *            the ORDER BY clause of the export query, empty for none
 	 * @return the Db2 export command
 	 */
-	private String getDb2ExportCommand(String fileName, String tableName) {
+	private String getDb2ExportCommand(String fileName, String tableName, String predicate, String orderBy) {
 		String command = "CALL SYSPROC.ADMIN_CMD ('EXPORT to " + config.getExportFileLocation() + fileName
-				+ " OF DEL MODIFIED BY NOCHARDEL COLDEL| MESSAGES ON SERVER select * from " + tableName + "')";
+				+ " OF DEL MODIFIED BY NOCHARDEL COLDEL| MESSAGES ON SERVER "
+				+ getAdminCmdExportQuery(tableName, predicate, orderBy) + "')";
 		return command;
 	}
 
 	/**
-	 * Generates a load command based on the current table name.
+	 * Generates an export command for a table with LOB columns. LOB and XML
+	 * values are written to separate files next to the export file, under the
+	 * table's LOB file base name so they are uploaded with the LOB files.
+	 * 
+	 * @param fileName
+	 *            the file name to write data to
+	 * @param tableName
+	 *            the table name to select data from.
+	 * @param orderBy
+	 *            the ORDER BY clause of the export query, empty for none
+	 * @return the Db2 export command
+	 */
+	private String getDb2LobExportCommand(String fileName, String tableName, String orderBy) {
+		String command = "CALL SYSPROC.ADMIN_CMD ('EXPORT to " + config.getExportFileLocation() + fileName
+				+ " OF DEL LOBS TO " + config.getExportFileLocation() + " LOBFILE "
+				+ LobFileSupport.getLobFileBaseName(tableName) + " XML TO " + config.getExportFileLocation()
+				+ " XMLFILE " + LobFileSupport.getLobFileBaseName(tableName)
+				+ " MODIFIED BY LOBSINFILE NOCHARDEL COLDEL| MESSAGES ON SERVER "
+				+ getAdminCmdExportQuery(tableName, null, orderBy) + "')";
+		return command;
+	}
+
+	/**
+	 * Gets the export query of a table, with its quotes doubled for use inside
+	 * an ADMIN_CMD string.
+	 * 
+	 * @param tableName
+	 *            the table name to select data from.
+	 * @param predicate
+	 *            the condition selecting the rows to export, null for all rows
+	 * @param orderBy
+	 *            the ORDER BY clause of the export query, empty for none
+	 * @return the escaped select statement
+	 */
+	private String getAdminCmdExportQuery(String tableName, String predicate, String orderBy) {
+		return (new ExportProjection(getTableConfig(tableName)).getExportQuery(tableName, predicate) + orderBy)
+				.replace("'", "''");
+	}
+
+	/**
+	 * Generates a load command for a table with LOB columns. The DEL object and
+	 * its LOB and XML objects are read through the remote storage alias configured on
+	 * the target for the bucket. LOAD reads the export's default date and time
+	 * formats, so no timestamp format is passed.
 	 * 
 	 * @param fileName
 	 *            The name of the file / object key to read from cloud object
 	 *            storage
 	 * @param tableName
 	 *            the name of the table being processed
+	 * @param loadTableName
+	 *            the table to load into
+	 * @return the Db2 load command
+	 */
+	private String getDb2LobLoadCommand(String fileName, String tableName, String loadTableName) {
+		String remotePath = "DB2REMOTE://" + this.config.getTargetStorageAlias() + "//";
+		String command = "CALL SYSPROC.ADMIN_CMD ('LOAD FROM " + remotePath + fileName + " OF DEL LOBS FROM "
+				+ remotePath + " XML FROM " + remotePath + " MODIFIED BY LOBSINFILE NOCHARDEL COLDEL| MESSAGES ON SERVER INSERT INTO "
+				+ loadTableName + new ExportProjection(getTableConfig(tableName)).getInsertColumnList() + " NONRECOVERABLE')";
+		return command;
+	}
+
+	/**
+	 * Generates the command that loads a downloaded export file into the
+	 * source database. The file is read from the export file location on the
+	 * database server, like the server side export writes it.
+	 * 
+	 * @param fileName
+	 *            the name of the export file
+	 * @param tableName
+	 *            the name of the table being processed
+	 * @param lobsInFiles
+	 *            whether the table's LOB values are in LOB files
 	 * @return the Db2 load command
 	 */
-	private String getDb2LoadCommand(String fileName, String tableName) {
-		String command = "insert into " + tableName + " select * from external '" + fileName
-				+ "' using (s3('s3.us-east.cloud-object-storage.appdomain.cloud', '" + this.config.getAccessKeyId() + "', '"
-				+ this.config.getSecretAccessKey() + "', '" + this.config.getBucketName() + "' ) " + this.config.getTargetLoadArgs() + " ";
-		if (this.config.isUseTargetTimestampFormat()) {
-			command = command + "TIMESTAMP_FORMAT '" + this.config.getTargetTimestampFormat() + "'";
+	private String getDb2RestoreCommand(String fileName, String tableName, boolean lobsInFiles) {
+		String location = this.config.getExportFileLocation();
+		String command = "CALL SYSPROC.ADMIN_CMD ('LOAD FROM " + location + fileName + " OF DEL "
+				+ (lobsInFiles ? "LOBS FROM " + location + " XML FROM " + location + " MODIFIED BY LOBSINFILE "
+						: "MODIFIED BY ")
+				+ "NOCHARDEL COLDEL| MESSAGES ON SERVER INSERT INTO " + tableName
+				+ new ExportProjection(getTableConfig(tableName)).getInsertColumnList() + " NONRECOVERABLE')";
+		return command;
+	}
+
+	/**
+	 * Builds the statement that loads one object into a table through an
+	 * external table. Objects with a .gz key are read with COMPRESS GZIP, and
+	 * client side exports with an escape character are read with the matching
+	 * ESCAPECHAR unless TARGET_LOAD_ARGS already sets one.
+	 * 
+	 * @param objectKey
+	 *            the key of the object to load
+	 * @param tableName
+	 *            the table to insert into
+	 * @param tableConfig
+	 *            the configuration of the table the object was exported from
+	 * @param externalColumns
+	 *            the external table's column definitions, empty to use the
+	 *            columns of the table
+	 * @return the load statement
+	 */
+	public String getDb2LoadCommand(String objectKey, String tableName, ConfigurationBean tableConfig,
+			String externalColumns) {
+		String command = "insert into " + tableName + new ExportProjection(tableConfig).getInsertColumnList()
+				+ " select * from external '" + objectKey + "'" + externalColumns
+				+ " using (" + EndpointResolver.getS3Option(this.config, getEndpoints().getLoadEndpoint()) + " "
+				+ tableConfig.getTargetLoadArgs() + " ";
+		if (objectKey.endsWith(".gz")) {
+			command = command + "COMPRESS GZIP ";
+		}
+		char escapeCharacter = tableConfig.getExportEscapeCharacter();
+		if (tableConfig.isExportClientSide() && escapeCharacter != 0
+				&& !tableConfig.getTargetLoadArgs().toUpperCase().contains("ESCAPECHAR")) {
+			command = command + "ESCAPECHAR '" + (escapeCharacter == '\'' ? "''" : String.valueOf(escapeCharacter))
+					+ "' ";
+		}
+		if (tableConfig.isUseTargetTimestampFormat()) {
+			command = command + "TIMESTAMP_FORMAT '" + tableConfig.getTargetTimestampFormat() + "'";
 		}
 		command = command + ")";
 		return command;
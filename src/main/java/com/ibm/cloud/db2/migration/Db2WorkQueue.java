@@ -0,0 +1,221 @@
+package com.ibm.cloud.db2.migration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A work queue kept in a control table on the target database, for workers on
+ * hosts that share no file system. Claims are made with a conditional update,
+ * so two workers can never lease the same table, and lease expiry uses the
+ * clock of the database server.
+ */
+public class Db2WorkQueue implements WorkQueue {
+	private static Log logger = LogFactory.getLog(Db2WorkQueue.class);
+
+	/**
+	 * The session used for queue operations
+	 */
+	private Connection connection = null;
+
+	/**
+	 * The name of the control table
+	 */
+	private String queueTable = "";
+
+	/**
+	 * Constructor. Creates the control table when it does not exist.
+	 * 
+	 * @param config
+	 *            the utility configuration.
+	 * @param queueTable
+	 *            the name of the control table.
+	 * @throws SQLException
+	 */
+	public Db2WorkQueue(ConfigurationBean config, String queueTable) throws SQLException {
+		super();
+		this.queueTable = queueTable;
+		this.connection = new DB2Connection(config).getTargetConnection();
+		Statement statement = this.connection.createStatement();
+		try {
+			statement.execute("CREATE TABLE " + queueTable + " (SEQ INTEGER NOT NULL, "
+					+ "TABLE_NAME VARCHAR(512) NOT NULL PRIMARY KEY, STATUS VARCHAR(10) NOT NULL, "
+					+ "ATTEMPTS INTEGER NOT NULL DEFAULT 0, WORKER VARCHAR(256), LEASE_EXPIRES TIMESTAMP, "
+					+ "MESSAGE VARCHAR(1024))");
+			logger.info("Created work queue table " + queueTable);
+		} catch (SQLException e) {
+			// SQL0601N: the table already exists
+			if (e.getErrorCode() != -601) {
+				throw e;
+			}
+		} finally {
+			statement.close();
+		}
+	}
+
+	public synchronized void enqueue(List<String> tableNames) throws SQLException {
+		PreparedStatement statement = this.connection.prepareStatement("INSERT INTO " + this.queueTable
+				+ " (SEQ, TABLE_NAME, STATUS) SELECT CAST(? AS INTEGER), CAST(? AS VARCHAR(512)), '" + PENDING
+				+ "' FROM SYSIBM.SYSDUMMY1 WHERE NOT EXISTS (SELECT 1 FROM " + this.queueTable + " WHERE TABLE_NAME = ?)");
+		try {
+			for (int i = 0; i < tableNames.size(); i++) {
+				statement.setInt(1, i);
+				statement.setString(2, tableNames.get(i));
+				statement.setString(3, tableNames.get(i));
+				statement.executeUpdate();
+			}
+		} finally {
+			statement.close();
+		}
+	}
+
+	public synchronized WorkItem claim(String workerId, int leaseSeconds) throws SQLException {
+		PreparedStatement select = this.connection.prepareStatement("SELECT TABLE_NAME, ATTEMPTS FROM "
+				+ this.queueTable + " WHERE STATUS = '" + PENDING + "' ORDER BY SEQ FETCH FIRST 1 ROWS ONLY");
+		PreparedStatement update = this.connection.prepareStatement("UPDATE " + this.queueTable + " SET STATUS = '"
+				+ LEASED + "', ATTEMPTS = ATTEMPTS + 1, WORKER = ?, "
+				+ "LEASE_EXPIRES = CURRENT TIMESTAMP + CAST(? AS INTEGER) SECONDS WHERE TABLE_NAME = ? AND STATUS = '" + PENDING + "' AND ATTEMPTS = ?");
+		try {
+			// another worker may claim the same row between the select and the update
+			while (true) {
+				ResultSet resultSet = select.executeQuery();
+				if (!resultSet.next()) {
+					return null;
+				}
+				String tableName = resultSet.getString(1);
+				int attempts = resultSet.getInt(2);
+				resultSet.close();
+				update.setString(1, workerId);
+				update.setInt(2, leaseSeconds);
+				update.setString(3, tableName);
+				update.setInt(4, attempts);
+				if (update.executeUpdate() == 1) {
+					return new WorkItem(tableName, attempts + 1);
+				}
+			}
+		} finally {
+			select.close();
+			update.close();
+		}
+	}
+
+	public synchronized boolean renew(WorkItem item, String workerId, int leaseSeconds) throws SQLException {
+		PreparedStatement statement = this.connection.prepareStatement("UPDATE " + this.queueTable
+				+ " SET LEASE_EXPIRES = CURRENT TIMESTAMP + CAST(? AS INTEGER) SECONDS" + getLeasedCondition());
+		try {
+			statement.setInt(1, leaseSeconds);
+			setLeasedParameters(statement, 2, item, workerId);
+			return statement.executeUpdate() == 1;
+		} finally {
+			statement.close();
+		}
+	}
+
+	public synchronized void complete(WorkItem item, String workerId) throws SQLException {
+		PreparedStatement statement = this.connection.prepareStatement(
+				"UPDATE " + this.queueTable + " SET STATUS = '" + DONE + "', MESSAGE = NULL" + getLeasedCondition());
+		try {
+			setLeasedParameters(statement, 1, item, workerId);
+			statement.executeUpdate();
+		} finally {
+			statement.close();
+		}
+	}
+
+	public synchronized void fail(WorkItem item, String workerId, String message, int maxAttempts)
+			throws SQLException {
+		PreparedStatement statement = this.connection.prepareStatement("UPDATE " + this.queueTable
+				+ " SET STATUS = CASE WHEN ATTEMPTS >= ? THEN '" + FAILED + "' ELSE '" + PENDING + "' END, "
+				+ "MESSAGE = ?" + getLeasedCondition());
+		try {
+			statement.setInt(1, maxAttempts);
+			statement.setString(2, truncate(message));
+			setLeasedParameters(statement, 3, item, workerId);
+			statement.executeUpdate();
+		} finally {
+			statement.close();
+		}
+	}
+
+	public synchronized int reassignExpired(int maxAttempts) throws SQLException {
+		PreparedStatement statement = this.connection.prepareStatement("UPDATE " + this.queueTable
+				+ " SET STATUS = CASE WHEN ATTEMPTS >= ? THEN '" + FAILED + "' ELSE '" + PENDING + "' END, "
+				+ "MESSAGE = 'lease of ' || WORKER || ' expired' "
+				+ "WHERE STATUS = '" + LEASED + "' AND LEASE_EXPIRES < CURRENT TIMESTAMP");
+		try {
+			statement.setInt(1, maxAttempts);
+			return statement.executeUpdate();
+		} finally {
+			statement.close();
+		}
+	}
+
+	public synchronized Map<String, Integer> getStatusCounts() throws SQLException {
+		Statement statement = this.connection.createStatement();
+		try {
+			ResultSet resultSet = statement
+					.executeQuery("SELECT STATUS, COUNT(*) FROM " + this.queueTable + " GROUP BY STATUS");
+			TreeMap<String, Integer> counts = new TreeMap<String, Integer>();
+			while (resultSet.next()) {
+				counts.put(resultSet.getString(1).trim(), resultSet.getInt(2));
+			}
+			return counts;
+		} finally {
+			statement.close();
+		}
+	}
+
+	public synchronized void close() {
+		try {
+			this.connection.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * The condition matching a table while the worker holds its lease.
+	 */
+	private String getLeasedCondition() {
+		return " WHERE TABLE_NAME = ? AND STATUS = '" + LEASED + "' AND WORKER = ? AND ATTEMPTS = ?";
+	}
+
+	/**
+	 * Sets the parameters of {@link #getLeasedCondition()}.
+	 */
+	private void setLeasedParameters(PreparedStatement statement, int first, WorkItem item, String workerId)
+			throws SQLException {
+		statement.setString(first, item.getTableName());
+		statement.setString(first + 1, workerId);
+		statement.setInt(first + 2, item.getAttempt());
+	}
+
+	/**
+	 * Shortens a message to fit the MESSAGE column.
+	 */
+	private static String truncate(String message) {
+		return message.length() > 1000 ? message.substring(0, 1000) : message;
+	}
+}
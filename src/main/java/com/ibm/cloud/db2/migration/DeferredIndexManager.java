@@ -0,0 +1,358 @@
+package com.ibm.cloud.db2.migration;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Removes the cost of index and constraint maintenance from the load phase.
+ * Before a table is loaded its non-unique secondary indexes are captured and
+ * dropped, and its foreign key and check constraints are set to NOT ENFORCED.
+ * After the load the indexes are recreated in parallel, the constraints are
+ * enforced again and SET INTEGRITY is used to check the loaded rows. The
+ * statements that undo each change are appended to DEFERRED_DDL_FILE in the
+ * export location before the change is made, so an interrupted run can be
+ * recovered by running them.
+ */
+public class DeferredIndexManager {
+	private static Log logger = LogFactory.getLog(DeferredIndexManager.class);
+
+	/**
+	 * The file the statements recreating dropped indexes and enforcing
+	 * constraints again are written to
+	 */
+	public static final String DEFERRED_DDL_FILE = "DB2MIGRATOR_DEFERRED_DDL.sql";
+
+	/**
+	 * Utility configuration
+	 */
+	private ConfigurationBean config = null;
+
+	/**
+	 * The tables that have been deferred and still need to be rebuilt.
+	 */
+	private ArrayList<DeferredTable> deferredTables = new ArrayList<DeferredTable>();
+
+	/**
+	 * Has a statement been saved to DEFERRED_DDL_FILE
+	 */
+	private boolean ddlSaved = false;
+
+	/**
+	 * Was DEFERRED_DDL_FILE left by an earlier run, so it must be kept
+	 */
+	private boolean keepDdlFile = false;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param config
+	 *            the utility configuration.
+	 */
+	public DeferredIndexManager(ConfigurationBean config) {
+		super();
+		this.config = config;
+	}
+
+	/**
+	 * Captures the index and constraint definitions of a target table, then
+	 * drops the indexes and stops enforcing the constraints. Each index and
+	 * constraint is recorded as soon as it has been changed, so rebuild()
+	 * restores the ones changed before a failure.
+	 * 
+	 * @param connection
+	 *            the connection to the target database.
+	 * @param tableName
+	 *            the name of the table as listed in the table names file.
+	 * @throws SQLException
+	 */
+	public void defer(Connection connection, String tableName) throws SQLException {
+		TableName table = TableName.parse(tableName);
+		DeferredTable captured = new DeferredTable();
+		captured.schema = table.getSchema(connection);
+		captured.name = table.getName();
+		captured.qualifiedName = table.getQualifiedName(connection);
+		captureIndexes(connection, captured);
+		captureConstraints(connection, captured);
+		DeferredTable deferred = new DeferredTable();
+		deferred.schema = captured.schema;
+		deferred.name = captured.name;
+		deferred.qualifiedName = captured.qualifiedName;
+		synchronized (this.deferredTables) {
+			this.deferredTables.add(deferred);
+		}
+		Statement statement = connection.createStatement();
+		try {
+			for (int i = 0; i < captured.indexNames.size(); i++) {
+				logger.info("Dropping index " + captured.indexNames.get(i) + " on " + captured.qualifiedName
+						+ ", recreated by: " + captured.indexDdl.get(i));
+				saveDdl(captured.indexDdl.get(i));
+				statement.execute("DROP INDEX " + captured.indexNames.get(i));
+				deferred.indexNames.add(captured.indexNames.get(i));
+				deferred.indexDdl.add(captured.indexDdl.get(i));
+			}
+			for (int i = 0; i < captured.constraintNames.size(); i++) {
+				logger.info("Not enforcing constraint " + captured.constraintNames.get(i) + " on "
+						+ captured.qualifiedName);
+				saveDdl(getEnforceDdl(captured, i, "ENFORCED"));
+				statement.execute(getEnforceDdl(captured, i, "NOT ENFORCED"));
+				deferred.constraintNames.add(captured.constraintNames.get(i));
+				deferred.constraintKinds.add(captured.constraintKinds.get(i));
+			}
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Recreates all dropped indexes in parallel, enforces the constraints again
+	 * and checks the integrity of every deferred table.
+	 */
+	public void rebuild() {
+		if (this.deferredTables.isEmpty()) {
+			return;
+		}
+		logger.info("Rebuilding deferred indexes using " + this.config.getTargetIndexRebuildParallelism()
+				+ " sessions");
+		ExecutorService executor = Executors.newFixedThreadPool(this.config.getTargetIndexRebuildParallelism());
+		final AtomicInteger failures = new AtomicInteger();
+		for (DeferredTable deferred : this.deferredTables) {
+			for (final String indexDdl : deferred.indexDdl) {
+				executor.submit(new Runnable() {
+					public void run() {
+						if (!createIndex(indexDdl)) {
+							failures.incrementAndGet();
+						}
+					}
+				});
+			}
+		}
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			Connection connection = new DB2Connection(this.config).getTargetConnection();
+			for (DeferredTable deferred : this.deferredTables) {
+				enforceConstraints(connection, deferred);
+			}
+			connection.close();
+		} catch (SQLException e) {
+			failures.incrementAndGet();
+			e.printStackTrace();
+		}
+		this.deferredTables.clear();
+		if (failures.get() == 0 && !this.keepDdlFile) {
+			new File(getDdlFileName()).delete();
+		} else {
+			logger.error("Not all deferred indexes and constraints were restored, the statements restoring them are in "
+					+ getDdlFileName());
+		}
+	}
+
+	/**
+	 * Appends a statement undoing a change to DEFERRED_DDL_FILE before the
+	 * change is made.
+	 */
+	private synchronized void saveDdl(String ddl) throws SQLException {
+		if (!this.ddlSaved && new File(getDdlFileName()).exists()) {
+			logger.warn(getDdlFileName() + " was left by an earlier run and may still hold statements to restore");
+			this.keepDdlFile = true;
+		}
+		this.ddlSaved = true;
+		try {
+			Writer writer = new FileWriter(getDdlFileName(), true);
+			try {
+				writer.write(ddl + ";" + System.lineSeparator());
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			throw new SQLException("Cannot save " + ddl + " to " + getDdlFileName(), e);
+		}
+	}
+
+	private String getDdlFileName() {
+		return this.config.getExportFileLocation() + DEFERRED_DDL_FILE;
+	}
+
+	/**
+	 * Gets the statement changing the enforcement of a constraint.
+	 */
+	private static String getEnforceDdl(DeferredTable deferred, int i, String enforcement) {
+		return "ALTER TABLE " + deferred.qualifiedName + " ALTER " + deferred.constraintKinds.get(i) + " "
+				+ TableName.quote(deferred.constraintNames.get(i)) + " " + enforcement;
+	}
+
+	/**
+	 * Runs a single CREATE INDEX statement on its own target session.
+	 * 
+	 * @return true if the index was created.
+	 */
+	private boolean createIndex(String indexDdl) {
+		long startTime = System.currentTimeMillis();
+		Tracer.Span span = Tracer.begin("statement", indexDdl);
+		try {
+			Connection connection = new DB2Connection(this.config).getTargetConnection();
+			Statement statement = connection.createStatement();
+			statement.execute(indexDdl);
+			statement.close();
+			connection.close();
+			span.end();
+			logger.info("Rebuilt index in " + (System.currentTimeMillis() - startTime) + " ms: " + indexDdl);
+			return true;
+		} catch (SQLException e) {
+			span.end("failed");
+			logger.error("Index rebuild failed: " + indexDdl);
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Enforces the constraints of a table again and runs SET INTEGRITY if that
+	 * left the table in set integrity pending state.
+	 */
+	private void enforceConstraints(Connection connection, DeferredTable deferred) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			for (int i = 0; i < deferred.constraintNames.size(); i++) {
+				statement.execute(getEnforceDdl(deferred, i, "ENFORCED"));
+			}
+			if (isCheckPending(connection, deferred)) {
+				logger.info("Checking integrity of " + deferred.qualifiedName);
+				statement.execute("SET INTEGRITY FOR " + deferred.qualifiedName + " IMMEDIATE CHECKED");
+			}
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Reads the non-unique, user defined indexes of a table from the catalog and
+	 * builds the DDL needed to recreate them.
+	 */
+	private void captureIndexes(Connection connection, DeferredTable deferred) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(
+				"SELECT I.INDSCHEMA, I.INDNAME, I.INDEXTYPE, C.COLNAME, C.COLORDER FROM SYSCAT.INDEXES I "
+						+ "JOIN SYSCAT.INDEXCOLUSE C ON C.INDSCHEMA = I.INDSCHEMA AND C.INDNAME = I.INDNAME "
+						+ "WHERE I.TABSCHEMA = ? AND I.TABNAME = ? AND I.UNIQUERULE = 'D' "
+						+ "AND I.INDEXTYPE IN ('REG', 'CLUS') AND I.SYSTEM_REQUIRED = 0 "
+						+ "ORDER BY I.INDSCHEMA, I.INDNAME, C.COLSEQ");
+		try {
+			statement.setString(1, deferred.schema);
+			statement.setString(2, deferred.name);
+			ResultSet resultSet = statement.executeQuery();
+			String currentIndex = null;
+			String indexType = null;
+			StringBuilder columns = null;
+			while (resultSet.next()) {
+				String indexName = TableName.quote(resultSet.getString(1).trim()) + "."
+						+ TableName.quote(resultSet.getString(2));
+				if (!indexName.equals(currentIndex)) {
+					addIndex(deferred, currentIndex, indexType, columns);
+					currentIndex = indexName;
+					indexType = resultSet.getString(3);
+					columns = new StringBuilder();
+				} else {
+					columns.append(", ");
+				}
+				columns.append(TableName.quote(resultSet.getString(4)));
+				columns.append("D".equals(resultSet.getString(5)) ? " DESC" : " ASC");
+			}
+			addIndex(deferred, currentIndex, indexType, columns);
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Records a captured index and its CREATE INDEX statement.
+	 */
+	private void addIndex(DeferredTable deferred, String indexName, String indexType, StringBuilder columns) {
+		if (indexName == null) {
+			return;
+		}
+		deferred.indexNames.add(indexName);
+		deferred.indexDdl.add("CREATE INDEX " + indexName + " ON " + deferred.qualifiedName + " (" + columns + ")"
+				+ ("CLUS".equals(indexType) ? " CLUSTER" : ""));
+	}
+
+	/**
+	 * Reads the enforced foreign key and check constraints of a table.
+	 */
+	private void captureConstraints(Connection connection, DeferredTable deferred) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement("SELECT CONSTNAME, TYPE FROM SYSCAT.TABCONST "
+				+ "WHERE TABSCHEMA = ? AND TABNAME = ? AND TYPE IN ('F', 'K') AND ENFORCED = 'Y'");
+		try {
+			statement.setString(1, deferred.schema);
+			statement.setString(2, deferred.name);
+			ResultSet resultSet = statement.executeQuery();
+			while (resultSet.next()) {
+				deferred.constraintNames.add(resultSet.getString(1));
+				deferred.constraintKinds.add("F".equals(resultSet.getString(2)) ? "FOREIGN KEY" : "CHECK");
+			}
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Indicates if a table has been placed in set integrity pending state.
+	 */
+	private boolean isCheckPending(Connection connection, DeferredTable deferred) throws SQLException {
+		PreparedStatement statement = connection
+				.prepareStatement("SELECT STATUS FROM SYSCAT.TABLES WHERE TABSCHEMA = ? AND TABNAME = ?");
+		try {
+			statement.setString(1, deferred.schema);
+			statement.setString(2, deferred.name);
+			ResultSet resultSet = statement.executeQuery();
+			return resultSet.next() && "C".equals(resultSet.getString(1));
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * The captured index and constraint definitions of one table.
+	 */
+	private static class DeferredTable {
+		String schema = null;
+		String name = null;
+		String qualifiedName = null;
+		ArrayList<String> indexNames = new ArrayList<String>();
+		ArrayList<String> indexDdl = new ArrayList<String>();
+		ArrayList<String> constraintNames = new ArrayList<String>();
+		ArrayList<String> constraintKinds = new ArrayList<String>();
+	}
+}
@@ -0,0 +1,483 @@
+package com.ibm.cloud.db2.migration;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.TimeZone;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Encodes JDBC result set rows into the same delimited format produced by the
+ * server side export (OF DEL MODIFIED BY NOCHARDEL COLDEL|). Values are read
+ * with typed getters and written as UTF-8 straight into one reusable buffer:
+ * integers, decimals, dates, times and timestamps are formatted digit by digit
+ * without SimpleDateFormat or intermediate strings. The only per row
+ * allocations left are the objects the JDBC driver itself returns.
+ */
+public class DelRowEncoder {
+	/**
+	 * The column delimiter used by the export command.
+	 */
+	public static final byte COLUMN_DELIMITER = '|';
+
+	/**
+	 * The row delimiter.
+	 */
+	public static final byte ROW_DELIMITER = '\n';
+
+	private static final int TYPE_STRING = 0;
+	private static final int TYPE_LONG = 1;
+	private static final int TYPE_DECIMAL = 2;
+	private static final int TYPE_DOUBLE = 3;
+	private static final int TYPE_DATE = 4;
+	private static final int TYPE_TIME = 5;
+	private static final int TYPE_TIMESTAMP = 6;
+	private static final int TYPE_BYTES = 7;
+
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+	private static final long[] POWERS_OF_TEN = new long[19];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	/**
+	 * The encoding of each column, indexed from zero.
+	 */
+	private int[] columnTypes = null;
+
+	/**
+	 * The number of fractional second digits of each timestamp column.
+	 */
+	private int[] columnScales = null;
+
+	/**
+	 * The reusable output buffer and the number of bytes in it.
+	 */
+	private byte[] buffer = null;
+	private int position = 0;
+
+	/**
+	 * The stream the buffer is flushed to.
+	 */
+	private OutputStream out = null;
+
+	/**
+	 * The escape character, or zero when values are written without escaping.
+	 */
+	private byte escapeCharacter = 0;
+
+	/**
+	 * The time zone JDBC date and time values are rendered in.
+	 */
+	private TimeZone timeZone = TimeZone.getDefault();
+
+	/**
+	 * The number of rows encoded so far.
+	 */
+	private long rowCount = 0;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param metaData
+	 *            the metadata of the result set to encode.
+	 * @param out
+	 *            the stream encoded rows are written to.
+	 * @param bufferSize
+	 *            the size of the reusable output buffer.
+	 * @param escapeCharacter
+	 *            the character written before delimiters, line breaks and
+	 *            itself inside values, or zero to reject values containing
+	 *            delimiters or line breaks.
+	 * @throws SQLException
+	 */
+	public DelRowEncoder(ResultSetMetaData metaData, OutputStream out, int bufferSize, char escapeCharacter)
+			throws SQLException {
+		super();
+		int columnCount = metaData.getColumnCount();
+		this.columnTypes = new int[columnCount];
+		this.columnScales = new int[columnCount];
+		for (int i = 0; i < columnCount; i++) {
+			this.columnTypes[i] = encodingOf(metaData.getColumnType(i + 1));
+			this.columnScales[i] = this.columnTypes[i] == TYPE_TIMESTAMP
+					? Math.max(0, Math.min(12, metaData.getScale(i + 1)))
+					: 0;
+		}
+		this.buffer = new byte[Math.max(bufferSize, 1024)];
+		this.out = out;
+		this.escapeCharacter = (byte) escapeCharacter;
+	}
+
+	/**
+	 * Maps a JDBC type to the way the column is read and written.
+	 */
+	private static int encodingOf(int sqlType) {
+		switch (sqlType) {
+		case Types.BIGINT:
+		case Types.INTEGER:
+		case Types.SMALLINT:
+		case Types.TINYINT:
+			return TYPE_LONG;
+		case Types.DECIMAL:
+		case Types.NUMERIC:
+			return TYPE_DECIMAL;
+		case Types.REAL:
+		case Types.FLOAT:
+		case Types.DOUBLE:
+			return TYPE_DOUBLE;
+		case Types.DATE:
+			return TYPE_DATE;
+		case Types.TIME:
+			return TYPE_TIME;
+		case Types.TIMESTAMP:
+			return TYPE_TIMESTAMP;
+		case Types.BINARY:
+		case Types.VARBINARY:
+		case Types.LONGVARBINARY:
+		case Types.BLOB:
+			return TYPE_BYTES;
+		default:
+			return TYPE_STRING;
+		}
+	}
+
+	/**
+	 * Encodes the current row of a result set.
+	 * 
+	 * @param resultSet
+	 *            the result set positioned on the row to encode.
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public void encode(ResultSet resultSet) throws SQLException, IOException {
+		for (int i = 0; i < this.columnTypes.length; i++) {
+			if (i > 0) {
+				writeByte(COLUMN_DELIMITER);
+			}
+			int column = i + 1;
+			switch (this.columnTypes[i]) {
+			case TYPE_LONG:
+				long longValue = resultSet.getLong(column);
+				if (!resultSet.wasNull()) {
+					writeLong(longValue);
+				}
+				break;
+			case TYPE_DECIMAL:
+				BigDecimal decimalValue = resultSet.getBigDecimal(column);
+				if (decimalValue != null) {
+					writeDecimal(decimalValue);
+				}
+				break;
+			case TYPE_DOUBLE:
+				double doubleValue = resultSet.getDouble(column);
+				if (!resultSet.wasNull()) {
+					writeAscii(Double.toString(doubleValue));
+				}
+				break;
+			case TYPE_DATE:
+				java.sql.Date dateValue = resultSet.getDate(column);
+				if (dateValue != null) {
+					writeDate(localMillis(dateValue.getTime()));
+				}
+				break;
+			case TYPE_TIME:
+				java.sql.Time timeValue = resultSet.getTime(column);
+				if (timeValue != null) {
+					writeTime(Math.floorMod(localMillis(timeValue.getTime()), MILLIS_PER_DAY));
+				}
+				break;
+			case TYPE_TIMESTAMP:
+				Timestamp timestampValue = resultSet.getTimestamp(column);
+				if (timestampValue != null) {
+					writeTimestamp(timestampValue, this.columnScales[i]);
+				}
+				break;
+			case TYPE_BYTES:
+				byte[] bytesValue = resultSet.getBytes(column);
+				if (bytesValue != null) {
+					for (byte b : bytesValue) {
+						writeValueByte(b);
+					}
+				}
+				break;
+			default:
+				String stringValue = resultSet.getString(column);
+				if (stringValue != null) {
+					writeString(stringValue);
+				}
+			}
+		}
+		writeByte(ROW_DELIMITER);
+		this.rowCount++;
+	}
+
+	/**
+	 * Writes all buffered bytes to the output stream.
+	 * 
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		if (this.position > 0) {
+			this.out.write(this.buffer, 0, this.position);
+			this.position = 0;
+		}
+		this.out.flush();
+	}
+
+	/**
+	 * Gets the number of rows encoded so far.
+	 * 
+	 * @return the row count.
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Converts epoch milliseconds to milliseconds in the local time zone.
+	 */
+	private long localMillis(long epochMillis) {
+		return epochMillis + this.timeZone.getOffset(epochMillis);
+	}
+
+	/**
+	 * Writes a local date as YYYYMMDD, the default DEL date format.
+	 */
+	private void writeDate(long localMillis) throws IOException {
+		long days = Math.floorDiv(localMillis, MILLIS_PER_DAY);
+		writeCivilDate(days, false);
+	}
+
+	/**
+	 * Writes a timestamp as YYYY-MM-DD-HH.MM.SS.FFFFFF with the given number of
+	 * fractional digits.
+	 */
+	private void writeTimestamp(Timestamp timestamp, int scale) throws IOException {
+		long local = localMillis(timestamp.getTime());
+		writeCivilDate(Math.floorDiv(local, MILLIS_PER_DAY), true);
+		writeByte((byte) '-');
+		writeTime(Math.floorMod(local, MILLIS_PER_DAY));
+		if (scale > 0) {
+			writeByte((byte) '.');
+			int nanos = timestamp.getNanos();
+			if (scale <= 9) {
+				writeDigits(nanos / POWERS_OF_TEN[9 - scale], scale);
+			} else {
+				writeDigits(nanos, 9);
+				writeDigits(0, scale - 9);
+			}
+		}
+	}
+
+	/**
+	 * Writes the time of day as HH.MM.SS.
+	 */
+	private void writeTime(long millisOfDay) throws IOException {
+		long seconds = millisOfDay / 1000;
+		writeDigits(seconds / 3600, 2);
+		writeByte((byte) '.');
+		writeDigits((seconds / 60) % 60, 2);
+		writeByte((byte) '.');
+		writeDigits(seconds % 60, 2);
+	}
+
+	/**
+	 * Writes a day count since 1970-01-01 as a proleptic Gregorian date, using
+	 * the days-to-civil algorithm so no calendar object is needed.
+	 */
+	private void writeCivilDate(long epochDays, boolean separated) throws IOException {
+		long z = epochDays + 719468;
+		long era = (z >= 0 ? z : z - 146096) / 146097;
+		long dayOfEra = z - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long year = yearOfEra + era * 400;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long monthPosition = (5 * dayOfYear + 2) / 153;
+		long day = dayOfYear - (153 * monthPosition + 2) / 5 + 1;
+		long month = monthPosition < 10 ? monthPosition + 3 : monthPosition - 9;
+		if (month <= 2) {
+			year++;
+		}
+		writeDigits(year, 4);
+		if (separated) {
+			writeByte((byte) '-');
+		}
+		writeDigits(month, 2);
+		if (separated) {
+			writeByte((byte) '-');
+		}
+		writeDigits(day, 2);
+	}
+
+	/**
+	 * Writes a decimal from its unscaled value, avoiding toPlainString when the
+	 * unscaled value fits in a long.
+	 */
+	private void writeDecimal(BigDecimal value) throws IOException {
+		int scale = value.scale();
+		// the fast path needs the unscaled value and 10^scale to fit in a long
+		if (value.precision() > 18 || scale < 0 || scale > 18) {
+			writeAscii(value.toPlainString());
+			return;
+		}
+		long unscaled = value.unscaledValue().longValue();
+		if (unscaled < 0) {
+			writeByte((byte) '-');
+			unscaled = -unscaled;
+		}
+		if (scale == 0) {
+			writeLong(unscaled);
+			return;
+		}
+		long divisor = POWERS_OF_TEN[scale];
+		writeLong(unscaled / divisor);
+		writeByte((byte) '.');
+		writeDigits(unscaled % divisor, scale);
+	}
+
+	/**
+	 * Writes a long in decimal without creating a string.
+	 */
+	private void writeLong(long value) throws IOException {
+		if (value == Long.MIN_VALUE) {
+			writeAscii("-9223372036854775808");
+			return;
+		}
+		if (value < 0) {
+			writeByte((byte) '-');
+			value = -value;
+		}
+		int digits = 1;
+		while (digits < 19 && value >= POWERS_OF_TEN[digits]) {
+			digits++;
+		}
+		writeDigits(value, digits);
+	}
+
+	/**
+	 * Writes a non-negative value as exactly the given number of digits, padding
+	 * with leading zeros.
+	 */
+	private void writeDigits(long value, int digits) throws IOException {
+		ensureCapacity(digits);
+		for (int i = this.position + digits - 1; i >= this.position; i--) {
+			this.buffer[i] = (byte) ('0' + (value % 10));
+			value /= 10;
+		}
+		this.position += digits;
+	}
+
+	/**
+	 * Writes a string that is known to be plain ASCII.
+	 */
+	private void writeAscii(String value) throws IOException {
+		ensureCapacity(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			this.buffer[this.position++] = (byte) value.charAt(i);
+		}
+	}
+
+	/**
+	 * Writes a character value as UTF-8, escaping as configured.
+	 */
+	private void writeString(String value) throws IOException {
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				writeValueByte((byte) c);
+			} else if (c < 0x800) {
+				ensureCapacity(2);
+				this.buffer[this.position++] = (byte) (0xC0 | (c >> 6));
+				this.buffer[this.position++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				ensureCapacity(4);
+				this.buffer[this.position++] = (byte) (0xF0 | (codePoint >> 18));
+				this.buffer[this.position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				this.buffer[this.position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				this.buffer[this.position++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				// unpaired surrogate, written as the replacement character '?'
+				writeByte((byte) '?');
+			} else {
+				ensureCapacity(3);
+				this.buffer[this.position++] = (byte) (0xE0 | (c >> 12));
+				this.buffer[this.position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				this.buffer[this.position++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	/**
+	 * Writes one byte of a value, escaping delimiters, line breaks and the escape
+	 * character itself when an escape character is configured. Without one, a
+	 * delimiter or line break inside a value would split the row, so it is
+	 * rejected.
+	 */
+	private void writeValueByte(byte b) throws IOException {
+		if (b == COLUMN_DELIMITER || b == ROW_DELIMITER || b == '\r'
+				|| (this.escapeCharacter != 0 && b == this.escapeCharacter)) {
+			if (this.escapeCharacter == 0) {
+				throw new IOException("Row " + (this.rowCount + 1)
+						+ " has a value with a column delimiter or line break, which needs EXPORT_ESCAPE_CHARACTER");
+			}
+			writeByte(this.escapeCharacter);
+		}
+		writeByte(b);
+	}
+
+	/**
+	 * Writes one byte to the buffer.
+	 */
+	private void writeByte(byte b) throws IOException {
+		if (this.position == this.buffer.length) {
+			drain();
+		}
+		this.buffer[this.position++] = b;
+	}
+
+	/**
+	 * Makes room for a number of bytes, draining the buffer if necessary.
+	 */
+	private void ensureCapacity(int bytes) throws IOException {
+		if (this.position + bytes > this.buffer.length) {
+			drain();
+			if (bytes > this.buffer.length) {
+				this.buffer = new byte[bytes];
+			}
+		}
+	}
+
+	/**
+	 * Writes the buffer to the output stream without flushing the stream.
+	 */
+	private void drain() throws IOException {
+		this.out.write(this.buffer, 0, this.position);
+		this.position = 0;
+	}
+
+}
@@ -0,0 +1,319 @@
+package com.ibm.cloud.db2.migration;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Runs a migration across several processes, which may be on different hosts.
+ * The coordinator puts the tables of the table names file into a shared
+ * {@link WorkQueue} and gives expired leases back to the queue until every
+ * table is done or failed. Workers claim tables from the queue and run each
+ * one through export, put and load, renewing their lease while they work.
+ * A table given to a worker again after a failed or expired attempt is
+ * truncated on the target before it is loaded. A table whose phase fails is
+ * failed in the queue before its next phase starts. A worker that loses its lease
+ * stops working on the table before its next phase, so two workers never load
+ * the same table.
+ */
+public class DistributedMigration {
+	private static Log logger = LogFactory.getLog(DistributedMigration.class);
+
+	/**
+	 * The migrator holding the configuration and the table names
+	 */
+	private Db2Migrator migrator = null;
+
+	/**
+	 * Utility configuration
+	 */
+	private ConfigurationBean config = null;
+
+	/**
+	 * The shared queue of tables
+	 */
+	private WorkQueue queue = null;
+
+	/**
+	 * Identifies this process in leases
+	 */
+	private String workerId = "";
+
+	/**
+	 * Renews the leases of the tables this process works on
+	 */
+	private ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor();
+
+	/**
+	 * The number of tables this worker failed and worker threads that stopped
+	 * on an error
+	 */
+	private AtomicInteger failures = new AtomicInteger();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param migrator
+	 *            the migrator holding the configuration and the table names.
+	 * @throws Exception
+	 */
+	public DistributedMigration(Db2Migrator migrator) throws Exception {
+		super();
+		this.migrator = migrator;
+		this.config = migrator.getConfig();
+		this.workerId = this.config.getWorkerId().isEmpty() ? ManagementFactory.getRuntimeMXBean().getName()
+				: this.config.getWorkerId();
+		String location = this.config.getQueueLocation();
+		if ("DB2".equals(this.config.getQueueType())) {
+			this.queue = new Db2WorkQueue(this.config, location.isEmpty() ? "MIGRATION_WORK_QUEUE" : location);
+		} else {
+			this.queue = new FileWorkQueue(location.isEmpty() ? "queue" : location);
+		}
+	}
+
+	/**
+	 * Queues the tables and waits until every table is done or failed, giving
+	 * expired leases back to the queue.
+	 * 
+	 * @return the number of tables that failed on every attempt.
+	 * @throws Exception
+	 */
+	public int coordinate() throws Exception {
+		logger.info("---------------------------------");
+		logger.info("COORDINATOR STARTED");
+		this.queue.enqueue(this.migrator.getTableNames());
+		int failed;
+		while (true) {
+			int expired = this.queue.reassignExpired(this.config.getQueueMaxAttempts());
+			if (expired > 0) {
+				logger.warn(expired + " lease(s) expired and were given back to the queue");
+			}
+			Map<String, Integer> counts = this.queue.getStatusCounts();
+			logger.info("Work Queue: " + counts);
+			if (count(counts, WorkQueue.PENDING) + count(counts, WorkQueue.LEASED) == 0) {
+				failed = count(counts, WorkQueue.FAILED);
+				if (failed > 0) {
+					logger.error(failed + " table(s) failed on every attempt");
+				}
+				break;
+			}
+			Thread.sleep(this.config.getQueueHeartbeatSeconds() * 1000L);
+		}
+		shutdown();
+		logger.info("COORDINATOR FINISHED");
+		logger.info("---------------------------------");
+		return failed;
+	}
+
+	/**
+	 * Claims and migrates tables until none are pending or leased. Up to
+	 * TABLE_PARALLELISM tables are worked on at the same time.
+	 * 
+	 * @return the number of tables this worker failed, plus the worker threads
+	 *         that stopped on an error.
+	 * @throws InterruptedException
+	 */
+	public int work() throws InterruptedException {
+		logger.info("---------------------------------");
+		logger.info("WORKER " + this.workerId + " STARTED");
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < Math.max(1, this.config.getTableParallelism()); i++) {
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					try {
+						workLoop();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} catch (Exception e) {
+						failures.incrementAndGet();
+						e.printStackTrace();
+					}
+				}
+			}, "worker-" + i);
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		shutdown();
+		logger.info("WORKER " + this.workerId + " FINISHED");
+		logger.info("---------------------------------");
+		return this.failures.get();
+	}
+
+	/**
+	 * Claims tables one at a time. When nothing is pending the loop waits, since
+	 * tables leased by other workers may still be given back to the queue.
+	 */
+	private void workLoop() throws Exception {
+		while (true) {
+			WorkQueue.WorkItem item = this.queue.claim(this.workerId, this.config.getQueueLeaseSeconds());
+			if (item != null) {
+				migrate(item);
+				continue;
+			}
+			Map<String, Integer> counts = this.queue.getStatusCounts();
+			// an empty queue has not been filled by the coordinator yet
+			if (!counts.isEmpty() && count(counts, WorkQueue.PENDING) + count(counts, WorkQueue.LEASED) == 0) {
+				return;
+			}
+			Thread.sleep(this.config.getQueueHeartbeatSeconds() * 1000L);
+		}
+	}
+
+	/**
+	 * Runs one claimed table through export, put and load while renewing its
+	 * lease, and records the outcome in the queue. The lease is renewed before
+	 * each phase and the table is abandoned once the lease is lost, since
+	 * another worker may then be truncating and loading it. A failed phase fails
+	 * the table, so a put never uploads a broken export and a load never reads
+	 * objects that were not uploaded.
+	 */
+	private void migrate(final WorkQueue.WorkItem item) throws Exception {
+		String tableName = item.getTableName();
+		logger.info("Claimed Table: " + tableName + "  | Attempt: " + item.getAttempt());
+		final int leaseSeconds = this.config.getQueueLeaseSeconds();
+		final AtomicBoolean leaseLost = new AtomicBoolean();
+		int heartbeatSeconds = this.config.getQueueHeartbeatSeconds();
+		ScheduledFuture<?> heartbeat = this.heartbeats.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				try {
+					if (!leaseLost.get() && !queue.renew(item, workerId, leaseSeconds)) {
+						leaseLost.set(true);
+						logger.warn("Lease on " + item.getTableName()
+								+ " was lost, the table is abandoned after the current phase");
+					}
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+		Tracer.Span span = Tracer.begin("table", "migrate " + tableName);
+		try {
+			Db2Migrator tableMigrator = this.migrator.forTables(Collections.singletonList(tableName));
+			if (!holdsLease(item, leaseLost)) {
+				abandon(item, heartbeat, span);
+				return;
+			}
+			tableMigrator.exportTableData();
+			if (!canContinue(item, tableMigrator, "export", leaseLost, heartbeat, span)) {
+				return;
+			}
+			tableMigrator.transferToCos();
+			if (!canContinue(item, tableMigrator, "put", leaseLost, heartbeat, span)) {
+				return;
+			}
+			// truncating right before the load keeps rows of an abandoned attempt
+			// that was still loading out of this one for as long as possible
+			if (item.getAttempt() > 1) {
+				tableMigrator.truncateTargetTables();
+				if (!canContinue(item, tableMigrator, "truncate", leaseLost, heartbeat, span)) {
+					return;
+				}
+			}
+			tableMigrator.loadRemoteSystem();
+			heartbeat.cancel(false);
+			if (!canContinue(item, tableMigrator, "load", leaseLost, heartbeat, span)) {
+				return;
+			}
+			this.queue.complete(item, this.workerId);
+			span.end();
+			logger.info("Completed Table: " + tableName);
+		} catch (Exception e) {
+			heartbeat.cancel(false);
+			this.failures.incrementAndGet();
+			this.queue.fail(item, this.workerId, e.toString(), this.config.getQueueMaxAttempts());
+			span.end("failed");
+			logger.error("Failed Table: " + tableName + "  | Attempt: " + item.getAttempt(), e);
+		}
+	}
+
+	/**
+	 * Checks a table after a phase. A table whose lease was lost is abandoned,
+	 * and a table whose phase failed is failed in the queue.
+	 * 
+	 * @return true if the next phase can start.
+	 */
+	private boolean canContinue(WorkQueue.WorkItem item, Db2Migrator tableMigrator, String phase,
+			AtomicBoolean leaseLost, ScheduledFuture<?> heartbeat, Tracer.Span span) throws Exception {
+		if (!holdsLease(item, leaseLost)) {
+			abandon(item, heartbeat, span);
+			return false;
+		}
+		if (tableMigrator.getFailureCount() > 0) {
+			heartbeat.cancel(false);
+			this.failures.incrementAndGet();
+			this.queue.fail(item, this.workerId, phase + " failed on " + this.workerId,
+					this.config.getQueueMaxAttempts());
+			span.end("failed");
+			logger.error("Failed Table: " + item.getTableName() + "  | Attempt: " + item.getAttempt()
+					+ "  | Phase: " + phase);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Renews the lease on a table before the next phase.
+	 * 
+	 * @return false if the lease has been lost.
+	 */
+	private boolean holdsLease(WorkQueue.WorkItem item, AtomicBoolean leaseLost) throws Exception {
+		if (!leaseLost.get() && !this.queue.renew(item, this.workerId, this.config.getQueueLeaseSeconds())) {
+			leaseLost.set(true);
+		}
+		return !leaseLost.get();
+	}
+
+	/**
+	 * Stops working on a table whose lease was lost. Its outcome is left to the
+	 * worker that holds the lease now.
+	 */
+	private void abandon(WorkQueue.WorkItem item, ScheduledFuture<?> heartbeat, Tracer.Span span) {
+		heartbeat.cancel(false);
+		span.end("abandoned");
+		logger.warn("Abandoned Table: " + item.getTableName() + "  | Attempt: " + item.getAttempt()
+				+ "  | the lease was lost");
+	}
+
+	/**
+	 * Stops the heartbeats and closes the queue.
+	 */
+	private void shutdown() {
+		this.heartbeats.shutdown();
+		this.queue.close();
+	}
+
+	/**
+	 * Gets the number of tables in a status.
+	 */
+	private static int count(Map<String, Integer> counts, String status) {
+		Integer count = counts.get(status);
+		return count == null ? 0 : count;
+	}
+}
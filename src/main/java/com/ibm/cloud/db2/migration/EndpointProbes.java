@@ -0,0 +1,98 @@
+package com.ibm.cloud.db2.migration;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Measures how fast Cloud Object Storage can be reached through an endpoint,
+ * from this host for uploads and from the target database for loads. The
+ * {@link EndpointResolver} chooses the endpoints from these measurements, so
+ * it can be run against stand-in probes or stand-in servers.
+ */
+public interface EndpointProbes {
+
+	/**
+	 * The result of probing one endpoint.
+	 */
+	class Measurement {
+		private double latencyMillis;
+		private double bytesPerSecond;
+
+		public Measurement(double latencyMillis, double bytesPerSecond) {
+			super();
+			this.latencyMillis = latencyMillis;
+			this.bytesPerSecond = bytesPerSecond;
+		}
+
+		/**
+		 * Gets the time of a request that moves no data.
+		 * 
+		 * @return the latency in milliseconds.
+		 */
+		public double getLatencyMillis() {
+			return latencyMillis;
+		}
+
+		/**
+		 * Gets the transfer rate once a request is under way.
+		 * 
+		 * @return the throughput in bytes per second.
+		 */
+		public double getBytesPerSecond() {
+			return bytesPerSecond;
+		}
+
+		/**
+		 * Estimates the time one request moving some data takes.
+		 * 
+		 * @param bytes
+		 *            the size of the request.
+		 * @return the estimated time in seconds.
+		 */
+		public double estimateSeconds(long bytes) {
+			return this.latencyMillis / 1000 + bytes / Math.max(this.bytesPerSecond, 1);
+		}
+	}
+
+	/**
+	 * Uploads the probe objects through an endpoint from this host.
+	 * 
+	 * @param endpoint
+	 *            the candidate endpoint.
+	 * @return the latency and throughput of the endpoint.
+	 * @throws Exception
+	 *             if the endpoint cannot be used.
+	 */
+	Measurement probeUpload(String endpoint) throws Exception;
+
+	/**
+	 * Reads the probe objects through an endpoint from the target database.
+	 * The objects are those written through the upload endpoint, so an
+	 * endpoint that reads them is known to serve the same bucket.
+	 * 
+	 * @param endpoint
+	 *            the candidate endpoint.
+	 * @param uploadEndpoint
+	 *            the endpoint the objects are uploaded through.
+	 * @return the latency and throughput of the endpoint.
+	 * @throws Exception
+	 *             if the endpoint cannot be used.
+	 */
+	Measurement probeRead(String endpoint, String uploadEndpoint) throws Exception;
+
+	/**
+	 * Removes the probe files and objects.
+	 */
+	void cleanUp();
+}
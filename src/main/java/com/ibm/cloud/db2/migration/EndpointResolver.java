@@ -0,0 +1,215 @@
+package com.ibm.cloud.db2.migration;
+
+import java.util.ArrayList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Chooses the Cloud Object Storage endpoints used for uploads and for the
+ * target's reads. A bucket is reachable through several endpoints, such as
+ * the public, private and direct endpoints of its region, and the fastest one
+ * from this host is often not the fastest one from the target. The candidates
+ * in COS_ENDPOINTS are probed from both sides and each side gets the endpoint
+ * that moves a COS_PART_SIZE_MB request in the least time. The target's
+ * candidates read the objects written through the chosen upload endpoint, so
+ * both endpoints are known to serve the same bucket. Without candidates both
+ * sides use SERVICE_ENDPOINT.
+ */
+public class EndpointResolver {
+	private static Log logger = LogFactory.getLog(EndpointResolver.class);
+
+	/**
+	 * The candidate endpoints, SERVICE_ENDPOINT first
+	 */
+	private ArrayList<String> candidates = new ArrayList<String>();
+
+	/**
+	 * The endpoint uploads go through
+	 */
+	private String uploadEndpoint = "";
+
+	/**
+	 * The endpoint the target reads objects through
+	 */
+	private String loadEndpoint = "";
+
+	/**
+	 * The size of the request endpoints are compared on
+	 */
+	private long requestBytes = 0;
+
+	/**
+	 * The measurements of the candidates, for the log
+	 */
+	private StringBuilder report = new StringBuilder();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param config
+	 *            the configuration naming the endpoints.
+	 */
+	public EndpointResolver(ConfigurationBean config) {
+		super();
+		this.uploadEndpoint = config.getService_endpoint().trim();
+		this.loadEndpoint = this.uploadEndpoint;
+		this.candidates.add(this.uploadEndpoint);
+		for (String endpoint : config.getCosEndpoints().split(",")) {
+			if (!endpoint.trim().isEmpty() && !this.candidates.contains(endpoint.trim())) {
+				this.candidates.add(endpoint.trim());
+			}
+		}
+		this.requestBytes = config.getCosPartSizeMb() * 1024L * 1024L;
+	}
+
+	/**
+	 * Indicates if there is a choice of endpoints to probe.
+	 * 
+	 * @return true if COS_ENDPOINTS names endpoints besides SERVICE_ENDPOINT.
+	 */
+	public boolean hasCandidates() {
+		return this.candidates.size() > 1;
+	}
+
+	/**
+	 * Probes the candidates and chooses the endpoints. Candidates that fail are
+	 * skipped. If no candidate can be read from the target, the target reads
+	 * through the upload endpoint.
+	 * 
+	 * @param probes
+	 *            the probes measuring the candidates.
+	 * @param fixedUploadEndpoint
+	 *            the endpoint of a COS client that is already in use, which
+	 *            uploads must go through, or null to choose one.
+	 */
+	public void resolve(EndpointProbes probes, String fixedUploadEndpoint) {
+		try {
+			if (fixedUploadEndpoint != null) {
+				this.uploadEndpoint = fixedUploadEndpoint;
+			} else {
+				this.uploadEndpoint = choose(probes, "upload", null, this.uploadEndpoint);
+			}
+			this.loadEndpoint = choose(probes, "read", this.uploadEndpoint, this.uploadEndpoint);
+		} finally {
+			probes.cleanUp();
+		}
+		logger.info("COS endpoints probed:" + this.report + System.lineSeparator() + "Upload endpoint: "
+				+ this.uploadEndpoint + "  | Load endpoint: " + this.loadEndpoint);
+	}
+
+	/**
+	 * Probes every candidate from one side and returns the fastest.
+	 * 
+	 * @param probes
+	 *            the probes measuring the candidates.
+	 * @param side
+	 *            upload or read.
+	 * @param uploadEndpoint
+	 *            the chosen upload endpoint, when probing reads.
+	 * @param fallback
+	 *            the endpoint returned if no candidate works.
+	 */
+	private String choose(EndpointProbes probes, String side, String uploadEndpoint, String fallback) {
+		String best = null;
+		double bestSeconds = Double.MAX_VALUE;
+		for (String endpoint : this.candidates) {
+			EndpointProbes.Measurement measurement;
+			try {
+				measurement = uploadEndpoint == null ? probes.probeUpload(endpoint)
+						: probes.probeRead(endpoint, uploadEndpoint);
+			} catch (Exception e) {
+				logger.warn("Endpoint " + endpoint + " cannot be used to " + side + ": " + e.getMessage());
+				this.report.append(System.lineSeparator()).append(side).append(" ").append(endpoint)
+						.append(": unreachable");
+				continue;
+			}
+			double seconds = measurement.estimateSeconds(this.requestBytes);
+			this.report.append(System.lineSeparator()).append(side).append(" ").append(endpoint).append(": ")
+					.append(String.format("%.1f ms, %.1f MB/s, %.2f s per part", measurement.getLatencyMillis(),
+							measurement.getBytesPerSecond() / (1024 * 1024), seconds));
+			if (seconds < bestSeconds) {
+				best = endpoint;
+				bestSeconds = seconds;
+			}
+		}
+		if (best == null) {
+			logger.warn("No COS endpoint could be probed to " + side + ", using " + fallback);
+			return fallback;
+		}
+		return best;
+	}
+
+	/**
+	 * Gets the endpoint uploads go through.
+	 * 
+	 * @return the endpoint as configured, without a scheme unless one was
+	 *         given.
+	 */
+	public String getUploadEndpoint() {
+		return uploadEndpoint;
+	}
+
+	/**
+	 * Gets the endpoint the target reads objects through.
+	 * 
+	 * @return the endpoint as configured.
+	 */
+	public String getLoadEndpoint() {
+		return loadEndpoint;
+	}
+
+	/**
+	 * Gets the URL of an endpoint. Endpoints without a scheme use https, so a
+	 * stand-in server can be given as http://host:port.
+	 * 
+	 * @param endpoint
+	 *            the endpoint as configured.
+	 * @return the endpoint URL.
+	 */
+	public static String toUrl(String endpoint) {
+		return endpoint.contains("://") ? endpoint : "https://" + endpoint;
+	}
+
+	/**
+	 * Gets the host name of an endpoint, as the target's S3 external tables
+	 * expect it.
+	 * 
+	 * @param endpoint
+	 *            the endpoint as configured.
+	 * @return the endpoint without scheme or trailing slash.
+	 */
+	public static String toHost(String endpoint) {
+		String host = endpoint.contains("://") ? endpoint.substring(endpoint.indexOf("://") + 3) : endpoint;
+		return host.endsWith("/") ? host.substring(0, host.length() - 1) : host;
+	}
+
+	/**
+	 * Gets the S3 clause of an external table reading the bucket through an
+	 * endpoint.
+	 * 
+	 * @param config
+	 *            the configuration holding the HMAC keys and bucket.
+	 * @param endpoint
+	 *            the endpoint the target reads through.
+	 * @return the s3(...) option.
+	 */
+	public static String getS3Option(ConfigurationBean config, String endpoint) {
+		return "s3('" + toHost(endpoint) + "', '" + config.getAccessKeyId() + "', '" + config.getSecretAccessKey()
+				+ "', '" + config.getBucketName() + "' )";
+	}
+}
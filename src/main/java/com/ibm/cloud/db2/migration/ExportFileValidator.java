@@ -0,0 +1,624 @@
+package com.ibm.cloud.db2.migration;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Checks export files against the columns of the target table before they
+ * are uploaded, so rows the load would reject are found in seconds rather
+ * than after the target has scanned the whole object. A file is cut into
+ * chunks at row boundaries and the chunks are scanned in parallel, one byte
+ * at a time without decoding rows into strings. Each row is checked for its
+ * number of columns, NULLs in NOT NULL columns, the length of character and
+ * binary values and the form of numbers, dates, times and timestamps.
+ */
+public class ExportFileValidator {
+	private static Log logger = LogFactory.getLog(ExportFileValidator.class);
+
+	/**
+	 * The size of the buffer each chunk is read through
+	 */
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	/**
+	 * The number of bytes before a chunk boundary read to tell if the row
+	 * delimiter there is escaped
+	 */
+	private static final int LOOKBACK = 256;
+
+	private static final int TYPE_NONE = 0;
+	private static final int TYPE_BYTES = 1;
+	private static final int TYPE_CODE_POINTS = 2;
+	private static final int TYPE_CODE_UNITS = 3;
+	private static final int TYPE_INTEGER = 4;
+	private static final int TYPE_DECIMAL = 5;
+	private static final int TYPE_FLOAT = 6;
+	private static final int TYPE_DATE = 7;
+	private static final int TYPE_TIME = 8;
+	private static final int TYPE_TIMESTAMP = 9;
+
+	private static final int[] DAYS_IN_MONTH = { 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+	/**
+	 * The exported columns in file order
+	 */
+	private String[] columnNames = null;
+
+	/**
+	 * How the values of each column are checked
+	 */
+	private int[] columnTypes = null;
+
+	/**
+	 * The length, precision or largest value of each column, by type
+	 */
+	private long[] columnLimits = null;
+
+	/**
+	 * The scale of each decimal column
+	 */
+	private int[] columnScales = null;
+
+	/**
+	 * Is each column NOT NULL
+	 */
+	private boolean[] notNull = null;
+
+	/**
+	 * The escape character of the export, zero for none
+	 */
+	private byte escapeCharacter = 0;
+
+	/**
+	 * The number of problems logged for each file
+	 */
+	private int maxErrors = 20;
+
+	/**
+	 * Reads the columns of a table from the target catalog.
+	 * 
+	 * @param connection
+	 *            a connection to the target database.
+	 * @param tableName
+	 *            the name of the table as listed in the table names file.
+	 * @param tableConfig
+	 *            the table's configuration.
+	 * @param transformer
+	 *            the transformation applied on upload, or null. Only the column
+	 *            count of transformed columns is checked.
+	 * @throws SQLException
+	 */
+	public ExportFileValidator(Connection connection, String tableName, ConfigurationBean tableConfig,
+			RowTransformer transformer) throws SQLException {
+		super();
+		TableName table = TableName.parse(tableName);
+		HashMap<String, Integer> positions = new HashMap<String, Integer>();
+		List<String> columns = new ExportProjection(tableConfig).getExportedColumns(connection, tableName);
+		for (int i = 0; i < columns.size(); i++) {
+			positions.put(columns.get(i), i);
+		}
+		this.columnNames = columns.toArray(new String[columns.size()]);
+		this.columnTypes = new int[columns.size()];
+		this.columnLimits = new long[columns.size()];
+		this.columnScales = new int[columns.size()];
+		this.notNull = new boolean[columns.size()];
+		boolean[] found = new boolean[columns.size()];
+		PreparedStatement statement = connection.prepareStatement(
+				"SELECT COLNAME, TYPENAME, LENGTH, SCALE, NULLS, STRINGUNITS FROM SYSCAT.COLUMNS "
+						+ "WHERE TABSCHEMA = ? AND TABNAME = ?");
+		try {
+			statement.setString(1, table.getSchema(connection));
+			statement.setString(2, table.getName());
+			ResultSet resultSet = statement.executeQuery();
+			while (resultSet.next()) {
+				Integer position = positions.get(resultSet.getString(1));
+				if (position == null) {
+					continue;
+				}
+				int i = position.intValue();
+				found[i] = true;
+				String typeName = resultSet.getString(2).trim();
+				String stringUnits = resultSet.getString(6);
+				this.columnTypes[i] = typeOf(typeName, stringUnits == null ? "" : stringUnits.trim());
+				this.columnLimits[i] = limitOf(typeName, resultSet.getInt(3));
+				this.columnScales[i] = resultSet.getInt(4);
+				this.notNull[i] = "N".equals(resultSet.getString(5));
+				if (this.columnTypes[i] == TYPE_TIMESTAMP && tableConfig.isUseTargetTimestampFormat()) {
+					// the values follow TARGET_TIMESTAMP_FORMAT
+					this.columnTypes[i] = TYPE_NONE;
+				}
+				if (transformer != null && transformer.hasRule(i)) {
+					this.columnTypes[i] = TYPE_NONE;
+					this.notNull[i] = false;
+				}
+			}
+		} finally {
+			statement.close();
+		}
+		for (int i = 0; i < found.length; i++) {
+			if (!found[i]) {
+				throw new SQLException("Column " + this.columnNames[i] + " does not exist in " + tableName
+						+ " on the target");
+			}
+		}
+		this.escapeCharacter = (byte) tableConfig.getExportEscapeCharacter();
+		this.maxErrors = tableConfig.getValidateMaxErrors();
+	}
+
+	/**
+	 * Maps a catalog type to the way its values are checked. LOB, XML and
+	 * DECFLOAT values, and LOB location specifiers, are not checked.
+	 */
+	private static int typeOf(String typeName, String stringUnits) {
+		if (typeName.equals("SMALLINT") || typeName.equals("INTEGER") || typeName.equals("BIGINT")) {
+			return TYPE_INTEGER;
+		} else if (typeName.equals("DECIMAL")) {
+			return TYPE_DECIMAL;
+		} else if (typeName.equals("REAL") || typeName.equals("DOUBLE")) {
+			return TYPE_FLOAT;
+		} else if (typeName.equals("DATE")) {
+			return TYPE_DATE;
+		} else if (typeName.equals("TIME")) {
+			return TYPE_TIME;
+		} else if (typeName.equals("TIMESTAMP")) {
+			return TYPE_TIMESTAMP;
+		} else if (typeName.equals("CHARACTER") || typeName.equals("VARCHAR")) {
+			return stringUnits.equals("CODEUNITS32") ? TYPE_CODE_POINTS : TYPE_BYTES;
+		} else if (typeName.equals("GRAPHIC") || typeName.equals("VARGRAPHIC")) {
+			return stringUnits.equals("CODEUNITS32") ? TYPE_CODE_POINTS : TYPE_CODE_UNITS;
+		} else if (typeName.equals("BINARY") || typeName.equals("VARBINARY")) {
+			return TYPE_BYTES;
+		}
+		return TYPE_NONE;
+	}
+
+	/**
+	 * Gets the largest magnitude of an integer type, or the catalog length.
+	 */
+	private static long limitOf(String typeName, int length) {
+		if (typeName.equals("SMALLINT")) {
+			return Short.MAX_VALUE;
+		} else if (typeName.equals("INTEGER")) {
+			return Integer.MAX_VALUE;
+		} else if (typeName.equals("BIGINT")) {
+			return Long.MAX_VALUE;
+		}
+		return length;
+	}
+
+	/**
+	 * Scans an export file. The problems found are logged, up to
+	 * VALIDATE_MAX_ERRORS of them.
+	 * 
+	 * @param fileName
+	 *            the path of the export file.
+	 * @param pool
+	 *            the threads scanning chunks.
+	 * @param chunkSize
+	 *            the number of bytes scanned by one task.
+	 * @return the number of rows the load would reject.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public long validate(final String fileName, ExecutorService pool, long chunkSize)
+			throws IOException, InterruptedException {
+		final AtomicLong badRows = new AtomicLong();
+		final AtomicInteger reported = new AtomicInteger();
+		long[] boundaries;
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			boundaries = chunkBoundaries(file.getChannel(), Math.max(chunkSize, BUFFER_SIZE));
+		} finally {
+			file.close();
+		}
+		ArrayList<Future<Void>> chunks = new ArrayList<Future<Void>>();
+		for (int i = 0; i + 1 < boundaries.length; i++) {
+			final long start = boundaries[i];
+			final long end = boundaries[i + 1];
+			chunks.add(pool.submit(new Callable<Void>() {
+				public Void call() throws IOException {
+					scanChunk(fileName, start, end, badRows, reported);
+					return null;
+				}
+			}));
+		}
+		try {
+			for (Future<Void> chunk : chunks) {
+				chunk.get();
+			}
+		} catch (ExecutionException e) {
+			throw new IOException("Validating " + fileName + " failed", e.getCause());
+		} finally {
+			for (Future<Void> chunk : chunks) {
+				chunk.cancel(true);
+			}
+		}
+		return badRows.get();
+	}
+
+	/**
+	 * Cuts a file into chunks of about the given size that start at the
+	 * beginning of a row.
+	 * 
+	 * @return the offsets of the chunks, followed by the file length.
+	 */
+	private long[] chunkBoundaries(FileChannel channel, long chunkSize) throws IOException {
+		long length = channel.size();
+		long[] boundaries = new long[(int) (length / chunkSize) + 2];
+		int count = 1;
+		ByteBuffer buffer = ByteBuffer.allocate(LOOKBACK + 64 * 1024);
+		long offset = chunkSize;
+		while (offset < length) {
+			// find the first row delimiter at or after the byte before the offset
+			long from = offset - 1;
+			long rowStart = -1;
+			while (rowStart < 0 && from < length) {
+				long readFrom = Math.max(0, from - LOOKBACK);
+				buffer.clear();
+				int bytesRead = channel.read(buffer, readFrom);
+				if (bytesRead <= 0) {
+					break;
+				}
+				byte[] bytes = buffer.array();
+				for (int i = (int) (from - readFrom); i < bytesRead; i++) {
+					if (bytes[i] == DelRowEncoder.ROW_DELIMITER && !isEscaped(bytes, i)) {
+						rowStart = readFrom + i + 1;
+						break;
+					}
+				}
+				from = readFrom + bytesRead;
+			}
+			if (rowStart < 0 || rowStart >= length) {
+				break;
+			}
+			boundaries[count++] = rowStart;
+			offset = rowStart + chunkSize;
+		}
+		boundaries[count++] = length;
+		return Arrays.copyOf(boundaries, count);
+	}
+
+	/**
+	 * Is the byte at an offset preceded by an odd run of escape characters.
+	 */
+	private boolean isEscaped(byte[] bytes, int offset) {
+		int escapes = 0;
+		while (this.escapeCharacter != 0 && offset - escapes - 1 >= 0
+				&& bytes[offset - escapes - 1] == this.escapeCharacter) {
+			escapes++;
+		}
+		return escapes % 2 == 1;
+	}
+
+	/**
+	 * Scans the rows of one chunk. Rows that do not fit the buffer are read
+	 * again into a larger one.
+	 */
+	private void scanChunk(String fileName, long start, long end, AtomicLong badRows, AtomicInteger reported)
+			throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(end - start, 1))];
+			long position = start;
+			int carry = 0;
+			while (position < end) {
+				int bytesRead = channel.read(ByteBuffer.wrap(buffer, carry,
+						(int) Math.min(buffer.length - carry, end - position)), position);
+				if (bytesRead <= 0) {
+					break;
+				}
+				position += bytesRead;
+				int limit = carry + bytesRead;
+				long bufferOffset = position - limit;
+				boolean last = position >= end;
+				int rowStart = 0;
+				while (rowStart < limit) {
+					int next = scanRow(buffer, rowStart, limit, last, fileName, bufferOffset + rowStart, badRows,
+							reported);
+					if (next < 0) {
+						break;
+					}
+					rowStart = next;
+				}
+				carry = limit - rowStart;
+				if (carry == buffer.length) {
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				} else {
+					System.arraycopy(buffer, rowStart, buffer, 0, carry);
+				}
+			}
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Checks the row starting at an offset.
+	 * 
+	 * @return the offset of the next row, or -1 if the row continues past the
+	 *         limit and more of the chunk is left.
+	 */
+	private int scanRow(byte[] row, int start, int limit, boolean last, String fileName, long fileOffset,
+			AtomicLong badRows, AtomicInteger reported) {
+		int column = 0;
+		int fieldStart = start;
+		int escapes = 0;
+		String problem = null;
+		for (int i = start;; i++) {
+			if (i >= limit && !last) {
+				return -1;
+			}
+			boolean endOfRow = i >= limit || row[i] == DelRowEncoder.ROW_DELIMITER;
+			if (endOfRow || row[i] == DelRowEncoder.COLUMN_DELIMITER) {
+				if (problem == null && column < this.columnTypes.length) {
+					problem = checkField(column, row, fieldStart, i, escapes);
+				}
+				column++;
+				fieldStart = i + 1;
+				escapes = 0;
+				if (endOfRow) {
+					if (problem == null && column != this.columnTypes.length) {
+						problem = "the row has " + column + " columns, the table " + this.columnTypes.length;
+					}
+					if (problem != null) {
+						badRows.incrementAndGet();
+						if (reported.incrementAndGet() <= this.maxErrors) {
+							logger.error(fileName + " at byte " + fileOffset + ": " + problem);
+						}
+					}
+					return Math.min(i + 1, limit);
+				}
+			} else if (this.escapeCharacter != 0 && row[i] == this.escapeCharacter) {
+				if (i + 1 >= limit && !last) {
+					return -1;
+				}
+				escapes++;
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Checks one value.
+	 * 
+	 * @return a description of the problem, or null if the value loads.
+	 */
+	private String checkField(int column, byte[] row, int start, int end, int escapes) {
+		if (start == end) {
+			return this.notNull[column] ? "NULL in NOT NULL column " + this.columnNames[column] : null;
+		}
+		boolean valid;
+		switch (this.columnTypes[column]) {
+		case TYPE_BYTES:
+			return checkLength(column, end - start - escapes, "bytes");
+		case TYPE_CODE_POINTS:
+			return checkLength(column, countCharacters(row, start, end, false) - escapes, "characters");
+		case TYPE_CODE_UNITS:
+			return checkLength(column, countCharacters(row, start, end, true) - escapes, "characters");
+		case TYPE_INTEGER:
+			valid = isInteger(row, start, end, this.columnLimits[column]);
+			break;
+		case TYPE_DECIMAL:
+			valid = isDecimal(row, start, end, (int) this.columnLimits[column] - this.columnScales[column]);
+			break;
+		case TYPE_FLOAT:
+			valid = isFloat(row, start, end);
+			break;
+		case TYPE_DATE:
+			valid = end - start == 8 ? isDate(row, start, false) : end - start == 10 && isDate(row, start, true);
+			break;
+		case TYPE_TIME:
+			valid = end - start == 8 && isTime(row, start);
+			break;
+		case TYPE_TIMESTAMP:
+			valid = isTimestamp(row, start, end);
+			break;
+		default:
+			return null;
+		}
+		return valid ? null
+				: "'" + new String(row, start, Math.min(end - start, 64), StandardCharsets.UTF_8)
+						+ "' is not a valid value of column " + this.columnNames[column];
+	}
+
+	/**
+	 * Compares the length of a value with the column length.
+	 */
+	private String checkLength(int column, long length, String units) {
+		if (length <= this.columnLimits[column]) {
+			return null;
+		}
+		return "a value of " + length + " " + units + " is longer than column " + this.columnNames[column] + " ("
+				+ this.columnLimits[column] + ")";
+	}
+
+	/**
+	 * Counts the characters of UTF-8 bytes, with characters outside the basic
+	 * plane counted twice when counting UTF-16 code units.
+	 */
+	private static int countCharacters(byte[] row, int start, int end, boolean codeUnits) {
+		int count = 0;
+		for (int i = start; i < end; i++) {
+			int b = row[i] & 0xFF;
+			if ((b & 0xC0) != 0x80) {
+				count += codeUnits && b >= 0xF0 ? 2 : 1;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Is a value an optionally signed integer within a magnitude.
+	 */
+	private static boolean isInteger(byte[] row, int start, int end, long limit) {
+		int i = start;
+		boolean negative = row[i] == '-';
+		if (row[i] == '-' || row[i] == '+') {
+			i++;
+		}
+		if (i == end || end - i > 19) {
+			return false;
+		}
+		// accumulated as a negative number, which reaches one further
+		long value = 0;
+		for (; i < end; i++) {
+			int digit = row[i] - '0';
+			if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+				return false;
+			}
+			value = value * 10 - digit;
+		}
+		return negative ? value >= -limit - 1 : value != Long.MIN_VALUE && -value <= limit;
+	}
+
+	/**
+	 * Is a value a decimal number with no more integer digits than allowed.
+	 * Extra fraction digits are truncated by the load.
+	 */
+	private static boolean isDecimal(byte[] row, int start, int end, int integerDigits) {
+		int i = start;
+		if (row[i] == '-' || row[i] == '+') {
+			i++;
+		}
+		int digits = 0;
+		int significant = 0;
+		boolean point = false;
+		for (; i < end; i++) {
+			if (row[i] == '.' && !point) {
+				point = true;
+			} else if (row[i] >= '0' && row[i] <= '9') {
+				digits++;
+				if (!point && (significant > 0 || row[i] != '0')) {
+					significant++;
+				}
+			} else {
+				return false;
+			}
+		}
+		return digits > 0 && significant <= integerDigits;
+	}
+
+	/**
+	 * Is a value a floating point number.
+	 */
+	private static boolean isFloat(byte[] row, int start, int end) {
+		boolean digits = false;
+		for (int i = start; i < end; i++) {
+			byte b = row[i];
+			if (b >= '0' && b <= '9') {
+				digits = true;
+			} else if (b != '.' && b != '-' && b != '+' && b != 'E' && b != 'e') {
+				return false;
+			}
+		}
+		return digits;
+	}
+
+	/**
+	 * Is a value a date, YYYYMMDD as exported or YYYY-MM-DD.
+	 */
+	private static boolean isDate(byte[] row, int start, boolean separated) {
+		int step = separated ? 1 : 0;
+		if (separated && (row[start + 4] != '-' || row[start + 7] != '-')) {
+			return false;
+		}
+		int year = digits(row, start, 4);
+		int month = digits(row, start + 4 + step, 2);
+		int day = digits(row, start + 6 + 2 * step, 2);
+		if (year < 1 || month < 1 || month > 12 || day < 1 || day > DAYS_IN_MONTH[month - 1]) {
+			return false;
+		}
+		return month != 2 || day < 29 || (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0));
+	}
+
+	/**
+	 * Is a value a time, HH.MM.SS or HH:MM:SS.
+	 */
+	private static boolean isTime(byte[] row, int start) {
+		byte separator = row[start + 2];
+		if ((separator != '.' && separator != ':') || row[start + 5] != separator) {
+			return false;
+		}
+		int hours = digits(row, start, 2);
+		int minutes = digits(row, start + 3, 2);
+		int seconds = digits(row, start + 6, 2);
+		return hours >= 0 && minutes >= 0 && seconds >= 0 && minutes < 60 && seconds < 60
+				&& (hours < 24 || (hours == 24 && minutes == 0 && seconds == 0));
+	}
+
+	/**
+	 * Is a value a timestamp, YYYY-MM-DD-HH.MM.SS with up to 12 fractional
+	 * digits, or with a blank and colons as separators.
+	 */
+	private static boolean isTimestamp(byte[] row, int start, int end) {
+		int length = end - start;
+		if (length < 19 || length == 20 || length > 32 || !isDate(row, start, true)) {
+			return false;
+		}
+		byte separator = row[start + 10];
+		if ((separator != '-' && separator != ' ' && separator != 'T') || !isTime(row, start + 11)) {
+			return false;
+		}
+		if (length > 19) {
+			if (row[start + 19] != '.' && row[start + 19] != ',') {
+				return false;
+			}
+			for (int i = start + 20; i < end; i++) {
+				if (row[i] < '0' || row[i] > '9') {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads a run of digits, or -1 if a byte is not a digit.
+	 */
+	private static int digits(byte[] row, int start, int count) {
+		int value = 0;
+		for (int i = start; i < start + count; i++) {
+			int digit = row[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+}
@@ -0,0 +1,263 @@
+package com.ibm.cloud.db2.migration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * The columns and rows of a table that are migrated, from the EXPORT_COLUMNS
+ * and EXPORT_WHERE settings. The column list is applied to both the export
+ * query and the target insert, so export files only hold the listed columns,
+ * in the listed order, and columns left out take their target default.
+ */
+public class ExportProjection {
+
+	/**
+	 * The exported columns as stored in the catalog, empty for all columns
+	 */
+	private ArrayList<String> columns = new ArrayList<String>();
+
+	/**
+	 * The row filter, empty for all rows
+	 */
+	private String where = "";
+
+	/**
+	 * Constructor
+	 * 
+	 * @param tableConfig
+	 *            the configuration of the table.
+	 */
+	public ExportProjection(ConfigurationBean tableConfig) {
+		super();
+		for (String column : tableConfig.getExportColumns().split(",")) {
+			if (!column.trim().isEmpty()) {
+				this.columns.add(TableName.normalize(column));
+			}
+		}
+		this.where = tableConfig.getExportWhere().trim();
+	}
+
+	/**
+	 * Are only some of the columns exported
+	 * 
+	 * @return true when a column list is configured.
+	 */
+	public boolean isPruned() {
+		return !this.columns.isEmpty();
+	}
+
+	/**
+	 * Are only some of the rows exported
+	 * 
+	 * @return true when a row filter is configured.
+	 */
+	public boolean isFiltered() {
+		return !this.where.isEmpty();
+	}
+
+	/**
+	 * Is a column exported
+	 * 
+	 * @param column
+	 *            the column name as stored in the catalog.
+	 * @return true when the column is exported.
+	 */
+	public boolean contains(String column) {
+		return !isPruned() || this.columns.contains(column);
+	}
+
+	/**
+	 * Gets the row filter.
+	 * 
+	 * @return the predicate, empty for all rows.
+	 */
+	public String getWhere() {
+		return where;
+	}
+
+	/**
+	 * Gets the select list of the export query.
+	 * 
+	 * @return the quoted column names, or * for all columns.
+	 */
+	public String getSelectList() {
+		return isPruned() ? joinColumns() : "*";
+	}
+
+	/**
+	 * Gets the query that exports the table.
+	 * 
+	 * @param tableName
+	 *            the name of the table being processed.
+	 * @return the select statement.
+	 */
+	public String getExportQuery(String tableName) {
+		return getExportQuery(tableName, null);
+	}
+
+	/**
+	 * Gets the query that exports part of the table.
+	 * 
+	 * @param tableName
+	 *            the name of the table being processed.
+	 * @param predicate
+	 *            the condition the exported rows must also meet, or null for
+	 *            none.
+	 * @return the select statement.
+	 */
+	public String getExportQuery(String tableName, String predicate) {
+		String query = "select " + getSelectList() + " from " + tableName;
+		if (isFiltered() && predicate != null) {
+			query = query + " where (" + this.where + ") and (" + predicate + ")";
+		} else if (isFiltered()) {
+			query = query + " where " + this.where;
+		} else if (predicate != null) {
+			query = query + " where " + predicate;
+		}
+		return query;
+	}
+
+	/**
+	 * Gets the column list of the target insert.
+	 * 
+	 * @return the parenthesized column list with a leading space, or an empty
+	 *         string for all columns.
+	 */
+	public String getInsertColumnList() {
+		return isPruned() ? " (" + joinColumns() + ")" : "";
+	}
+
+	/**
+	 * Gets the names of the columns in export file order.
+	 * 
+	 * @param connection
+	 *            a connection to the database holding the table.
+	 * @param tableName
+	 *            the name of the table being processed.
+	 * @return the configured columns, or all columns of the table in catalog
+	 *         order.
+	 * @throws SQLException
+	 */
+	public List<String> getExportedColumns(Connection connection, String tableName) throws SQLException {
+		if (isPruned()) {
+			return this.columns;
+		}
+		TableName table = TableName.parse(tableName);
+		ArrayList<String> names = new ArrayList<String>();
+		PreparedStatement statement = connection.prepareStatement(
+				"SELECT COLNAME FROM SYSCAT.COLUMNS WHERE TABSCHEMA = ? AND TABNAME = ? ORDER BY COLNO");
+		try {
+			statement.setString(1, table.getSchema(connection));
+			statement.setString(2, table.getName());
+			ResultSet resultSet = statement.executeQuery();
+			while (resultSet.next()) {
+				names.add(resultSet.getString(1));
+			}
+		} finally {
+			statement.close();
+		}
+		return names;
+	}
+
+	/**
+	 * Gets the column definitions of an external table holding the exported
+	 * columns, using the types of the target table.
+	 * 
+	 * @param connection
+	 *            a target connection.
+	 * @param tableName
+	 *            the name of the table being processed.
+	 * @return the parenthesized column definitions with a leading space, or an
+	 *         empty string for all columns, where the external table takes the
+	 *         shape of the target table.
+	 * @throws SQLException
+	 */
+	public String getExternalColumnDefinitions(Connection connection, String tableName) throws SQLException {
+		if (!isPruned()) {
+			return "";
+		}
+		TableName table = TableName.parse(tableName);
+		HashMap<String, String> types = new HashMap<String, String>();
+		PreparedStatement statement = connection.prepareStatement(
+				"SELECT COLNAME, TYPENAME, LENGTH, SCALE, CODEPAGE FROM SYSCAT.COLUMNS WHERE TABSCHEMA = ? AND TABNAME = ?");
+		try {
+			statement.setString(1, table.getSchema(connection));
+			statement.setString(2, table.getName());
+			ResultSet resultSet = statement.executeQuery();
+			while (resultSet.next()) {
+				types.put(resultSet.getString(1), getTypeDefinition(resultSet.getString(2).trim(),
+						resultSet.getInt(3), resultSet.getInt(4), resultSet.getInt(5)));
+			}
+		} finally {
+			statement.close();
+		}
+		StringBuilder definitions = new StringBuilder(" (");
+		for (String column : this.columns) {
+			String type = types.get(column);
+			if (type == null) {
+				throw new SQLException("Column " + column + " of EXPORT_COLUMNS does not exist in " + tableName);
+			}
+			if (definitions.length() > 2) {
+				definitions.append(", ");
+			}
+			definitions.append(TableName.quote(column)).append(" ").append(type);
+		}
+		return definitions.append(")").toString();
+	}
+
+	/**
+	 * Renders a column type from its catalog description.
+	 */
+	private static String getTypeDefinition(String typeName, int length, int scale, int codePage) {
+		if (typeName.equals("CHARACTER") || typeName.equals("VARCHAR")) {
+			return typeName + "(" + length + ")" + (codePage == 0 ? " FOR BIT DATA" : "");
+		}
+		if (typeName.equals("GRAPHIC") || typeName.equals("VARGRAPHIC") || typeName.equals("BINARY")
+				|| typeName.equals("VARBINARY")) {
+			return typeName + "(" + length + ")";
+		}
+		if (typeName.equals("DECIMAL")) {
+			return "DECIMAL(" + length + ", " + scale + ")";
+		}
+		if (typeName.equals("DECFLOAT")) {
+			return "DECFLOAT(" + (length == 8 ? 16 : 34) + ")";
+		}
+		if (typeName.equals("TIMESTAMP")) {
+			return "TIMESTAMP(" + scale + ")";
+		}
+		return typeName;
+	}
+
+	/**
+	 * Joins the quoted column names.
+	 */
+	private String joinColumns() {
+		StringBuilder list = new StringBuilder();
+		for (String column : this.columns) {
+			if (list.length() > 0) {
+				list.append(", ");
+			}
+			list.append(TableName.quote(column));
+		}
+		return list.toString();
+	}
+}
@@ -0,0 +1,238 @@
+package com.ibm.cloud.db2.migration;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Divides the export of a table into EXPORT_SHARDS ranges of an integer key
+ * column, so the shards are exported on several source sessions at the same
+ * time and loaded on several target sessions. The key is EXPORT_SHARD_COLUMN,
+ * or else the first column of the source table's primary key. The values
+ * between the smallest and the largest key are divided evenly, so a skewed key
+ * gives shards of different sizes. The first and the last range are open, so
+ * rows added after the bounds were read are exported too, and NULL keys go to
+ * the last shard.
+ */
+public class ExportShards {
+
+	/**
+	 * The quoted key column.
+	 */
+	private String column = null;
+
+	/**
+	 * The lower bound of every shard but the first, in shard order.
+	 */
+	private ArrayList<BigInteger> bounds = new ArrayList<BigInteger>();
+
+	/**
+	 * Reads the key column and its range from the source catalog and table.
+	 * 
+	 * @param connection
+	 *            a connection to the source database.
+	 * @param tableName
+	 *            the name of the table as listed in the table names file.
+	 * @param tableConfig
+	 *            the table's configuration.
+	 * @throws SQLException
+	 *             also if the table has no integer key column to shard by.
+	 */
+	public ExportShards(Connection connection, String tableName, ConfigurationBean tableConfig)
+			throws SQLException {
+		super();
+		TableName table = TableName.parse(tableName);
+		String schema = table.getSchema(connection);
+		String name = tableConfig.getExportShardColumn().trim().isEmpty()
+				? readPrimaryKeyColumn(connection, schema, table.getName())
+				: TableName.normalize(tableConfig.getExportShardColumn());
+		String type = name == null ? null : readType(connection, schema, table.getName(), name);
+		if (type == null || !(type.equals("SMALLINT") || type.equals("INTEGER") || type.equals("BIGINT"))) {
+			throw new SQLException("EXPORT_SHARDS needs a SMALLINT, INTEGER or BIGINT column to shard " + tableName
+					+ " by, set EXPORT_SHARD_COLUMN or give the table such a primary key");
+		}
+		this.column = TableName.quote(name);
+		BigInteger min = BigInteger.ZERO;
+		BigInteger max = BigInteger.ZERO;
+		PreparedStatement statement = connection
+				.prepareStatement("SELECT MIN(" + this.column + "), MAX(" + this.column + ") FROM " + tableName);
+		try {
+			ResultSet resultSet = statement.executeQuery();
+			if (resultSet.next() && resultSet.getBigDecimal(1) != null) {
+				min = resultSet.getBigDecimal(1).toBigInteger();
+				max = resultSet.getBigDecimal(2).toBigInteger();
+			}
+		} finally {
+			statement.close();
+		}
+		BigInteger count = BigInteger.valueOf(tableConfig.getExportShards());
+		BigInteger span = max.subtract(min).add(BigInteger.ONE);
+		for (int shard = 1; shard < tableConfig.getExportShards(); shard++) {
+			this.bounds.add(min.add(span.multiply(BigInteger.valueOf(shard)).divide(count)));
+		}
+	}
+
+	/**
+	 * Gets the number of shards.
+	 * 
+	 * @return the shard count.
+	 */
+	public int getShardCount() {
+		return this.bounds.size() + 1;
+	}
+
+	/**
+	 * Gets the condition that selects the rows of a shard.
+	 * 
+	 * @param shard
+	 *            the zero based shard number.
+	 * @return the predicate over the key column.
+	 */
+	public String getPredicate(int shard) {
+		if (shard == 0) {
+			return this.column + " < " + this.bounds.get(0);
+		}
+		String predicate = this.column + " >= " + this.bounds.get(shard - 1);
+		if (shard < this.bounds.size()) {
+			return predicate + " AND " + this.column + " < " + this.bounds.get(shard);
+		}
+		return predicate + " OR " + this.column + " IS NULL";
+	}
+
+	/**
+	 * Gets the export file name of a shard.
+	 * 
+	 * @param tableName
+	 *            the name of the table being processed.
+	 * @param shard
+	 *            the zero based shard number.
+	 * @return the shard file name.
+	 */
+	public static String getFileName(String tableName, int shard) {
+		return tableName + ".s" + shard + ".csv";
+	}
+
+	/**
+	 * Gets the export file names of all shards of a table.
+	 * 
+	 * @param tableName
+	 *            the name of the table being processed.
+	 * @param shardCount
+	 *            the number of shards.
+	 * @return the shard file names, in shard order.
+	 */
+	public static List<String> getFileNames(String tableName, int shardCount) {
+		ArrayList<String> fileNames = new ArrayList<String>();
+		for (int shard = 0; shard < shardCount; shard++) {
+			fileNames.add(getFileName(tableName, shard));
+		}
+		return fileNames;
+	}
+
+	/**
+	 * Is a file one of the shard files of a table.
+	 * 
+	 * @param fileName
+	 *            the file name.
+	 * @param tableName
+	 *            the name of the table being processed.
+	 * @return true for the table's shard files.
+	 */
+	public static boolean isShardFile(String fileName, String tableName) {
+		return fileName.startsWith(tableName + ".s") && fileName.endsWith(".csv")
+				&& fileName.substring(tableName.length() + 2, fileName.length() - 4).matches("\\d+");
+	}
+
+	/**
+	 * Lists the shard files written for a table, in shard order.
+	 * 
+	 * @param directory
+	 *            the export file location.
+	 * @param tableName
+	 *            the name of the table being processed.
+	 * @return the shard file names, empty if the export was not sharded.
+	 */
+	public static List<String> listFiles(String directory, String tableName) {
+		ArrayList<String> fileNames = new ArrayList<String>();
+		for (int shard = 0; new File(directory + getFileName(tableName, shard)).exists(); shard++) {
+			fileNames.add(getFileName(tableName, shard));
+		}
+		return fileNames;
+	}
+
+	/**
+	 * Removes the shard files of an earlier export of a table.
+	 * 
+	 * @param directory
+	 *            the export file location.
+	 * @param tableName
+	 *            the name of the table being processed.
+	 */
+	public static void deleteFiles(String directory, String tableName) {
+		String[] names = new File(directory).list();
+		if (names == null) {
+			return;
+		}
+		for (String name : names) {
+			if (isShardFile(name, tableName)) {
+				new File(directory + name).delete();
+			}
+		}
+	}
+
+	/**
+	 * Reads the first column of a table's primary key.
+	 */
+	private static String readPrimaryKeyColumn(Connection connection, String schema, String name)
+			throws SQLException {
+		PreparedStatement statement = connection.prepareStatement("SELECT K.COLNAME FROM SYSCAT.TABCONST T "
+				+ "JOIN SYSCAT.KEYCOLUSE K ON K.CONSTNAME = T.CONSTNAME AND K.TABSCHEMA = T.TABSCHEMA "
+				+ "AND K.TABNAME = T.TABNAME WHERE T.TABSCHEMA = ? AND T.TABNAME = ? AND T.TYPE = 'P' "
+				+ "ORDER BY K.COLSEQ");
+		try {
+			statement.setString(1, schema);
+			statement.setString(2, name);
+			ResultSet resultSet = statement.executeQuery();
+			return resultSet.next() ? resultSet.getString(1) : null;
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Reads the type of a column, null if the table has no such column.
+	 */
+	private static String readType(Connection connection, String schema, String name, String column)
+			throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(
+				"SELECT TYPENAME FROM SYSCAT.COLUMNS WHERE TABSCHEMA = ? AND TABNAME = ? AND COLNAME = ?");
+		try {
+			statement.setString(1, schema);
+			statement.setString(2, name);
+			statement.setString(3, column);
+			ResultSet resultSet = statement.executeQuery();
+			return resultSet.next() ? resultSet.getString(1).trim() : null;
+		} finally {
+			statement.close();
+		}
+	}
+}
@@ -0,0 +1,565 @@
+package com.ibm.cloud.db2.migration;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Puts the rows of an export in the order of the target table's clustering
+ * key, so the load appends to clustering and MDC blocks in sequence and index
+ * builds read presorted keys. The key is the columns of the target's
+ * clustering index, else its MDC dimensions, else its primary key. The order
+ * is either added to the export query, so the source database sorts, or
+ * applied to the export file afterwards with an external merge sort: sorted
+ * runs of EXPORT_SORT_MEMORY_MB are spilled next to the file and merged into
+ * it.
+ */
+public class ExportSorter {
+	private static Log logger = LogFactory.getLog(ExportSorter.class);
+
+	/**
+	 * The size of the read buffer of the export file and of each run
+	 */
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	/**
+	 * The estimated memory used by a buffered row besides its bytes
+	 */
+	private static final int ROW_OVERHEAD = 96;
+
+	/**
+	 * The sort key columns, in key order
+	 */
+	private ArrayList<String> keyColumns = new ArrayList<String>();
+
+	/**
+	 * Is each key column descending
+	 */
+	private ArrayList<Boolean> descending = new ArrayList<Boolean>();
+
+	/**
+	 * Is each key column numeric, compared by value rather than by bytes
+	 */
+	private ArrayList<Boolean> numeric = new ArrayList<Boolean>();
+
+	/**
+	 * Where the key comes from, for the log
+	 */
+	private String keySource = "";
+
+	/**
+	 * Reads the sort key of a table from the target catalog.
+	 * 
+	 * @param connection
+	 *            a connection to the target database.
+	 * @param tableName
+	 *            the name of the table as listed in the table names file.
+	 * @throws SQLException
+	 */
+	public ExportSorter(Connection connection, String tableName) throws SQLException {
+		super();
+		TableName table = TableName.parse(tableName);
+		String schema = table.getSchema(connection);
+		if (readIndexKey(connection, schema, table.getName(), "I.INDEXTYPE = 'CLUS'")) {
+			this.keySource = "clustering index";
+		} else if (readDimensions(connection, schema, table.getName())) {
+			this.keySource = "dimensions";
+		} else if (readIndexKey(connection, schema, table.getName(), "I.UNIQUERULE = 'P'")) {
+			this.keySource = "primary key";
+		}
+		if (this.keyColumns.isEmpty()) {
+			return;
+		}
+		HashMap<String, String> types = new HashMap<String, String>();
+		PreparedStatement statement = connection
+				.prepareStatement("SELECT COLNAME, TYPENAME FROM SYSCAT.COLUMNS WHERE TABSCHEMA = ? AND TABNAME = ?");
+		try {
+			statement.setString(1, schema);
+			statement.setString(2, table.getName());
+			ResultSet resultSet = statement.executeQuery();
+			while (resultSet.next()) {
+				types.put(resultSet.getString(1), resultSet.getString(2).trim());
+			}
+		} finally {
+			statement.close();
+		}
+		for (String column : this.keyColumns) {
+			String type = types.get(column);
+			this.numeric.add(type != null && (type.equals("SMALLINT") || type.equals("INTEGER")
+					|| type.equals("BIGINT") || type.equals("DECIMAL") || type.equals("REAL")
+					|| type.equals("DOUBLE") || type.equals("DECFLOAT")));
+		}
+	}
+
+	/**
+	 * Reads the key columns of the first index matching a predicate. Include
+	 * columns are not part of the order.
+	 */
+	private boolean readIndexKey(Connection connection, String schema, String name, String predicate)
+			throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(
+				"SELECT I.INDSCHEMA, I.INDNAME, C.COLNAME, C.COLORDER FROM SYSCAT.INDEXES I "
+						+ "JOIN SYSCAT.INDEXCOLUSE C ON C.INDSCHEMA = I.INDSCHEMA AND C.INDNAME = I.INDNAME "
+						+ "WHERE I.TABSCHEMA = ? AND I.TABNAME = ? AND " + predicate + " AND C.COLORDER <> 'I' "
+						+ "ORDER BY I.INDSCHEMA, I.INDNAME, C.COLSEQ");
+		try {
+			statement.setString(1, schema);
+			statement.setString(2, name);
+			ResultSet resultSet = statement.executeQuery();
+			String index = null;
+			while (resultSet.next()) {
+				String indexName = resultSet.getString(1).trim() + "." + resultSet.getString(2);
+				if (index != null && !index.equals(indexName)) {
+					break;
+				}
+				index = indexName;
+				this.keyColumns.add(resultSet.getString(3));
+				this.descending.add("D".equals(resultSet.getString(4)));
+			}
+		} finally {
+			statement.close();
+		}
+		return !this.keyColumns.isEmpty();
+	}
+
+	/**
+	 * Reads the dimension columns of a multidimensional clustering table.
+	 */
+	private boolean readDimensions(Connection connection, String schema, String name) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(
+				"SELECT COLNAME FROM SYSCAT.COLUSE WHERE TABSCHEMA = ? AND TABNAME = ? ORDER BY DIMENSION, COLSEQ");
+		try {
+			statement.setString(1, schema);
+			statement.setString(2, name);
+			ResultSet resultSet = statement.executeQuery();
+			while (resultSet.next()) {
+				this.keyColumns.add(resultSet.getString(1));
+				this.descending.add(Boolean.FALSE);
+			}
+		} finally {
+			statement.close();
+		}
+		return !this.keyColumns.isEmpty();
+	}
+
+	/**
+	 * Indicates if the target table has a key to sort by.
+	 * 
+	 * @return true if a clustering index, dimensions or a primary key was found.
+	 */
+	public boolean hasKey() {
+		return !this.keyColumns.isEmpty();
+	}
+
+	/**
+	 * Describes the sort key for the log.
+	 * 
+	 * @return the key source and columns.
+	 */
+	public String getDescription() {
+		return this.keySource + " " + this.keyColumns;
+	}
+
+	/**
+	 * Gets the ORDER BY clause that exports rows in key order.
+	 * 
+	 * @return the clause with a leading space, or an empty string without a
+	 *         key.
+	 */
+	public String getOrderBy() {
+		if (this.keyColumns.isEmpty()) {
+			return "";
+		}
+		StringBuilder orderBy = new StringBuilder(" order by ");
+		for (int i = 0; i < this.keyColumns.size(); i++) {
+			if (i > 0) {
+				orderBy.append(", ");
+			}
+			orderBy.append(TableName.quote(this.keyColumns.get(i)));
+			if (this.descending.get(i).booleanValue()) {
+				orderBy.append(" desc");
+			}
+		}
+		return orderBy.toString();
+	}
+
+	/**
+	 * Sorts an export file in place. Key columns that are not exported end the
+	 * key. Rows with equal keys keep their order.
+	 * 
+	 * @param fileName
+	 *            the path of the export file.
+	 * @param exportedColumns
+	 *            the columns of the export file, in file order.
+	 * @param escapeCharacter
+	 *            the escape character of the export, zero for none.
+	 * @param memoryBytes
+	 *            the size of the rows sorted in memory at a time.
+	 * @return the number of rows sorted.
+	 * @throws IOException
+	 */
+	public long sort(String fileName, List<String> exportedColumns, char escapeCharacter, long memoryBytes)
+			throws IOException {
+		ArrayList<Integer> positions = new ArrayList<Integer>();
+		for (String column : this.keyColumns) {
+			int position = exportedColumns.indexOf(column);
+			if (position < 0) {
+				logger.warn("Sort key column " + column + " is not exported, sorting by the columns before it");
+				break;
+			}
+			positions.add(position);
+		}
+		if (positions.isEmpty()) {
+			return 0;
+		}
+		KeyReader keys = new KeyReader(positions, (byte) escapeCharacter);
+		ArrayList<File> runs = new ArrayList<File>();
+		ArrayList<Row> rows = new ArrayList<Row>();
+		long rowCount = 0;
+		long bufferedBytes = 0;
+		RowReader reader = new RowReader(new FileInputStream(fileName), (byte) escapeCharacter);
+		try {
+			byte[] row;
+			while ((row = reader.next()) != null) {
+				rows.add(new Row(row, keys.read(row)));
+				rowCount++;
+				bufferedBytes += row.length + ROW_OVERHEAD;
+				if (bufferedBytes >= memoryBytes) {
+					runs.add(writeRun(fileName, runs.size(), rows, keys));
+					rows.clear();
+					bufferedBytes = 0;
+				}
+			}
+		} catch (IOException e) {
+			deleteRuns(runs);
+			throw e;
+		} finally {
+			reader.close();
+		}
+		File sorted = new File(fileName + ".sorted");
+		try {
+			if (runs.isEmpty()) {
+				writeRows(sorted, rows, keys);
+			} else {
+				if (!rows.isEmpty()) {
+					runs.add(writeRun(fileName, runs.size(), rows, keys));
+				}
+				rows = null;
+				logger.info("Merging " + runs.size() + " sorted runs of " + fileName);
+				merge(sorted, runs, keys, (byte) escapeCharacter);
+			}
+		} catch (IOException e) {
+			sorted.delete();
+			throw e;
+		} finally {
+			deleteRuns(runs);
+		}
+		File file = new File(fileName);
+		if (!file.delete() || !sorted.renameTo(file)) {
+			throw new IOException("Cannot replace " + fileName + " with " + sorted.getPath());
+		}
+		return rowCount;
+	}
+
+	/**
+	 * Sorts rows and writes them to a new run file.
+	 */
+	private File writeRun(String fileName, int run, ArrayList<Row> rows, KeyReader keys) throws IOException {
+		File runFile = new File(fileName + ".run" + run);
+		writeRows(runFile, rows, keys);
+		return runFile;
+	}
+
+	/**
+	 * Sorts rows and writes them to a file.
+	 */
+	private void writeRows(File file, ArrayList<Row> rows, KeyReader keys) throws IOException {
+		Row[] sorted = rows.toArray(new Row[rows.size()]);
+		// parallelSort is stable, so rows with equal keys keep their order
+		Arrays.parallelSort(sorted, keys);
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+		try {
+			for (Row row : sorted) {
+				out.write(row.bytes);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Merges sorted runs into one file. Runs are merged in one pass, taking the
+	 * earlier run first for equal keys.
+	 */
+	private void merge(File file, ArrayList<File> runs, final KeyReader keys, byte escapeCharacter)
+			throws IOException {
+		final ArrayList<RowReader> readers = new ArrayList<RowReader>();
+		PriorityQueue<Row> heads = new PriorityQueue<Row>(Math.max(1, runs.size()), new Comparator<Row>() {
+			public int compare(Row a, Row b) {
+				int order = keys.compare(a, b);
+				return order != 0 ? order : Integer.compare(a.run, b.run);
+			}
+		});
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+		try {
+			for (File run : runs) {
+				RowReader reader = new RowReader(new FileInputStream(run), escapeCharacter);
+				readers.add(reader);
+				byte[] row = reader.next();
+				if (row != null) {
+					heads.add(new Row(row, keys.read(row), readers.size() - 1));
+				}
+			}
+			while (!heads.isEmpty()) {
+				Row head = heads.poll();
+				out.write(head.bytes);
+				byte[] row = readers.get(head.run).next();
+				if (row != null) {
+					heads.add(new Row(row, keys.read(row), head.run));
+				}
+			}
+		} finally {
+			out.close();
+			for (RowReader reader : readers) {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Removes the run files.
+	 */
+	private static void deleteRuns(ArrayList<File> runs) {
+		for (File run : runs) {
+			if (run.exists() && !run.delete()) {
+				logger.warn("Cannot delete sort run " + run.getPath());
+			}
+		}
+	}
+
+	/**
+	 * A row of the export file and its sort key.
+	 */
+	private static final class Row {
+		private byte[] bytes;
+		private Object[] key;
+		private int run = 0;
+
+		Row(byte[] bytes, Object[] key) {
+			this.bytes = bytes;
+			this.key = key;
+		}
+
+		Row(byte[] bytes, Object[] key, int run) {
+			this(bytes, key);
+			this.run = run;
+		}
+	}
+
+	/**
+	 * Extracts and compares the sort keys of rows. Numeric values are compared
+	 * as numbers and everything else by its bytes, which matches the order of
+	 * the export's date and time formats. NULLs sort last in ascending order,
+	 * as in Db2.
+	 */
+	private final class KeyReader implements Comparator<Row> {
+		private int[] positions;
+		private int[] keyIndex;
+		private byte escapeCharacter;
+
+		KeyReader(List<Integer> positions, byte escapeCharacter) {
+			int last = 0;
+			for (Integer position : positions) {
+				last = Math.max(last, position.intValue());
+			}
+			this.positions = new int[positions.size()];
+			this.keyIndex = new int[last + 1];
+			Arrays.fill(this.keyIndex, -1);
+			for (int i = 0; i < this.positions.length; i++) {
+				this.positions[i] = positions.get(i).intValue();
+				this.keyIndex[this.positions[i]] = i;
+			}
+			this.escapeCharacter = escapeCharacter;
+		}
+
+		/**
+		 * Reads the key values of a row, null for NULL.
+		 */
+		Object[] read(byte[] row) {
+			Object[] key = new Object[this.positions.length];
+			int column = 0;
+			int fieldStart = 0;
+			for (int i = 0; i <= row.length && column < this.keyIndex.length; i++) {
+				boolean endOfField = i == row.length || row[i] == DelRowEncoder.COLUMN_DELIMITER
+						|| row[i] == DelRowEncoder.ROW_DELIMITER;
+				if (endOfField) {
+					int index = this.keyIndex[column];
+					if (index >= 0 && i > fieldStart) {
+						key[index] = value(index, row, fieldStart, i);
+					}
+					column++;
+					fieldStart = i + 1;
+				} else if (this.escapeCharacter != 0 && row[i] == this.escapeCharacter) {
+					i++;
+				}
+			}
+			return key;
+		}
+
+		private Object value(int index, byte[] row, int start, int end) {
+			if (numeric.get(index).booleanValue()) {
+				try {
+					return new BigDecimal(new String(row, start, end - start, StandardCharsets.US_ASCII).trim());
+				} catch (NumberFormatException e) {
+					// not a number the load accepts, sort it with the NULLs
+					return null;
+				}
+			}
+			return Arrays.copyOfRange(row, start, end);
+		}
+
+		public int compare(Row a, Row b) {
+			for (int i = 0; i < this.positions.length; i++) {
+				Object x = a.key[i];
+				Object y = b.key[i];
+				int order;
+				if (x == null || y == null) {
+					order = x == null ? (y == null ? 0 : 1) : -1;
+				} else if (x instanceof BigDecimal) {
+					order = ((BigDecimal) x).compareTo((BigDecimal) y);
+				} else {
+					order = compareBytes((byte[]) x, (byte[]) y);
+				}
+				if (order != 0) {
+					return descending.get(i).booleanValue() ? -order : order;
+				}
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * Compares byte arrays as unsigned bytes.
+	 */
+	private static int compareBytes(byte[] a, byte[] b) {
+		int length = Math.min(a.length, b.length);
+		for (int i = 0; i < length; i++) {
+			int order = (a[i] & 0xFF) - (b[i] & 0xFF);
+			if (order != 0) {
+				return order;
+			}
+		}
+		return a.length - b.length;
+	}
+
+	/**
+	 * Reads whole rows, including their row delimiter, from an export file or
+	 * a run.
+	 */
+	private static final class RowReader {
+		private InputStream in;
+		private byte escapeCharacter;
+		private byte[] buffer = new byte[BUFFER_SIZE];
+		private int position = 0;
+		private int limit = 0;
+
+		RowReader(InputStream in, byte escapeCharacter) {
+			this.in = in;
+			this.escapeCharacter = escapeCharacter;
+		}
+
+		/**
+		 * Gets the next row, or null at the end of the file. A last row without
+		 * a row delimiter gets one.
+		 */
+		byte[] next() throws IOException {
+			int scan = this.position;
+			while (true) {
+				for (; scan < this.limit; scan++) {
+					byte b = this.buffer[scan];
+					if (b == DelRowEncoder.ROW_DELIMITER) {
+						byte[] row = Arrays.copyOfRange(this.buffer, this.position, scan + 1);
+						this.position = scan + 1;
+						return row;
+					} else if (this.escapeCharacter != 0 && b == this.escapeCharacter) {
+						if (scan + 1 >= this.limit) {
+							break;
+						}
+						scan++;
+					}
+				}
+				int scanned = scan - this.position;
+				if (!fill()) {
+					if (this.position == this.limit) {
+						return null;
+					}
+					byte[] row = Arrays.copyOfRange(this.buffer, this.position, this.limit + 1);
+					row[row.length - 1] = DelRowEncoder.ROW_DELIMITER;
+					this.position = this.limit;
+					return row;
+				}
+				scan = this.position + scanned;
+			}
+		}
+
+		/**
+		 * Moves the unread bytes to the front of the buffer, growing it for long
+		 * rows, and reads more.
+		 * 
+		 * @return false at the end of the file.
+		 */
+		private boolean fill() throws IOException {
+			int unread = this.limit - this.position;
+			if (unread == this.buffer.length) {
+				this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+			} else {
+				System.arraycopy(this.buffer, this.position, this.buffer, 0, unread);
+			}
+			this.position = 0;
+			this.limit = unread;
+			int bytesRead = this.in.read(this.buffer, this.limit, this.buffer.length - this.limit);
+			if (bytesRead <= 0) {
+				return false;
+			}
+			this.limit += bytesRead;
+			return true;
+		}
+
+		void close() throws IOException {
+			this.in.close();
+		}
+	}
+}
@@ -0,0 +1,284 @@
+package com.ibm.cloud.db2.migration;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A work queue kept in a file in a directory shared by all processes, such as
+ * a local directory when the workers run on one host or a network file system
+ * mounted by every host. Each operation takes an exclusive lock on a lock file
+ * next to the queue, reads the queue, and replaces it with an atomic rename,
+ * so a process that dies mid-write never leaves a damaged queue. Lease
+ * expiry uses the clocks of the hosts, which should be synchronized.
+ */
+public class FileWorkQueue implements WorkQueue {
+
+	/**
+	 * The file holding one line per table
+	 */
+	private File queueFile = null;
+
+	/**
+	 * The file locked while the queue is read and written
+	 */
+	private File lockFile = null;
+
+	/**
+	 * One table in the queue.
+	 */
+	private static class Entry {
+		private String status = PENDING;
+		private int attempts = 0;
+		private String worker = "";
+		private long leaseExpires = 0;
+		private String tableName = "";
+		private String message = "";
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param directory
+	 *            the directory holding the queue.
+	 */
+	public FileWorkQueue(String directory) {
+		super();
+		new File(directory).mkdirs();
+		this.queueFile = new File(directory, "queue.tsv");
+		this.lockFile = new File(directory, "queue.lock");
+	}
+
+	public synchronized void enqueue(List<String> tableNames) throws IOException {
+		FileChannel lock = lock();
+		try {
+			LinkedHashMap<String, Entry> entries = read();
+			for (String tableName : tableNames) {
+				if (!entries.containsKey(tableName)) {
+					Entry entry = new Entry();
+					entry.tableName = tableName;
+					entries.put(tableName, entry);
+				}
+			}
+			write(entries);
+		} finally {
+			lock.close();
+		}
+	}
+
+	public synchronized WorkItem claim(String workerId, int leaseSeconds) throws IOException {
+		FileChannel lock = lock();
+		try {
+			LinkedHashMap<String, Entry> entries = read();
+			for (Entry entry : entries.values()) {
+				if (entry.status.equals(PENDING)) {
+					entry.status = LEASED;
+					entry.attempts++;
+					entry.worker = workerId;
+					entry.leaseExpires = System.currentTimeMillis() + leaseSeconds * 1000L;
+					write(entries);
+					return new WorkItem(entry.tableName, entry.attempts);
+				}
+			}
+			return null;
+		} finally {
+			lock.close();
+		}
+	}
+
+	public synchronized boolean renew(WorkItem item, String workerId, int leaseSeconds) throws IOException {
+		FileChannel lock = lock();
+		try {
+			LinkedHashMap<String, Entry> entries = read();
+			Entry entry = getLeased(entries, item, workerId);
+			if (entry == null) {
+				return false;
+			}
+			entry.leaseExpires = System.currentTimeMillis() + leaseSeconds * 1000L;
+			write(entries);
+			return true;
+		} finally {
+			lock.close();
+		}
+	}
+
+	public synchronized void complete(WorkItem item, String workerId) throws IOException {
+		FileChannel lock = lock();
+		try {
+			LinkedHashMap<String, Entry> entries = read();
+			Entry entry = getLeased(entries, item, workerId);
+			if (entry != null) {
+				entry.status = DONE;
+				entry.message = "";
+				write(entries);
+			}
+		} finally {
+			lock.close();
+		}
+	}
+
+	public synchronized void fail(WorkItem item, String workerId, String message, int maxAttempts)
+			throws IOException {
+		FileChannel lock = lock();
+		try {
+			LinkedHashMap<String, Entry> entries = read();
+			Entry entry = getLeased(entries, item, workerId);
+			if (entry != null) {
+				entry.status = entry.attempts >= maxAttempts ? FAILED : PENDING;
+				entry.message = message;
+				write(entries);
+			}
+		} finally {
+			lock.close();
+		}
+	}
+
+	public synchronized int reassignExpired(int maxAttempts) throws IOException {
+		FileChannel lock = lock();
+		try {
+			LinkedHashMap<String, Entry> entries = read();
+			long now = System.currentTimeMillis();
+			int expired = 0;
+			for (Entry entry : entries.values()) {
+				if (entry.status.equals(LEASED) && entry.leaseExpires < now) {
+					entry.status = entry.attempts >= maxAttempts ? FAILED : PENDING;
+					entry.message = "lease of " + entry.worker + " expired";
+					expired++;
+				}
+			}
+			if (expired > 0) {
+				write(entries);
+			}
+			return expired;
+		} finally {
+			lock.close();
+		}
+	}
+
+	public synchronized Map<String, Integer> getStatusCounts() throws IOException {
+		FileChannel lock = lock();
+		try {
+			TreeMap<String, Integer> counts = new TreeMap<String, Integer>();
+			for (Entry entry : read().values()) {
+				Integer count = counts.get(entry.status);
+				counts.put(entry.status, count == null ? 1 : count + 1);
+			}
+			return counts;
+		} finally {
+			lock.close();
+		}
+	}
+
+	public void close() {
+	}
+
+	/**
+	 * Gets the entry of a table if the worker still holds its lease.
+	 */
+	private Entry getLeased(LinkedHashMap<String, Entry> entries, WorkItem item, String workerId) {
+		Entry entry = entries.get(item.getTableName());
+		if (entry == null || !entry.status.equals(LEASED) || !entry.worker.equals(workerId)
+				|| entry.attempts != item.getAttempt()) {
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * Takes the exclusive lock shared by all processes. Closing the returned
+	 * channel releases it.
+	 */
+	private FileChannel lock() throws IOException {
+		FileChannel channel = new RandomAccessFile(this.lockFile, "rw").getChannel();
+		try {
+			channel.lock();
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		return channel;
+	}
+
+	/**
+	 * Reads the queue. Each line holds the status, attempts, worker, lease
+	 * expiry, table name and last message of a table, separated by tabs.
+	 */
+	private LinkedHashMap<String, Entry> read() throws IOException {
+		LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>();
+		if (!this.queueFile.exists()) {
+			return entries;
+		}
+		BufferedReader in = new BufferedReader(
+				new InputStreamReader(new FileInputStream(this.queueFile), StandardCharsets.UTF_8));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] fields = line.split("\t", -1);
+				if (fields.length < 6) {
+					continue;
+				}
+				Entry entry = new Entry();
+				entry.status = fields[0];
+				entry.attempts = Integer.parseInt(fields[1]);
+				entry.worker = fields[2];
+				entry.leaseExpires = Long.parseLong(fields[3]);
+				entry.tableName = fields[4];
+				entry.message = fields[5];
+				entries.put(entry.tableName, entry);
+			}
+		} finally {
+			in.close();
+		}
+		return entries;
+	}
+
+	/**
+	 * Writes the queue to a temporary file and renames it over the queue.
+	 */
+	private void write(LinkedHashMap<String, Entry> entries) throws IOException {
+		File tempFile = new File(this.queueFile.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(tempFile);
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		try {
+			for (Entry entry : entries.values()) {
+				writer.write(entry.status + "\t" + entry.attempts + "\t" + entry.worker + "\t" + entry.leaseExpires
+						+ "\t" + entry.tableName + "\t" + entry.message.replaceAll("[\t\r\n]", " "));
+				writer.newLine();
+			}
+			writer.flush();
+			out.getFD().sync();
+		} finally {
+			writer.close();
+		}
+		Files.move(tempFile.toPath(), this.queueFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+}
@@ -0,0 +1,307 @@
+package com.ibm.cloud.db2.migration;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Reads and writes the JSON of the daemon's job API. Objects are read as maps,
+ * arrays as lists, numbers as doubles, and strings, booleans and null as the
+ * matching Java values. The same types are written.
+ */
+public final class Json {
+
+	/**
+	 * The text being read
+	 */
+	private String text;
+
+	/**
+	 * The read position
+	 */
+	private int position = 0;
+
+	/**
+	 * Constructor
+	 */
+	private Json(String text) {
+		super();
+		this.text = text;
+	}
+
+	/**
+	 * Reads a JSON value.
+	 * 
+	 * @param text
+	 *            the JSON text.
+	 * @return the value.
+	 * @throws IllegalArgumentException
+	 *             if the text is not valid JSON.
+	 */
+	public static Object parse(String text) {
+		Json json = new Json(text);
+		Object value = json.readValue();
+		json.skipWhitespace();
+		if (json.position != text.length()) {
+			throw json.error("unexpected text after the value");
+		}
+		return value;
+	}
+
+	/**
+	 * Writes a value as JSON.
+	 * 
+	 * @param value
+	 *            a map, list, string, number, boolean or null.
+	 * @return the JSON text.
+	 */
+	public static String write(Object value) {
+		StringBuilder out = new StringBuilder();
+		write(value, out);
+		return out.toString();
+	}
+
+	private static void write(Object value, StringBuilder out) {
+		if (value == null) {
+			out.append("null");
+		} else if (value instanceof Map) {
+			out.append('{');
+			Iterator<? extends Map.Entry<?, ?>> entries = ((Map<?, ?>) value).entrySet().iterator();
+			while (entries.hasNext()) {
+				Map.Entry<?, ?> entry = entries.next();
+				writeString(String.valueOf(entry.getKey()), out);
+				out.append(':');
+				write(entry.getValue(), out);
+				if (entries.hasNext()) {
+					out.append(',');
+				}
+			}
+			out.append('}');
+		} else if (value instanceof List) {
+			out.append('[');
+			Iterator<?> items = ((List<?>) value).iterator();
+			while (items.hasNext()) {
+				write(items.next(), out);
+				if (items.hasNext()) {
+					out.append(',');
+				}
+			}
+			out.append(']');
+		} else if (value instanceof Number || value instanceof Boolean) {
+			out.append(value);
+		} else {
+			writeString(value.toString(), out);
+		}
+	}
+
+	private static void writeString(String value, StringBuilder out) {
+		out.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			case '\r':
+				out.append("\\r");
+				break;
+			case '\t':
+				out.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					out.append(String.format("\\u%04x", (int) c));
+				} else {
+					out.append(c);
+				}
+			}
+		}
+		out.append('"');
+	}
+
+	private Object readValue() {
+		skipWhitespace();
+		if (this.position >= this.text.length()) {
+			throw error("unexpected end of text");
+		}
+		char c = this.text.charAt(this.position);
+		if (c == '{') {
+			return readObject();
+		}
+		if (c == '[') {
+			return readArray();
+		}
+		if (c == '"') {
+			return readString();
+		}
+		if (this.text.startsWith("true", this.position)) {
+			this.position += 4;
+			return Boolean.TRUE;
+		}
+		if (this.text.startsWith("false", this.position)) {
+			this.position += 5;
+			return Boolean.FALSE;
+		}
+		if (this.text.startsWith("null", this.position)) {
+			this.position += 4;
+			return null;
+		}
+		return readNumber();
+	}
+
+	private Map<String, Object> readObject() {
+		LinkedHashMap<String, Object> object = new LinkedHashMap<String, Object>();
+		this.position++;
+		skipWhitespace();
+		if (peek() == '}') {
+			this.position++;
+			return object;
+		}
+		while (true) {
+			skipWhitespace();
+			if (peek() != '"') {
+				throw error("expected a member name");
+			}
+			String name = readString();
+			skipWhitespace();
+			expect(':');
+			object.put(name, readValue());
+			skipWhitespace();
+			if (peek() == ',') {
+				this.position++;
+			} else {
+				expect('}');
+				return object;
+			}
+		}
+	}
+
+	private List<Object> readArray() {
+		ArrayList<Object> array = new ArrayList<Object>();
+		this.position++;
+		skipWhitespace();
+		if (peek() == ']') {
+			this.position++;
+			return array;
+		}
+		while (true) {
+			array.add(readValue());
+			skipWhitespace();
+			if (peek() == ',') {
+				this.position++;
+			} else {
+				expect(']');
+				return array;
+			}
+		}
+	}
+
+	private String readString() {
+		StringBuilder value = new StringBuilder();
+		this.position++;
+		while (true) {
+			if (this.position >= this.text.length()) {
+				throw error("unterminated string");
+			}
+			char c = this.text.charAt(this.position++);
+			if (c == '"') {
+				return value.toString();
+			}
+			if (c != '\\') {
+				value.append(c);
+				continue;
+			}
+			if (this.position >= this.text.length()) {
+				throw error("unterminated string");
+			}
+			char escaped = this.text.charAt(this.position++);
+			switch (escaped) {
+			case 'n':
+				value.append('\n');
+				break;
+			case 'r':
+				value.append('\r');
+				break;
+			case 't':
+				value.append('\t');
+				break;
+			case 'b':
+				value.append('\b');
+				break;
+			case 'f':
+				value.append('\f');
+				break;
+			case 'u':
+				if (this.position + 4 > this.text.length()) {
+					throw error("bad unicode escape");
+				}
+				value.append((char) Integer.parseInt(this.text.substring(this.position, this.position + 4), 16));
+				this.position += 4;
+				break;
+			default:
+				value.append(escaped);
+			}
+		}
+	}
+
+	private Double readNumber() {
+		int start = this.position;
+		while (this.position < this.text.length() && "+-0123456789.eE".indexOf(this.text.charAt(this.position)) >= 0) {
+			this.position++;
+		}
+		if (start == this.position) {
+			throw error("unexpected character");
+		}
+		try {
+			return Double.valueOf(this.text.substring(start, this.position));
+		} catch (NumberFormatException e) {
+			throw error("bad number");
+		}
+	}
+
+	private void skipWhitespace() {
+		while (this.position < this.text.length() && Character.isWhitespace(this.text.charAt(this.position))) {
+			this.position++;
+		}
+	}
+
+	private char peek() {
+		if (this.position >= this.text.length()) {
+			throw error("unexpected end of text");
+		}
+		return this.text.charAt(this.position);
+	}
+
+	private void expect(char c) {
+		if (peek() != c) {
+			throw error("expected '" + c + "'");
+		}
+		this.position++;
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException("Invalid JSON at position " + this.position + ": " + message);
+	}
+}
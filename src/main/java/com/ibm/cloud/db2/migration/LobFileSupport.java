@@ -0,0 +1,116 @@
+package com.ibm.cloud.db2.migration;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Helpers for tables with LOB columns. Such tables are exported with LOBS TO /
+ * LOBFILE and XML TO / XMLFILE so LOB and XML values go to separate files and
+ * the DEL file only holds their location specifiers. Both use the same base
+ * name, so the XML files are listed, uploaded and downloaded with the LOB
+ * files, and the table is loaded with LOAD ... LOBS FROM ... XML FROM using the
+ * target's remote storage alias for the bucket.
+ */
+public final class LobFileSupport {
+
+	/**
+	 * Default Constructor
+	 */
+	private LobFileSupport() {
+		super();
+	}
+
+	/**
+	 * Indicates if a table has BLOB, CLOB, DBCLOB or XML columns.
+	 * 
+	 * @param connection
+	 *            a connection to the database holding the table.
+	 * @param tableName
+	 *            the name of the table as listed in the table names file.
+	 * @return True if the table has LOB columns.
+	 * @throws SQLException
+	 */
+	public static boolean hasLobColumns(Connection connection, String tableName) throws SQLException {
+		TableName table = TableName.parse(tableName);
+		PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM SYSCAT.COLUMNS "
+				+ "WHERE TABSCHEMA = ? AND TABNAME = ? AND TYPENAME IN ('BLOB', 'CLOB', 'DBCLOB', 'XML')");
+		try {
+			statement.setString(1, table.getSchema(connection));
+			statement.setString(2, table.getName());
+			ResultSet resultSet = statement.executeQuery();
+			return resultSet.next() && resultSet.getInt(1) > 0;
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Gets the base name Db2 uses for the LOB and XML files of a table. Db2
+	 * appends a sequence number and extension (.001.lob, .001.xml, ...) for
+	 * each file it writes.
+	 * 
+	 * @param tableName
+	 *            the name of the table being processed.
+	 * @return the LOB file base name.
+	 */
+	public static String getLobFileBaseName(String tableName) {
+		return tableName + ".lob";
+	}
+
+	/**
+	 * Is a file one of the LOB or XML files written for a table.
+	 * 
+	 * @param fileName
+	 *            the file name.
+	 * @param tableName
+	 *            the name of the table being processed.
+	 * @return true for the table's LOB files.
+	 */
+	public static boolean isLobFile(String fileName, String tableName) {
+		return fileName.startsWith(getLobFileBaseName(tableName) + ".");
+	}
+
+	/**
+	 * Lists the LOB and XML files written for a table, in sequence order.
+	 * 
+	 * @param directory
+	 *            the export file location.
+	 * @param tableName
+	 *            the name of the table being processed.
+	 * @return the LOB file names, empty if the table has none.
+	 */
+	public static ArrayList<String> listLobFiles(String directory, String tableName) {
+		final String prefix = getLobFileBaseName(tableName) + ".";
+		String[] names = new File(directory).list(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.startsWith(prefix);
+			}
+		});
+		ArrayList<String> fileNames = new ArrayList<String>();
+		if (names != null) {
+			Arrays.sort(names);
+			fileNames.addAll(Arrays.asList(names));
+		}
+		return fileNames;
+	}
+}
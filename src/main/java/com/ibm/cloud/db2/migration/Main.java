@@ -2,6 +2,8 @@ package com.ibm.cloud.db2.migration;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -26,6 +28,12 @@ import org.apache.commons.logging.LogFactory;
 public final class Main {
 	private static Log logger = LogFactory.getLog(Main.class);
 
+	/**
+	 * The valid operations
+	 */
+	private static final List<String> OPERATIONS = Arrays.asList("runall", "export", "put", "load", "verify",
+			"coordinate", "work", "daemon", "plan", "restore", "validate");
+
 	/**
 	 * Default Constructor
 	 */
@@ -42,7 +50,14 @@ public final class Main {
 	 *            workflow. Valid arguments are: RUNALL - Execute export, move to
 	 *            COS and remote database load. EXPORT - Executes the export phase
 	 *            only. PUT - Executes the movement of data to COS phase only. LOAD
-	 *            - Executes the load phase only.
+	 *            - Executes the load phase only. VERIFY - Compares the loaded
+	 *            tables with the source. COORDINATE - Queues the tables for
+	 *            workers and waits for them. WORK - Migrates tables claimed from
+	 *            the queue. DAEMON - Serves the job API. PLAN - Estimates the
+	 *            duration of the migration. RESTORE - Downloads the tables'
+	 *            objects and loads them into the source. VALIDATE - Checks the
+	 *            export files against the target tables. COORDINATE, WORK,
+	 *            DAEMON, PLAN and RESTORE are used by themselves.
 	 */
 	public static void main(String[] args) {
 		long totalStartTime = 0;
@@ -61,7 +76,6 @@ public final class Main {
 		logger.info("#################################");
 		logger.info("Migration Assistant Started!");
 		logger.info("PROCESS START TIME: " + sdf.format(totalStartTime) + System.lineSeparator());
-		Db2Migrator migrator = new Db2Migrator();
 		if (args.length < 1) {
 			invalidUsage();
 			System.exit(0);
@@ -70,21 +84,56 @@ public final class Main {
 		for (String arg : args) {
 			cmdArgs.add(arg.toLowerCase());
 		}
-		if (cmdArgs.contains("runall") && cmdArgs.size() == 1) {
-			runAll(migrator);
-		} else if (cmdArgs.contains("runall") && cmdArgs.size() > 1) {
+		if (!OPERATIONS.containsAll(cmdArgs)) {
 			invalidUsage();
 			System.exit(0);
 		}
+		if ((cmdArgs.contains("runall") || cmdArgs.contains("coordinate") || cmdArgs.contains("work")
+				|| cmdArgs.contains("daemon") || cmdArgs.contains("plan") || cmdArgs.contains("restore"))
+				&& cmdArgs.size() > 1) {
+			invalidUsage();
+			System.exit(0);
+		}
+		// the arguments are checked before anything is set up, and each phase
+		// only initializes the database or COS clients it uses
+		Db2Migrator migrator = new Db2Migrator();
+		Tracer.Span runSpan = Tracer.begin("run", "migration");
+		boolean distributedFailed = false;
+		if (cmdArgs.contains("runall")) {
+			runAll(migrator);
+		}
+		if (cmdArgs.contains("coordinate")) {
+			distributedFailed = !distributed(migrator, true);
+		}
+		if (cmdArgs.contains("work")) {
+			distributedFailed = !distributed(migrator, false);
+		}
+		if (cmdArgs.contains("daemon")) {
+			daemon(migrator);
+		}
+		if (cmdArgs.contains("plan")) {
+			plan(migrator);
+		}
+		if (cmdArgs.contains("restore")) {
+			restore(migrator);
+		}
 		if (cmdArgs.contains("export")) {
 			export(migrator);
 		}
+		if (cmdArgs.contains("validate")) {
+			validate(migrator);
+		}
 		if (cmdArgs.contains("put")) {
 			transferToCos(migrator);
 		}
 		if (cmdArgs.contains("load")) {
 			load(migrator);
 		}
+		if (cmdArgs.contains("verify")) {
+			verify(migrator);
+		}
+		runSpan.end();
+		Tracer.close();
 		totalEndTime = System.currentTimeMillis();
 		totalElapsedTime = totalEndTime - totalStartTime;
 		logger.info("PROCESS END TIME: " + sdf.format(totalEndTime) + System.lineSeparator());
@@ -100,6 +149,15 @@ public final class Main {
 		System.out.println("#################################");
 		System.out.println("#################################");
 		System.out.println();
+		if (migrator.getFailureCount() > 0) {
+			// lets scripts tell a run with failed tables from a clean one
+			System.out.println(migrator.getFailureCount() + " table(s) failed, see the log file for details");
+			System.exit(1);
+		}
+		if (distributedFailed) {
+			System.out.println("The distributed migration did not complete, see the log file for details");
+			System.exit(1);
+		}
 	}
 
 	/**
@@ -108,9 +166,10 @@ public final class Main {
 	private static void invalidUsage() {
 		logger.info("Invalid usage!  Command line arguments must include <OPERATION> to be run.  Exiting!");
 		System.out.println("USAGE:  migrate <OPERATION>");
-		System.out.println("Valid Operations: RUNALL, EXPORT, PUT, LOAD");
 		System.out.println(
-				"NOTE:  RUNALL can be used only by itself.  EXPORT, PUT and LOAD can be used in any combination.");
+				"Valid Operations: RUNALL, EXPORT, VALIDATE, PUT, LOAD, VERIFY, COORDINATE, WORK, DAEMON, PLAN, RESTORE");
+		System.out.println(
+				"NOTE:  RUNALL, COORDINATE, WORK, DAEMON, PLAN and RESTORE can be used only by themselves.  EXPORT, VALIDATE, PUT, LOAD and VERIFY can be used in any combination.");
 		System.out.println("#################################");
 		System.out.println("#################################");
 		System.out.println("#################################");
@@ -142,13 +201,36 @@ public final class Main {
 		logger.info("*********************************");
 		logger.info("*****  PROCESSING EXPORT");
 		logger.info("*****");
+		Tracer.Span span = Tracer.begin("phase", "export");
 		migrator.exportTableData();
+		span.end();
 		logger.info("*****");
 		logger.info("*****  EXPORT COMPLETE!");
 		logger.info("*********************************");
 		logger.info("*********************************");
 	}
 
+	/**
+	 * Executes the validation of the export files.
+	 * 
+	 * @param migrator
+	 *            is the instance of the migration to be executed.
+	 */
+	private static void validate(Db2Migrator migrator) {
+		System.out.println("Validating......");
+		logger.info("*********************************");
+		logger.info("*********************************");
+		logger.info("*****  INITIATING VALIDATE");
+		logger.info("*****");
+		Tracer.Span span = Tracer.begin("phase", "validate");
+		migrator.validateExports();
+		span.end();
+		logger.info("*****");
+		logger.info("*****  VALIDATE COMPLETE!");
+		logger.info("*********************************");
+		logger.info("*********************************");
+	}
+
 	/**
 	 * Executes the data transfer phase of the workflow,
 	 * 
@@ -161,7 +243,9 @@ public final class Main {
 		logger.info("*********************************");
 		logger.info("*****  INITIATING COS TRANSFER");
 		logger.info("*****");
+		Tracer.Span span = Tracer.begin("phase", "put");
 		migrator.transferToCos();
+		span.end();
 		logger.info("*****");
 		logger.info("*****  COS TRANSFER COMPLETE!");
 		logger.info("*********************************");
@@ -180,13 +264,145 @@ public final class Main {
 		logger.info("*********************************");
 		logger.info("*****  INITIATING REMOTE LOAD");
 		logger.info("*****");
+		Tracer.Span span = Tracer.begin("phase", "load");
 		migrator.loadRemoteSystem();
+		span.end();
 		logger.info("*****");
 		logger.info("*****  REMOTE LOAD COMPLETE!");
 		logger.info("*********************************");
 		logger.info("*********************************");
 	}
 
+	/**
+	 * Executes the verification phase of the workflow.
+	 * 
+	 * @param migrator
+	 *            is the instance of the migration to be executed.
+	 */
+	private static void verify(Db2Migrator migrator) {
+		System.out.println("Verifying......");
+		logger.info("*********************************");
+		logger.info("*********************************");
+		logger.info("*****  INITIATING VERIFY");
+		logger.info("*****");
+		Tracer.Span span = Tracer.begin("phase", "verify");
+		migrator.verifyTables();
+		span.end();
+		logger.info("*****");
+		logger.info("*****  VERIFY COMPLETE!");
+		logger.info("*********************************");
+		logger.info("*********************************");
+	}
+
+	/**
+	 * Executes the planning phase, which estimates the other phases.
+	 * 
+	 * @param migrator
+	 *            is the instance of the migration to be executed.
+	 */
+	private static void plan(Db2Migrator migrator) {
+		System.out.println("Planning......");
+		logger.info("*********************************");
+		logger.info("*********************************");
+		logger.info("*****  INITIATING PLAN");
+		logger.info("*****");
+		Tracer.Span span = Tracer.begin("phase", "plan");
+		migrator.planMigration();
+		span.end();
+		logger.info("*****");
+		logger.info("*****  PLAN COMPLETE!");
+		logger.info("*********************************");
+		logger.info("*********************************");
+	}
+
+	/**
+	 * Executes the restore phase, which moves tables back from COS.
+	 * 
+	 * @param migrator
+	 *            is the instance of the migration to be executed.
+	 */
+	private static void restore(Db2Migrator migrator) {
+		System.out.println("Restoring......");
+		logger.info("*********************************");
+		logger.info("*********************************");
+		logger.info("*****  INITIATING RESTORE");
+		logger.info("*****");
+		Tracer.Span span = Tracer.begin("phase", "restore");
+		migrator.restoreTables();
+		span.end();
+		logger.info("*****");
+		logger.info("*****  RESTORE COMPLETE!");
+		logger.info("*********************************");
+		logger.info("*********************************");
+	}
+
+	/**
+	 * Runs this process as the coordinator or as a worker of a distributed
+	 * migration.
+	 * 
+	 * @param migrator
+	 *            is the instance of the migration to be executed.
+	 * @param coordinator
+	 *            is true to coordinate, false to work.
+	 * @return true if every table completed, false if a table failed or the
+	 *         queue or worker could not be run.
+	 */
+	private static boolean distributed(Db2Migrator migrator, boolean coordinator) {
+		System.out.println(coordinator ? "Coordinating......" : "Working......");
+		logger.info("*********************************");
+		logger.info("*********************************");
+		logger.info("*****  " + (coordinator ? "INITIATING COORDINATOR" : "INITIATING WORKER"));
+		logger.info("*****");
+		Tracer.Span span = Tracer.begin("phase", coordinator ? "coordinate" : "work");
+		boolean succeeded = false;
+		try {
+			DistributedMigration distributedMigration = new DistributedMigration(migrator);
+			int failed;
+			if (coordinator) {
+				failed = distributedMigration.coordinate();
+			} else {
+				failed = distributedMigration.work();
+			}
+			succeeded = failed == 0;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			logger.error("The " + (coordinator ? "coordinator" : "worker") + " stopped on an error", e);
+			e.printStackTrace();
+		}
+		span.end(succeeded ? "ok" : "failed");
+		logger.info("*****");
+		logger.info("*****  " + (coordinator ? "COORDINATOR COMPLETE!" : "WORKER COMPLETE!"));
+		logger.info("*********************************");
+		logger.info("*********************************");
+		return succeeded;
+	}
+
+	/**
+	 * Serves the job API until the process is stopped.
+	 * 
+	 * @param migrator
+	 *            is the instance holding the configuration.
+	 */
+	private static void daemon(Db2Migrator migrator) {
+		System.out.println("Serving......");
+		logger.info("*********************************");
+		logger.info("*********************************");
+		logger.info("*****  INITIATING DAEMON");
+		logger.info("*****");
+		try {
+			new MigrationDaemon(migrator).run();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		logger.info("*****");
+		logger.info("*****  DAEMON COMPLETE!");
+		logger.info("*********************************");
+		logger.info("*********************************");
+	}
+
 	/**
 	 * Formats elapsed system time to human readable format.
 	 * 
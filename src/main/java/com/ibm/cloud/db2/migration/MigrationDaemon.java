@@ -0,0 +1,446 @@
+package com.ibm.cloud.db2.migration;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Runs the utility as a long running service that accepts migration jobs over
+ * a local HTTP/JSON API. The database sessions and the COS client are created
+ * once and kept open between jobs, so a small job does not pay for JVM start
+ * up, configuration parsing, driver loading or client creation.
+ * 
+ * <pre>
+ * POST   /jobs        {"operations": ["EXPORT", "PUT", "LOAD"],
+ *                      "tables": ["SALES.ORDERS", "SALES.LINES; COS_COMPRESSION=GZIP"],
+ *                      "settings": {"MAX_DATABASE_SESSIONS": "2"}}
+ * GET    /jobs        lists all jobs
+ * GET    /jobs/{id}   gets the status of a job
+ * DELETE /jobs/{id}   cancels a job
+ * </pre>
+ * 
+ * Tables are given as lines of the table names file. Settings replace the
+ * global configuration for the job, which is how jobs get their own limits on
+ * sessions, COS requests and table parallelism. Up to DAEMON_MAX_JOBS jobs run
+ * at the same time; further jobs wait in the order they were submitted.
+ */
+public class MigrationDaemon {
+	private static Log logger = LogFactory.getLog(MigrationDaemon.class);
+
+	/**
+	 * The phases a job can run, in the order they run
+	 */
+	private static final List<String> OPERATIONS = Arrays.asList("EXPORT", "PUT", "LOAD", "VERIFY");
+
+	/**
+	 * Settings that describe the shared sessions and client, which a job cannot
+	 * change
+	 */
+	private static final HashSet<String> SHARED_SETTINGS = new HashSet<String>(Arrays.asList(
+			"TARGET_JDBC_DRIVER", "TARGET_DATABASE_HOST_NAME", "TARGET_DATABASE_PORT", "TARGET_DATABASE_NAME",
+			"TARGET_DATABASE_USERNAME", "TARGET_DATABASE_PASSWORD", "TARGET_USE_SSL_CONNECTION", "BUCKET_NAME",
+			"API_KEY", "SERVICE_INSTANCE_ID", "SERVICE_ENDPOINT", "LOCATION", "IAM_ENDPOINT", "ACCESS_KEY_ID",
+			"SECRET_ACCESS_KEY", "CLIENT_TIMEOUT", "COS_ENDPOINTS", "COS_ENDPOINT_PROBE_KB",
+			"COS_ENDPOINT_PROBE_SAMPLES"));
+
+	/**
+	 * The number of finished jobs whose status is kept
+	 */
+	private static final int FINISHED_JOB_HISTORY = 1000;
+
+	/**
+	 * Utility configuration
+	 */
+	private ConfigurationBean config = null;
+
+	/**
+	 * Database sessions shared by all jobs
+	 */
+	private SessionPool sessionPool = null;
+
+	/**
+	 * COS client shared by all jobs
+	 */
+	private COSClient cosClient = null;
+
+	/**
+	 * The endpoints shared by all jobs, probed when the first job runs
+	 */
+	private EndpointResolver endpoints = null;
+
+	/**
+	 * Runs the jobs
+	 */
+	private ExecutorService jobExecutor = null;
+
+	/**
+	 * All known jobs by id, in submission order
+	 */
+	private LinkedHashMap<String, Job> jobs = new LinkedHashMap<String, Job>();
+
+	/**
+	 * The id of the next job
+	 */
+	private AtomicLong nextJobId = new AtomicLong(1);
+
+	/**
+	 * Released when the daemon stops
+	 */
+	private CountDownLatch stopped = new CountDownLatch(1);
+
+	/**
+	 * One submitted job.
+	 */
+	private static class Job {
+		private String id;
+		private List<String> operations = new ArrayList<String>();
+		private List<String> tables = new ArrayList<String>();
+		private Properties settings = new Properties();
+		private volatile String status = "QUEUED";
+		private volatile String message = "";
+		private volatile int failures = 0;
+		private long submitted = System.currentTimeMillis();
+		private volatile long started = 0;
+		private volatile long finished = 0;
+		private Future<?> future;
+
+		boolean isFinished() {
+			return this.finished != 0;
+		}
+
+		Map<String, Object> toJson() {
+			LinkedHashMap<String, Object> json = new LinkedHashMap<String, Object>();
+			json.put("id", this.id);
+			json.put("status", this.status);
+			json.put("operations", this.operations);
+			json.put("tables", this.tables);
+			json.put("failures", this.failures);
+			json.put("message", this.message);
+			json.put("submitted", this.submitted);
+			json.put("started", this.started == 0 ? null : this.started);
+			json.put("finished", this.finished == 0 ? null : this.finished);
+			return json;
+		}
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param migrator
+	 *            the migrator holding the configuration.
+	 */
+	public MigrationDaemon(Db2Migrator migrator) {
+		super();
+		this.config = migrator.getConfig();
+		this.sessionPool = new SessionPool(this.config);
+		this.cosClient = new COSClient(this.config);
+		this.jobExecutor = Executors.newFixedThreadPool(Math.max(1, this.config.getDaemonMaxJobs()));
+	}
+
+	/**
+	 * Serves the job API until the process is stopped.
+	 * 
+	 * @throws IOException
+	 *             if the port cannot be opened.
+	 * @throws InterruptedException
+	 */
+	public void run() throws IOException, InterruptedException {
+		final HttpServer server = HttpServer
+				.create(new InetSocketAddress(this.config.getDaemonHost(), this.config.getDaemonPort()), 0);
+		server.createContext("/jobs", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					handleJobs(exchange);
+				} catch (IllegalArgumentException e) {
+					respond(exchange, 400, error(e.getMessage()));
+				} catch (Exception e) {
+					e.printStackTrace();
+					respond(exchange, 500, error(e.toString()));
+				}
+			}
+		});
+		server.setExecutor(Executors.newFixedThreadPool(4));
+		server.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				logger.info("Daemon stopping");
+				server.stop(0);
+				jobExecutor.shutdownNow();
+				sessionPool.close();
+				stopped.countDown();
+			}
+		}));
+		logger.info("Daemon listening on http://" + this.config.getDaemonHost() + ":" + this.config.getDaemonPort()
+				+ "/jobs");
+		System.out.println("Daemon listening on http://" + this.config.getDaemonHost() + ":"
+				+ this.config.getDaemonPort() + "/jobs");
+		this.stopped.await();
+	}
+
+	/**
+	 * Dispatches a request to the job API.
+	 */
+	private void handleJobs(HttpExchange exchange) throws IOException {
+		String method = exchange.getRequestMethod();
+		String path = exchange.getRequestURI().getPath();
+		String id = path.length() > "/jobs/".length() ? path.substring("/jobs/".length()) : null;
+		if (id == null && method.equals("POST")) {
+			Job job = submit(readBody(exchange));
+			respond(exchange, 202, job.toJson());
+		} else if (id == null && method.equals("GET")) {
+			ArrayList<Object> list = new ArrayList<Object>();
+			synchronized (this.jobs) {
+				for (Job job : this.jobs.values()) {
+					list.add(job.toJson());
+				}
+			}
+			respond(exchange, 200, list);
+		} else if (id != null && (method.equals("GET") || method.equals("DELETE"))) {
+			Job job;
+			synchronized (this.jobs) {
+				job = this.jobs.get(id);
+			}
+			if (job == null) {
+				respond(exchange, 404, error("No job " + id));
+			} else {
+				if (method.equals("DELETE")) {
+					cancel(job);
+				}
+				respond(exchange, 200, job.toJson());
+			}
+		} else {
+			respond(exchange, 405, error("Method " + method + " is not supported on " + path));
+		}
+	}
+
+	/**
+	 * Validates and queues a job.
+	 */
+	@SuppressWarnings("unchecked")
+	private Job submit(String body) {
+		Object request = Json.parse(body);
+		if (!(request instanceof Map)) {
+			throw new IllegalArgumentException("The request must be a JSON object");
+		}
+		Map<String, Object> fields = (Map<String, Object>) request;
+		final Job job = new Job();
+		for (String operation : getStrings(fields, "operations")) {
+			String name = operation.trim().toUpperCase();
+			if (name.equals("RUNALL")) {
+				job.operations.addAll(OPERATIONS.subList(0, 3));
+			} else if (OPERATIONS.contains(name)) {
+				job.operations.add(name);
+			} else {
+				throw new IllegalArgumentException("Unknown operation " + operation);
+			}
+		}
+		job.tables.addAll(getStrings(fields, "tables"));
+		if (job.operations.isEmpty() || job.tables.isEmpty()) {
+			throw new IllegalArgumentException("A job needs at least one operation and one table");
+		}
+		Object settings = fields.get("settings");
+		if (settings instanceof Map) {
+			for (Map.Entry<String, Object> setting : ((Map<String, Object>) settings).entrySet()) {
+				String name = setting.getKey().trim().toUpperCase();
+				if (name.startsWith("SOURCE_") || SHARED_SETTINGS.contains(name)) {
+					throw new IllegalArgumentException(name + " is shared by all jobs and cannot be set per job");
+				}
+				Object value = setting.getValue();
+				// JSON numbers are read as doubles
+				if (value instanceof Double && (Double) value == Math.rint((Double) value)) {
+					value = ((Double) value).longValue();
+				}
+				job.settings.setProperty(name, String.valueOf(value));
+			}
+		}
+		synchronized (this.jobs) {
+			job.id = String.valueOf(this.nextJobId.getAndIncrement());
+			this.jobs.put(job.id, job);
+			job.future = this.jobExecutor.submit(new Runnable() {
+				public void run() {
+					runJob(job);
+				}
+			});
+			trimHistory();
+		}
+		logger.info("Job " + job.id + " submitted: " + job.operations + " " + job.tables);
+		return job;
+	}
+
+	/**
+	 * Gets the endpoints shared by all jobs, probing the COS_ENDPOINTS
+	 * candidates once. Jobs that wait meanwhile use the result too.
+	 */
+	private synchronized EndpointResolver getEndpoints() {
+		if (this.endpoints == null) {
+			this.endpoints = new Db2Migrator(this.config, new ArrayList<String>(), this.sessionPool, this.cosClient,
+					null).getEndpoints();
+		}
+		return this.endpoints;
+	}
+
+	/**
+	 * Runs the phases of a job with the shared sessions, COS client and
+	 * endpoints.
+	 */
+	private void runJob(Job job) {
+		job.started = System.currentTimeMillis();
+		job.status = "RUNNING";
+		Tracer.Span span = Tracer.begin("job", "job " + job.id);
+		try {
+			ConfigurationBean jobConfig = this.config.forTable(job.settings);
+			Db2Migrator migrator = new Db2Migrator(jobConfig, job.tables, this.sessionPool, this.cosClient,
+					getEndpoints());
+			for (String operation : OPERATIONS) {
+				if (!job.operations.contains(operation)) {
+					continue;
+				}
+				if (Thread.currentThread().isInterrupted()) {
+					break;
+				}
+				job.message = operation;
+				if (operation.equals("EXPORT")) {
+					migrator.exportTableData();
+				} else if (operation.equals("PUT")) {
+					migrator.transferToCos();
+				} else if (operation.equals("LOAD")) {
+					migrator.loadRemoteSystem();
+				} else {
+					migrator.verifyTables();
+				}
+				job.failures = migrator.getFailureCount();
+			}
+			if (Thread.currentThread().isInterrupted()) {
+				job.status = "CANCELLED";
+				job.message = "cancelled during " + job.message;
+			} else {
+				job.status = job.failures == 0 ? "SUCCEEDED" : "FAILED";
+				job.message = "";
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			job.status = "FAILED";
+			job.message = e.toString();
+		} finally {
+			job.finished = System.currentTimeMillis();
+			span.end(job.status.toLowerCase());
+			logger.info("Job " + job.id + " " + job.status + " in " + (job.finished - job.started) + " ms");
+		}
+	}
+
+	/**
+	 * Cancels a job. A queued job never starts. A running job is interrupted;
+	 * tables already being processed stop at their next blocking call.
+	 */
+	private void cancel(Job job) {
+		if (job.isFinished()) {
+			return;
+		}
+		if (job.status.equals("QUEUED") && job.future.cancel(false)) {
+			job.status = "CANCELLED";
+			job.finished = System.currentTimeMillis();
+		} else {
+			job.status = "CANCELLING";
+			job.future.cancel(true);
+		}
+		logger.info("Job " + job.id + " " + job.status);
+	}
+
+	/**
+	 * Forgets the oldest finished jobs beyond the history limit.
+	 */
+	private void trimHistory() {
+		int finished = 0;
+		for (Job job : this.jobs.values()) {
+			if (job.isFinished()) {
+				finished++;
+			}
+		}
+		Iterator<Job> iterator = this.jobs.values().iterator();
+		while (finished > FINISHED_JOB_HISTORY && iterator.hasNext()) {
+			if (iterator.next().isFinished()) {
+				iterator.remove();
+				finished--;
+			}
+		}
+	}
+
+	/**
+	 * Reads a list of strings from the request.
+	 */
+	private static List<String> getStrings(Map<String, Object> fields, String name) {
+		ArrayList<String> strings = new ArrayList<String>();
+		Object value = fields.get(name);
+		if (value instanceof List) {
+			for (Object item : (List<?>) value) {
+				strings.add(String.valueOf(item));
+			}
+		} else if (value != null) {
+			throw new IllegalArgumentException(name + " must be an array");
+		}
+		return strings;
+	}
+
+	private static Map<String, Object> error(String message) {
+		LinkedHashMap<String, Object> json = new LinkedHashMap<String, Object>();
+		json.put("error", message);
+		return json;
+	}
+
+	private static String readBody(HttpExchange exchange) throws IOException {
+		InputStream in = exchange.getRequestBody();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int bytesRead;
+		while ((bytesRead = in.read(buffer)) != -1) {
+			body.write(buffer, 0, bytesRead);
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static void respond(HttpExchange exchange, int status, Object json) throws IOException {
+		byte[] body = Json.write(json).getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+}
@@ -0,0 +1,289 @@
+package com.ibm.cloud.db2.migration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Estimates how long EXPORT, PUT and LOAD will take before a migration is run.
+ * The size of every table is read from the source catalog and the largest
+ * table is sampled to calibrate the rate of one export session, one upload
+ * stream and one load. The phases are then scheduled the way the executor
+ * runs them: tables start in the order of the table names file on the first
+ * free slot, where a phase has as many slots as TABLE_PARALLELISM allows
+ * within MAX_DATABASE_SESSIONS (EXPORT, LOAD) or MAX_COS_REQUESTS (PUT), and
+ * each phase starts when the previous one has finished.
+ */
+public class MigrationPlanner {
+	private static Log logger = LogFactory.getLog(MigrationPlanner.class);
+
+	/**
+	 * The phases that are estimated, in the order they run
+	 */
+	static final String[] PHASES = { "EXPORT", "PUT", "LOAD" };
+
+	/**
+	 * The estimate of one table.
+	 */
+	static class TableEstimate {
+		private String tableName;
+		private long rows;
+		private long bytes;
+		private double[] seconds = new double[PHASES.length];
+		private double[] start = new double[PHASES.length];
+
+		/**
+		 * Gets the phase that takes longest for this table.
+		 */
+		int getLongestPhase() {
+			int longest = 0;
+			for (int phase = 1; phase < PHASES.length; phase++) {
+				if (this.seconds[phase] > this.seconds[longest]) {
+					longest = phase;
+				}
+			}
+			return longest;
+		}
+	}
+
+	/**
+	 * The migrator being planned
+	 */
+	private Db2Migrator migrator = null;
+
+	/**
+	 * Measures the tables and rates
+	 */
+	private CalibrationProbes probes = null;
+
+	/**
+	 * The table the rates were measured on
+	 */
+	private String sampleTable = null;
+
+	/**
+	 * Bytes per second of one export session
+	 */
+	private double exportRate = 0;
+
+	/**
+	 * Bytes per second of one upload stream
+	 */
+	private double uploadRate = 0;
+
+	/**
+	 * Rows per second of one table load, 0 when the load probe failed
+	 */
+	private double loadRate = 0;
+
+	/**
+	 * The estimates, in table order
+	 */
+	private ArrayList<TableEstimate> estimates = new ArrayList<TableEstimate>();
+
+	/**
+	 * How long each phase takes for all tables
+	 */
+	private double[] phaseSeconds = new double[PHASES.length];
+
+	/**
+	 * Constructor
+	 * 
+	 * @param migrator
+	 *            the migrator being planned, providing the configuration of each
+	 *            table.
+	 * @param probes
+	 *            the probes measuring the tables and rates.
+	 */
+	public MigrationPlanner(Db2Migrator migrator, CalibrationProbes probes) {
+		super();
+		this.migrator = migrator;
+		this.probes = probes;
+	}
+
+	/**
+	 * Measures the tables, calibrates the rates on the largest table and
+	 * schedules the phases.
+	 * 
+	 * @param tableNames
+	 *            the tables to migrate.
+	 * @throws Exception
+	 *             if a table cannot be measured or the sample cannot be
+	 *             exported or uploaded.
+	 */
+	public void plan(List<String> tableNames) throws Exception {
+		long sampleBytes = -1;
+		for (String tableName : tableNames) {
+			CalibrationProbes.TableStatistics statistics = this.probes.readStatistics(tableName);
+			TableEstimate estimate = new TableEstimate();
+			estimate.tableName = tableName;
+			estimate.rows = statistics.getRows();
+			estimate.bytes = statistics.getBytes();
+			this.estimates.add(estimate);
+			if (estimate.rows > 0 && estimate.bytes > sampleBytes) {
+				this.sampleTable = tableName;
+				sampleBytes = estimate.bytes;
+			}
+		}
+		if (this.sampleTable == null) {
+			throw new IllegalStateException("No table has rows in the catalog statistics to sample");
+		}
+		long sampleRows = 0;
+		for (TableEstimate estimate : this.estimates) {
+			if (estimate.tableName.equals(this.sampleTable)) {
+				sampleRows = estimate.rows;
+			}
+		}
+		calibrate(sampleBytes / (double) sampleRows);
+		schedule();
+	}
+
+	/**
+	 * Runs the probes on the sample table. The catalog size of every table is
+	 * converted to export file bytes with the ratio measured on the sample.
+	 */
+	private void calibrate(double catalogBytesPerRow) throws Exception {
+		ConfigurationBean tableConfig = this.migrator.getTableConfig(this.sampleTable);
+		logger.info("Calibrating on " + this.sampleTable);
+		try {
+			CalibrationProbes.Sample export = this.probes.probeExport(this.sampleTable, tableConfig,
+					this.migrator.getConfig().getPlanSampleRows());
+			if (export.getRows() == 0) {
+				throw new IllegalStateException("The sample of " + this.sampleTable + " is empty");
+			}
+			this.exportRate = export.getBytes() / Math.max(export.getSeconds(), 0.001);
+			double fileBytesPerCatalogByte = export.getBytes() / (double) export.getRows() / catalogBytesPerRow;
+			for (TableEstimate estimate : this.estimates) {
+				estimate.bytes = (long) (estimate.bytes * fileBytesPerCatalogByte);
+			}
+			CalibrationProbes.Sample upload = this.probes.probeUpload(this.sampleTable, tableConfig);
+			this.uploadRate = upload.getBytes() / Math.max(upload.getSeconds(), 0.001);
+			try {
+				CalibrationProbes.Sample load = this.probes.probeLoad(this.sampleTable, tableConfig);
+				this.loadRate = load.getRows() / Math.max(load.getSeconds(), 0.001);
+			} catch (Exception e) {
+				logger.warn("The load probe failed, LOAD is not estimated: " + e);
+			}
+		} finally {
+			this.probes.cleanUp(this.sampleTable);
+		}
+	}
+
+	/**
+	 * Computes the time of every table in every phase and schedules the
+	 * phases one after the other.
+	 */
+	private void schedule() {
+		ConfigurationBean config = this.migrator.getConfig();
+		int[] slots = { Math.min(config.getTableParallelism(), config.getMaxDatabaseSessions()),
+				Math.min(config.getTableParallelism(), config.getMaxCosRequests()),
+				Math.min(config.getTableParallelism(), config.getMaxDatabaseSessions()) };
+		for (TableEstimate estimate : this.estimates) {
+			ConfigurationBean tableConfig = this.migrator.getTableConfig(estimate.tableName);
+			int streams = estimate.bytes >= tableConfig.getCosSinglePutThresholdMb() * 1024L * 1024L
+					? Math.max(1, tableConfig.getCosUploadConcurrency()) : 1;
+			// the shards of a table are exported and loaded on sessions of their own
+			int shards = Math.max(1, Math.min(tableConfig.getExportShards(), config.getMaxDatabaseSessions()));
+			estimate.seconds[0] = estimate.bytes / (this.exportRate * shards);
+			estimate.seconds[1] = estimate.bytes / (this.uploadRate * streams);
+			estimate.seconds[2] = this.loadRate > 0 ? estimate.rows / (this.loadRate * shards) : 0;
+		}
+		double phaseStart = 0;
+		for (int phase = 0; phase < PHASES.length; phase++) {
+			double[] free = new double[Math.max(1, slots[phase])];
+			double phaseEnd = 0;
+			for (TableEstimate estimate : this.estimates) {
+				int slot = 0;
+				for (int i = 1; i < free.length; i++) {
+					if (free[i] < free[slot]) {
+						slot = i;
+					}
+				}
+				estimate.start[phase] = phaseStart + free[slot];
+				free[slot] += estimate.seconds[phase];
+				phaseEnd = Math.max(phaseEnd, free[slot]);
+			}
+			this.phaseSeconds[phase] = phaseEnd;
+			phaseStart += phaseEnd;
+		}
+	}
+
+	/**
+	 * Gets the plan as a printable report: the calibrated rates, the timeline
+	 * of every table and the duration of every phase, with the longest phase
+	 * marked as the bottleneck.
+	 * 
+	 * @return the report.
+	 */
+	public String getReport() {
+		String newLine = System.lineSeparator();
+		StringBuilder report = new StringBuilder();
+		report.append("Calibrated on " + this.sampleTable + ": export "
+				+ String.format("%.1f", this.exportRate / 1024 / 1024) + " MB/s per session, upload "
+				+ String.format("%.1f", this.uploadRate / 1024 / 1024) + " MB/s per stream, load "
+				+ (this.loadRate > 0 ? String.format("%.0f", this.loadRate) + " rows/s" : "not measured")
+				+ newLine + newLine);
+		report.append(String.format("%-40s %14s %12s %-19s %-19s %-19s %s", "TABLE", "ROWS", "MB", "EXPORT", "PUT",
+				"LOAD", "LONGEST") + newLine);
+		long totalBytes = 0;
+		for (TableEstimate estimate : this.estimates) {
+			report.append(String.format("%-40s %14d %12.1f %-19s %-19s %-19s %s", estimate.tableName, estimate.rows,
+					estimate.bytes / 1024.0 / 1024.0, formatSpan(estimate, 0), formatSpan(estimate, 1),
+					formatSpan(estimate, 2), PHASES[estimate.getLongestPhase()]) + newLine);
+			totalBytes += estimate.bytes;
+		}
+		report.append(newLine);
+		int bottleneck = 0;
+		double total = 0;
+		for (int phase = 0; phase < PHASES.length; phase++) {
+			if (this.phaseSeconds[phase] > this.phaseSeconds[bottleneck]) {
+				bottleneck = phase;
+			}
+			total += this.phaseSeconds[phase];
+		}
+		for (int phase = 0; phase < PHASES.length; phase++) {
+			report.append(String.format("%-8s %s", PHASES[phase], formatTime(this.phaseSeconds[phase]))
+					+ (phase == 2 && this.loadRate == 0 ? "  (not estimated)" : "")
+					+ (phase == bottleneck ? "  <== bottleneck" : "") + newLine);
+		}
+		report.append(String.format("%-8s %s", "TOTAL", formatTime(total)) + newLine);
+		report.append("Data to export and upload: " + String.format("%.2f", totalBytes / 1024.0 / 1024.0 / 1024.0)
+				+ " GB before compression" + newLine);
+		return report.toString();
+	}
+
+	/**
+	 * Formats the start and end of a table's phase.
+	 */
+	private String formatSpan(TableEstimate estimate, int phase) {
+		if (phase == 2 && this.loadRate == 0) {
+			return "-";
+		}
+		return formatTime(estimate.start[phase]) + "-"
+				+ formatTime(estimate.start[phase] + estimate.seconds[phase]);
+	}
+
+	/**
+	 * Formats seconds as hh:mm:ss.
+	 */
+	private static String formatTime(double seconds) {
+		long rounded = Math.round(seconds);
+		return String.format("%1$02d:%2$02d:%3$02d", rounded / 3600, rounded / 60 % 60, rounded % 60);
+	}
+}
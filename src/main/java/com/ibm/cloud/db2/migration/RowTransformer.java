@@ -0,0 +1,626 @@
+package com.ibm.cloud.db2.migration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Rewrites columns of export files while they are read for upload, so data
+ * fixes need no separate pass over the files. Rules are configured per column
+ * with TRANSFORM_RULES, for example
+ * 
+ * <pre>
+ * TRANSFORM_RULES=NAME:TRIM, SSN:MASK(4), EMAIL:HASH(salt), BIRTH_DATE:DATE, NOTES:CODEPAGE(ISO-8859-1)
+ * </pre>
+ * 
+ * Columns are named as in the catalog or given by their 1 based position in
+ * the export file. A rule is one of the built in rules below or the class name
+ * of a {@link ColumnRule} implementation with a public no argument
+ * constructor.
+ * 
+ * <ul>
+ * <li>TRIM removes trailing blanks, such as CHAR padding.</li>
+ * <li>MASK(n) replaces all but the last n characters with *.</li>
+ * <li>HASH(salt) replaces the value with the hex SHA-256 of the salt and the
+ * value.</li>
+ * <li>NULL replaces the value with NULL.</li>
+ * <li>DATE rewrites YYYY-MM-DD, YYYY/MM/DD and YYYY.MM.DD dates as YYYYMMDD,
+ * the format of the export.</li>
+ * <li>CODEPAGE(charset) converts the value from the charset to UTF-8.</li>
+ * </ul>
+ * 
+ * NULL values (empty fields) are passed through by every built in rule except
+ * NULL. Rules see values without EXPORT_ESCAPE_CHARACTER escapes, and their
+ * output is escaped again. The file is cut into blocks on row boundaries and the blocks are
+ * transformed in parallel. Within a block, runs of columns without a rule are
+ * copied with a single array copy.
+ */
+public class RowTransformer {
+
+	/**
+	 * The size of the blocks transformed in parallel
+	 */
+	private static final int BLOCK_SIZE = 4 * 1024 * 1024;
+
+	/**
+	 * Transforms the value of one column.
+	 */
+	public interface ColumnRule {
+		/**
+		 * Writes the transformed value of one field. Implementations are shared by
+		 * the threads transforming blocks and must be thread safe. The field is
+		 * given without escape characters, and delimiters, line breaks and escape
+		 * characters in the new value are escaped when it is written to the file.
+		 * 
+		 * @param row
+		 *            the bytes holding the field.
+		 * @param start
+		 *            the offset of the first byte of the field.
+		 * @param end
+		 *            the offset after the last byte of the field. The field is
+		 *            empty for NULL.
+		 * @param out
+		 *            the output to write the new value to, without delimiters.
+		 */
+		void apply(byte[] row, int start, int end, Output out);
+	}
+
+	/**
+	 * A growable byte buffer holding transformed rows.
+	 */
+	public static final class Output {
+		private byte[] bytes;
+		private int length = 0;
+
+		Output(int capacity) {
+			this.bytes = new byte[Math.max(capacity, 1024)];
+		}
+
+		public void write(byte b) {
+			if (this.length == this.bytes.length) {
+				grow(1);
+			}
+			this.bytes[this.length++] = b;
+		}
+
+		public void write(byte[] source, int offset, int count) {
+			if (this.length + count > this.bytes.length) {
+				grow(count);
+			}
+			System.arraycopy(source, offset, this.bytes, this.length, count);
+			this.length += count;
+		}
+
+		private void grow(int count) {
+			byte[] grown = new byte[Math.max(this.bytes.length * 2, this.length + count)];
+			System.arraycopy(this.bytes, 0, grown, 0, this.length);
+			this.bytes = grown;
+		}
+	}
+
+	/**
+	 * The rule of each column, null for columns that are copied
+	 */
+	private ColumnRule[] rules = new ColumnRule[0];
+
+	/**
+	 * The escape character of the export, zero for none
+	 */
+	private byte escapeCharacter = 0;
+
+	/**
+	 * Runs the block transformations
+	 */
+	private ExecutorService pool = null;
+
+	/**
+	 * The number of blocks read ahead of the reader
+	 */
+	private int depth = 2;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param ruleList
+	 *            the TRANSFORM_RULES setting.
+	 * @param columns
+	 *            the exported columns in file order, as stored in the catalog.
+	 *            Only needed when rules refer to columns by name.
+	 * @param escapeCharacter
+	 *            the escape character of the export, zero for none.
+	 * @param pool
+	 *            the threads transforming blocks.
+	 * @param threads
+	 *            the number of threads in the pool.
+	 */
+	public RowTransformer(String ruleList, List<String> columns, char escapeCharacter, ExecutorService pool,
+			int threads) {
+		super();
+		for (String entry : ruleList.split(",")) {
+			if (entry.trim().isEmpty()) {
+				continue;
+			}
+			int separator = entry.indexOf('(') < 0 ? entry.lastIndexOf(':')
+					: entry.lastIndexOf(':', entry.indexOf('('));
+			if (separator < 0) {
+				throw new IllegalArgumentException("Transform rule " + entry.trim() + " is not COLUMN:RULE");
+			}
+			int column = columnIndex(entry.substring(0, separator).trim(), columns);
+			if (column >= this.rules.length) {
+				ColumnRule[] grown = new ColumnRule[column + 1];
+				System.arraycopy(this.rules, 0, grown, 0, this.rules.length);
+				this.rules = grown;
+			}
+			this.rules[column] = createRule(entry.substring(separator + 1).trim());
+		}
+		this.escapeCharacter = (byte) escapeCharacter;
+		this.pool = pool;
+		this.depth = Math.max(2, threads * 2);
+	}
+
+	/**
+	 * Indicates if rules refer to columns by name, which needs the column list
+	 * of the table.
+	 * 
+	 * @param ruleList
+	 *            the TRANSFORM_RULES setting.
+	 * @return true if a column is named rather than numbered.
+	 */
+	public static boolean refersToColumnNames(String ruleList) {
+		for (String entry : ruleList.split(",")) {
+			int separator = entry.indexOf(':');
+			if (separator > 0 && !entry.substring(0, separator).trim().matches("[0-9]+")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Indicates if a column is transformed.
+	 * 
+	 * @param column
+	 *            the zero based position of the column in the export file.
+	 * @return true if a rule applies to the column.
+	 */
+	public boolean hasRule(int column) {
+		return column < this.rules.length && this.rules[column] != null;
+	}
+
+	/**
+	 * Gets the zero based index of a column given by name or 1 based position.
+	 */
+	private static int columnIndex(String column, List<String> columns) {
+		if (column.matches("[0-9]+")) {
+			int position = Integer.parseInt(column);
+			if (position < 1) {
+				throw new IllegalArgumentException("Column positions start at 1: " + column);
+			}
+			return position - 1;
+		}
+		int index = columns.indexOf(TableName.normalize(column));
+		if (index < 0) {
+			throw new IllegalArgumentException("Column " + column + " of TRANSFORM_RULES is not exported");
+		}
+		return index;
+	}
+
+	/**
+	 * Creates a rule from its name and optional argument.
+	 */
+	private static ColumnRule createRule(String rule) {
+		String name = rule;
+		String argument = null;
+		int open = rule.indexOf('(');
+		if (open > 0 && rule.endsWith(")")) {
+			name = rule.substring(0, open).trim();
+			argument = rule.substring(open + 1, rule.length() - 1).trim();
+		}
+		String upperName = name.toUpperCase();
+		if (upperName.equals("TRIM")) {
+			return new TrimRule();
+		} else if (upperName.equals("MASK")) {
+			return new MaskRule(argument == null ? 0 : Integer.parseInt(argument));
+		} else if (upperName.equals("HASH")) {
+			return new HashRule(argument == null ? "" : argument);
+		} else if (upperName.equals("NULL")) {
+			return new NullRule();
+		} else if (upperName.equals("DATE")) {
+			return new DateRule();
+		} else if (upperName.equals("CODEPAGE") && argument != null) {
+			return new CodePageRule(Charset.forName(argument));
+		} else if (name.contains(".")) {
+			try {
+				return (ColumnRule) Class.forName(name).getConstructor().newInstance();
+			} catch (Exception e) {
+				throw new IllegalArgumentException("Transform rule class " + name + " cannot be created", e);
+			}
+		}
+		throw new IllegalArgumentException("Unknown transform rule " + rule);
+	}
+
+	/**
+	 * Transforms the rows of a stream. Blocks are read ahead and transformed on
+	 * the pool while earlier blocks are consumed.
+	 * 
+	 * @param in
+	 *            the export file stream, closed with the returned stream.
+	 * @return the stream of transformed rows.
+	 */
+	public InputStream transform(InputStream in) {
+		return new TransformedInputStream(in);
+	}
+
+	/**
+	 * Transforms complete rows.
+	 * 
+	 * @param block
+	 *            the rows.
+	 * @param length
+	 *            the number of bytes of rows in the block.
+	 * @return the transformed rows.
+	 */
+	public Output transform(byte[] block, int length) {
+		Output out = new Output(length + length / 8);
+		Output field = new Output(1024);
+		Output value = new Output(1024);
+		int position = 0;
+		while (position < length) {
+			position = transformRow(block, position, length, out, field, value);
+		}
+		return out;
+	}
+
+	/**
+	 * Transforms the row starting at an offset and returns the offset of the
+	 * next row.
+	 */
+	private int transformRow(byte[] in, int start, int limit, Output out, Output field, Output value) {
+		int column = 0;
+		int fieldStart = start;
+		int copyFrom = start;
+		for (int i = start;; i++) {
+			boolean endOfRow = i >= limit || in[i] == DelRowEncoder.ROW_DELIMITER;
+			if (endOfRow || in[i] == DelRowEncoder.COLUMN_DELIMITER) {
+				if (column < this.rules.length && this.rules[column] != null) {
+					out.write(in, copyFrom, fieldStart - copyFrom);
+					applyRule(this.rules[column], in, fieldStart, i, out, field, value);
+					copyFrom = i;
+				}
+				column++;
+				fieldStart = i + 1;
+				if (endOfRow) {
+					int next = Math.min(i + 1, limit);
+					out.write(in, copyFrom, next - copyFrom);
+					return next;
+				}
+			} else if (this.escapeCharacter != 0 && in[i] == this.escapeCharacter && i + 1 < limit) {
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Applies a rule to one field. With an escape character the rule is given
+	 * the unescaped field in a scratch buffer and its value is escaped again as
+	 * it is written.
+	 */
+	private void applyRule(ColumnRule rule, byte[] in, int start, int end, Output out, Output field,
+			Output value) {
+		if (this.escapeCharacter == 0) {
+			rule.apply(in, start, end, out);
+			return;
+		}
+		field.length = 0;
+		for (int i = start; i < end; i++) {
+			if (in[i] == this.escapeCharacter && i + 1 < end) {
+				i++;
+			}
+			field.write(in[i]);
+		}
+		value.length = 0;
+		rule.apply(field.bytes, 0, field.length, value);
+		for (int i = 0; i < value.length; i++) {
+			byte b = value.bytes[i];
+			if (b == DelRowEncoder.COLUMN_DELIMITER || b == DelRowEncoder.ROW_DELIMITER || b == '\r'
+					|| b == this.escapeCharacter) {
+				out.write(this.escapeCharacter);
+			}
+			out.write(b);
+		}
+	}
+
+	/**
+	 * Gets the offset after the last row delimiter of a block that is not
+	 * escaped, or -1 if the block holds no complete row.
+	 */
+	private int lastRowEnd(byte[] block, int length) {
+		for (int i = length - 1; i >= 0; i--) {
+			if (block[i] != DelRowEncoder.ROW_DELIMITER) {
+				continue;
+			}
+			int escapes = 0;
+			while (this.escapeCharacter != 0 && i - escapes - 1 >= 0
+					&& block[i - escapes - 1] == this.escapeCharacter) {
+				escapes++;
+			}
+			// an odd run of escape characters escapes the delimiter
+			if (escapes % 2 == 0) {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Reads blocks ending on row boundaries, transforms them on the pool and
+	 * returns the results in order.
+	 */
+	private class TransformedInputStream extends InputStream {
+		private InputStream in;
+		private LinkedList<Future<Output>> pending = new LinkedList<Future<Output>>();
+		private byte[] carry = new byte[0];
+		private boolean endOfInput = false;
+		private Output current = null;
+		private int currentPosition = 0;
+
+		TransformedInputStream(InputStream in) {
+			this.in = in;
+		}
+
+		/**
+		 * Reads and submits blocks until enough are pending.
+		 */
+		private void readAhead() throws IOException {
+			while (!this.endOfInput && this.pending.size() < depth) {
+				byte[] block = new byte[this.carry.length + BLOCK_SIZE];
+				System.arraycopy(this.carry, 0, block, 0, this.carry.length);
+				int length = this.carry.length;
+				while (length < block.length) {
+					int bytesRead = this.in.read(block, length, block.length - length);
+					if (bytesRead == -1) {
+						this.endOfInput = true;
+						break;
+					}
+					length += bytesRead;
+				}
+				int rowsEnd = this.endOfInput ? length : lastRowEnd(block, length);
+				if (rowsEnd < 0) {
+					// a row longer than a block, read on
+					this.carry = Arrays.copyOf(block, length);
+					continue;
+				}
+				this.carry = Arrays.copyOfRange(block, rowsEnd, length);
+				final byte[] rows = block;
+				final int rowsLength = rowsEnd;
+				this.pending.add(pool.submit(new Callable<Output>() {
+					public Output call() {
+						return transform(rows, rowsLength);
+					}
+				}));
+			}
+		}
+
+		/**
+		 * Moves to the next transformed block.
+		 */
+		private boolean nextBlock() throws IOException {
+			while (this.current == null || this.currentPosition == this.current.length) {
+				readAhead();
+				if (this.pending.isEmpty()) {
+					return false;
+				}
+				try {
+					this.current = this.pending.removeFirst().get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while transforming rows", e);
+				} catch (ExecutionException e) {
+					throw new IOException("Transforming rows failed", e.getCause());
+				}
+				this.currentPosition = 0;
+			}
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!nextBlock()) {
+				return -1;
+			}
+			return this.current.bytes[this.currentPosition++] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (length == 0) {
+				return 0;
+			}
+			if (!nextBlock()) {
+				return -1;
+			}
+			int count = Math.min(length, this.current.length - this.currentPosition);
+			System.arraycopy(this.current.bytes, this.currentPosition, buffer, offset, count);
+			this.currentPosition += count;
+			return count;
+		}
+
+		@Override
+		public void close() throws IOException {
+			for (Future<Output> block : this.pending) {
+				block.cancel(true);
+			}
+			this.pending.clear();
+			this.in.close();
+		}
+	}
+
+	/**
+	 * Removes trailing blanks.
+	 */
+	private static class TrimRule implements ColumnRule {
+		public void apply(byte[] row, int start, int end, Output out) {
+			int valueEnd = end;
+			while (end > start && row[end - 1] == ' ') {
+				end--;
+			}
+			// an empty field is NULL under NOCHARDEL, so a blank value keeps one blank
+			if (end == start && valueEnd > start) {
+				end = start + 1;
+			}
+			out.write(row, start, end - start);
+		}
+	}
+
+	/**
+	 * Replaces all but the last characters with *.
+	 */
+	private static class MaskRule implements ColumnRule {
+		private int keep;
+
+		MaskRule(int keep) {
+			this.keep = Math.max(0, keep);
+		}
+
+		public void apply(byte[] row, int start, int end, Output out) {
+			int characters = 0;
+			for (int i = start; i < end; i++) {
+				// count UTF-8 lead bytes, not continuation bytes
+				if ((row[i] & 0xC0) != 0x80) {
+					characters++;
+				}
+			}
+			int masked = characters - this.keep;
+			int i = start;
+			for (int character = 0; character < masked; character++) {
+				out.write((byte) '*');
+				i++;
+				while (i < end && (row[i] & 0xC0) == 0x80) {
+					i++;
+				}
+			}
+			out.write(row, i, end - i);
+		}
+	}
+
+	/**
+	 * Replaces the value with the hex SHA-256 of a salt and the value.
+	 */
+	private static class HashRule implements ColumnRule {
+		private byte[] salt;
+		private ThreadLocal<MessageDigest> digests = new ThreadLocal<MessageDigest>() {
+			@Override
+			protected MessageDigest initialValue() {
+				try {
+					return MessageDigest.getInstance("SHA-256");
+				} catch (NoSuchAlgorithmException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+
+		HashRule(String salt) {
+			this.salt = salt.getBytes(StandardCharsets.UTF_8);
+		}
+
+		public void apply(byte[] row, int start, int end, Output out) {
+			if (end == start) {
+				return;
+			}
+			MessageDigest digest = this.digests.get();
+			digest.update(this.salt);
+			digest.update(row, start, end - start);
+			for (byte b : digest.digest()) {
+				out.write((byte) Character.forDigit((b >> 4) & 0xF, 16));
+				out.write((byte) Character.forDigit(b & 0xF, 16));
+			}
+		}
+	}
+
+	/**
+	 * Replaces the value with NULL.
+	 */
+	private static class NullRule implements ColumnRule {
+		public void apply(byte[] row, int start, int end, Output out) {
+		}
+	}
+
+	/**
+	 * Rewrites separated dates as YYYYMMDD and leaves other values unchanged.
+	 */
+	private static class DateRule implements ColumnRule {
+		public void apply(byte[] row, int start, int end, Output out) {
+			if (end - start == 10 && isDigits(row, start, 4) && isDigits(row, start + 5, 2)
+					&& isDigits(row, start + 8, 2) && isDateSeparator(row[start + 4])
+					&& row[start + 7] == row[start + 4]) {
+				out.write(row, start, 4);
+				out.write(row, start + 5, 2);
+				out.write(row, start + 8, 2);
+			} else {
+				out.write(row, start, end - start);
+			}
+		}
+
+		private static boolean isDigits(byte[] row, int start, int count) {
+			for (int i = start; i < start + count; i++) {
+				if (row[i] < '0' || row[i] > '9') {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static boolean isDateSeparator(byte b) {
+			return b == '-' || b == '/' || b == '.';
+		}
+	}
+
+	/**
+	 * Converts the value from a charset to UTF-8. ASCII values are copied as
+	 * they are.
+	 */
+	private static class CodePageRule implements ColumnRule {
+		private Charset charset;
+
+		CodePageRule(Charset charset) {
+			this.charset = charset;
+		}
+
+		public void apply(byte[] row, int start, int end, Output out) {
+			int i = start;
+			while (i < end && row[i] >= 0) {
+				i++;
+			}
+			if (i == end) {
+				out.write(row, start, end - start);
+				return;
+			}
+			byte[] converted = new String(row, start, end - start, this.charset).getBytes(StandardCharsets.UTF_8);
+			out.write(converted, 0, converted.length);
+		}
+	}
+}
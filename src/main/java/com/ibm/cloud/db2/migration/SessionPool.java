@@ -0,0 +1,153 @@
+package com.ibm.cloud.db2.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Idle database sessions kept for reuse. A phase normally owns its pool and
+ * closes it when the phase ends. In daemon mode one pool is shared by all jobs,
+ * so sessions stay open between jobs; sessions that have been idle for a while
+ * are checked before they are handed out again.
+ */
+public class SessionPool {
+
+	/**
+	 * Sessions idle for longer than this are validated before reuse
+	 */
+	private static final long VALIDATE_AFTER_MILLIS = 60 * 1000L;
+
+	/**
+	 * Utility configuration
+	 */
+	private ConfigurationBean config = null;
+
+	/**
+	 * Idle sessions that can be reused by the next task
+	 */
+	private ConcurrentLinkedQueue<IdleSession> idleSourceConnections = new ConcurrentLinkedQueue<IdleSession>();
+	private ConcurrentLinkedQueue<IdleSession> idleTargetConnections = new ConcurrentLinkedQueue<IdleSession>();
+
+	/**
+	 * A pooled session and the time it was returned.
+	 */
+	private static class IdleSession {
+		private Connection connection;
+		private long idleSince;
+
+		IdleSession(Connection connection) {
+			this.connection = connection;
+			this.idleSince = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param config
+	 *            the utility configuration.
+	 */
+	public SessionPool(ConfigurationBean config) {
+		super();
+		this.config = config;
+	}
+
+	/**
+	 * Takes an idle source session or opens a new one.
+	 * 
+	 * @return the JDBC Connection
+	 * @throws SQLException
+	 */
+	public Connection getSourceConnection() throws SQLException {
+		Connection connection = poll(this.idleSourceConnections);
+		return connection != null ? connection : new DB2Connection(this.config).getSourceConnection();
+	}
+
+	/**
+	 * Takes an idle target session or opens a new one.
+	 * 
+	 * @return the JDBC Connection
+	 * @throws SQLException
+	 */
+	public Connection getTargetConnection() throws SQLException {
+		Connection connection = poll(this.idleTargetConnections);
+		return connection != null ? connection : new DB2Connection(this.config).getTargetConnection();
+	}
+
+	/**
+	 * Returns a source session for reuse.
+	 * 
+	 * @param connection
+	 *            the connection taken with getSourceConnection.
+	 */
+	public void returnSourceConnection(Connection connection) {
+		this.idleSourceConnections.add(new IdleSession(connection));
+	}
+
+	/**
+	 * Returns a target session for reuse.
+	 * 
+	 * @param connection
+	 *            the connection taken with getTargetConnection.
+	 */
+	public void returnTargetConnection(Connection connection) {
+		this.idleTargetConnections.add(new IdleSession(connection));
+	}
+
+	/**
+	 * Closes all idle sessions.
+	 */
+	public void close() {
+		closeIdle(this.idleSourceConnections);
+		closeIdle(this.idleTargetConnections);
+	}
+
+	/**
+	 * Takes the next usable idle session, closing those that no longer work.
+	 */
+	private Connection poll(ConcurrentLinkedQueue<IdleSession> sessions) {
+		IdleSession session;
+		while ((session = sessions.poll()) != null) {
+			if (System.currentTimeMillis() - session.idleSince < VALIDATE_AFTER_MILLIS) {
+				return session.connection;
+			}
+			try {
+				if (session.connection.isValid(5)) {
+					return session.connection;
+				}
+				session.connection.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Closes the sessions of one queue.
+	 */
+	private void closeIdle(ConcurrentLinkedQueue<IdleSession> sessions) {
+		IdleSession session;
+		while ((session = sessions.poll()) != null) {
+			try {
+				session.connection.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
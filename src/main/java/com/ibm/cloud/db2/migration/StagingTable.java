@@ -0,0 +1,666 @@
+package com.ibm.cloud.db2.migration;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A staging table a target table is loaded into while readers keep using the
+ * current data. The staging table is created like the table that holds the
+ * data today, loaded without indexes, given the indexes of that table and then
+ * swapped in with one short transaction.
+ * 
+ * With the RENAME swap the target table is renamed away and the staging table
+ * takes its name. Db2 does not rename tables that views, triggers or
+ * constraints refer to, so such tables use the VIEW swap instead: readers go
+ * through a view over a single table, and the view is replaced with one over
+ * the staging table. Only views that are a plain SELECT * from the table are
+ * swapped, since the replacement has no other clauses. The staging tables of a view alternate between two
+ * names. After the swap the previous table is dropped and the indexes of the
+ * staging table take back their original names.
+ * 
+ * CREATE TABLE LIKE copies no constraints or triggers. The check constraints
+ * and foreign keys of a table behind a view are created on its staging table
+ * with the indexes. Tables with triggers, tables other tables refer to with
+ * foreign keys and, for the RENAME swap, tables with any constraint are not
+ * staged, since the swap would drop them or fail.
+ */
+public class StagingTable {
+	private static Log logger = LogFactory.getLog(StagingTable.class);
+
+	/**
+	 * The suffix of the staging table of a RENAME swap
+	 */
+	private static final String STAGING_SUFFIX = "_DB2M_STAGE";
+
+	/**
+	 * The suffix a table is renamed to while it is swapped out
+	 */
+	private static final String OLD_SUFFIX = "_DB2M_OLD";
+
+	/**
+	 * The alternating suffixes of the tables behind a view
+	 */
+	private static final String[] VIEW_SUFFIXES = { "_DB2M_A", "_DB2M_B" };
+
+	/**
+	 * The suffix of staging index names until the swap
+	 */
+	private static final String INDEX_SUFFIX = "_DB2M";
+
+	/**
+	 * The definition of a view the VIEW swap can replace: SELECT * from one
+	 * table, without a column list, clauses or options
+	 */
+	private static final Pattern PLAIN_VIEW = Pattern.compile(
+			"\\s*CREATE\\s+(OR\\s+REPLACE\\s+)?VIEW\\s+[^\\s(]+\\s+AS\\s+SELECT\\s+\\*\\s+FROM\\s+[^\\s,]+\\s*;?\\s*",
+			Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * The schema of the target table or view.
+	 */
+	private String schema = null;
+
+	/**
+	 * The name of the target table or view.
+	 */
+	private String name = null;
+
+	/**
+	 * The schema of the table holding the current data.
+	 */
+	private String baseSchema = null;
+
+	/**
+	 * The name of the table holding the current data.
+	 */
+	private String baseName = null;
+
+	/**
+	 * The name of the staging table, in the schema of the target.
+	 */
+	private String stagingName = null;
+
+	/**
+	 * Is the view replaced rather than the table renamed.
+	 */
+	private boolean viewSwap = false;
+
+	/**
+	 * Is the staging table loaded NOT LOGGED INITIALLY.
+	 */
+	private boolean notLogged = false;
+
+	/**
+	 * The schema and original name of each index created on the staging table.
+	 */
+	private ArrayList<String[]> indexNames = new ArrayList<String[]>();
+
+	/**
+	 * The statements that create the check constraints and foreign keys on the
+	 * staging table.
+	 */
+	private ArrayList<String> constraintDdl = new ArrayList<String>();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param connection
+	 *            the connection to the target database.
+	 * @param tableName
+	 *            the name of the table as listed in the table names file.
+	 * @param tableConfig
+	 *            the table's configuration.
+	 * @throws SQLException
+	 *             if a VIEW swap is configured and the target is not a plain
+	 *             SELECT * view over a single table.
+	 */
+	public StagingTable(Connection connection, String tableName, ConfigurationBean tableConfig)
+			throws SQLException {
+		super();
+		TableName table = TableName.parse(tableName);
+		this.schema = table.getSchema(connection);
+		this.name = table.getName();
+		this.viewSwap = tableConfig.isViewSwap();
+		this.notLogged = tableConfig.isTargetStagingNotLogged();
+		if (this.viewSwap) {
+			readViewBase(connection);
+			this.stagingName = this.name
+					+ (this.baseName.equals(this.name + VIEW_SUFFIXES[0]) ? VIEW_SUFFIXES[1] : VIEW_SUFFIXES[0]);
+		} else {
+			this.baseSchema = this.schema;
+			this.baseName = this.name;
+			this.stagingName = this.name + STAGING_SUFFIX;
+		}
+	}
+
+	/**
+	 * Gets the delimited, fully qualified name of the staging table.
+	 * 
+	 * @return the qualified staging table name.
+	 */
+	public String getQualifiedName() {
+		return TableName.quote(this.schema) + "." + TableName.quote(this.stagingName);
+	}
+
+	/**
+	 * Creates an empty staging table like the table holding the current data,
+	 * in the same table spaces, with the same distribution key and
+	 * organization. A staging table left by an earlier run is dropped first.
+	 * 
+	 * @param connection
+	 *            the connection to the target database.
+	 * @throws SQLException
+	 *             also if the table has triggers or constraints the swap would
+	 *             lose.
+	 */
+	public void create(Connection connection) throws SQLException {
+		readConstraints(connection);
+		dropTable(connection, getQualifiedName());
+		if (!this.viewSwap) {
+			dropTable(connection, quote(this.schema, this.name + OLD_SUFFIX));
+		}
+		StringBuilder ddl = new StringBuilder("CREATE TABLE ").append(getQualifiedName()).append(" LIKE ")
+				.append(quote(this.baseSchema, this.baseName))
+				.append(" INCLUDING COLUMN DEFAULTS INCLUDING IDENTITY COLUMN ATTRIBUTES");
+		PreparedStatement statement = connection.prepareStatement("SELECT TBSPACE, INDEX_TBSPACE, LONG_TBSPACE, "
+				+ "TABLEORG FROM SYSCAT.TABLES WHERE TABSCHEMA = ? AND TABNAME = ?");
+		try {
+			statement.setString(1, this.baseSchema);
+			statement.setString(2, this.baseName);
+			ResultSet resultSet = statement.executeQuery();
+			if (resultSet.next()) {
+				if (resultSet.getString(1) != null) {
+					ddl.append(" IN ").append(TableName.quote(resultSet.getString(1).trim()));
+				}
+				if (resultSet.getString(2) != null) {
+					ddl.append(" INDEX IN ").append(TableName.quote(resultSet.getString(2).trim()));
+				}
+				if (resultSet.getString(3) != null) {
+					ddl.append(" LONG IN ").append(TableName.quote(resultSet.getString(3).trim()));
+				}
+				ddl.append("C".equals(resultSet.getString(4)) ? " ORGANIZE BY COLUMN" : " ORGANIZE BY ROW");
+			}
+		} finally {
+			statement.close();
+		}
+		String distributionKey = readColumns(connection,
+				"SELECT COLNAME FROM SYSCAT.COLUMNS WHERE TABSCHEMA = ? AND TABNAME = ? AND PARTKEYSEQ > 0 "
+						+ "ORDER BY PARTKEYSEQ");
+		if (!distributionKey.isEmpty()) {
+			ddl.append(" DISTRIBUTE BY HASH (").append(distributionKey).append(")");
+		}
+		logger.info("Creating staging table " + getQualifiedName());
+		execute(connection, ddl.toString());
+	}
+
+	/**
+	 * Starts a load of the staging table. When NOT LOGGED INITIALLY is
+	 * configured, the session leaves auto commit and activates it, so the
+	 * inserts up to endLoad are not logged.
+	 * 
+	 * @param connection
+	 *            the session that runs the load.
+	 * @throws SQLException
+	 */
+	public void beginLoad(Connection connection) throws SQLException {
+		if (this.notLogged) {
+			connection.setAutoCommit(false);
+			execute(connection, "ALTER TABLE " + getQualifiedName() + " ACTIVATE NOT LOGGED INITIALLY");
+		}
+	}
+
+	/**
+	 * Ends a load started with beginLoad. A failed NOT LOGGED INITIALLY load
+	 * leaves the staging table unusable, so it is created again on the next
+	 * run.
+	 * 
+	 * @param connection
+	 *            the session that ran the load.
+	 * @param succeeded
+	 *            true to commit the load, false to roll it back.
+	 * @throws SQLException
+	 */
+	public void endLoad(Connection connection, boolean succeeded) throws SQLException {
+		if (!this.notLogged) {
+			return;
+		}
+		try {
+			if (succeeded) {
+				connection.commit();
+			} else {
+				connection.rollback();
+			}
+		} finally {
+			connection.setAutoCommit(true);
+		}
+	}
+
+	/**
+	 * Creates the primary key, indexes, check constraints and foreign keys of
+	 * the table holding the current data on the loaded staging table and
+	 * restarts its identity column after the loaded values. Index names get a
+	 * suffix until the swap. For a RENAME swap the table privileges
+	 * are granted on the staging table too; a view keeps its own.
+	 * 
+	 * @param connection
+	 *            the connection to the target database.
+	 * @throws SQLException
+	 */
+	public void prepareSwap(Connection connection) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(
+				"SELECT I.INDSCHEMA, I.INDNAME, I.UNIQUERULE, I.INDEXTYPE, C.COLNAME, C.COLORDER "
+						+ "FROM SYSCAT.INDEXES I JOIN SYSCAT.INDEXCOLUSE C "
+						+ "ON C.INDSCHEMA = I.INDSCHEMA AND C.INDNAME = I.INDNAME "
+						+ "WHERE I.TABSCHEMA = ? AND I.TABNAME = ? AND I.INDEXTYPE IN ('REG', 'CLUS') "
+						+ "ORDER BY I.INDSCHEMA, I.INDNAME, C.COLSEQ");
+		ArrayList<String> ddl = new ArrayList<String>();
+		try {
+			statement.setString(1, this.baseSchema);
+			statement.setString(2, this.baseName);
+			ResultSet resultSet = statement.executeQuery();
+			String[] index = null;
+			StringBuilder columns = null;
+			StringBuilder includes = null;
+			while (resultSet.next()) {
+				String indexSchema = resultSet.getString(1).trim();
+				String indexName = resultSet.getString(2);
+				if (index == null || !index[0].equals(indexSchema) || !index[1].equals(indexName)) {
+					addIndex(ddl, index, columns, includes);
+					index = new String[] { indexSchema, indexName, resultSet.getString(3), resultSet.getString(4) };
+					columns = new StringBuilder();
+					includes = new StringBuilder();
+				}
+				String colOrder = resultSet.getString(6);
+				StringBuilder list = "I".equals(colOrder) ? includes : columns;
+				if (list.length() > 0) {
+					list.append(", ");
+				}
+				list.append(TableName.quote(resultSet.getString(5)));
+				if (!"I".equals(colOrder)) {
+					list.append("D".equals(colOrder) ? " DESC" : " ASC");
+				}
+			}
+			addIndex(ddl, index, columns, includes);
+		} finally {
+			statement.close();
+		}
+		for (String indexDdl : ddl) {
+			long startTime = System.currentTimeMillis();
+			Tracer.Span span = Tracer.begin("statement", indexDdl);
+			execute(connection, indexDdl);
+			span.end();
+			logger.info("Built index in " + (System.currentTimeMillis() - startTime) + " ms: " + indexDdl);
+		}
+		for (String constraint : this.constraintDdl) {
+			long startTime = System.currentTimeMillis();
+			Tracer.Span span = Tracer.begin("statement", constraint);
+			execute(connection, constraint);
+			span.end();
+			logger.info("Added constraint in " + (System.currentTimeMillis() - startTime) + " ms: " + constraint);
+		}
+		restartIdentity(connection);
+		if (!this.viewSwap) {
+			grantPrivileges(connection);
+		}
+	}
+
+	/**
+	 * Swaps the staging table in with a single transaction, then drops the
+	 * previous table and gives the indexes their original names.
+	 * 
+	 * @param connection
+	 *            the connection to the target database.
+	 * @throws SQLException
+	 */
+	public void swap(Connection connection) throws SQLException {
+		String target = quote(this.schema, this.name);
+		String previous = this.viewSwap ? quote(this.baseSchema, this.baseName)
+				: quote(this.schema, this.name + OLD_SUFFIX);
+		long startTime = System.currentTimeMillis();
+		Tracer.Span span = Tracer.begin("statement", "swap " + target);
+		String outcome = "failed";
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		Statement statement = connection.createStatement();
+		try {
+			if (this.viewSwap) {
+				statement.execute("CREATE OR REPLACE VIEW " + target + " AS SELECT * FROM " + getQualifiedName());
+			} else {
+				statement.execute("RENAME TABLE " + target + " TO " + TableName.quote(this.name + OLD_SUFFIX));
+				statement.execute("RENAME TABLE " + getQualifiedName() + " TO " + TableName.quote(this.name));
+			}
+			connection.commit();
+			outcome = "ok";
+		} catch (SQLException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			statement.close();
+			connection.setAutoCommit(autoCommit);
+			span.end(outcome);
+		}
+		logger.info("Swapped in " + (System.currentTimeMillis() - startTime) + " ms: " + target);
+		dropTable(connection, previous);
+		for (String[] index : this.indexNames) {
+			execute(connection, "RENAME INDEX " + quote(index[0], index[1] + INDEX_SUFFIX) + " TO "
+					+ TableName.quote(index[1]));
+		}
+	}
+
+	/**
+	 * Reads the single table a view selects from. The swap replaces the view
+	 * with SELECT * from the staging table, so a view with any other definition
+	 * is refused rather than silently redefined.
+	 */
+	private void readViewBase(Connection connection) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement("SELECT BSCHEMA, BNAME FROM SYSCAT.VIEWDEP "
+				+ "WHERE VIEWSCHEMA = ? AND VIEWNAME = ? AND BTYPE = 'T'");
+		try {
+			statement.setString(1, this.schema);
+			statement.setString(2, this.name);
+			ResultSet resultSet = statement.executeQuery();
+			if (resultSet.next()) {
+				this.baseSchema = resultSet.getString(1).trim();
+				this.baseName = resultSet.getString(2);
+			}
+			if (this.baseName == null || resultSet.next()) {
+				throw new SQLException("TARGET_STAGING_SWAP=VIEW needs " + quote(this.schema, this.name)
+						+ " to be a view over a single table");
+			}
+		} finally {
+			statement.close();
+		}
+		statement = connection.prepareStatement("SELECT TEXT FROM SYSCAT.VIEWS WHERE VIEWSCHEMA = ? AND VIEWNAME = ?");
+		try {
+			statement.setString(1, this.schema);
+			statement.setString(2, this.name);
+			ResultSet resultSet = statement.executeQuery();
+			String text = resultSet.next() ? resultSet.getString(1) : null;
+			if (text == null || !PLAIN_VIEW.matcher(text).matches()) {
+				throw new SQLException("TARGET_STAGING_SWAP=VIEW needs " + quote(this.schema, this.name)
+						+ " to be defined as SELECT * FROM one table, the swap would replace its definition: " + text);
+			}
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Refuses tables the swap would lose triggers or constraints of, and builds
+	 * the statements that create the check constraints and foreign keys of a
+	 * table behind a view on its staging table.
+	 */
+	private void readConstraints(Connection connection) throws SQLException {
+		String table = quote(this.baseSchema, this.baseName);
+		if (count(connection, "SELECT COUNT(*) FROM SYSCAT.TRIGGERS WHERE TABSCHEMA = ? AND TABNAME = ?") > 0) {
+			throw new SQLException(table + " has triggers, which the staging table would not have. "
+					+ "Load it without TARGET_LOAD_STAGING");
+		}
+		if (count(connection,
+				"SELECT COUNT(*) FROM SYSCAT.REFERENCES WHERE REFTABSCHEMA = ? AND REFTABNAME = ?") > 0) {
+			throw new SQLException(table + " is the parent of foreign keys, which dropping it after the swap "
+					+ "would drop. Load it without TARGET_LOAD_STAGING");
+		}
+		PreparedStatement statement = connection.prepareStatement(
+				"SELECT CONSTNAME, TEXT FROM SYSCAT.CHECKS WHERE TABSCHEMA = ? AND TABNAME = ? AND TYPE = 'C' "
+						+ "ORDER BY CONSTNAME");
+		try {
+			statement.setString(1, this.baseSchema);
+			statement.setString(2, this.baseName);
+			ResultSet resultSet = statement.executeQuery();
+			while (resultSet.next()) {
+				this.constraintDdl.add("ALTER TABLE " + getQualifiedName() + " ADD CONSTRAINT "
+						+ TableName.quote(resultSet.getString(1)) + " CHECK (" + resultSet.getString(2) + ")");
+			}
+		} finally {
+			statement.close();
+		}
+		ArrayList<String[]> foreignKeys = new ArrayList<String[]>();
+		statement = connection.prepareStatement("SELECT CONSTNAME, REFTABSCHEMA, REFTABNAME, REFKEYNAME, "
+				+ "DELETERULE, UPDATERULE FROM SYSCAT.REFERENCES WHERE TABSCHEMA = ? AND TABNAME = ? "
+				+ "ORDER BY CONSTNAME");
+		try {
+			statement.setString(1, this.baseSchema);
+			statement.setString(2, this.baseName);
+			ResultSet resultSet = statement.executeQuery();
+			while (resultSet.next()) {
+				foreignKeys.add(new String[] { resultSet.getString(1), resultSet.getString(2).trim(),
+						resultSet.getString(3), resultSet.getString(4), resultSet.getString(5),
+						resultSet.getString(6) });
+			}
+		} finally {
+			statement.close();
+		}
+		for (String[] foreignKey : foreignKeys) {
+			String deleteRule = "C".equals(foreignKey[4]) ? "CASCADE"
+					: "N".equals(foreignKey[4]) ? "SET NULL" : "R".equals(foreignKey[4]) ? "RESTRICT" : "NO ACTION";
+			this.constraintDdl.add("ALTER TABLE " + getQualifiedName() + " ADD CONSTRAINT "
+					+ TableName.quote(foreignKey[0]) + " FOREIGN KEY ("
+					+ readKeyColumns(connection, this.baseSchema, this.baseName, foreignKey[0]) + ") REFERENCES "
+					+ quote(foreignKey[1], foreignKey[2]) + " ("
+					+ readKeyColumns(connection, foreignKey[1], foreignKey[2], foreignKey[3]) + ") ON DELETE "
+					+ deleteRule + " ON UPDATE " + ("R".equals(foreignKey[5]) ? "RESTRICT" : "NO ACTION"));
+		}
+		if (!this.viewSwap && !this.constraintDdl.isEmpty()) {
+			throw new SQLException(table + " has check constraints or foreign keys, and Db2 does not rename such "
+					+ "tables. Use TARGET_STAGING_SWAP=VIEW");
+		}
+	}
+
+	/**
+	 * Restarts the identity column of the loaded staging table after the last
+	 * value it holds. CREATE TABLE LIKE gives the staging table a new counter,
+	 * which would otherwise generate values the loaded rows already have.
+	 */
+	private void restartIdentity(Connection connection) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement("SELECT COLNAME, INCREMENT "
+				+ "FROM SYSCAT.COLIDENTATTRIBUTES WHERE TABSCHEMA = ? AND TABNAME = ?");
+		String column = null;
+		BigDecimal increment = null;
+		try {
+			statement.setString(1, this.baseSchema);
+			statement.setString(2, this.baseName);
+			ResultSet resultSet = statement.executeQuery();
+			if (resultSet.next()) {
+				column = TableName.quote(resultSet.getString(1));
+				increment = resultSet.getBigDecimal(2);
+			}
+		} finally {
+			statement.close();
+		}
+		if (column == null) {
+			return;
+		}
+		// a descending identity continues below the smallest value
+		statement = connection.prepareStatement("SELECT " + (increment.signum() < 0 ? "MIN(" : "MAX(") + column
+				+ ") FROM " + getQualifiedName());
+		BigDecimal last;
+		try {
+			ResultSet resultSet = statement.executeQuery();
+			resultSet.next();
+			last = resultSet.getBigDecimal(1);
+		} finally {
+			statement.close();
+		}
+		if (last != null) {
+			String restart = "ALTER TABLE " + getQualifiedName() + " ALTER COLUMN " + column + " RESTART WITH "
+					+ last.add(increment).toPlainString();
+			execute(connection, restart);
+			logger.info("Restarted identity: " + restart);
+		}
+	}
+
+	/**
+	 * Counts the catalog rows of the table holding the current data.
+	 */
+	private int count(Connection connection, String query) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(query);
+		try {
+			statement.setString(1, this.baseSchema);
+			statement.setString(2, this.baseName);
+			ResultSet resultSet = statement.executeQuery();
+			resultSet.next();
+			return resultSet.getInt(1);
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Reads the columns of a key constraint in key order.
+	 */
+	private static String readKeyColumns(Connection connection, String schema, String table, String constraint)
+			throws SQLException {
+		PreparedStatement statement = connection.prepareStatement("SELECT COLNAME FROM SYSCAT.KEYCOLUSE "
+				+ "WHERE TABSCHEMA = ? AND TABNAME = ? AND CONSTNAME = ? ORDER BY COLSEQ");
+		StringBuilder columns = new StringBuilder();
+		try {
+			statement.setString(1, schema);
+			statement.setString(2, table);
+			statement.setString(3, constraint);
+			ResultSet resultSet = statement.executeQuery();
+			while (resultSet.next()) {
+				if (columns.length() > 0) {
+					columns.append(", ");
+				}
+				columns.append(TableName.quote(resultSet.getString(1)));
+			}
+		} finally {
+			statement.close();
+		}
+		return columns.toString();
+	}
+
+	/**
+	 * Reads a list of column names of the table holding the current data.
+	 */
+	private String readColumns(Connection connection, String query) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(query);
+		StringBuilder columns = new StringBuilder();
+		try {
+			statement.setString(1, this.baseSchema);
+			statement.setString(2, this.baseName);
+			ResultSet resultSet = statement.executeQuery();
+			while (resultSet.next()) {
+				if (columns.length() > 0) {
+					columns.append(", ");
+				}
+				columns.append(TableName.quote(resultSet.getString(1)));
+			}
+		} finally {
+			statement.close();
+		}
+		return columns.toString();
+	}
+
+	/**
+	 * Adds the statement that recreates one index on the staging table.
+	 */
+	private void addIndex(ArrayList<String> ddl, String[] index, StringBuilder columns, StringBuilder includes) {
+		if (index == null) {
+			return;
+		}
+		if ("P".equals(index[2])) {
+			ddl.add("ALTER TABLE " + getQualifiedName() + " ADD PRIMARY KEY (" + columns + ")");
+			return;
+		}
+		this.indexNames.add(new String[] { index[0], index[1] });
+		ddl.add("CREATE " + ("U".equals(index[2]) ? "UNIQUE " : "") + "INDEX "
+				+ quote(index[0], index[1] + INDEX_SUFFIX) + " ON " + getQualifiedName() + " (" + columns + ")"
+				+ (includes.length() > 0 ? " INCLUDE (" + includes + ")" : "")
+				+ ("CLUS".equals(index[3]) ? " CLUSTER" : ""));
+	}
+
+	/**
+	 * Grants the table privileges held on the target table on the staging
+	 * table. Privileges that cannot be granted, such as those of the user
+	 * running the migration, are reported and skipped.
+	 */
+	private void grantPrivileges(Connection connection) throws SQLException {
+		String[] privileges = { "CONTROL", "ALTER", "DELETE", "INDEX", "INSERT", "REFERENCES", "SELECT", "UPDATE" };
+		PreparedStatement statement = connection.prepareStatement("SELECT GRANTEE, GRANTEETYPE, CONTROLAUTH, "
+				+ "ALTERAUTH, DELETEAUTH, INDEXAUTH, INSERTAUTH, REFAUTH, SELECTAUTH, UPDATEAUTH FROM SYSCAT.TABAUTH "
+				+ "WHERE TABSCHEMA = ? AND TABNAME = ?");
+		ArrayList<String> grants = new ArrayList<String>();
+		try {
+			statement.setString(1, this.baseSchema);
+			statement.setString(2, this.baseName);
+			ResultSet resultSet = statement.executeQuery();
+			while (resultSet.next()) {
+				String grantee = resultSet.getString(1).trim();
+				String granteeType = resultSet.getString(2);
+				String to = "PUBLIC".equals(grantee) && "G".equals(granteeType) ? "PUBLIC"
+						: ("R".equals(granteeType) ? "ROLE " : "G".equals(granteeType) ? "GROUP " : "USER ")
+								+ TableName.quote(grantee);
+				for (int i = 0; i < privileges.length; i++) {
+					String auth = resultSet.getString(i + 3);
+					if ("Y".equals(auth) || "G".equals(auth)) {
+						grants.add("GRANT " + privileges[i] + " ON TABLE " + getQualifiedName() + " TO " + to
+								+ ("G".equals(auth) ? " WITH GRANT OPTION" : ""));
+					}
+				}
+			}
+		} finally {
+			statement.close();
+		}
+		for (String grant : grants) {
+			try {
+				execute(connection, grant);
+			} catch (SQLException e) {
+				logger.warn("Privilege not copied to " + getQualifiedName() + ": " + grant + " (" + e.getMessage()
+						+ ")");
+			}
+		}
+	}
+
+	/**
+	 * Drops a table if it exists.
+	 */
+	private static void dropTable(Connection connection, String qualifiedName) throws SQLException {
+		try {
+			execute(connection, "DROP TABLE " + qualifiedName);
+		} catch (SQLException e) {
+			// -204: the table does not exist
+			if (e.getErrorCode() != -204) {
+				throw e;
+			}
+		}
+	}
+
+	private static void execute(Connection connection, String sql) throws SQLException {
+		logger.debug(sql);
+		Statement statement = connection.createStatement();
+		try {
+			statement.execute(sql);
+		} finally {
+			statement.close();
+		}
+	}
+
+	private static String quote(String schema, String name) {
+		return TableName.quote(schema) + "." + TableName.quote(name);
+	}
+}
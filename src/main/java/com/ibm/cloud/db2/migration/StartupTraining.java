@@ -0,0 +1,95 @@
+package com.ibm.cloud.db2.migration;
+
+import java.io.File;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.ibm.cloud.objectstorage.ClientConfiguration;
+import com.ibm.cloud.objectstorage.auth.AWSStaticCredentialsProvider;
+import com.ibm.cloud.objectstorage.auth.BasicAWSCredentials;
+import com.ibm.cloud.objectstorage.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.ibm.cloud.objectstorage.services.s3.AmazonS3ClientBuilder;
+import com.ibm.cloud.objectstorage.services.s3.model.GetObjectRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.InitiateMultipartUploadRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.ObjectMetadata;
+import com.ibm.cloud.objectstorage.services.s3.model.UploadPartRequest;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Training run for the class data sharing archive built with the package. It
+ * loads the classes a migration uses, including the Db2 driver and the COS
+ * client with its request classes, without connecting to anything, so that
+ * -XX:ArchiveClassesAtExit captures them and later runs map them from the
+ * archive instead of loading them from the jar.
+ */
+public final class StartupTraining {
+	private static Log logger = LogFactory.getLog(StartupTraining.class);
+
+	/**
+	 * Default Constructor
+	 */
+	private StartupTraining() {
+		super();
+	}
+
+	/**
+	 * Loads the classes to archive.
+	 * 
+	 * @param args
+	 *            not used.
+	 * @throws Exception
+	 *             if the Db2 driver or the application classes cannot be loaded.
+	 */
+	public static void main(String[] args) throws Exception {
+		ClassLoader loader = StartupTraining.class.getClassLoader();
+		int loaded = 0;
+		JarFile jar = new JarFile(
+				new File(StartupTraining.class.getProtectionDomain().getCodeSource().getLocation().toURI()));
+		try {
+			Enumeration<JarEntry> entries = jar.entries();
+			while (entries.hasMoreElements()) {
+				String name = entries.nextElement().getName();
+				if (name.startsWith("com/ibm/cloud/db2/migration/") && name.endsWith(".class")) {
+					Class.forName(name.substring(0, name.length() - ".class".length()).replace('/', '.'), false,
+							loader);
+					loaded++;
+				}
+			}
+		} finally {
+			jar.close();
+		}
+		Class.forName("com.ibm.db2.jcc.DB2Driver");
+
+		// building the client and requests does not contact the endpoint
+		ClientConfiguration clientConfig = new ClientConfiguration().withRequestTimeout(5000);
+		clientConfig.setUseTcpKeepAlive(true);
+		AmazonS3ClientBuilder.standard()
+				.withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("training", "training")))
+				.withEndpointConfiguration(new EndpointConfiguration("https://localhost", "us"))
+				.withPathStyleAccessEnabled(true).withClientConfiguration(clientConfig).build();
+		new InitiateMultipartUploadRequest("bucket", "key", new ObjectMetadata());
+		UploadPartRequest partRequest = new UploadPartRequest();
+		partRequest.setBucketName("bucket");
+		partRequest.setKey("key");
+		partRequest.setPartNumber(1);
+		new GetObjectRequest("bucket", "key").withRange(0, 1);
+		logger.info("Startup training loaded " + loaded + " application classes");
+	}
+}
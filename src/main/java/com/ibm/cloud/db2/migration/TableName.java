@@ -0,0 +1,144 @@
+package com.ibm.cloud.db2.migration;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A table name as listed in the table names file, split into its schema and
+ * table parts so it can be used in Db2 catalog queries.
+ */
+public class TableName {
+	/**
+	 * The schema of the table, or null when the name was not qualified.
+	 */
+	private String schema = null;
+
+	/**
+	 * The name of the table.
+	 */
+	private String name = "";
+
+	/**
+	 * Constructor
+	 * 
+	 * @param schema
+	 *            the schema, or null to use the current schema of the connection.
+	 * @param name
+	 *            the table name.
+	 */
+	public TableName(String schema, String name) {
+		super();
+		this.schema = schema;
+		this.name = name;
+	}
+
+	/**
+	 * Parses a table name of the form TABLE or SCHEMA.TABLE. Unquoted
+	 * identifiers are folded to upper case the same way Db2 does.
+	 * 
+	 * @param tableName
+	 *            the table name to parse.
+	 * @return the parsed table name.
+	 */
+	public static TableName parse(String tableName) {
+		String trimmed = tableName.trim();
+		int dot = -1;
+		boolean quoted = false;
+		for (int i = 0; i < trimmed.length(); i++) {
+			char c = trimmed.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+			} else if (c == '.' && !quoted) {
+				dot = i;
+				break;
+			}
+		}
+		if (dot < 0) {
+			return new TableName(null, normalize(trimmed));
+		}
+		return new TableName(normalize(trimmed.substring(0, dot)), normalize(trimmed.substring(dot + 1)));
+	}
+
+	/**
+	 * Folds an unquoted identifier to upper case, or strips the quotes from a
+	 * quoted identifier.
+	 */
+	static String normalize(String identifier) {
+		String trimmed = identifier.trim();
+		if (trimmed.length() > 1 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+			return trimmed.substring(1, trimmed.length() - 1).replace("\"\"", "\"");
+		}
+		return trimmed.toUpperCase();
+	}
+
+	/**
+	 * Quotes an identifier for use in generated SQL.
+	 * 
+	 * @param identifier
+	 *            the catalog form of the identifier.
+	 * @return the delimited identifier.
+	 */
+	public static String quote(String identifier) {
+		return "\"" + identifier.replace("\"", "\"\"") + "\"";
+	}
+
+	/**
+	 * Gets the schema of the table. If the name was not qualified, the current
+	 * schema of the connection is returned.
+	 * 
+	 * @param connection
+	 *            the connection used to resolve the current schema.
+	 * @return the schema name as stored in the catalog.
+	 * @throws SQLException
+	 */
+	public String getSchema(Connection connection) throws SQLException {
+		if (this.schema != null) {
+			return this.schema;
+		}
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet resultSet = statement.executeQuery("VALUES CURRENT SCHEMA");
+			resultSet.next();
+			return resultSet.getString(1).trim();
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Gets the name of the table as stored in the catalog.
+	 * 
+	 * @return the table name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the delimited, fully qualified name of the table for use in SQL.
+	 * 
+	 * @param connection
+	 *            the connection used to resolve the current schema.
+	 * @return the qualified table name.
+	 * @throws SQLException
+	 */
+	public String getQualifiedName(Connection connection) throws SQLException {
+		return quote(getSchema(connection)) + "." + quote(this.name);
+	}
+}
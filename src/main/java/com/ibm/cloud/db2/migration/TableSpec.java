@@ -0,0 +1,127 @@
+package com.ibm.cloud.db2.migration;
+
+import java.util.ArrayList;
+import java.util.Properties;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * One line of the table names file. A line holds a table name, optionally
+ * followed by settings for that table separated by semicolons, for example
+ * 
+ * <pre>
+ * SALES.ORDERS; COS_PART_SIZE_MB=200; COS_UPLOAD_CONCURRENCY=8; TARGET_LOAD_MODE=BATCH_INSERT
+ * </pre>
+ * 
+ * Settings use the names of the configuration file and replace the global
+ * value for this table only. Semicolons inside single or double quotes, such
+ * as in a string literal of EXPORT_WHERE, do not separate settings.
+ */
+public class TableSpec {
+
+	/**
+	 * The table name
+	 */
+	private String tableName = null;
+
+	/**
+	 * The settings for this table
+	 */
+	private Properties overrides = new Properties();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param tableName
+	 *            the table name.
+	 */
+	private TableSpec(String tableName) {
+		super();
+		this.tableName = tableName;
+	}
+
+	/**
+	 * Parses one line of the table names file.
+	 * 
+	 * @param line
+	 *            the line to parse.
+	 * @return the table spec, or null when the line is blank or a comment.
+	 */
+	public static TableSpec parse(String line) {
+		String trimmed = line.trim();
+		if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+			return null;
+		}
+		ArrayList<String> fields = splitFields(trimmed);
+		TableSpec spec = new TableSpec(fields.get(0).trim());
+		for (int i = 1; i < fields.size(); i++) {
+			String field = fields.get(i).trim();
+			if (field.isEmpty()) {
+				continue;
+			}
+			int equals = field.indexOf('=');
+			if (equals <= 0) {
+				throw new IllegalArgumentException(
+						"Table " + spec.tableName + ": setting '" + field + "' is not of the form NAME=VALUE");
+			}
+			spec.overrides.setProperty(field.substring(0, equals).trim().toUpperCase(),
+					field.substring(equals + 1).trim());
+		}
+		return spec;
+	}
+
+	/**
+	 * Splits a line at the semicolons that are not inside single or double
+	 * quotes, so string literals in settings such as EXPORT_WHERE may contain
+	 * semicolons.
+	 */
+	private static ArrayList<String> splitFields(String line) {
+		ArrayList<String> fields = new ArrayList<String>();
+		char quote = 0;
+		int fieldStart = 0;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+			} else if (c == ';') {
+				fields.add(line.substring(fieldStart, i));
+				fieldStart = i + 1;
+			}
+		}
+		fields.add(line.substring(fieldStart));
+		return fields;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	public Properties getOverrides() {
+		return overrides;
+	}
+
+	/**
+	 * Does this table have its own settings
+	 * 
+	 * @return true when settings were given for the table.
+	 */
+	public boolean hasOverrides() {
+		return !overrides.isEmpty();
+	}
+}
@@ -0,0 +1,359 @@
+package com.ibm.cloud.db2.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Runs the per-table work of one migration phase concurrently. Each table is a
+ * task. When the runtime supports virtual threads every task gets its own
+ * virtual thread, otherwise a fixed pool of TABLE_PARALLELISM threads is used.
+ * Independently of the thread model, semaphores cap the number of concurrent
+ * database sessions and COS requests, and database sessions are pooled so tiny
+ * tables do not each pay for a new connection.
+ */
+public class TableTaskExecutor {
+	private static Log logger = LogFactory.getLog(TableTaskExecutor.class);
+
+	/**
+	 * The work done for one table.
+	 */
+	public interface TableTask {
+		/**
+		 * Processes one table.
+		 * 
+		 * @param tableName
+		 *            the name of the table as listed in the table names file.
+		 * @throws Exception
+		 */
+		void run(String tableName) throws Exception;
+	}
+
+	/**
+	 * Utility configuration
+	 */
+	private ConfigurationBean config = null;
+
+	/**
+	 * The name of the phase, used to label trace spans
+	 */
+	private String phaseName = "";
+
+	/**
+	 * Executor running the table tasks
+	 */
+	private ExecutorService executor = null;
+
+	/**
+	 * The tables and futures of all submitted tasks
+	 */
+	private ArrayList<String> submittedTables = new ArrayList<String>();
+	private ArrayList<Future<?>> submittedTasks = new ArrayList<Future<?>>();
+
+	/**
+	 * Limits the number of concurrent database sessions
+	 */
+	private ResizableSemaphore databasePermits = null;
+
+	/**
+	 * Adjusts the database session limit while the phase runs, if enabled
+	 */
+	private AdaptiveConcurrencyController controller = null;
+
+	/**
+	 * Limits the number of concurrent COS requests
+	 */
+	private Semaphore cosPermits = null;
+
+	/**
+	 * Idle sessions that can be reused by the next task
+	 */
+	private SessionPool sessionPool = null;
+
+	/**
+	 * Is the session pool closed when the phase ends
+	 */
+	private boolean ownsSessionPool = true;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param config
+	 *            the utility configuration.
+	 * @param phaseName
+	 *            the name of the phase, used to label trace spans.
+	 */
+	public TableTaskExecutor(ConfigurationBean config, String phaseName) {
+		this(config, phaseName, new SessionPool(config), true);
+	}
+
+	/**
+	 * Constructor for a phase that uses a session pool shared beyond the phase.
+	 * The pool is left open when the phase ends.
+	 * 
+	 * @param config
+	 *            the utility configuration.
+	 * @param phaseName
+	 *            the name of the phase, used to label trace spans.
+	 * @param sessionPool
+	 *            the shared session pool.
+	 */
+	public TableTaskExecutor(ConfigurationBean config, String phaseName, SessionPool sessionPool) {
+		this(config, phaseName, sessionPool, false);
+	}
+
+	/**
+	 * Sets up the permits and threads of a phase around a session pool.
+	 */
+	private TableTaskExecutor(ConfigurationBean config, String phaseName, SessionPool sessionPool,
+			boolean ownsSessionPool) {
+		super();
+		this.config = config;
+		this.phaseName = phaseName;
+		this.databasePermits = new ResizableSemaphore(config.getMaxDatabaseSessions());
+		this.cosPermits = new Semaphore(config.getMaxCosRequests());
+		this.executor = createExecutor(config);
+		this.sessionPool = sessionPool;
+		this.ownsSessionPool = ownsSessionPool;
+	}
+
+	/**
+	 * Creates a virtual thread per task executor when the runtime provides one
+	 * and it has been enabled, otherwise a fixed size platform thread pool.
+	 */
+	private static ExecutorService createExecutor(ConfigurationBean config) {
+		if (config.isUseVirtualThreads()) {
+			try {
+				return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (Exception e) {
+				logger.info("Virtual threads are not available on this runtime, using "
+						+ config.getTableParallelism() + " platform threads");
+			}
+		}
+		return Executors.newFixedThreadPool(config.getTableParallelism());
+	}
+
+	/**
+	 * Starts adjusting the database session limit to the load of the source or
+	 * target database, if adaptive concurrency is enabled. If the monitoring
+	 * session cannot be opened the phase runs with the configured limit.
+	 * 
+	 * @param source
+	 *            True to monitor the source database, false for the target.
+	 */
+	public void startAdaptiveControl(boolean source) {
+		if (!this.config.isAdaptiveConcurrency()) {
+			return;
+		}
+		DB2Connection db2Connection = new DB2Connection(this.config);
+		Connection connection;
+		try {
+			connection = source ? db2Connection.getSourceConnection() : db2Connection.getTargetConnection();
+		} catch (SQLException e) {
+			logger.warn("Adaptive concurrency is off for the " + this.phaseName + " phase: " + e.getMessage());
+			return;
+		}
+		this.controller = new AdaptiveConcurrencyController(this.config, this, connection);
+		this.controller.start();
+	}
+
+	/**
+	 * Gets the current limit of concurrent database sessions.
+	 * 
+	 * @return the session limit.
+	 */
+	public int getDatabaseSessionLimit() {
+		return this.databasePermits.getLimit();
+	}
+
+	/**
+	 * Changes the limit of concurrent database sessions. Sessions in use above a
+	 * lowered limit finish their current work before the limit takes effect.
+	 * 
+	 * @param limit
+	 *            the new session limit.
+	 */
+	public void setDatabaseSessionLimit(int limit) {
+		this.databasePermits.setLimit(limit);
+	}
+
+	/**
+	 * Submits the work for one table.
+	 * 
+	 * @param tableName
+	 *            the name of the table as listed in the table names file.
+	 * @param task
+	 *            the work to run for the table.
+	 */
+	public void submit(final String tableName, final TableTask task) {
+		this.submittedTables.add(tableName);
+		this.submittedTasks.add(this.executor.submit(new Runnable() {
+			public void run() {
+				Tracer.Span span = Tracer.begin("table", phaseName + " " + tableName);
+				try {
+					task.run(tableName);
+					span.end();
+				} catch (Exception e) {
+					span.end("failed");
+					throw new RuntimeException(e);
+				}
+			}
+		}));
+	}
+
+	/**
+	 * Waits for every submitted task to finish and releases pooled sessions. A
+	 * failed table does not stop the other tables of the phase.
+	 * 
+	 * @return the number of tables that failed.
+	 */
+	public int awaitCompletion() {
+		int failures = 0;
+		for (int i = 0; i < this.submittedTasks.size(); i++) {
+			try {
+				this.submittedTasks.get(i).get();
+			} catch (ExecutionException e) {
+				failures++;
+				logger.error("Table " + this.submittedTables.get(i) + " failed: " + e.getCause().getMessage());
+				e.getCause().printStackTrace();
+			} catch (InterruptedException e) {
+				// the phase was cancelled, interrupt the tables still running
+				this.executor.shutdownNow();
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		this.executor.shutdown();
+		if (this.controller != null) {
+			this.controller.stop();
+		}
+		if (this.ownsSessionPool) {
+			this.sessionPool.close();
+		}
+		return failures;
+	}
+
+	/**
+	 * Borrows a session on the source database, waiting while the maximum number
+	 * of sessions are in use.
+	 * 
+	 * @return the JDBC Connection
+	 * @throws InterruptedException
+	 * @throws SQLException
+	 *             if a new session cannot be opened
+	 */
+	public Connection borrowSourceConnection() throws InterruptedException, SQLException {
+		this.databasePermits.acquire();
+		try {
+			return this.sessionPool.getSourceConnection();
+		} catch (SQLException e) {
+			this.databasePermits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Borrows a session on the target database, waiting while the maximum number
+	 * of sessions are in use.
+	 * 
+	 * @return the JDBC Connection
+	 * @throws InterruptedException
+	 * @throws SQLException
+	 *             if a new session cannot be opened
+	 */
+	public Connection borrowTargetConnection() throws InterruptedException, SQLException {
+		this.databasePermits.acquire();
+		try {
+			return this.sessionPool.getTargetConnection();
+		} catch (SQLException e) {
+			this.databasePermits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a borrowed source session for reuse.
+	 * 
+	 * @param connection
+	 *            the connection borrowed with borrowSourceConnection.
+	 */
+	public void releaseSourceConnection(Connection connection) {
+		this.sessionPool.returnSourceConnection(connection);
+		this.databasePermits.release();
+	}
+
+	/**
+	 * Returns a borrowed target session for reuse.
+	 * 
+	 * @param connection
+	 *            the connection borrowed with borrowTargetConnection.
+	 */
+	public void releaseTargetConnection(Connection connection) {
+		this.sessionPool.returnTargetConnection(connection);
+		this.databasePermits.release();
+	}
+
+	/**
+	 * Waits for a COS request slot.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void acquireCos() throws InterruptedException {
+		this.cosPermits.acquire();
+	}
+
+	/**
+	 * Releases a COS request slot.
+	 */
+	public void releaseCos() {
+		this.cosPermits.release();
+	}
+
+	/**
+	 * Semaphore whose number of permits can be changed while in use.
+	 */
+	@SuppressWarnings("serial")
+	private static class ResizableSemaphore extends Semaphore {
+		private int limit;
+
+		ResizableSemaphore(int limit) {
+			super(limit);
+			this.limit = limit;
+		}
+
+		synchronized int getLimit() {
+			return this.limit;
+		}
+
+		synchronized void setLimit(int limit) {
+			if (limit > this.limit) {
+				release(limit - this.limit);
+			} else if (limit < this.limit) {
+				reducePermits(this.limit - limit);
+			}
+			this.limit = limit;
+		}
+	}
+}
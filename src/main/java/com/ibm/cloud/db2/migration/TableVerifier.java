@@ -0,0 +1,408 @@
+package com.ibm.cloud.db2.migration;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Verifies that a loaded table matches its source without moving the data.
+ * The table is split into ranges of its integer primary key and, for every
+ * range, the same aggregate query (row count and the sum of a hash over all
+ * columns of each row) runs on the source and the target at the same time.
+ * Ranges that differ are split again, down to a configured depth, so only the
+ * mismatched key ranges are reported. Columns changed by TRANSFORM_RULES differ
+ * by design, so they are left out of the hash.
+ */
+public class TableVerifier {
+	private static Log logger = LogFactory.getLog(TableVerifier.class);
+
+	/**
+	 * Utility configuration
+	 */
+	private ConfigurationBean config = null;
+
+	/**
+	 * Provides database sessions for the aggregate queries
+	 */
+	private TableTaskExecutor executor = null;
+
+	/**
+	 * Runs the source and target queries of a range concurrently
+	 */
+	private ExecutorService queryExecutor = null;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param config
+	 *            the utility configuration.
+	 * @param executor
+	 *            the executor providing database sessions.
+	 */
+	public TableVerifier(ConfigurationBean config, TableTaskExecutor executor) {
+		super();
+		this.config = config;
+		this.executor = executor;
+		this.queryExecutor = Executors.newCachedThreadPool();
+	}
+
+	/**
+	 * Verifies one table. Only the exported columns that are not transformed are
+	 * compared, and the source side only counts the rows selected by the
+	 * table's export filter.
+	 * 
+	 * @param tableName
+	 *            the name of the table as listed in the table names file.
+	 * @param tableConfig
+	 *            the table's configuration.
+	 * @return True if source and target match.
+	 * @throws Exception
+	 */
+	public boolean verify(String tableName, ConfigurationBean tableConfig) throws Exception {
+		return verify(tableName, tableConfig, null);
+	}
+
+	/**
+	 * Verifies one table against a different table on the target, such as the
+	 * staging table it is loaded into before it is swapped in.
+	 * 
+	 * @param tableName
+	 *            the name of the table as listed in the table names file.
+	 * @param tableConfig
+	 *            the table's configuration.
+	 * @param targetName
+	 *            the qualified name of the target table to compare, or null
+	 *            for the table of the same name.
+	 * @return True if source and target match.
+	 * @throws Exception
+	 */
+	public boolean verify(String tableName, ConfigurationBean tableConfig, String targetName) throws Exception {
+		logger.info("Verifying Table: " + tableName + (targetName != null ? " against " + targetName : ""));
+		TableName table = TableName.parse(tableName);
+		ExportProjection projection = new ExportProjection(tableConfig);
+		String sourceFilter = projection.isFiltered() ? "(" + projection.getWhere() + ")" : null;
+		ArrayList<String> columnExpressions = new ArrayList<String>();
+		String keyColumn = null;
+		long[] keyBounds = null;
+		String qualifiedName;
+		Connection connection = this.executor.borrowSourceConnection();
+		try {
+			qualifiedName = table.getQualifiedName(connection);
+			String schema = table.getSchema(connection);
+			List<String> transformed = readTransformedColumns(connection, tableName, tableConfig, projection);
+			if (!transformed.isEmpty()) {
+				logger.warn("Verify Table: " + tableName + "  | Transformed columns not compared: " + transformed);
+			}
+			readColumnExpressions(connection, schema, table.getName(), projection, transformed, columnExpressions);
+			keyColumn = readIntegerKeyColumn(connection, schema, table.getName(), projection, transformed);
+			if (keyColumn != null) {
+				keyBounds = readKeyBounds(connection, qualifiedName, keyColumn, sourceFilter);
+			}
+		} finally {
+			this.executor.releaseSourceConnection(connection);
+		}
+		String targetQualifiedName = targetName != null ? targetName : qualifiedName;
+		if (keyColumn != null) {
+			connection = this.executor.borrowTargetConnection();
+			try {
+				long[] targetBounds = readKeyBounds(connection, targetQualifiedName, keyColumn, null);
+				if (keyBounds == null) {
+					keyBounds = targetBounds;
+				} else if (targetBounds != null) {
+					keyBounds[0] = Math.min(keyBounds[0], targetBounds[0]);
+					keyBounds[1] = Math.max(keyBounds[1], targetBounds[1]);
+				}
+			} finally {
+				this.executor.releaseTargetConnection(connection);
+			}
+		}
+		ArrayList<String> mismatches = new ArrayList<String>();
+		long[] totals = new long[2];
+		if (keyBounds == null) {
+			ArrayList<long[]> wholeTable = new ArrayList<long[]>();
+			wholeTable.add(new long[] { 0, 0 });
+			compareRanges(buildAggregateQuery(qualifiedName, columnExpressions, null, sourceFilter),
+					buildAggregateQuery(targetQualifiedName, columnExpressions, null, null), null, wholeTable, 0,
+					mismatches, totals);
+		} else {
+			compareRanges(buildAggregateQuery(qualifiedName, columnExpressions, keyColumn, sourceFilter),
+					buildAggregateQuery(targetQualifiedName, columnExpressions, keyColumn, null), keyColumn,
+					split(keyBounds[0], keyBounds[1]), 0, mismatches, totals);
+		}
+		logger.info("Verify Table: " + tableName + "  | Source Records: " + totals[0] + "  | Target Records: "
+				+ totals[1] + "  | Result: " + (mismatches.isEmpty() ? "MATCH" : "MISMATCH"));
+		for (String mismatch : mismatches) {
+			logger.warn("Verify Table: " + tableName + "  | Mismatched range: " + mismatch);
+		}
+		return mismatches.isEmpty();
+	}
+
+	/**
+	 * Stops the query threads.
+	 */
+	public void shutdown() {
+		this.queryExecutor.shutdown();
+	}
+
+	/**
+	 * Compares key ranges on source and target, running all queries of one level
+	 * concurrently. Ranges that differ are split and compared again until the
+	 * maximum depth is reached.
+	 * 
+	 * @param totals
+	 *            receives the source and target row counts at the first level.
+	 */
+	private void compareRanges(String sourceQuery, String targetQuery, String keyColumn, ArrayList<long[]> ranges,
+			int depth, ArrayList<String> mismatches, long[] totals) throws Exception {
+		ArrayList<Future<Object[]>> sources = new ArrayList<Future<Object[]>>();
+		ArrayList<Future<Object[]>> targets = new ArrayList<Future<Object[]>>();
+		for (long[] range : ranges) {
+			sources.add(runAggregate(true, sourceQuery, keyColumn, range[0], range[1]));
+			targets.add(runAggregate(false, targetQuery, keyColumn, range[0], range[1]));
+		}
+		ArrayList<long[]> nextRanges = new ArrayList<long[]>();
+		for (int i = 0; i < ranges.size(); i++) {
+			long[] range = ranges.get(i);
+			Object[] sourceResult = sources.get(i).get();
+			Object[] targetResult = targets.get(i).get();
+			long sourceRows = (Long) sourceResult[0];
+			long targetRows = (Long) targetResult[0];
+			if (depth == 0) {
+				totals[0] += sourceRows;
+				totals[1] += targetRows;
+			}
+			if (sourceRows == targetRows && equal((BigDecimal) sourceResult[1], (BigDecimal) targetResult[1])) {
+				continue;
+			}
+			if (keyColumn == null) {
+				mismatches.add("entire table (no integer primary key to split on)");
+			} else if (depth + 1 >= this.config.getVerifyMaxDepth() || range[0] == range[1]) {
+				mismatches.add(keyColumn + " from " + range[0] + " to " + range[1] + " (source " + sourceRows
+						+ " rows, target " + targetRows + " rows)");
+			} else {
+				nextRanges.addAll(split(range[0], range[1]));
+			}
+		}
+		if (!nextRanges.isEmpty()) {
+			compareRanges(sourceQuery, targetQuery, keyColumn, nextRanges, depth + 1, mismatches, totals);
+		}
+	}
+
+	/**
+	 * Splits an inclusive key range into the configured number of ranges.
+	 */
+	private ArrayList<long[]> split(long low, long high) {
+		ArrayList<long[]> ranges = new ArrayList<long[]>();
+		long width = Math.max(1, (high - low) / this.config.getVerifyRanges() + 1);
+		for (long start = low; start <= high && start >= low; start += width) {
+			ranges.add(new long[] { start, Math.min(high, start + width - 1) });
+		}
+		return ranges;
+	}
+
+	/**
+	 * Runs the aggregate query for a range on the source or target.
+	 */
+	private Future<Object[]> runAggregate(final boolean source, final String aggregateQuery, final String keyColumn,
+			final long low, final long high) {
+		return this.queryExecutor.submit(new Callable<Object[]>() {
+			public Object[] call() throws Exception {
+				Connection connection = source ? executor.borrowSourceConnection()
+						: executor.borrowTargetConnection();
+				Tracer.Span span = Tracer.begin("statement",
+						(source ? "verify source " : "verify target ") + low + ".." + high);
+				try {
+					PreparedStatement statement = connection.prepareStatement(aggregateQuery);
+					try {
+						if (keyColumn != null) {
+							statement.setLong(1, low);
+							statement.setLong(2, high);
+						}
+						ResultSet resultSet = statement.executeQuery();
+						resultSet.next();
+						Object[] result = new Object[] { resultSet.getLong(1), resultSet.getBigDecimal(2) };
+						span.setRows(resultSet.getLong(1));
+						return result;
+					} finally {
+						statement.close();
+					}
+				} finally {
+					span.end();
+					if (source) {
+						executor.releaseSourceConnection(connection);
+					} else {
+						executor.releaseTargetConnection(connection);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Compares two hash sums, treating two empty ranges as equal.
+	 */
+	private static boolean equal(BigDecimal first, BigDecimal second) {
+		if (first == null || second == null) {
+			return first == second;
+		}
+		return first.compareTo(second) == 0;
+	}
+
+	/**
+	 * Builds the aggregate query. Each column is reduced to a fixed width hash,
+	 * the hashes are concatenated and hashed again to get the row hash, and the
+	 * row hashes are summed.
+	 */
+	private String buildAggregateQuery(String qualifiedName, ArrayList<String> columnExpressions,
+			String keyColumn, String filter) {
+		StringBuilder rowExpression = new StringBuilder();
+		for (String columnExpression : columnExpressions) {
+			if (rowExpression.length() > 0) {
+				rowExpression.append(" || ");
+			}
+			rowExpression.append(columnExpression);
+		}
+		if (rowExpression.length() == 0) {
+			// every column is transformed, so only the rows are counted
+			rowExpression.append("''");
+		}
+		String query = "SELECT COUNT(*), SUM(CAST(HASH8(" + rowExpression + ") AS DECIMAL(31, 0))) FROM "
+				+ qualifiedName;
+		if (filter != null) {
+			query = query + " WHERE " + filter;
+		}
+		if (keyColumn != null) {
+			query = query + (filter != null ? " AND " : " WHERE ") + keyColumn + " BETWEEN ? AND ?";
+		}
+		return query;
+	}
+
+	/**
+	 * Gets the exported columns a TRANSFORM_RULES rule applies to.
+	 * 
+	 * @return the column names as stored in the catalog.
+	 */
+	private List<String> readTransformedColumns(Connection connection, String tableName,
+			ConfigurationBean tableConfig, ExportProjection projection) throws SQLException {
+		ArrayList<String> transformed = new ArrayList<String>();
+		if (tableConfig.getTransformRules().trim().isEmpty()) {
+			return transformed;
+		}
+		List<String> columns = projection.getExportedColumns(connection, tableName);
+		RowTransformer transformer = new RowTransformer(tableConfig.getTransformRules(), columns,
+				tableConfig.getExportEscapeCharacter(), null, 1);
+		for (int i = 0; i < columns.size(); i++) {
+			if (transformer.hasRule(i)) {
+				transformed.add(columns.get(i));
+			}
+		}
+		return transformed;
+	}
+
+	/**
+	 * Reads the exported columns of the table that are not transformed and
+	 * builds a hash expression for each. LOB and XML columns contribute their
+	 * length.
+	 */
+	private void readColumnExpressions(Connection connection, String schema, String tableName,
+			ExportProjection projection, List<String> transformed, ArrayList<String> columnExpressions)
+			throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(
+				"SELECT COLNAME, TYPENAME FROM SYSCAT.COLUMNS WHERE TABSCHEMA = ? AND TABNAME = ? ORDER BY COLNO");
+		try {
+			statement.setString(1, schema);
+			statement.setString(2, tableName);
+			ResultSet resultSet = statement.executeQuery();
+			while (resultSet.next()) {
+				if (!projection.contains(resultSet.getString(1)) || transformed.contains(resultSet.getString(1))) {
+					continue;
+				}
+				String column = TableName.quote(resultSet.getString(1));
+				String type = resultSet.getString(2).trim();
+				String value;
+				if (type.equals("BLOB") || type.equals("CLOB") || type.equals("DBCLOB") || type.equals("XML")) {
+					value = "VARCHAR(LENGTH(" + column + "))";
+				} else {
+					value = "VARCHAR(" + column + ")";
+				}
+				columnExpressions.add("COALESCE(HEX(HASH4(" + value + ")), 'N')");
+			}
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Reads the first primary key column of the table if it is an integer type
+	 * that is exported and not transformed.
+	 * 
+	 * @return the quoted column name, or null if the table cannot be split.
+	 */
+	private String readIntegerKeyColumn(Connection connection, String schema, String tableName,
+			ExportProjection projection, List<String> transformed) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement("SELECT K.COLNAME FROM SYSCAT.TABCONST T "
+				+ "JOIN SYSCAT.KEYCOLUSE K ON K.CONSTNAME = T.CONSTNAME AND K.TABSCHEMA = T.TABSCHEMA "
+				+ "AND K.TABNAME = T.TABNAME JOIN SYSCAT.COLUMNS C ON C.TABSCHEMA = K.TABSCHEMA "
+				+ "AND C.TABNAME = K.TABNAME AND C.COLNAME = K.COLNAME WHERE T.TABSCHEMA = ? AND T.TABNAME = ? "
+				+ "AND T.TYPE = 'P' AND K.COLSEQ = 1 AND C.TYPENAME IN ('SMALLINT', 'INTEGER', 'BIGINT')");
+		try {
+			statement.setString(1, schema);
+			statement.setString(2, tableName);
+			ResultSet resultSet = statement.executeQuery();
+			if (!resultSet.next() || !projection.contains(resultSet.getString(1))
+					|| transformed.contains(resultSet.getString(1))) {
+				return null;
+			}
+			return TableName.quote(resultSet.getString(1));
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Reads the lowest and highest key value of the rows matching a filter.
+	 * 
+	 * @return the key bounds, or null if no rows match.
+	 */
+	private long[] readKeyBounds(Connection connection, String qualifiedName, String keyColumn, String filter)
+			throws SQLException {
+		PreparedStatement statement = connection.prepareStatement("SELECT MIN(" + keyColumn + "), MAX(" + keyColumn
+				+ ") FROM " + qualifiedName + (filter != null ? " WHERE " + filter : ""));
+		try {
+			ResultSet resultSet = statement.executeQuery();
+			resultSet.next();
+			long low = resultSet.getLong(1);
+			if (resultSet.wasNull()) {
+				return null;
+			}
+			return new long[] { low, resultSet.getLong(2) };
+		} finally {
+			statement.close();
+		}
+	}
+}
@@ -0,0 +1,242 @@
+package com.ibm.cloud.db2.migration;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Records timed spans (run, phase, table, statement, part) to a Chrome trace
+ * event file that can be opened in chrome://tracing or Perfetto. Every span is
+ * written as a complete event as soon as it ends, so the file is usable even if
+ * the run does not finish. When no trace file is configured all calls are
+ * no-ops.
+ */
+public final class Tracer {
+	private static Log logger = LogFactory.getLog(Tracer.class);
+
+	/**
+	 * The open trace file, or null when tracing is disabled
+	 */
+	private static Writer writer = null;
+
+	/**
+	 * Origin of the trace timeline
+	 */
+	private static long originNanos = System.nanoTime();
+
+	/**
+	 * Threads whose name has already been written
+	 */
+	private static Set<Long> namedThreads = Collections.synchronizedSet(new HashSet<Long>());
+
+	/**
+	 * Returned by begin when tracing is disabled
+	 */
+	private static final Span DISABLED = new Span(null, null);
+
+	/**
+	 * Default Constructor
+	 */
+	private Tracer() {
+		super();
+	}
+
+	/**
+	 * Opens the trace file. Does nothing if the file name is empty.
+	 * 
+	 * @param fileName
+	 *            the trace file to write.
+	 */
+	public static synchronized void open(String fileName) {
+		if (writer != null || fileName == null || fileName.trim().isEmpty()) {
+			return;
+		}
+		try {
+			writer = new BufferedWriter(
+					new OutputStreamWriter(new FileOutputStream(fileName.trim()), StandardCharsets.UTF_8));
+			writer.write("[\n");
+			originNanos = System.nanoTime();
+			logger.info("Writing trace events to " + fileName.trim());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Completes and closes the trace file.
+	 */
+	public static synchronized void close() {
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.write("{}]\n");
+			writer.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		writer = null;
+	}
+
+	/**
+	 * Indicates if spans are being recorded.
+	 * 
+	 * @return True if a trace file is open.
+	 */
+	public static boolean isEnabled() {
+		return writer != null;
+	}
+
+	/**
+	 * Starts a span on the current thread.
+	 * 
+	 * @param category
+	 *            the level of the span, for example phase, table or part.
+	 * @param name
+	 *            the name shown for the span.
+	 * @return the started span.
+	 */
+	public static Span begin(String category, String name) {
+		if (writer == null) {
+			return DISABLED;
+		}
+		return new Span(category, name);
+	}
+
+	/**
+	 * Writes one event line.
+	 */
+	private static synchronized void write(String event) {
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.write(event);
+			writer.write(",\n");
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Quotes a string for JSON.
+	 */
+	private static String quote(String value) {
+		StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			} else if (c < 0x20) {
+				quoted.append(String.format("\\u%04x", (int) c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	/**
+	 * A timed unit of work.
+	 */
+	public static final class Span {
+		private String category;
+		private String name;
+		private long startNanos = System.nanoTime();
+		private long bytes = -1;
+		private long rows = -1;
+
+		private Span(String category, String name) {
+			this.category = category;
+			this.name = name;
+		}
+
+		/**
+		 * Records the number of bytes the span processed.
+		 * 
+		 * @param bytes
+		 *            the byte count.
+		 * @return this span.
+		 */
+		public Span setBytes(long bytes) {
+			this.bytes = bytes;
+			return this;
+		}
+
+		/**
+		 * Records the number of rows the span processed.
+		 * 
+		 * @param rows
+		 *            the row count.
+		 * @return this span.
+		 */
+		public Span setRows(long rows) {
+			this.rows = rows;
+			return this;
+		}
+
+		/**
+		 * Ends the span successfully.
+		 */
+		public void end() {
+			end("ok");
+		}
+
+		/**
+		 * Ends the span and writes it to the trace file.
+		 * 
+		 * @param outcome
+		 *            the result of the work, for example ok or failed.
+		 */
+		public void end(String outcome) {
+			if (this.category == null || writer == null) {
+				return;
+			}
+			long endNanos = System.nanoTime();
+			Thread thread = Thread.currentThread();
+			long threadId = thread.getId();
+			if (namedThreads.add(threadId)) {
+				write("{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":1,\"tid\":" + threadId
+						+ ",\"args\":{\"name\":" + quote(thread.getName()) + "}}");
+			}
+			StringBuilder event = new StringBuilder(192);
+			event.append("{\"ph\":\"X\",\"pid\":1,\"tid\":").append(threadId);
+			event.append(",\"cat\":").append(quote(this.category));
+			event.append(",\"name\":").append(quote(this.name));
+			event.append(",\"ts\":").append((this.startNanos - originNanos) / 1000.0);
+			event.append(",\"dur\":").append((endNanos - this.startNanos) / 1000.0);
+			event.append(",\"args\":{\"outcome\":").append(quote(outcome));
+			if (this.bytes >= 0) {
+				event.append(",\"bytes\":").append(this.bytes);
+			}
+			if (this.rows >= 0) {
+				event.append(",\"rows\":").append(this.rows);
+			}
+			event.append("}}");
+			write(event.toString());
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package com.ibm.cloud.db2.migration;
+
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A durable queue of tables shared by the coordinator and the workers of a
+ * distributed migration. A worker claims a table by taking a lease on it and
+ * keeps the lease alive with heartbeats while it runs the table through
+ * export, put and load. Leases that are not renewed expire and are given back
+ * to the queue by the coordinator, so the table is picked up by another
+ * worker.
+ */
+public interface WorkQueue {
+	/**
+	 * Status of a table that is waiting to be claimed
+	 */
+	String PENDING = "PENDING";
+
+	/**
+	 * Status of a table a worker holds a lease on
+	 */
+	String LEASED = "LEASED";
+
+	/**
+	 * Status of a table that was migrated
+	 */
+	String DONE = "DONE";
+
+	/**
+	 * Status of a table that failed on every attempt
+	 */
+	String FAILED = "FAILED";
+
+	/**
+	 * A table claimed by a worker.
+	 */
+	class WorkItem {
+		private String tableName;
+		private int attempt;
+
+		public WorkItem(String tableName, int attempt) {
+			super();
+			this.tableName = tableName;
+			this.attempt = attempt;
+		}
+
+		public String getTableName() {
+			return tableName;
+		}
+
+		/**
+		 * Gets the attempt this claim is, starting at 1.
+		 * 
+		 * @return the attempt number.
+		 */
+		public int getAttempt() {
+			return attempt;
+		}
+	}
+
+	/**
+	 * Adds tables to the queue. Tables already in the queue keep their status,
+	 * so a restarted coordinator resumes the migration.
+	 * 
+	 * @param tableNames
+	 *            the tables to add.
+	 * @throws Exception
+	 */
+	void enqueue(List<String> tableNames) throws Exception;
+
+	/**
+	 * Claims the next pending table.
+	 * 
+	 * @param workerId
+	 *            the worker taking the lease.
+	 * @param leaseSeconds
+	 *            how long the lease lasts without a heartbeat.
+	 * @return the claimed table, or null when no table is pending.
+	 * @throws Exception
+	 */
+	WorkItem claim(String workerId, int leaseSeconds) throws Exception;
+
+	/**
+	 * Extends the lease on a claimed table.
+	 * 
+	 * @param item
+	 *            the claimed table.
+	 * @param workerId
+	 *            the worker holding the lease.
+	 * @param leaseSeconds
+	 *            how long the lease lasts from now.
+	 * @return false when the lease was lost, because it expired and the table
+	 *         was given to another worker.
+	 * @throws Exception
+	 */
+	boolean renew(WorkItem item, String workerId, int leaseSeconds) throws Exception;
+
+	/**
+	 * Marks a claimed table as migrated.
+	 * 
+	 * @param item
+	 *            the claimed table.
+	 * @param workerId
+	 *            the worker holding the lease.
+	 * @throws Exception
+	 */
+	void complete(WorkItem item, String workerId) throws Exception;
+
+	/**
+	 * Gives a claimed table back after a failure. It becomes pending again
+	 * until it has been attempted the maximum number of times.
+	 * 
+	 * @param item
+	 *            the claimed table.
+	 * @param workerId
+	 *            the worker holding the lease.
+	 * @param message
+	 *            describes the failure.
+	 * @param maxAttempts
+	 *            the number of attempts after which the table is failed.
+	 * @throws Exception
+	 */
+	void fail(WorkItem item, String workerId, String message, int maxAttempts) throws Exception;
+
+	/**
+	 * Gives tables with expired leases back to the queue.
+	 * 
+	 * @param maxAttempts
+	 *            the number of attempts after which the table is failed instead.
+	 * @return the number of expired leases.
+	 * @throws Exception
+	 */
+	int reassignExpired(int maxAttempts) throws Exception;
+
+	/**
+	 * Counts the tables in each status.
+	 * 
+	 * @return the number of tables by status.
+	 * @throws Exception
+	 */
+	Map<String, Integer> getStatusCounts() throws Exception;
+
+	/**
+	 * Releases the resources of the queue.
+	 */
+	void close();
+}
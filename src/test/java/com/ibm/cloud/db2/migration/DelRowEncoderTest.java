@@ -0,0 +1,90 @@
+package com.ibm.cloud.db2.migration;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+
+import org.junit.Test;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Tests the encoding of DECIMAL values with a stand-in result set of one
+ * DECIMAL column.
+ */
+public class DelRowEncoderTest {
+
+	/**
+	 * Encodes one row per value.
+	 */
+	private static String encode(final BigDecimal... values) throws Exception {
+		ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(
+				DelRowEncoderTest.class.getClassLoader(), new Class<?>[] { ResultSetMetaData.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (method.getName().equals("getColumnCount")) {
+							return 1;
+						} else if (method.getName().equals("getColumnType")) {
+							return Types.DECIMAL;
+						}
+						return 0;
+					}
+				});
+		final int[] row = { 0 };
+		ResultSet resultSet = (ResultSet) Proxy.newProxyInstance(DelRowEncoderTest.class.getClassLoader(),
+				new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (method.getName().equals("getBigDecimal")) {
+							return values[row[0]];
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DelRowEncoder encoder = new DelRowEncoder(metaData, out, 1024, '\\');
+		for (row[0] = 0; row[0] < values.length; row[0]++) {
+			encoder.encode(resultSet);
+		}
+		encoder.flush();
+		return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+	}
+
+	@Test
+	public void writesDecimals() throws Exception {
+		assertEquals("12.34\n-0.05\n0\n\n",
+				encode(new BigDecimal("12.34"), new BigDecimal("-0.05"), BigDecimal.ZERO, null));
+	}
+
+	@Test
+	public void writesSmallValuesOfHighScaleColumns() throws Exception {
+		// DECIMAL(31, 20) and DECIMAL(31, 25) values of few digits
+		assertEquals("0.00000000000000000000\n0.0000000000000000000000123\n",
+				encode(new BigDecimal("0E-20"), new BigDecimal("1.23E-23")));
+	}
+
+	@Test
+	public void writesValuesBeyondALong() throws Exception {
+		assertEquals("1234567890123456789.5\n12300\n",
+				encode(new BigDecimal("1234567890123456789.5"), new BigDecimal("1.23E+4")));
+	}
+}
@@ -0,0 +1,181 @@
+package com.ibm.cloud.db2.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Tests the choice of endpoints with probes that return fixed measurements.
+ * SERVICE_ENDPOINT is the public endpoint and COS_ENDPOINTS adds the private
+ * and direct ones.
+ */
+public class EndpointResolverTest {
+	private static final String PUBLIC = "s3.us-south.cloud-object-storage.appdomain.cloud";
+	private static final String PRIVATE = "s3.private.us-south.cloud-object-storage.appdomain.cloud";
+	private static final String DIRECT = "s3.direct.us-south.cloud-object-storage.appdomain.cloud";
+
+	/**
+	 * Probes that measure the endpoints they were given a measurement for and
+	 * fail on the others.
+	 */
+	private static class FixedProbes implements EndpointProbes {
+		private HashMap<String, Measurement> uploads = new HashMap<String, Measurement>();
+		private HashMap<String, Measurement> reads = new HashMap<String, Measurement>();
+		private List<String> uploadsProbed = new ArrayList<String>();
+		private List<String> readsProbedAfter = new ArrayList<String>();
+		private int cleanUps = 0;
+
+		FixedProbes upload(String endpoint, double latencyMillis, double megabytesPerSecond) {
+			this.uploads.put(endpoint, new Measurement(latencyMillis, megabytesPerSecond * 1024 * 1024));
+			return this;
+		}
+
+		FixedProbes read(String endpoint, double latencyMillis, double megabytesPerSecond) {
+			this.reads.put(endpoint, new Measurement(latencyMillis, megabytesPerSecond * 1024 * 1024));
+			return this;
+		}
+
+		public Measurement probeUpload(String endpoint) throws Exception {
+			this.uploadsProbed.add(endpoint);
+			return measurement(this.uploads, endpoint);
+		}
+
+		public Measurement probeRead(String endpoint, String uploadEndpoint) throws Exception {
+			this.readsProbedAfter.add(uploadEndpoint);
+			return measurement(this.reads, endpoint);
+		}
+
+		public void cleanUp() {
+			this.cleanUps++;
+		}
+
+		private static Measurement measurement(HashMap<String, Measurement> measurements, String endpoint)
+				throws Exception {
+			Measurement measurement = measurements.get(endpoint);
+			if (measurement == null) {
+				throw new Exception("Connect to " + endpoint + " timed out");
+			}
+			return measurement;
+		}
+	}
+
+	/**
+	 * Creates a resolver comparing endpoints on parts of some size.
+	 */
+	private static EndpointResolver resolver(int partSizeMb) {
+		ConfigurationBean config = new ConfigurationBean();
+		config.setService_endpoint(PUBLIC);
+		config.setCosEndpoints(PRIVATE + ", " + DIRECT);
+		config.setCosPartSizeMb(partSizeMb);
+		return new EndpointResolver(config);
+	}
+
+	@Test
+	public void choosesTheFastestEndpointForEachSide() {
+		FixedProbes probes = new FixedProbes().upload(PUBLIC, 50, 10).upload(PRIVATE, 5, 50).upload(DIRECT, 1, 20)
+				.read(PUBLIC, 20, 20).read(PRIVATE, 5, 10).read(DIRECT, 1, 100);
+		EndpointResolver resolver = resolver(100);
+		assertTrue(resolver.hasCandidates());
+		resolver.resolve(probes, null);
+
+		assertEquals(PRIVATE, resolver.getUploadEndpoint());
+		assertEquals(DIRECT, resolver.getLoadEndpoint());
+		// the target reads the objects written through the chosen upload endpoint
+		assertEquals(3, probes.readsProbedAfter.size());
+		for (String uploadEndpoint : probes.readsProbedAfter) {
+			assertEquals(PRIVATE, uploadEndpoint);
+		}
+		assertEquals(1, probes.cleanUps);
+	}
+
+	@Test
+	public void weighsLatencyAgainstThroughputAtThePartSize() {
+		FixedProbes probes = new FixedProbes().upload(PUBLIC, 200, 1000).upload(PRIVATE, 10, 50).read(PUBLIC, 1, 1);
+
+		// 5 MB parts: 0.205 s through PUBLIC, 0.11 s through PRIVATE
+		EndpointResolver smallParts = resolver(5);
+		smallParts.resolve(probes, null);
+		assertEquals(PRIVATE, smallParts.getUploadEndpoint());
+
+		// 100 MB parts: 0.3 s through PUBLIC, 2.01 s through PRIVATE
+		EndpointResolver largeParts = resolver(100);
+		largeParts.resolve(probes, null);
+		assertEquals(PUBLIC, largeParts.getUploadEndpoint());
+	}
+
+	@Test
+	public void skipsUnreachableEndpoints() {
+		FixedProbes probes = new FixedProbes().upload(DIRECT, 10, 10).read(PRIVATE, 10, 10);
+		EndpointResolver resolver = resolver(100);
+		resolver.resolve(probes, null);
+
+		assertEquals(DIRECT, resolver.getUploadEndpoint());
+		assertEquals(PRIVATE, resolver.getLoadEndpoint());
+	}
+
+	@Test
+	public void fallsBackWhenNoEndpointIsReachable() {
+		FixedProbes probes = new FixedProbes();
+		EndpointResolver resolver = resolver(100);
+		resolver.resolve(probes, null);
+
+		assertEquals(3, probes.uploadsProbed.size());
+		assertEquals(PUBLIC, resolver.getUploadEndpoint());
+		assertEquals(PUBLIC, resolver.getLoadEndpoint());
+		assertEquals(1, probes.cleanUps);
+	}
+
+	@Test
+	public void readsThroughTheUploadEndpointWhenTheTargetReachesNone() {
+		FixedProbes probes = new FixedProbes().upload(PRIVATE, 5, 50);
+		EndpointResolver resolver = resolver(100);
+		resolver.resolve(probes, null);
+
+		assertEquals(PRIVATE, resolver.getUploadEndpoint());
+		assertEquals(PRIVATE, resolver.getLoadEndpoint());
+	}
+
+	@Test
+	public void keepsTheEndpointOfASharedClient() {
+		FixedProbes probes = new FixedProbes().upload(PRIVATE, 5, 50).read(DIRECT, 1, 100);
+		EndpointResolver resolver = resolver(100);
+		resolver.resolve(probes, PUBLIC);
+
+		assertTrue(probes.uploadsProbed.isEmpty());
+		assertEquals(PUBLIC, resolver.getUploadEndpoint());
+		assertEquals(DIRECT, resolver.getLoadEndpoint());
+		assertEquals(PUBLIC, probes.readsProbedAfter.get(0));
+	}
+
+	@Test
+	public void usesTheServiceEndpointWithoutCandidates() {
+		ConfigurationBean config = new ConfigurationBean();
+		config.setService_endpoint(PUBLIC);
+		config.setCosEndpoints(PUBLIC);
+		EndpointResolver resolver = new EndpointResolver(config);
+
+		assertFalse(resolver.hasCandidates());
+		assertEquals(PUBLIC, resolver.getUploadEndpoint());
+		assertEquals(PUBLIC, resolver.getLoadEndpoint());
+	}
+}
@@ -0,0 +1,175 @@
+package com.ibm.cloud.db2.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Tests the schedule of the planner with probes that return fixed sizes and
+ * rates. Every table has 10000 catalog bytes per row and the sample is
+ * exported at 20000 file bytes per row, so the export files are twice the
+ * catalog size. One session exports 2 MB/s, one stream uploads 4 MB/s and one
+ * load inserts 1000 rows/s.
+ */
+public class MigrationPlannerTest {
+
+	/**
+	 * Probes that return fixed statistics and rates and record which tables
+	 * were probed.
+	 */
+	private static class FixedProbes implements CalibrationProbes {
+		private HashMap<String, TableStatistics> statistics = new HashMap<String, TableStatistics>();
+		private boolean loadFails = false;
+		private List<String> probed = new ArrayList<String>();
+		private List<String> cleanedUp = new ArrayList<String>();
+
+		FixedProbes add(String tableName, long rows) {
+			this.statistics.put(tableName, new TableStatistics(rows, rows * 10000));
+			return this;
+		}
+
+		public TableStatistics readStatistics(String tableName) {
+			return this.statistics.get(tableName);
+		}
+
+		public Sample probeExport(String tableName, ConfigurationBean tableConfig, int sampleRows) {
+			this.probed.add(tableName);
+			return new Sample(100, 2000000, 1);
+		}
+
+		public Sample probeUpload(String tableName, ConfigurationBean tableConfig) {
+			return new Sample(0, 2000000, 0.5);
+		}
+
+		public Sample probeLoad(String tableName, ConfigurationBean tableConfig) throws Exception {
+			if (this.loadFails) {
+				throw new Exception("SQL3304N The table does not exist");
+			}
+			return new Sample(100, 0, 0.1);
+		}
+
+		public void cleanUp(String tableName) {
+			this.cleanedUp.add(tableName);
+		}
+	}
+
+	/**
+	 * Plans three tables with two database sessions and one COS request.
+	 */
+	private String plan(FixedProbes probes, String... tableLines) throws Exception {
+		ConfigurationBean config = new ConfigurationBean();
+		config.setTableParallelism(2);
+		config.setMaxDatabaseSessions(2);
+		config.setMaxCosRequests(1);
+		Db2Migrator migrator = new Db2Migrator(config, Arrays.asList(tableLines), null, null, null);
+		MigrationPlanner planner = new MigrationPlanner(migrator, probes);
+		planner.plan(migrator.getTableNames());
+		return planner.getReport();
+	}
+
+	/**
+	 * Gets the report line of a table.
+	 */
+	private static String line(String report, String prefix) {
+		for (String line : report.split(System.lineSeparator())) {
+			if (line.startsWith(prefix + " ")) {
+				return line;
+			}
+		}
+		fail("No line for " + prefix + " in" + System.lineSeparator() + report);
+		return null;
+	}
+
+	@Test
+	public void schedulesTablesOnTheFirstFreeSlot() throws Exception {
+		FixedProbes probes = new FixedProbes().add("S.A", 1000).add("S.B", 2000).add("S.C", 500);
+		String report = plan(probes, "S.A", "S.B", "S.C");
+
+		// the largest table is sampled and its sample removed
+		assertEquals(Arrays.asList("S.B"), probes.probed);
+		assertEquals(Arrays.asList("S.B"), probes.cleanedUp);
+		assertTrue(report.startsWith("Calibrated on S.B"));
+
+		// EXPORT: S.A and S.B start together, S.C takes the slot S.A frees
+		assertTrue(line(report, "S.A").contains("00:00:00-00:00:10"));
+		assertTrue(line(report, "S.B").contains("00:00:00-00:00:20"));
+		assertTrue(line(report, "S.C").contains("00:00:10-00:00:15"));
+		// PUT: starts when EXPORT has finished and runs one table at a time
+		assertTrue(line(report, "S.A").contains("00:00:20-00:00:25"));
+		assertTrue(line(report, "S.B").contains("00:00:25-00:00:35"));
+		assertTrue(line(report, "S.C").contains("00:00:35-00:00:38"));
+		// LOAD: rows at 1000 rows/s, two tables at a time
+		assertTrue(line(report, "S.B").contains("00:00:38-00:00:40"));
+
+		assertEquals("EXPORT   00:00:20  <== bottleneck", line(report, "EXPORT"));
+		assertEquals("PUT      00:00:18", line(report, "PUT"));
+		assertEquals("LOAD     00:00:02", line(report, "LOAD"));
+		assertEquals("TOTAL    00:00:40", line(report, "TOTAL"));
+	}
+
+	@Test
+	public void uploadsLargeFilesWithTheTablesConcurrency() throws Exception {
+		FixedProbes probes = new FixedProbes().add("S.A", 1000).add("S.B", 2000).add("S.C", 500);
+		String report = plan(probes, "S.A", "S.B; COS_UPLOAD_CONCURRENCY=4", "S.C");
+
+		// S.B is above COS_SINGLE_PUT_THRESHOLD_MB and uploads with 4 streams,
+		// S.C is a single PUT
+		assertTrue(line(report, "S.B").contains("00:00:25-00:00:28"));
+		assertTrue(line(report, "S.C").contains("00:00:28-00:00:30"));
+		assertEquals("PUT      00:00:10", line(report, "PUT"));
+	}
+
+	@Test
+	public void exportsShardsOnSessionsOfTheirOwn() throws Exception {
+		FixedProbes probes = new FixedProbes().add("S.A", 1000).add("S.B", 2000).add("S.C", 500);
+		String report = plan(probes, "S.A", "S.B; EXPORT_SHARDS=2", "S.C");
+
+		// S.B exports its 20 MB on two sessions at 2 MB/s each
+		assertTrue(line(report, "S.B").contains("00:00:00-00:00:10"));
+		assertTrue(line(report, "S.C").contains("00:00:10-00:00:15"));
+		assertEquals("EXPORT   00:00:15", line(report, "EXPORT"));
+	}
+
+	@Test
+	public void leavesLoadOutWhenTheLoadProbeFails() throws Exception {
+		FixedProbes probes = new FixedProbes().add("S.A", 1000).add("S.B", 2000);
+		probes.loadFails = true;
+		String report = plan(probes, "S.A", "S.B");
+
+		assertEquals(Arrays.asList("S.B"), probes.cleanedUp);
+		assertTrue(line(report, "S.B").endsWith("-                   EXPORT"));
+		assertEquals("LOAD     00:00:00  (not estimated)", line(report, "LOAD"));
+	}
+
+	@Test
+	public void failsWhenNoTableHasStatistics() throws Exception {
+		FixedProbes probes = new FixedProbes().add("S.A", 0);
+		try {
+			plan(probes, "S.A");
+			fail("Planned without statistics");
+		} catch (IllegalStateException e) {
+			assertTrue(probes.probed.isEmpty());
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package com.ibm.cloud.db2.migration;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Tests that rules see values without escapes and that their output is
+ * escaped again. The export uses \ as the escape character.
+ */
+public class RowTransformerTest {
+
+	/**
+	 * Transforms rows of the columns ID, NAME and NOTE.
+	 */
+	private static String transform(String rules, String rows) throws Exception {
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		try {
+			RowTransformer transformer = new RowTransformer(rules, Arrays.asList("ID", "NAME", "NOTE"), '\\', pool,
+					1);
+			InputStream in = transformer.transform(new ByteArrayInputStream(rows.getBytes(StandardCharsets.UTF_8)));
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int bytesRead;
+			while ((bytesRead = in.read(buffer)) != -1) {
+				out.write(buffer, 0, bytesRead);
+			}
+			in.close();
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void masksTheUnescapedValue() throws Exception {
+		// a\|b is the three characters a|b, so the escape is not masked
+		assertEquals("1|*\\|b|x\n", transform("NAME:MASK(2)", "1|a\\|b|x\n"));
+		assertEquals("1|**b|x\n", transform("NAME:MASK(1)", "1|a\\|b|x\n"));
+	}
+
+	@Test
+	public void trimsBeforeAnEscapedLineBreak() throws Exception {
+		assertEquals("1|a\\\n|x\n", transform("NAME:TRIM", "1|a\\\n  |x\n"));
+	}
+
+	@Test
+	public void keepsOneBlankOfABlankValue() throws Exception {
+		// an empty field would load as NULL, and NULL stays NULL
+		assertEquals("1| |x\n2||y\n", transform("NAME:TRIM", "1|   |x\n2||y\n"));
+	}
+
+	@Test
+	public void hashesTheUnescapedValue() throws Exception {
+		byte[] hash = MessageDigest.getInstance("SHA-256").digest("sa|b".getBytes(StandardCharsets.UTF_8));
+		assertEquals("1|" + String.format("%064x", new BigInteger(1, hash)) + "|x\n",
+				transform("NAME:HASH(s)", "1|a\\|b|x\n"));
+	}
+
+	@Test
+	public void copiesColumnsWithoutRules() throws Exception {
+		assertEquals("1\\|2|*|x\\\\y\n2||z\n", transform("NAME:MASK(0)", "1\\|2|a|x\\\\y\n2||z\n"));
+	}
+}